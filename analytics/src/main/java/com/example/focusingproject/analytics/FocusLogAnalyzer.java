@@ -0,0 +1,147 @@
+package com.example.focusingproject.analytics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes {@link SessionStats} for many focus logs in parallel on a fork-join pool. Each log is read
+ * in one sequential pass by one worker, with a parser of its own; the list of logs is split in halves
+ * down to single files, so workers that finish small files early steal the rest. A log that cannot be
+ * read gives a session with an error instead of failing the whole run.
+ */
+public class FocusLogAnalyzer {
+
+    private final ForkJoinPool pool;
+    private final long gapThresholdMillis;
+    private final int windowSize;
+
+    public FocusLogAnalyzer(ForkJoinPool pool) {
+        this(pool, SessionStats.DEFAULT_GAP_THRESHOLD_MILLIS, FocusLogParser.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param gapThresholdMillis intervals longer than this count as gaps
+     * @param windowSize         bytes of a text log mapped at a time
+     */
+    public FocusLogAnalyzer(ForkJoinPool pool, long gapThresholdMillis, int windowSize) {
+        this.pool = pool;
+        this.gapThresholdMillis = gapThresholdMillis;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Blocks until every log was read.
+     *
+     * @return one session per log, in the same order
+     */
+    public List<SessionStats> analyze(List<File> logs) {
+        SessionStats[] sessions = new SessionStats[logs.size()];
+        if (!logs.isEmpty()) {
+            pool.invoke(new AnalyzeLogs(logs, sessions, 0, sessions.length));
+        }
+        return Arrays.asList(sessions);
+    }
+
+    /**
+     * Reads a single log on the calling thread.
+     */
+    public SessionStats analyze(File log) {
+        SessionStats session = new SessionStats(sessionName(log), gapThresholdMillis);
+        try {
+            new FocusLogParser(windowSize).parse(log, session);
+        } catch (IOException | RuntimeException e) {
+            session.fail(e);
+        }
+        return session;
+    }
+
+    /**
+     * Finds the focus logs of every session in the given directories, sorted by name. Sessions recorded
+     * with a binary track are read from the track, which has the same frames and is faster to read;
+     * the others from their text log. Other text files, such as performance reports, are left out.
+     */
+    public static List<File> findLogs(List<File> directories) {
+        List<File> logs = new ArrayList<>();
+        for (File directory : directories) {
+            File[] files = directory.isDirectory() ? directory.listFiles() : new File[]{directory};
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (isSessionLog(name, FocusLogParser.TRACK_SUFFIX)) {
+                    logs.add(file);
+                } else if (isSessionLog(name, FocusLogParser.TEXT_SUFFIX) && !trackOf(file).isFile()) {
+                    logs.add(file);
+                }
+            }
+        }
+        Collections.sort(logs);
+        return logs;
+    }
+
+    /**
+     * @return the file name without its extension, which is when the session was recorded
+     */
+    static String sessionName(File log) {
+        String name = log.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Session logs are named after the wall clock time the recording started, in milliseconds.
+     */
+    private static boolean isSessionLog(String name, String suffix) {
+        if (!name.endsWith(suffix)) {
+            return false;
+        }
+        int end = name.length() - suffix.length();
+        if (end == 0) {
+            return false;
+        }
+        for (int i = 0; i < end; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static File trackOf(File textLog) {
+        return new File(textLog.getParentFile(), sessionName(textLog) + FocusLogParser.TRACK_SUFFIX);
+    }
+
+    private final class AnalyzeLogs extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> logs;
+        private final SessionStats[] sessions;
+        private final int from;
+        private final int to;
+
+        AnalyzeLogs(List<File> logs, SessionStats[] sessions, int from, int to) {
+            this.logs = logs;
+            this.sessions = sessions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                sessions[from] = analyze(logs.get(from));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AnalyzeLogs(logs, sessions, from, middle), new AnalyzeLogs(logs, sessions, middle, to));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.focusingproject.analytics;
+
+import com.example.focusingproject.log.FocusTrackReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams the samples of a focus log into a {@link Sink}. Text logs ({@code <millis>.txt}, one
+ * "{@code <millis> - Focus distance: <diopters>}" line per frame) are read through a window mapped over
+ * the file, so files of any size are read without copying them onto the heap. Lines are parsed in
+ * place, byte by byte: no strings, no regular expressions. Binary tracks ({@code .ftrk}) are read
+ * through {@link FocusTrackReader}.
+ * <p>
+ * Not thread-safe; use one parser per thread.
+ */
+public class FocusLogParser {
+
+    public interface Sink {
+
+        /**
+         * @param focusDistance in diopters; NaN when the frame had neither a requested nor a reported one
+         */
+        void onSample(long wallClockMillis, float focusDistance);
+
+        /**
+         * A line that is not a focus log record, such as one cut short when the app was killed.
+         */
+        void onMalformedLine();
+    }
+
+    public static final String TEXT_SUFFIX = ".txt";
+    public static final String TRACK_SUFFIX = ".ftrk";
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /**
+     * Digits beyond these are only counted, not accumulated, so the mantissa cannot overflow. Logs
+     * hold floats, which never need more than nine.
+     */
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private final int windowSize;
+    private float parsedValue;
+
+    public FocusLogParser() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize bytes of a text log mapped at a time; a line longer than this is malformed
+     */
+    public FocusLogParser(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive.");
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Reads a binary track if the file name says so, and a text log otherwise.
+     */
+    public void parse(File file, Sink sink) throws IOException {
+        if (file.getName().endsWith(TRACK_SUFFIX)) {
+            parseTrack(file, sink);
+        } else {
+            parseText(file, sink);
+        }
+    }
+
+    public void parseText(File file, Sink sink) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            long position = 0;
+            boolean skipping = false;
+            while (position < size) {
+                int length = (int) Math.min(windowSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (window.get(i) != '\n') {
+                        continue;
+                    }
+                    if (skipping) {
+                        skipping = false;
+                    } else {
+                        parseLine(window, lineStart, i, sink);
+                    }
+                    lineStart = i + 1;
+                }
+                if (last) {
+                    if (lineStart < length && !skipping) {
+                        parseLine(window, lineStart, length, sink);
+                    }
+                    return;
+                }
+                if (lineStart == 0) {
+                    // No line end in a whole window: drop the line and pick up after its end.
+                    if (!skipping) {
+                        sink.onMalformedLine();
+                        skipping = true;
+                    }
+                    position += length;
+                } else {
+                    // Map the next window from the start of the line cut by this one.
+                    position += lineStart;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the distance the lens reported for each frame, or the requested one on devices that do not
+     * report it, as the text log does; times are the wall clock of the first record plus the sensor time
+     * since.
+     */
+    public void parseTrack(File file, Sink sink) throws IOException {
+        try (FocusTrackReader reader = new FocusTrackReader(file)) {
+            int count = reader.getRecordCount();
+            if (count == 0) {
+                return;
+            }
+            long baseMillis = reader.getBaseWallClockMillis();
+            long baseTimestamp = reader.getSensorTimestamp(0);
+            for (int i = 0; i < count; i++) {
+                float focusDistance = reader.getReportedFocusDistance(i);
+                if (Float.isNaN(focusDistance)) {
+                    focusDistance = reader.getRequestedFocusDistance(i);
+                }
+                long millis = baseMillis + (reader.getSensorTimestamp(i) - baseTimestamp) / 1000000L;
+                sink.onSample(millis, focusDistance);
+            }
+        }
+    }
+
+    private void parseLine(MappedByteBuffer buffer, int start, int end, Sink sink) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        int i = start;
+        long millis = 0;
+        while (i < end && isDigit(buffer.get(i))) {
+            millis = millis * 10 + (buffer.get(i) - '0');
+            i++;
+        }
+        if (i == start) {
+            sink.onMalformedLine();
+            return;
+        }
+        while (i < end && buffer.get(i) != ':') {
+            i++;
+        }
+        i++;
+        while (i < end && buffer.get(i) == ' ') {
+            i++;
+        }
+        if (i >= end || !parseFloat(buffer, i, end)) {
+            sink.onMalformedLine();
+            return;
+        }
+        sink.onSample(millis, parsedValue);
+    }
+
+    /**
+     * Parses what {@link Float#toString(float)} writes: an optional sign, digits with an optional point
+     * and exponent, "NaN" or "Infinity". The result is left in {@link #parsedValue}.
+     *
+     * @return whether the whole range was a number
+     */
+    private boolean parseFloat(MappedByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = buffer.get(i) == '-';
+        if (negative || buffer.get(i) == '+') {
+            i++;
+        }
+        if (matches(buffer, i, end, "NaN")) {
+            parsedValue = Float.NaN;
+            return true;
+        }
+        if (matches(buffer, i, end, "Infinity")) {
+            parsedValue = negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+            return true;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean anyDigit = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (isDigit(b)) {
+                anyDigit = true;
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (point) {
+                        scale--;
+                    }
+                } else if (!point) {
+                    scale++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return false;
+        }
+        if (i < end && (buffer.get(i) == 'E' || buffer.get(i) == 'e')) {
+            i++;
+            boolean negativeExponent = i < end && buffer.get(i) == '-';
+            if (i < end && (negativeExponent || buffer.get(i) == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            int exponent = 0;
+            while (i < end && isDigit(buffer.get(i)) && exponent < 1000) {
+                exponent = exponent * 10 + (buffer.get(i) - '0');
+                i++;
+            }
+            if (i == exponentStart) {
+                return false;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (i != end) {
+            return false;
+        }
+        // Both operands are exact below 10^22, so the division or product is correctly rounded.
+        double value;
+        if (scale >= 0) {
+            value = mantissa * (scale < POWERS_OF_TEN.length ? POWERS_OF_TEN[scale] : Math.pow(10, scale));
+        } else {
+            value = mantissa / (-scale < POWERS_OF_TEN.length ? POWERS_OF_TEN[-scale] : Math.pow(10, -scale));
+        }
+        parsedValue = (float) (negative ? -value : value);
+        return true;
+    }
+
+    private static boolean matches(MappedByteBuffer buffer, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer.get(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
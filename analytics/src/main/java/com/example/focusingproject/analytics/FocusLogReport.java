@@ -0,0 +1,78 @@
+package com.example.focusingproject.analytics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line entry point: analyzes the focus logs in the given directories and prints one
+ * tab-separated line per session, then a summary, to standard output. Sessions that could not be read
+ * are listed on standard error.
+ *
+ * <pre>
+ * java -jar analytics.jar [-threads N] [-gap MILLIS] DIRECTORY...
+ * </pre>
+ */
+public class FocusLogReport {
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long gapThresholdMillis = SessionStats.DEFAULT_GAP_THRESHOLD_MILLIS;
+        List<File> directories = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-gap".equals(args[i]) && i + 1 < args.length) {
+                gapThresholdMillis = Long.parseLong(args[++i]);
+            } else {
+                directories.add(new File(args[i]));
+            }
+        }
+        if (directories.isEmpty()) {
+            System.err.println("Usage: FocusLogReport [-threads N] [-gap MILLIS] DIRECTORY...");
+            System.exit(2);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<SessionStats> sessions = new FocusLogAnalyzer(pool, gapThresholdMillis,
+                    FocusLogParser.DEFAULT_WINDOW_SIZE).analyze(FocusLogAnalyzer.findLogs(directories));
+            System.out.print(toReport(sessions));
+            for (SessionStats session : sessions) {
+                if (session.getError() != null) {
+                    System.err.println(session.getName() + ": " + session.getError());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return the header, one line per session and a commented summary line
+     */
+    public static String toReport(List<SessionStats> sessions) {
+        StringBuilder report = new StringBuilder(SessionStats.HEADER).append('\n');
+        long samples = 0;
+        long malformed = 0;
+        long durationMillis = 0;
+        long gaps = 0;
+        int failed = 0;
+        for (SessionStats session : sessions) {
+            report.append(session.toRow()).append('\n');
+            samples += session.getSamples();
+            malformed += session.getMalformedLines();
+            durationMillis += session.getDurationMillis();
+            gaps += session.getGaps();
+            if (session.getError() != null) {
+                failed++;
+            }
+        }
+        report.append(String.format(Locale.US,
+                "# sessions %d failed %d samples %d malformed %d duration_ms %d gaps %d\n",
+                sessions.size(), failed, samples, malformed, durationMillis, gaps));
+        return report.toString();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.focusingproject.analytics;
+
+import java.util.Locale;
+
+/**
+ * Statistics of one recording session, accumulated in a single pass over its samples:
+ * <ul>
+ * <li>frame timing: the mean interval between samples, its standard deviation (jitter), the longest
+ * one, and how many exceed the gap threshold, which points at dropped frames or a stalled writer;</li>
+ * <li>focus range: the closest and farthest distance, and coverage, the share of 0.1 diopter bins
+ * between them that at least one sample fell in, so a sweep that skips part of its range shows up;</li>
+ * <li>sweep period: the mean time between the near ends of consecutive sweeps, found as the peaks of
+ * the focus distance with 0.1 diopters of hysteresis; NaN with fewer than two peaks, as in manual
+ * sessions.</li>
+ * </ul>
+ * Samples that go back in time, after a wall clock change, are counted but not timed. Not thread-safe.
+ */
+public class SessionStats implements FocusLogParser.Sink {
+
+    public static final long DEFAULT_GAP_THRESHOLD_MILLIS = 100;
+
+    /**
+     * Column names of {@link #toRow()}.
+     */
+    public static final String HEADER = "session\tsamples\tmalformed\tduration_ms\tinterval_ms\tjitter_ms"
+            + "\tmax_interval_ms\tgaps\tmin_diopters\tmax_diopters\tcoverage\tsweeps\tsweep_period_ms";
+
+    static final float COVERAGE_BIN = 0.1f;
+    private static final int COVERAGE_BINS = 256;
+    static final float SWEEP_HYSTERESIS = 0.1f;
+
+    private final String name;
+    private final long gapThresholdMillis;
+    private String error;
+
+    private long samples;
+    private long malformedLines;
+    private long firstMillis = -1;
+    private long lastMillis = -1;
+
+    private long intervals;
+    private double intervalMean;
+    private double intervalSquares;
+    private long maxIntervalMillis;
+    private long gaps;
+
+    private float minFocusDistance = Float.NaN;
+    private float maxFocusDistance = Float.NaN;
+    private final long[] coveredBins = new long[COVERAGE_BINS / 64];
+
+    private int direction;
+    private float extreme = Float.NaN;
+    private long extremeMillis;
+    private long peaks;
+    private long firstPeakMillis;
+    private long lastPeakMillis;
+
+    public SessionStats(String name) {
+        this(name, DEFAULT_GAP_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * @param gapThresholdMillis intervals longer than this count as gaps
+     */
+    public SessionStats(String name, long gapThresholdMillis) {
+        this.name = name;
+        this.gapThresholdMillis = gapThresholdMillis;
+    }
+
+    @Override
+    public void onSample(long wallClockMillis, float focusDistance) {
+        samples++;
+        if (firstMillis < 0) {
+            firstMillis = wallClockMillis;
+        } else if (wallClockMillis >= lastMillis) {
+            onInterval(wallClockMillis - lastMillis);
+        }
+        lastMillis = wallClockMillis;
+        if (Float.isNaN(focusDistance) || Float.isInfinite(focusDistance)) {
+            return;
+        }
+        if (Float.isNaN(minFocusDistance) || focusDistance < minFocusDistance) {
+            minFocusDistance = focusDistance;
+        }
+        if (Float.isNaN(maxFocusDistance) || focusDistance > maxFocusDistance) {
+            maxFocusDistance = focusDistance;
+        }
+        int bin = binOf(focusDistance);
+        coveredBins[bin >>> 6] |= 1L << bin;
+        trackSweep(wallClockMillis, focusDistance);
+    }
+
+    @Override
+    public void onMalformedLine() {
+        malformedLines++;
+    }
+
+    /**
+     * Marks the session as unreadable; whatever was read before the failure is kept.
+     */
+    void fail(Exception e) {
+        error = e.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return why the log could not be read to the end, or {@code null}
+     */
+    public String getError() {
+        return error;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    public long getDurationMillis() {
+        return samples > 0 ? lastMillis - firstMillis : 0;
+    }
+
+    public double getMeanIntervalMillis() {
+        return intervals > 0 ? intervalMean : Double.NaN;
+    }
+
+    /**
+     * @return standard deviation of the intervals between samples
+     */
+    public double getJitterMillis() {
+        return intervals > 0 ? Math.sqrt(intervalSquares / intervals) : Double.NaN;
+    }
+
+    public long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    public long getGaps() {
+        return gaps;
+    }
+
+    public float getMinFocusDistance() {
+        return minFocusDistance;
+    }
+
+    public float getMaxFocusDistance() {
+        return maxFocusDistance;
+    }
+
+    /**
+     * @return share of the bins between the closest and farthest distance that were visited, 0 to 1;
+     * NaN without any distance
+     */
+    public double getCoverage() {
+        if (Float.isNaN(minFocusDistance)) {
+            return Double.NaN;
+        }
+        int from = binOf(minFocusDistance);
+        int to = binOf(maxFocusDistance);
+        int covered = 0;
+        for (int bin = from; bin <= to; bin++) {
+            if ((coveredBins[bin >>> 6] & (1L << bin)) != 0) {
+                covered++;
+            }
+        }
+        return covered / (double) (to - from + 1);
+    }
+
+    /**
+     * @return complete sweeps, from one near end to the next
+     */
+    public long getSweeps() {
+        return Math.max(0, peaks - 1);
+    }
+
+    public double getSweepPeriodMillis() {
+        return peaks > 1 ? (lastPeakMillis - firstPeakMillis) / (double) (peaks - 1) : Double.NaN;
+    }
+
+    /**
+     * @return the statistics as a tab-separated line, in the order of {@link #HEADER}
+     */
+    public String toRow() {
+        return String.format(Locale.US, "%s\t%d\t%d\t%d\t%.3f\t%.3f\t%d\t%d\t%.3f\t%.3f\t%.3f\t%d\t%.1f",
+                name, samples, malformedLines, getDurationMillis(), getMeanIntervalMillis(), getJitterMillis(),
+                maxIntervalMillis, gaps, minFocusDistance, maxFocusDistance, getCoverage(), getSweeps(),
+                getSweepPeriodMillis());
+    }
+
+    private void onInterval(long interval) {
+        // Welford's update, so that long sessions do not lose precision.
+        intervals++;
+        double delta = interval - intervalMean;
+        intervalMean += delta / intervals;
+        intervalSquares += delta * (interval - intervalMean);
+        if (interval > maxIntervalMillis) {
+            maxIntervalMillis = interval;
+        }
+        if (interval > gapThresholdMillis) {
+            gaps++;
+        }
+    }
+
+    private void trackSweep(long millis, float focusDistance) {
+        if (Float.isNaN(extreme)) {
+            setExtreme(millis, focusDistance);
+        } else if (direction == 0) {
+            if (Math.abs(focusDistance - extreme) > SWEEP_HYSTERESIS) {
+                direction = focusDistance > extreme ? 1 : -1;
+                setExtreme(millis, focusDistance);
+            }
+        } else if (direction > 0) {
+            if (focusDistance > extreme) {
+                setExtreme(millis, focusDistance);
+            } else if (focusDistance < extreme - SWEEP_HYSTERESIS) {
+                onPeak(extremeMillis);
+                direction = -1;
+                setExtreme(millis, focusDistance);
+            }
+        } else {
+            if (focusDistance < extreme) {
+                setExtreme(millis, focusDistance);
+            } else if (focusDistance > extreme + SWEEP_HYSTERESIS) {
+                direction = 1;
+                setExtreme(millis, focusDistance);
+            }
+        }
+    }
+
+    private void setExtreme(long millis, float focusDistance) {
+        extreme = focusDistance;
+        extremeMillis = millis;
+    }
+
+    private void onPeak(long millis) {
+        if (peaks == 0) {
+            firstPeakMillis = millis;
+        }
+        lastPeakMillis = millis;
+        peaks++;
+    }
+
+    private static int binOf(float focusDistance) {
+        int bin = (int) (focusDistance / COVERAGE_BIN);
+        return bin < 0 ? 0 : Math.min(bin, COVERAGE_BINS - 1);
+    }
+}
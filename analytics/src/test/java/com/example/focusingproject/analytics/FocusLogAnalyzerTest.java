@@ -0,0 +1,151 @@
+package com.example.focusingproject.analytics;
+
+import com.example.focusingproject.log.FocusTrackWriter;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FocusLogAnalyzerTest {
+
+    private static final long FRAME_MILLIS = 33;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void measuresSweepsAndTiming() throws Exception {
+        File log = folder.newFile("1000.txt");
+        writeTriangleSweep(log, 600, 1, -1);
+
+        SessionStats session = new FocusLogAnalyzer(pool).analyze(log);
+
+        assertNull(session.getError());
+        assertEquals("1000", session.getName());
+        assertEquals(600, session.getSamples());
+        assertEquals(599 * FRAME_MILLIS, session.getDurationMillis());
+        assertEquals(FRAME_MILLIS, session.getMeanIntervalMillis(), 1e-9);
+        assertEquals(0, session.getJitterMillis(), 1e-9);
+        assertEquals(0, session.getGaps());
+        assertEquals(0.05f, session.getMinFocusDistance(), 1e-6f);
+        assertEquals(5.05f, session.getMaxFocusDistance(), 1e-6f);
+        assertEquals(1, session.getCoverage(), 0);
+        // The near end is reached every 100 frames, from frame 50 on.
+        assertEquals(5, session.getSweeps());
+        assertEquals(100 * FRAME_MILLIS, session.getSweepPeriodMillis(), 1e-9);
+    }
+
+    @Test
+    public void reportsGapsAndHolesInTheSweep() throws Exception {
+        File log = folder.newFile("2000.txt");
+        writeTriangleSweep(log, 300, 2, 120);
+
+        SessionStats session = new FocusLogAnalyzer(pool).analyze(log);
+
+        assertEquals(290, session.getSamples());
+        assertEquals(1, session.getGaps());
+        assertEquals(11 * FRAME_MILLIS, session.getMaxIntervalMillis());
+        assertTrue(session.getJitterMillis() > 0);
+        // Only every other 0.1 diopter step was visited.
+        assertEquals(26 / 51.0, session.getCoverage(), 1e-9);
+    }
+
+    @Test
+    public void parallelRunMatchesSequentialReads() throws Exception {
+        List<File> logs = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            File log = folder.newFile((1000 + i) + ".txt");
+            writeTriangleSweep(log, 200 + 50 * i, 1 + i % 3, i % 2 == 0 ? -1 : 100);
+            logs.add(log);
+        }
+        logs.add(folder.newFile("1100.ftrk"));
+
+        List<SessionStats> sessions = new FocusLogAnalyzer(pool).analyze(logs);
+
+        assertEquals(logs.size(), sessions.size());
+        FocusLogAnalyzer sequential = new FocusLogAnalyzer(pool);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(sequential.analyze(logs.get(i)).toRow(), sessions.get(i).toRow());
+        }
+        // An empty file is not a focus track.
+        assertNotNull(sessions.get(16).getError());
+        assertTrue(FocusLogReport.toReport(sessions).endsWith("# sessions 17 failed 1 samples "
+                + sumOfSamples(sessions) + " malformed 0 duration_ms " + sumOfDurations(sessions) + " gaps 8\n"));
+    }
+
+    @Test
+    public void findsOneLogPerSession() throws Exception {
+        folder.newFile("1000.txt");
+        folder.newFile("2000.txt");
+        folder.newFile("1000_performance.txt");
+        folder.newFile("startup.csv");
+        folder.newFile("2000.mp4");
+        File track = folder.newFile("2000.ftrk");
+        try (FocusTrackWriter writer = new FocusTrackWriter(track)) {
+            writer.append(0, 0, 0, 0f, 0f, 0);
+        }
+
+        List<File> logs = FocusLogAnalyzer.findLogs(Collections.singletonList(folder.getRoot()));
+
+        assertEquals(Arrays.asList(new File(folder.getRoot(), "1000.txt"), track), logs);
+    }
+
+    /**
+     * Writes a triangle sweep over 0.1 diopter steps, from 0.05 to 5.05 diopters and back every 100
+     * frames, one frame every {@link #FRAME_MILLIS}.
+     *
+     * @param stride   steps taken per frame
+     * @param gapFrame first of ten frames left out, or -1 for none
+     */
+    private static void writeTriangleSweep(File log, int frames, int stride, int gapFrame) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(log))) {
+            for (int i = 0; i < frames; i++) {
+                if (gapFrame >= 0 && i >= gapFrame && i < gapFrame + 10) {
+                    continue;
+                }
+                int phase = (i * stride) % 100;
+                int step = phase < 50 ? phase : 100 - phase;
+                writer.write(i * FRAME_MILLIS + " - Focus distance: " + (step * 0.1f + 0.05f));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static long sumOfSamples(List<SessionStats> sessions) {
+        long sum = 0;
+        for (SessionStats session : sessions) {
+            sum += session.getSamples();
+        }
+        return sum;
+    }
+
+    private static long sumOfDurations(List<SessionStats> sessions) {
+        long sum = 0;
+        for (SessionStats session : sessions) {
+            sum += session.getDurationMillis();
+        }
+        return sum;
+    }
+}
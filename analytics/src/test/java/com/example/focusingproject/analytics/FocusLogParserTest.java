@@ -0,0 +1,132 @@
+package com.example.focusingproject.analytics;
+
+import com.example.focusingproject.log.FocusLogWriter;
+import com.example.focusingproject.log.FocusTrackWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusLogParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWhatTheAppWritesAcrossWindows() throws Exception {
+        File file = folder.newFile("1000.txt");
+        Random random = new Random(1);
+        float[] distances = new float[5000];
+        try (FocusLogWriter writer = new FocusLogWriter(file, null, null)) {
+            for (int i = 0; i < distances.length; i++) {
+                // Every magnitude Float.toString writes, with and without an exponent.
+                distances[i] = (float) (random.nextDouble() * Math.pow(10, random.nextInt(12) - 6));
+                writer.write(1000 + i, i, i, distances[i], Float.NaN, 0);
+            }
+        }
+
+        Samples samples = new Samples();
+        new FocusLogParser(1000).parseText(file, samples);
+
+        assertEquals(distances.length, samples.millis.size());
+        assertEquals(0, samples.malformed);
+        for (int i = 0; i < distances.length; i++) {
+            assertEquals(1000L + i, (long) samples.millis.get(i));
+            assertEquals(Float.toString(distances[i]), distances[i], samples.distances.get(i), 0f);
+        }
+    }
+
+    @Test
+    public void skipsMalformedLines() throws Exception {
+        File file = write("1 - Focus distance: 0.5\r\n"
+                + "\n"
+                + "garbage\n"
+                + "2 - Focus distance: NaN\n"
+                + "3 - Focus distance: 1.5x\n"
+                + "4 - Focus distance: -Infinity\n"
+                + "5 - Focus distance: 1.25E-2\n"
+                + "6 - Focus distance:\n"
+                + "7 - Focus distance: 2.");
+
+        Samples samples = new Samples();
+        new FocusLogParser().parseText(file, samples);
+
+        assertEquals(3, samples.malformed);
+        assertEquals(5, samples.millis.size());
+        assertEquals(0.5f, samples.distances.get(0), 0f);
+        assertTrue(Float.isNaN(samples.distances.get(1)));
+        assertEquals(Float.NEGATIVE_INFINITY, samples.distances.get(2), 0f);
+        assertEquals(0.0125f, samples.distances.get(3), 0f);
+        assertEquals(2f, samples.distances.get(4), 0f);
+    }
+
+    @Test
+    public void linesLongerThanTheWindowAreDropped() throws Exception {
+        StringBuilder log = new StringBuilder("1 - Focus distance: 0.5\n");
+        for (int i = 0; i < 100; i++) {
+            log.append('x');
+        }
+        log.append("\n2 - Focus distance: 1.0\n");
+        File file = write(log.toString());
+
+        Samples samples = new Samples();
+        new FocusLogParser(32).parseText(file, samples);
+
+        assertEquals(1, samples.malformed);
+        assertEquals(2, samples.millis.size());
+        assertEquals(2L, (long) samples.millis.get(1));
+    }
+
+    @Test
+    public void readsTracksAsTheTextLogShowsThem() throws Exception {
+        File file = folder.newFile("1000.ftrk");
+        try (FocusTrackWriter writer = new FocusTrackWriter(file)) {
+            writer.append(5000, 1000000000L, 1, 2f, 1.5f, 1);
+            writer.append(5033, 1033333333L, 2, 2f, Float.NaN, 0);
+        }
+
+        Samples samples = new Samples();
+        new FocusLogParser().parse(file, samples);
+
+        assertEquals(5000L, (long) samples.millis.get(0));
+        assertEquals(5033L, (long) samples.millis.get(1));
+        assertEquals(1.5f, samples.distances.get(0), 0f);
+        assertEquals(2f, samples.distances.get(1), 0f);
+    }
+
+    private File write(String content) throws IOException {
+        File file = folder.newFile();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+        return file;
+    }
+
+    private static final class Samples implements FocusLogParser.Sink {
+
+        final List<Long> millis = new ArrayList<>();
+        final List<Float> distances = new ArrayList<>();
+        int malformed;
+
+        @Override
+        public void onSample(long wallClockMillis, float focusDistance) {
+            millis.add(wallClockMillis);
+            distances.add(focusDistance);
+        }
+
+        @Override
+        public void onMalformedLine() {
+            malformed++;
+        }
+    }
+}
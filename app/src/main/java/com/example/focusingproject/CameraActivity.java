@@ -11,6 +11,7 @@ import android.widget.Toast;
 import com.example.focusingproject.camera.AutoFitTextureView;
 import com.example.focusingproject.camera.CameraProvider;
 import com.example.focusingproject.camera.CameraStatusCallback;
+import com.example.focusingproject.camera.FocusPeakingView;
 
 public class CameraActivity extends AppCompatActivity {
 
@@ -19,9 +20,15 @@ public class CameraActivity extends AppCompatActivity {
     private SeekBar seekBar;
     private CameraProvider cameraProvider;
     private TextView mode;
+    private TextView peakingToggle;
+    private TextView focusStack;
+    private TextView storageStatus;
+    private TextView lens;
+    private FocusPeakingView peakingView;
 
     private String manualMode;
     private String autoMode;
+    private String contrastMode;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -31,9 +38,16 @@ public class CameraActivity extends AppCompatActivity {
         buttonVideo = findViewById(R.id.video);
         seekBar = findViewById(R.id.seekBar);
         mode = findViewById(R.id.mode);
+        peakingToggle = findViewById(R.id.peakingToggle);
+        peakingView = findViewById(R.id.peaking);
+        focusStack = findViewById(R.id.focusStack);
+        storageStatus = findViewById(R.id.storageStatus);
+        lens = findViewById(R.id.lens);
+        seekBar.setMax(CameraProvider.FOCUS_SEEK_BAR_MAX);
 
         manualMode = getResources().getString(R.string.manual);
         autoMode = getResources().getString(R.string.auto);
+        contrastMode = getResources().getString(R.string.contrast);
 
         cameraProvider = new CameraProvider(this, textureView);
     }
@@ -59,6 +73,28 @@ public class CameraActivity extends AppCompatActivity {
                 changeMode();
             }
         });
+        peakingToggle.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                togglePeaking();
+            }
+        });
+        focusStack.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (!isRecordingVideo) {
+                    cameraProvider.captureFocusStack();
+                }
+            }
+        });
+        lens.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (!isRecordingVideo) {
+                    cameraProvider.switchLens();
+                }
+            }
+        });
     }
 
     @Override
@@ -79,6 +115,15 @@ public class CameraActivity extends AppCompatActivity {
         cameraProvider.setStatusCallback(null);
         seekBar.setOnSeekBarChangeListener(null);
         buttonVideo.setOnClickListener(null);
+        peakingToggle.setOnClickListener(null);
+        focusStack.setOnClickListener(null);
+        lens.setOnClickListener(null);
+    }
+
+    @Override
+    protected void onDestroy() {
+        cameraProvider.release();
+        super.onDestroy();
     }
 
     private void changeMode() {
@@ -87,9 +132,13 @@ public class CameraActivity extends AppCompatActivity {
             seekBar.setVisibility(View.GONE);
             cameraProvider.changeFocusDistanceAuto(true);
             modeText = autoMode;
+        } else if (mode.getText().equals(autoMode)) {
+            seekBar.setVisibility(View.GONE);
+            cameraProvider.setContrastFocusEnabled(true);
+            modeText = contrastMode;
         } else {
             seekBar.setVisibility(View.VISIBLE);
-            cameraProvider.changeFocusDistanceAuto(false);
+            cameraProvider.setContrastFocusEnabled(false);
             modeText = manualMode;
         }
 
@@ -101,6 +150,17 @@ public class CameraActivity extends AppCompatActivity {
         });
     }
 
+    private void togglePeaking() {
+        if (peakingView.getVisibility() == View.VISIBLE) {
+            cameraProvider.setFocusPeakingView(null);
+            peakingView.clear();
+            peakingView.setVisibility(View.GONE);
+        } else {
+            peakingView.setVisibility(View.VISIBLE);
+            cameraProvider.setFocusPeakingView(peakingView);
+        }
+    }
+
     private void showToast(String message) {
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
@@ -143,11 +203,66 @@ public class CameraActivity extends AppCompatActivity {
         public void stopRecordingVideo() {
             updateButtonText(R.string.record);
             isRecordingVideo = false;
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    storageStatus.setVisibility(View.GONE);
+                }
+            });
+        }
+
+        @Override
+        public void showMessage(final String message) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    showToast(message);
+                }
+            });
+        }
+
+        @Override
+        public void showRecordStartLatency(final long latencyMillis) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    showToast(getString(R.string.record_start_latency, latencyMillis));
+                }
+            });
+        }
+
+        @Override
+        public void showStorageStatus(final long writeBytesPerSecond, final long queuedBytes,
+                                      final long remainingSeconds) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    storageStatus.setText(getString(R.string.storage_status, writeBytesPerSecond / 1e6,
+                            queuedBytes / 1024, remainingSeconds / 60));
+                    storageStatus.setVisibility(View.VISIBLE);
+                }
+            });
         }
 
         @Override
-        public void showMessage(String message) {
-            showToast(message);
+        public void showTimeToFirstFrame(final long millis) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    showToast(getString(R.string.time_to_first_frame, millis));
+                }
+            });
+        }
+
+        @Override
+        public void showLens(final String name, final int lensCount) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    lens.setText(name);
+                    lens.setVisibility(lensCount > 1 ? View.VISIBLE : View.GONE);
+                }
+            });
         }
     };
 
@@ -1,28 +1,77 @@
 package com.example.focusingproject;
 
+import com.example.focusingproject.log.FocusLogWriter;
+import com.example.focusingproject.log.SegmentManifest;
+import com.example.focusingproject.log.SensorClockModel;
+
 import java.io.*;
-import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.concurrent.Executor;
 
 public class VideoFilesManager {
 
     private static final String MP4 = ".mp4";
     private static final String TXT = ".txt";
+    private static final String FTRK = ".ftrk";
+    private static final String FIDX = ".fidx";
+    private static final String STACK_JPG = "_stack.jpg";
+    private static final String SEGMENTS = ".segments";
+    private static final String SEGMENT_SUFFIX = "_%03d";
+    private static final String STARTUP_CSV = "startup.csv";
+    private static final String PERFORMANCE_TXT = "_performance.txt";
 
     private String directory;
+    private final Executor ioExecutor;
     private File videoFile;
     private File logFile;
+    private File trackFile;
+    private File scoreFile;
+    private File manifestFile;
+    private String sessionName;
+    private volatile int segmentCount;
+    private boolean binaryTrackEnabled;
+    private boolean focusScoreEnabled = true;
+    private boolean segmentationEnabled;
+    private volatile FocusLogWriter logWriter;
+    private volatile SegmentManifest manifest;
+    private final SensorClockModel clockModel = new SensorClockModel();
 
-    public VideoFilesManager(String directory) {
+    /**
+     * @param ioExecutor runs the focus log writer, one task at a time
+     */
+    public VideoFilesManager(String directory, Executor ioExecutor) {
         this.directory = directory;
+        this.ioExecutor = ioExecutor;
     }
 
+    /**
+     * Creates the files of the next recording. The focus log is only opened by {@link #openFocusLog()},
+     * so the files can be created ahead of time, while the recorder is being prepared.
+     */
     public boolean createVideoSessionFiles() {
+        closeVideoSessionFiles();
         videoFile = null;
         logFile = null;
+        trackFile = null;
+        scoreFile = null;
+        manifestFile = null;
 
         String fileName = directory + "/" + System.currentTimeMillis();
-        videoFile = new File(fileName + MP4);
+        sessionName = fileName;
+        segmentCount = 1;
+        if (segmentationEnabled) {
+            videoFile = segmentFile(0);
+            manifestFile = new File(fileName + SEGMENTS);
+        } else {
+            videoFile = new File(fileName + MP4);
+        }
         logFile = new File(fileName + TXT);
+        if (binaryTrackEnabled) {
+            trackFile = new File(fileName + FTRK);
+        }
+        if (focusScoreEnabled) {
+            scoreFile = new File(fileName + FIDX);
+        }
         try {
             return videoFile.createNewFile() && logFile.createNewFile();
         } catch (IOException e) {
@@ -31,20 +80,254 @@ public class VideoFilesManager {
         }
     }
 
-    public String getVideoPath() {
-        return videoFile.getAbsolutePath();
+    /**
+     * Starts logging focus samples into the files of the current session; called as recording starts.
+     */
+    public boolean openFocusLog() {
+        closeVideoSessionFiles();
+        try {
+            clockModel.reset();
+            logWriter = new FocusLogWriter(logFile, trackFile, scoreFile, ioExecutor);
+            if (manifestFile != null) {
+                manifest = new SegmentManifest(manifestFile);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
-    public void writeFocusDistance(float focusDistance) {
-        if (logFile == null || !logFile.exists()) {
+    public void closeVideoSessionFiles() {
+        SegmentManifest segments = manifest;
+        if (segments != null) {
+            manifest = null;
+            try {
+                segments.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        FocusLogWriter writer = logWriter;
+        if (writer == null) {
             return;
         }
+        logWriter = null;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-        try (BufferedWriter buf = new BufferedWriter(new FileWriter(logFile, true))){
-            buf.append(new StringBuilder(new Timestamp(System.currentTimeMillis()).getTime() + " - Focus distance: " + focusDistance));
-            buf.newLine();
+    /**
+     * Deletes the files of a session that was prepared but never recorded.
+     */
+    public void discardVideoSessionFiles() {
+        closeVideoSessionFiles();
+        File[] files = {videoFile, logFile, trackFile, scoreFile, manifestFile};
+        for (File file : files) {
+            if (file != null && file.exists() && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        videoFile = null;
+        logFile = null;
+        trackFile = null;
+        scoreFile = null;
+        manifestFile = null;
+    }
+
+    /**
+     * Creates the file of a further segment of the current session; segment 0 is the session's video
+     * file.
+     */
+    public File createSegmentFile(int index) throws IOException {
+        File file = segmentFile(index);
+        if (!file.createNewFile() && !file.exists()) {
+            throw new IOException("Cannot create " + file);
+        }
+        segmentCount = Math.max(segmentCount, index + 1);
+        return file;
+    }
+
+    private File segmentFile(int index) {
+        return new File(sessionName + String.format(Locale.US, SEGMENT_SUFFIX, index) + MP4);
+    }
+
+    /**
+     * Lists a segment in the ".segments" manifest once its first frame is written. See
+     * {@link SegmentManifest#startSegment(long)}.
+     */
+    public void startSegment(long startSensorTimestamp) {
+        SegmentManifest segments = manifest;
+        if (segments != null) {
+            segments.startSegment(startSensorTimestamp);
+        }
+    }
+
+    public void finishSegment(int index, String path, long startSensorTimestamp, long endSensorTimestamp,
+                              long frames, long bytes) {
+        SegmentManifest segments = manifest;
+        if (segments == null) {
+            return;
+        }
+        try {
+            segments.finishSegment(index, new File(path).getName(), startSensorTimestamp, endSensorTimestamp,
+                    frames, bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return a new file for a merged focus stack, independent of any video session
+     */
+    public File createFocusStackFile() {
+        return new File(directory + "/" + System.currentTimeMillis() + STACK_JPG);
+    }
+
+    /**
+     * Appends a line to "startup.csv", writing the header first if the file is new.
+     */
+    public void appendStartupLine(String header, String line) {
+        File file = new File(directory, STARTUP_CSV);
+        boolean created = !file.exists();
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file, true))) {
+            if (created) {
+                out.write(header);
+                out.newLine();
+            }
+            out.write(line);
+            out.newLine();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * @return the performance report of the current session, or {@code null} before a session was
+     * created
+     */
+    public File getPerformanceReportFile() {
+        String name = sessionName;
+        return name != null ? new File(name + PERFORMANCE_TXT) : null;
+    }
+
+    /**
+     * Replaces the contents of the file with the report.
+     */
+    public void writePerformanceReport(File file, String report) {
+        try (Writer out = new FileWriter(file, false)) {
+            out.write(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public File getDirectory() {
+        return new File(directory);
+    }
+
+    public long getUsableSpace() {
+        return new File(directory).getUsableSpace();
+    }
+
+    /**
+     * @return bytes of the current session's video, all segments included, that have reached the disk
+     */
+    public long getVideoBytesOnDisk() {
+        File file = videoFile;
+        if (file == null) {
+            return 0;
+        }
+        if (manifestFile == null) {
+            return file.length();
+        }
+        long bytes = 0;
+        int segments = segmentCount;
+        for (int i = 0; i < segments; i++) {
+            bytes += segmentFile(i).length();
+        }
+        return bytes;
+    }
+
+    public String getVideoPath() {
+        return videoFile.getAbsolutePath();
+    }
+
+    /**
+     * Also writes a binary ".ftrk" focus track next to the text log for sessions created afterwards.
+     */
+    public void setBinaryTrackEnabled(boolean binaryTrackEnabled) {
+        this.binaryTrackEnabled = binaryTrackEnabled;
+    }
+
+    /**
+     * Writes a ".fidx" index of per-frame focus scores next to the log for sessions created afterwards.
+     * Enabled by default.
+     */
+    public void setFocusScoreEnabled(boolean focusScoreEnabled) {
+        this.focusScoreEnabled = focusScoreEnabled;
+    }
+
+    public boolean isFocusScoreEnabled() {
+        return focusScoreEnabled;
+    }
+
+    /**
+     * Names the video of sessions created afterwards as numbered segments, "_000.mp4" onwards, and
+     * writes a ".segments" manifest next to them.
+     */
+    public void setSegmentationEnabled(boolean segmentationEnabled) {
+        this.segmentationEnabled = segmentationEnabled;
+    }
+
+    /**
+     * Logs one frame. Must be called from the camera callback thread, in frame order; the log timestamp
+     * is derived from the sensor timestamp rather than from the time of the call.
+     */
+    public void writeFocusSample(long sensorTimestamp, long frameNumber, float requestedFocusDistance,
+                                 float reportedFocusDistance, int lensState) {
+        writeFocusSample(sensorTimestamp, System.nanoTime(), frameNumber, requestedFocusDistance,
+                reportedFocusDistance, lensState);
+    }
+
+    /**
+     * Logs a frame whose result arrived earlier, at {@code arrivalNanos} on the {@link System#nanoTime()}
+     * clock, such as a pre-rolled one.
+     */
+    public void writeFocusSample(long sensorTimestamp, long arrivalNanos, long frameNumber,
+                                 float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+        FocusLogWriter writer = logWriter;
+        if (writer == null) {
+            return;
+        }
+
+        clockModel.observe(sensorTimestamp, arrivalNanos);
+        writer.write(clockModel.toWallClockMillis(sensorTimestamp), sensorTimestamp, frameNumber,
+                requestedFocusDistance, reportedFocusDistance, lensState);
+        SegmentManifest segments = manifest;
+        if (segments != null) {
+            segments.onFocusSample(sensorTimestamp);
+        }
+    }
+
+    /**
+     * Logs the focus score of a frame. Scores are measured on the analysis thread and may arrive before
+     * or after the frame's sample; they are matched to it by sensor timestamp.
+     */
+    public void writeFocusScore(long sensorTimestamp, float score) {
+        FocusLogWriter writer = logWriter;
+        if (writer != null) {
+            writer.writeScore(sensorTimestamp, score);
+        }
+    }
+
+    /**
+     * Clock model of the current session, mapping sensor timestamps to wall-clock and presentation time.
+     */
+    public SensorClockModel getClockModel() {
+        return clockModel;
+    }
 }
@@ -0,0 +1,251 @@
+package com.example.focusingproject.camera;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.os.Build;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link CameraHal} on an open camera2 device. The surface of each output is set before a session
+ * that uses it is created. Every request runs with manual focus and auto exposure, and carries its
+ * {@link CameraHal.Request} as the camera2 tag; results are unboxed into one reused {@link FocusFrame}.
+ * Callbacks arrive on the given handler.
+ */
+class Camera2Hal implements CameraHal.Device {
+
+    private final CameraDevice device;
+    private final String physicalCameraId;
+    private final Handler handler;
+    private final Map<CameraHal.Output, Surface> surfaces = new EnumMap<>(CameraHal.Output.class);
+
+    /**
+     * @param physicalCameraId physical camera of a logical multi-camera to route every output to
+     *                         (API 28+), or {@code null}
+     */
+    Camera2Hal(CameraDevice device, String physicalCameraId, Handler handler) {
+        this.device = device;
+        this.physicalCameraId = physicalCameraId;
+        this.handler = handler;
+    }
+
+    void setSurface(CameraHal.Output output, Surface surface) {
+        surfaces.put(output, surface);
+    }
+
+    @Override
+    public void createSession(Set<CameraHal.Output> outputs, final CameraHal.SessionCallback callback) {
+        final Map<CameraHal.Output, Surface> sessionSurfaces = new EnumMap<>(CameraHal.Output.class);
+        for (CameraHal.Output output : outputs) {
+            Surface surface = surfaces.get(output);
+            if (null == surface) {
+                throw new IllegalStateException("No surface for " + output);
+            }
+            sessionSurfaces.put(output, surface);
+        }
+        CameraCaptureSession.StateCallback stateCallback = new CameraCaptureSession.StateCallback() {
+
+            @Override
+            public void onConfigured(@NonNull CameraCaptureSession session) {
+                callback.onConfigured(new Session(session, sessionSurfaces));
+            }
+
+            @Override
+            public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                callback.onConfigureFailed();
+            }
+        };
+        try {
+            List<Surface> targets = new ArrayList<>(sessionSurfaces.values());
+            if (null == physicalCameraId || Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+                device.createCaptureSession(targets, stateCallback, handler);
+                return;
+            }
+            List<OutputConfiguration> configurations = new ArrayList<>(targets.size());
+            for (Surface surface : targets) {
+                OutputConfiguration configuration = new OutputConfiguration(surface);
+                configuration.setPhysicalCameraId(physicalCameraId);
+                configurations.add(configuration);
+            }
+            device.createCaptureSessionByOutputConfigurations(configurations, stateCallback, handler);
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+            callback.onConfigureFailed();
+        }
+    }
+
+    @Override
+    public void close() {
+        device.close();
+    }
+
+    private static int toCameraTemplate(CameraHal.Template template) {
+        switch (template) {
+            case RECORD:
+                return CameraDevice.TEMPLATE_RECORD;
+            case STILL_CAPTURE:
+                return CameraDevice.TEMPLATE_STILL_CAPTURE;
+            default:
+                return CameraDevice.TEMPLATE_PREVIEW;
+        }
+    }
+
+    private static float valueOrNaN(Float value) {
+        return value != null ? value : Float.NaN;
+    }
+
+    private final class Session implements CameraHal.Session {
+
+        private final CameraCaptureSession session;
+        private final Map<CameraHal.Output, Surface> sessionSurfaces;
+        private final Map<CameraHal.Template, CaptureRequest.Builder> builders = new EnumMap<>(CameraHal.Template.class);
+        private final FocusFrame frame = new FocusFrame();
+        private Forwarder repeating;
+        private Forwarder burst;
+
+        Session(CameraCaptureSession session, Map<CameraHal.Output, Surface> sessionSurfaces) {
+            this.session = session;
+            this.sessionSurfaces = sessionSurfaces;
+        }
+
+        @Override
+        public boolean setRepeatingRequest(CameraHal.Request request, CameraHal.ResultCallback callback) {
+            try {
+                repeating = forwarder(repeating, callback);
+                session.setRepeatingRequest(build(request), repeating, handler);
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        @Override
+        public boolean setRepeatingBurst(List<CameraHal.Request> requests, CameraHal.ResultCallback callback) {
+            try {
+                repeating = forwarder(repeating, callback);
+                session.setRepeatingBurst(buildAll(requests), repeating, handler);
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        @Override
+        public boolean captureBurst(List<CameraHal.Request> requests, CameraHal.ResultCallback callback) {
+            try {
+                burst = forwarder(burst, callback);
+                session.captureBurst(buildAll(requests), burst, handler);
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            session.close();
+        }
+
+        private Forwarder forwarder(Forwarder current, CameraHal.ResultCallback callback) {
+            return null != current && current.callback == callback ? current : new Forwarder(callback);
+        }
+
+        private List<CaptureRequest> buildAll(List<CameraHal.Request> requests) throws CameraAccessException {
+            List<CaptureRequest> built = new ArrayList<>(requests.size());
+            for (CameraHal.Request request : requests) {
+                built.add(build(request));
+            }
+            return built;
+        }
+
+        private CaptureRequest build(CameraHal.Request request) throws CameraAccessException {
+            CaptureRequest.Builder builder = builders.get(request.template);
+            if (null == builder) {
+                builder = device.createCaptureRequest(toCameraTemplate(request.template));
+                builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_OFF);
+                builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+                builders.put(request.template, builder);
+            }
+            for (Map.Entry<CameraHal.Output, Surface> entry : sessionSurfaces.entrySet()) {
+                if (request.hasTarget(entry.getKey())) {
+                    builder.addTarget(entry.getValue());
+                } else {
+                    builder.removeTarget(entry.getValue());
+                }
+            }
+            if (!Float.isNaN(request.focusDistance)) {
+                builder.set(CaptureRequest.LENS_FOCUS_DISTANCE, request.focusDistance);
+            }
+            builder.setTag(request);
+            return builder.build();
+        }
+
+        private final class Forwarder extends CameraCaptureSession.CaptureCallback {
+
+            final CameraHal.ResultCallback callback;
+
+            Forwarder(CameraHal.ResultCallback callback) {
+                this.callback = callback;
+            }
+
+            @Override
+            public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                           @NonNull TotalCaptureResult result) {
+                // camera2 hands metadata out boxed; unbox straight away so nothing else is allocated per frame.
+                Long sensorTimestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+                if (sensorTimestamp == null) {
+                    return;
+                }
+                Integer lensState = result.get(CaptureResult.LENS_STATE);
+                frame.clear();
+                frame.sensorTimestamp = sensorTimestamp;
+                frame.frameNumber = result.getFrameNumber();
+                frame.requestedFocusDistance = valueOrNaN(request.get(CaptureRequest.LENS_FOCUS_DISTANCE));
+                frame.focusDistance = valueOrNaN(result.get(CaptureResult.LENS_FOCUS_DISTANCE));
+                frame.lensState = lensState != null ? lensState : FocusFrame.LENS_STATE_UNKNOWN;
+                callback.onCaptureCompleted((CameraHal.Request) request.getTag(), frame);
+            }
+
+            @Override
+            public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                         long timestamp, long frameNumber) {
+                callback.onCaptureStarted((CameraHal.Request) request.getTag(), frameNumber, timestamp);
+            }
+
+            @Override
+            public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull CaptureFailure failure) {
+                callback.onCaptureFailed((CameraHal.Request) request.getTag(), failure.getFrameNumber());
+            }
+
+            @Override
+            public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                            @NonNull Surface target, long frameNumber) {
+                for (Map.Entry<CameraHal.Output, Surface> entry : sessionSurfaces.entrySet()) {
+                    if (entry.getValue() == target) {
+                        callback.onCaptureBufferLost((CameraHal.Request) request.getTag(), entry.getKey(),
+                                frameNumber);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
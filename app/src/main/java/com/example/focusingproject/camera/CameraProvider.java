@@ -2,26 +2,39 @@ package com.example.focusingproject.camera;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
-import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.*;
 import android.hardware.camera2.params.StreamConfigurationMap;
-import android.media.MediaRecorder;
+import android.media.MediaCodec;
+import android.os.Build;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.util.Size;
 import android.util.SparseIntArray;
 import android.view.Surface;
 import android.view.TextureView;
 import com.example.focusingproject.VideoFilesManager;
-
+import com.example.focusingproject.encoding.EncodedFrameRing;
+import com.example.focusingproject.encoding.EncoderSettings;
+import com.example.focusingproject.encoding.EncoderStats;
+import com.example.focusingproject.encoding.SegmentPolicy;
+import com.example.focusingproject.log.FocusSampleRing;
+import com.example.focusingproject.storage.StorageMonitor;
+
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 public class CameraProvider {
@@ -29,6 +42,19 @@ public class CameraProvider {
     private static final int DEFAULT_WIDTH = 640;
     private static final int DEFAULT_HEIGHT = 480;
 
+    /**
+     * Tags the requests that target the recorder, so that frames going into the recording can be told
+     * apart in the capture callback.
+     */
+    private static final Object RECORDING_TAG = new Object();
+    private static final long STORAGE_CHECK_INTERVAL_MS = 1000;
+    private static final long METRICS_DUMP_INTERVAL_MS = 5000;
+    private static final String PROFILE_CACHE_FILE = "camera_profiles.bin";
+    /**
+     * Last position of the focus seek bar.
+     */
+    public static final int FOCUS_SEEK_BAR_MAX = 100;
+
     private static final int SENSOR_ORIENTATION_DEFAULT_DEGREES = 90;
     private static final int SENSOR_ORIENTATION_INVERSE_DEGREES = 270;
     private static final SparseIntArray DEFAULT_ORIENTATIONS = new SparseIntArray();
@@ -50,32 +76,107 @@ public class CameraProvider {
 
     private Activity activity;
     private AutoFitTextureView textureView;
-    private CameraDevice cameraDevice;
-    private CameraCaptureSession previewSession;
+    private Camera2Hal camera;
     private Float minFocusDistance;
-    private Size previewSize;
+    private volatile Size previewSize;
     private Size videoSize;
-    private MediaRecorder mediaRecorder;
-    private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
+    private final EncoderStats encoderStats = new EncoderStats();
+    private final VideoEncoder videoEncoder;
+    private volatile EncoderSettings encoderSettings = EncoderSettings.defaults();
+    private boolean realtimeTimestamps;
+    private Surface persistentRecorderSurface;
+    private boolean recorderPrepared;
+    private EncodedFrameRing preRollFrames;
+    private FocusSampleRing preRollSamples;
+    private boolean preRolling;
+    private final StorageMonitor storageMonitor = new StorageMonitor();
+    private StorageMonitor.Status storageStatus = StorageMonitor.Status.OK;
+    private final CaptureSessionState sessionState = new CaptureSessionState();
+    private final CameraThreads<HandlerWorker> threads = new CameraThreads<>(HandlerWorker.FACTORY);
+    // The camera device, its sessions and every field below that is not volatile belong to the control
+    // thread; the UI thread only posts to it.
+    private volatile Handler backgroundHandler;
+    private final Handler analysisHandler;
+    private final Handler ioHandler;
+    private boolean storageProbed;
     private Integer sensorOrientation;
-    private CaptureRequest.Builder previewBuilder;
     private CameraStatusCallback statusCallback;
     private VideoFilesManager filesManager;
 
-    private int requiredWidth;
-    private int requiredHeight;
+    private volatile int requiredWidth;
+    private volatile int requiredHeight;
 
-    private boolean focusDistanceAuto;
     private boolean isRecordingVideo;
-    private int frameCount;
+    private boolean recordingSession;
+
+    private final ManualFocusController manualFocusController = new ManualFocusController();
+    private SweepFocusController sweepFocusController = new SweepFocusController(FocusSweep.defaultSweep());
+    private final HillClimbFocusController contrastFocusController = new HillClimbFocusController();
+    private final FrameHistory frameHistory = new FrameHistory(8);
+    private final CaptureLoop captureLoop = new CaptureLoop(frameHistory, new CaptureLoop.Listener() {
+
+        @Override
+        public void onCaptureCompleted(CameraHal.Request request, FocusFrame frame) {
+            onFrameCaptured(request, frame);
+        }
 
-    private Semaphore cameraOpenCloseLock = new Semaphore(1);
+        @Override
+        public void onFrameAnalysed(FocusFrame frame) {
+            if (frame.lensState == CameraMetadata.LENS_STATE_STATIONARY) {
+                focusCalibration.recordSharpness(frame.focusDistance, frame.sharpness);
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+        }
+    });
+    private final FocusAnalyzer focusAnalyzer = new FocusAnalyzer(frameHistory);
+    private Size analysisSize;
+    private boolean focusAnalyzerStarted;
+    private volatile boolean contrastFocusEnabled;
+    private volatile boolean focusPeakingEnabled;
+    private final FocusStackCapture focusStackCapture = new FocusStackCapture();
+    private Size stackSize;
+    private boolean focusStackCaptureStarted;
+    private boolean focusStackRunning;
+    private CameraHal.Request lastStackRequest;
+
+    private final CameraProfileCache profileCache;
+    private volatile List<CameraLens> lenses = Collections.emptyList();
+    private CameraLens lens;
+    private volatile String selectedLensId;
+    private final Map<String, FocusCalibration> focusCalibrations = new HashMap<>();
+    private final Map<String, LensResponseModel> lensResponses = new HashMap<>();
+    private volatile FocusCalibration focusCalibration;
+    private int focusPosition;
+    private final float[] transformValues = new float[PreviewTransform.VALUES];
+    private final StartupTrace startupTrace = new StartupTrace();
+
+    /**
+     * Counts the cameras opened and closed, so callbacks of a device that was closed, or replaced by
+     * another lens, before it finished opening are told apart and the device closed.
+     */
+    private int cameraGeneration;
 
     public CameraProvider(Activity activity, AutoFitTextureView textureView) {
         this.activity = activity;
         this.textureView = textureView;
-        filesManager = new VideoFilesManager(activity.getExternalFilesDir(null).getAbsolutePath());
+        threads.start();
+        analysisHandler = threads.get(CameraThreads.Role.ANALYSIS).getHandler();
+        ioHandler = threads.get(CameraThreads.Role.IO).getHandler();
+        videoEncoder = new VideoEncoder(encoderStats, ioHandler);
+        filesManager = new VideoFilesManager(activity.getExternalFilesDir(null).getAbsolutePath(),
+                threads.get(CameraThreads.Role.IO));
+        profileCache = CameraProfileCache.load(new File(activity.getFilesDir(), PROFILE_CACHE_FILE), Build.FINGERPRINT);
+        focusAnalyzer.setScoreListener(new FocusAnalyzer.ScoreListener() {
+            @Override
+            public void onFocusScore(long sensorTimestamp, float score) {
+                // A no-op outside of a recording session.
+                filesManager.writeFocusScore(sensorTimestamp, score);
+            }
+        });
+        captureLoop.setController(manualFocusController);
     }
 
     public void setVideoSize(int width, int height) {
@@ -83,238 +184,1138 @@ public class CameraProvider {
         requiredHeight = height;
     }
 
+    /**
+     * Starts recording. With a persistent recorder surface (API 23+) the recorder is already prepared
+     * and part of the running session, so this only adds it to the repeating request; older devices
+     * reconfigure the session. The time until the first frame reaches the recorder is reported through
+     * {@link CameraStatusCallback#showRecordStartLatency(long)}. Both run on the camera thread.
+     */
     public void startRecordingVideo() {
-        if (null == cameraDevice || !textureView.isAvailable() || null == previewSize) {
+        Handler handler = backgroundHandler;
+        if (null == handler) {
+            return;
+        }
+        final long requestedNanos = System.nanoTime();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (null == camera || !textureView.isAvailable() || null == previewSize) {
+                    return;
+                }
+                if (null == persistentRecorderSurface) {
+                    startRecordingVideoInNewSession(requestedNanos);
+                    return;
+                }
+                if (!recorderPrepared || focusStackRunning || !sessionState.moveTo(CaptureSessionState.State.RECORDING)) {
+                    return;
+                }
+                sessionState.onRecordRequested(requestedNanos);
+                filesManager.openFocusLog();
+                recordingSession = true;
+                videoEncoder.start();
+                if (preRolling) {
+                    preRolling = false;
+                    long preRollStartUs = videoEncoder.getPreRollStartUs();
+                    if (preRollStartUs >= 0) {
+                        preRollSamples.drainTo(preRollStartUs * 1000L, preRollSampleSink);
+                    }
+                    preRollSamples.clear();
+                }
+                captureLoop.setRequest(captureLoop.getRequest()
+                        .withTarget(CameraHal.Output.RECORDER, true).withTag(RECORDING_TAG));
+                isRecordingVideo = true;
+                startMetricsDumps();
+                resubmitRequests();
+                statusCallback.startRecordingVideo();
+                startStorageChecks();
+            }
+        });
+    }
+
+    public void stopRecordingVideo() {
+        Handler handler = backgroundHandler;
+        if (null == handler) {
             return;
         }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (null == persistentRecorderSurface) {
+                    stopRecordingVideoInNewSession();
+                    return;
+                }
+                if (!isRecordingVideo || !sessionState.moveTo(CaptureSessionState.State.PREVIEW)) {
+                    return;
+                }
+                captureLoop.setRequest(captureLoop.getRequest()
+                        .withTarget(CameraHal.Output.RECORDER, false).withTag(null));
+                isRecordingVideo = false;
+                recordingSession = false;
+                resubmitRequests();
+                statusCallback.stopRecordingVideo();
+                videoEncoder.stop();
+                recorderPrepared = false;
+                dumpMetrics();
+                filesManager.closeVideoSessionFiles();
+                statusCallback.showMessage(videoSavedMessage());
+                prepareRecorder();
+            }
+        });
+    }
+
+    /**
+     * @param requestedNanos when the recording was asked for, which starts the latency clock once the
+     *                       session state allows it
+     */
+    private void startRecordingVideoInNewSession(long requestedNanos) {
+        if (focusStackRunning || !sessionState.moveTo(CaptureSessionState.State.CONFIGURING)) {
+            return;
+        }
+        sessionState.onRecordRequested(requestedNanos);
         try {
             closePreviewSession();
             filesManager.createVideoSessionFiles();
-            setUpMediaRecorder();
+            filesManager.openFocusLog();
+            recordingSession = true;
+            prepareVideoEncoder();
             SurfaceTexture texture = textureView.getSurfaceTexture();
             assert texture != null;
             texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-            List<Surface> surfaces = new ArrayList<>();
-
-            Surface previewSurface = new Surface(texture);
-            surfaces.add(previewSurface);
-            previewBuilder.addTarget(previewSurface);
-
-            Surface recorderSurface = mediaRecorder.getSurface();
-            surfaces.add(recorderSurface);
-            previewBuilder.addTarget(recorderSurface);
+            camera.setSurface(CameraHal.Output.PREVIEW, new Surface(texture));
+            camera.setSurface(CameraHal.Output.RECORDER, videoEncoder.getInputSurface());
+            Set<CameraHal.Output> outputs = EnumSet.of(CameraHal.Output.PREVIEW, CameraHal.Output.RECORDER);
+            addAnalysisOutput(outputs);
+            final CameraHal.Request request = new CameraHal.Request(CameraHal.Template.RECORD)
+                    .withTarget(CameraHal.Output.PREVIEW, true)
+                    .withTarget(CameraHal.Output.RECORDER, true)
+                    .withTag(RECORDING_TAG);
 
-            previewBuilder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_OFF);
-
-            cameraDevice.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
+            camera.createSession(outputs, new CameraHal.SessionCallback() {
 
                 @Override
-                public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                    previewSession = cameraCaptureSession;
-                    updatePreview();
+                public void onConfigured(CameraHal.Session session) {
+                    if (!sessionState.moveTo(CaptureSessionState.State.RECORDING)) {
+                        session.close();
+                        return;
+                    }
+                    captureLoop.attach(session, request);
                     statusCallback.startRecordingVideo();
                     isRecordingVideo = true;
-                    mediaRecorder.start();
+                    videoEncoder.start();
+                    startMetricsDumps();
+                    updatePreview();
+                    startStorageChecks();
                 }
 
                 @Override
-                public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                public void onConfigureFailed() {
                     statusCallback.showMessage("onConfigureFailed");
                 }
-            }, backgroundHandler);
+            });
 
-        } catch (CameraAccessException | IOException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
-
     }
 
-    public void stopRecordingVideo() {
+    private void stopRecordingVideoInNewSession() {
+        if (!isRecordingVideo || !sessionState.moveTo(CaptureSessionState.State.PREVIEW)) {
+            return;
+        }
         statusCallback.stopRecordingVideo();
-        mediaRecorder.stop();
-        mediaRecorder.reset();
+        videoEncoder.stop();
 
-        frameCount = 0;
         isRecordingVideo = false;
-        statusCallback.showMessage("Video saved: " + filesManager.getVideoPath());
+        recordingSession = false;
+        dumpMetrics();
+        filesManager.closeVideoSessionFiles();
+        statusCallback.showMessage(videoSavedMessage());
         startPreview();
     }
 
+    /**
+     * Prepares the recorder for the next recording on the persistent surface. The surface only gets
+     * its buffer size once a recorder is prepared on it, so this has to happen before the session
+     * that includes it is configured.
+     */
+    private void prepareRecorder() {
+        if (null == persistentRecorderSurface || recorderPrepared) {
+            return;
+        }
+        try {
+            if (!filesManager.createVideoSessionFiles()) {
+                return;
+            }
+            prepareVideoEncoder();
+            recorderPrepared = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            filesManager.discardVideoSessionFiles();
+            return;
+        }
+        startPreRoll();
+    }
+
+    /**
+     * Starts the prepared encoder ahead of recording and makes the recorder surface a preview target,
+     * so the last seconds of preview are at hand when recording starts.
+     */
+    private void startPreRoll() {
+        if (null == preRollFrames || !recorderPrepared || isRecordingVideo || preRolling) {
+            return;
+        }
+        videoEncoder.startPreRoll();
+        preRollSamples.clear();
+        preRolling = true;
+        if (null != captureLoop.getRequest()) {
+            captureLoop.setRequest(captureLoop.getRequest().withTarget(CameraHal.Output.RECORDER, true));
+            resubmitRequests();
+        }
+    }
+
+    /**
+     * Opens the camera and, in parallel, waits for the preview texture; the session is configured as
+     * soon as both are ready. The time to the first preview frame is reported through
+     * {@link CameraStatusCallback#showTimeToFirstFrame(long)} and appended to a startup log.
+     */
     public void startCameraPreview() {
+        startupTrace.start(System.nanoTime());
         startBackgroundThread();
+        textureView.setSurfaceTextureListener(surfaceTextureListener);
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                openCamera();
+            }
+        });
         if (textureView.isAvailable()) {
-            openCamera(textureView.getWidth(), textureView.getHeight());
-        } else {
-            textureView.setSurfaceTextureListener(surfaceTextureListener);
+            startupTrace.mark(StartupTrace.Phase.TEXTURE_AVAILABLE, System.nanoTime());
+            configureTransform(textureView.getWidth(), textureView.getHeight());
         }
     }
 
+    /**
+     * Closes the camera on the camera thread and waits until it is closed, so the recording in progress
+     * is finished before the activity pauses.
+     */
     public void stopCameraPreview() {
-        closeCamera();
+        Handler handler = backgroundHandler;
+        if (null != handler) {
+            final CountDownLatch closed = new CountDownLatch(1);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        closeCamera();
+                    } finally {
+                        closed.countDown();
+                    }
+                }
+            });
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+            }
+        }
+        videoEncoder.shutdown();
         stopBackgroundThread();
     }
 
+    /**
+     * Stops the camera, analysis and I/O threads, after they have run what was posted to them. Call once
+     * the preview is stopped for good; the provider cannot be used afterwards.
+     */
+    public void release() {
+        focusStackCapture.release();
+        threads.stop();
+    }
+
+    /**
+     * @return how many pipeline threads are alive and how many were started and stopped so far
+     */
+    public CameraThreads.Diagnostics getThreadDiagnostics() {
+        return threads.getDiagnostics();
+    }
+
     public void setStatusCallback(CameraStatusCallback statusCallback) {
         this.statusCallback = statusCallback;
     }
 
+    /**
+     * Sets the manual focus distance from a seek bar position, 0 to {@link #FOCUS_SEEK_BAR_MAX}, through
+     * the calibration of the current lens. Cheap enough for every tick of a drag: it only replaces the
+     * target, which the camera thread picks up with its next frame.
+     */
     public void changeFocusDistance(int progress) {
-        if (minFocusDistance == null) {
+        focusPosition = progress;
+        FocusCalibration calibration = focusCalibration;
+        if (null == calibration) {
             return;
         }
 
-        float focusDistance = progress * minFocusDistance / 100;
-        previewBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, focusDistance);
-        try {
-            previewSession.setRepeatingRequest(previewBuilder.build(), captureCallback, backgroundHandler);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
+        manualFocusController.setTarget(calibration.toFocusDistance(progress));
+    }
+
+    /**
+     * Smooths manual focus changes: each frame the lens covers this fraction of the remaining way to the
+     * seek bar position, over 0 and up to 1, which moves it straight there.
+     */
+    public void setFocusEasing(float easing) {
+        manualFocusController.setEasing(easing);
+    }
+
+    /**
+     * @return the focus calibration of the current lens, with the sharpness measured so far, or
+     * {@code null} before a camera was opened
+     */
+    public FocusCalibration getFocusCalibration() {
+        return focusCalibration;
+    }
+
+    /**
+     * @return the ids of the lenses that can be selected, in order; empty before a camera was opened
+     */
+    public List<String> getLensIds() {
+        List<String> ids = new ArrayList<>(lenses.size());
+        for (CameraLens lens : lenses) {
+            ids.add(lens.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Switches to the next lens, back to the first after the last.
+     */
+    public void switchLens() {
+        Handler handler = backgroundHandler;
+        if (null == handler) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (lenses.size() < 2) {
+                    return;
+                }
+                int index = (lenses.indexOf(lens) + 1) % lenses.size();
+                switchToLens(lenses.get(index).getId());
+            }
+        });
+    }
+
+    /**
+     * Closes the current camera and opens the given lens on the same preview, keeping the activity,
+     * camera thread and encoder. Its characteristics come from the profile cache. Ignored while
+     * recording or capturing a focus stack.
+     */
+    public void selectLens(final String lensId) {
+        Handler handler = backgroundHandler;
+        if (null == handler) {
+            selectedLensId = lensId;
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                switchToLens(lensId);
+            }
+        });
+    }
+
+    private void switchToLens(String lensId) {
+        if (lensId.equals(selectedLensId) && null != camera) {
+            return;
+        }
+        if (isRecordingVideo || focusStackRunning) {
+            statusCallback.showMessage("Cannot switch lenses while capturing.");
+            return;
         }
+        selectedLensId = lensId;
+        closeCamera();
+        openCamera();
     }
 
     public void changeFocusDistanceAuto(boolean focusDistanceAuto) {
-        this.focusDistanceAuto = focusDistanceAuto;
+        setFocusController(focusDistanceAuto ? sweepFocusController : manualFocusController);
+    }
+
+    /**
+     * Sets the sweep used in auto mode. Takes effect immediately if a sweep is running.
+     */
+    public void setFocusSweep(FocusSweep focusSweep) {
+        boolean running = captureLoop.getController() == sweepFocusController;
+        sweepFocusController = new SweepFocusController(focusSweep);
+        sweepFocusController.setLensResponse(captureLoop.getLensResponse());
+        if (running) {
+            setFocusController(sweepFocusController);
+        }
+    }
+
+    /**
+     * Hands the lens over to a focus strategy. The controller is started on the camera thread and is
+     * driven from there with every completed frame.
+     */
+    public void setFocusController(final FocusController controller) {
+        if (controller == captureLoop.getController()) {
+            return;
+        }
+        captureLoop.setController(controller);
+        if (backgroundHandler != null) {
+            backgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (controller == captureLoop.getController()) {
+                        startFocusController();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Switches to contrast-based software autofocus, which drives the lens from the sharpness of a
+     * low-resolution analysis stream, or back to manual focus.
+     */
+    public void setContrastFocusEnabled(boolean enabled) {
+        contrastFocusEnabled = enabled;
+        captureLoop.setJoinSharpness(enabled);
+        setFocusController(enabled ? contrastFocusController : manualFocusController);
+    }
+
+    /**
+     * Shows focus peaking in the given overlay, computed from the analysis stream; {@code null} turns
+     * it off.
+     */
+    public void setFocusPeakingView(FocusPeakingView view) {
+        if (view != null) {
+            view.setTimer(focusAnalyzer.getPeakingTimer());
+            view.setSensorOrientation(getDisplayRelativeOrientation());
+        }
+        focusAnalyzer.setPeakingView(view);
+        focusPeakingEnabled = view != null;
+        if (backgroundHandler != null) {
+            backgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    resubmitRequests();
+                }
+            });
+        }
+    }
+
+    public void setBinaryFocusTrackEnabled(boolean enabled) {
+        filesManager.setBinaryTrackEnabled(enabled);
+    }
+
+    /**
+     * Records a per-frame focus score index with sessions started afterwards. On by default.
+     */
+    public void setFocusScoreEnabled(boolean enabled) {
+        filesManager.setFocusScoreEnabled(enabled);
+    }
+
+    /**
+     * Sets codec, bitrate mode, bitrate and key frame interval for recordings started afterwards.
+     * Settings the device cannot honour fall back as described in {@link VideoEncoder#prepare}.
+     */
+    public void setEncoderSettings(final EncoderSettings settings) {
+        if (null == backgroundHandler) {
+            encoderSettings = settings;
+            return;
+        }
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                encoderSettings = settings;
+                reprepareRecorder();
+            }
+        });
+    }
+
+    /**
+     * Splits recordings started afterwards into segment files whenever the policy says so, with a
+     * ".segments" manifest; {@code null} records single files.
+     */
+    public void setSegmentPolicy(final SegmentPolicy policy) {
+        if (null == backgroundHandler) {
+            applySegmentPolicy(policy);
+            return;
+        }
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                applySegmentPolicy(policy);
+                reprepareRecorder();
+            }
+        });
+    }
+
+    /**
+     * Keeps the last {@code durationMillis} of preview encoded in a buffer of {@code capacityBytes}
+     * off-heap memory, and its focus samples alongside, so that recordings start that far back, from
+     * a key frame. The buffer is allocated here once; older frames are dropped if it fills up before
+     * the duration is covered. A duration of 0 turns pre-roll off. Needs a persistent recorder surface
+     * (API 23+), since the encoder has to run during preview.
+     */
+    public void setPreRoll(final long durationMillis, final int capacityBytes) {
+        if (null == backgroundHandler) {
+            applyPreRoll(durationMillis, capacityBytes);
+            return;
+        }
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                applyPreRoll(durationMillis, capacityBytes);
+                reprepareRecorder();
+            }
+        });
+    }
+
+    private void applyPreRoll(long durationMillis, int capacityBytes) {
+        if (durationMillis <= 0) {
+            preRollFrames = null;
+            preRollSamples = null;
+        } else {
+            EncoderSettings settings = encoderSettings;
+            int slots = EncodedFrameRing.slotsFor(durationMillis, settings.getFrameRate(),
+                    settings.getIFrameIntervalSeconds());
+            preRollFrames = new EncodedFrameRing(capacityBytes, slots, durationMillis);
+            preRollSamples = new FocusSampleRing(slots);
+        }
+        videoEncoder.setPreRoll(preRollFrames);
+    }
+
+    private void applySegmentPolicy(SegmentPolicy policy) {
+        filesManager.setSegmentationEnabled(policy != null);
+        videoEncoder.setSegmentation(policy, segmentListener);
     }
 
+    private void reprepareRecorder() {
+        if (recorderPrepared && !isRecordingVideo) {
+            // The prepared encoder is already part of the session; re-prepare on the same surface.
+            stopPreRoll();
+            videoEncoder.release();
+            filesManager.discardVideoSessionFiles();
+            recorderPrepared = false;
+            prepareRecorder();
+        }
+    }
+
+    private void stopPreRoll() {
+        if (!preRolling) {
+            return;
+        }
+        preRolling = false;
+        if (null != captureLoop.getRequest()) {
+            captureLoop.setRequest(captureLoop.getRequest().withTarget(CameraHal.Output.RECORDER, false));
+            resubmitRequests();
+        }
+    }
+
+    private final FocusSampleRing.Sink preRollSampleSink = new FocusSampleRing.Sink() {
+        @Override
+        public void onSample(long sensorTimestamp, long arrivalNanos, long frameNumber,
+                             float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+            filesManager.writeFocusSample(sensorTimestamp, arrivalNanos, frameNumber, requestedFocusDistance,
+                    reportedFocusDistance, lensState);
+            videoEncoder.writeFocusSample(filesManager.getClockModel().toWallClockMillis(sensorTimestamp),
+                    sensorTimestamp, frameNumber, requestedFocusDistance, reportedFocusDistance, lensState);
+        }
+    };
+
+    private final VideoEncoder.SegmentListener segmentListener = new VideoEncoder.SegmentListener() {
+
+        @Override
+        public String nextSegmentPath(int index) throws IOException {
+            return filesManager.createSegmentFile(index).getAbsolutePath();
+        }
+
+        @Override
+        public void onSegmentStarted(int index, long startSensorTimestamp) {
+            filesManager.startSegment(startSensorTimestamp);
+        }
+
+        @Override
+        public void onSegmentFinished(int index, String path, long startSensorTimestamp, long endSensorTimestamp,
+                                      long frames, long bytes) {
+            filesManager.finishSegment(index, path, startSensorTimestamp, endSensorTimestamp, frames, bytes);
+        }
+    };
+
+    /**
+     * Encode latency and output bitrate of the current or most recent recording.
+     */
+    public EncoderStats getEncoderStats() {
+        return encoderStats;
+    }
+
+    /**
+     * Frame pacing, request and focus settle latency, and failed captures since the current or most
+     * recent recording started, or since the camera was first opened.
+     */
+    public CaptureMetrics.Snapshot getCaptureMetrics() {
+        return captureLoop.getMetrics().snapshot();
+    }
+
+    /**
+     * Takes a focus stack of {@link FocusStackCapture#DEFAULT_FRAMES} frames.
+     */
+    public void captureFocusStack() {
+        captureFocusStack(FocusStackCapture.DEFAULT_FRAMES);
+    }
+
+    /**
+     * Captures one frame at each of {@code frames} focus distances spread evenly in diopters between
+     * infinity and the closest focus distance, and saves them merged into a single all-in-focus JPEG.
+     * Preview resumes once the last frame of the burst is captured, while the merge is still running.
+     * Ignored while recording.
+     */
+    public void captureFocusStack(final int frames) {
+        if (backgroundHandler == null) {
+            return;
+        }
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                startFocusStack(frames);
+            }
+        });
+    }
+
+    /**
+     * Opens the selected lens, or the first one. The characteristics of all lenses come from the
+     * profile cache when it has them, so a warm start or a lens switch does not query the camera
+     * service at all; otherwise they are queried once and cached for the next launch. The device is
+     * opened without waiting for the preview texture; its callbacks come on the camera thread, like
+     * this.
+     */
     @SuppressWarnings("MissingPermission")
-    private void openCamera(int width, int height) {
+    private void openCamera() {
 
         CameraManager manager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
         try {
-            if (!cameraOpenCloseLock.tryAcquire(2500, TimeUnit.MILLISECONDS)) {
-                throw new RuntimeException("Time out waiting to lock camera opening.");
+            sessionState.moveTo(CaptureSessionState.State.OPENING);
+            List<CameraLens> available = CameraLens.enumerate(profileCache);
+            startupTrace.setCacheHit(!available.isEmpty());
+            if (available.isEmpty()) {
+                queryProfiles(manager);
+                saveProfileCache();
+                available = CameraLens.enumerate(profileCache);
             }
-            String cameraId = manager.getCameraIdList()[0];
-            minFocusDistance = manager.getCameraCharacteristics(cameraId).
-                    get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+            startupTrace.mark(StartupTrace.Phase.CHARACTERISTICS, System.nanoTime());
+            lenses = available;
+            lens = available.get(CameraLens.indexOf(available, selectedLensId));
+            selectedLensId = lens.getId();
+            CameraProfile profile = lens.profile;
+            selectFocusCalibration(profile);
+
+            minFocusDistance = Float.isNaN(profile.getMinFocusDistance()) ? null : profile.getMinFocusDistance();
+            captureLoop.setMinFocusDistance(profile.getMinFocusDistance());
+            sensorOrientation = profile.getSensorOrientation();
+            realtimeTimestamps = profile.hasRealtimeTimestamps();
             // Choose the sizes for camera preview and video recording
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
-            StreamConfigurationMap map = characteristics
-                    .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-            if (map == null) {
-                throw new RuntimeException("Cannot get available preview/video sizes");
+            Size[] yuvSizes = toSizes(profile.getYuvSizes());
+            analysisSize = FocusAnalyzer.chooseAnalysisSize(yuvSizes);
+            stackSize = FocusStackCapture.chooseStackSize(yuvSizes);
+            chooseVideoSizes(profile);
+
+            updateTextureView();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                persistentRecorderSurface = MediaCodec.createPersistentInputSurface();
             }
-            videoSize = chooseVideoSize(map.getOutputSizes(MediaRecorder.class));
-            previewSize = chooseVideoSize(map.getOutputSizes(SurfaceTexture.class));
-
-            textureView.setAspectRatio(previewSize.getHeight(), previewSize.getWidth());
-            configureTransform(width, height);
-            mediaRecorder = new MediaRecorder();
-            manager.openCamera(cameraId, stateCallback, null);
+            manager.openCamera(lens.cameraId, newStateCallback(++cameraGeneration), backgroundHandler);
+            statusCallback.showLens(describeLens(lens), lenses.size());
+        } catch (IllegalArgumentException e) {
+            if (!startupTrace.isCacheHit()) {
+                throw e;
+            }
+            // The cached camera id is gone, say after an external camera was unplugged; start over.
+            profileCache.clear();
+            if (null != persistentRecorderSurface) {
+                persistentRecorderSurface.release();
+                persistentRecorderSurface = null;
+            }
+            openCamera();
         } catch (CameraAccessException e) {
             statusCallback.showMessage("Cannot access the camera.");
             activity.finish();
         } catch (NullPointerException e) {
             statusCallback.showMessage("Camera2 not supported");
             throw new NullPointerException(e.getMessage());
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera opening.");
         }
     }
 
-    private void closeCamera() {
-        try {
-            cameraOpenCloseLock.acquire();
-            closePreviewSession();
-            if (null != cameraDevice) {
-                cameraDevice.close();
-                cameraDevice = null;
+    /**
+     * Fits the texture view to the preview size chosen for the lens, on the UI thread.
+     */
+    private void updateTextureView() {
+        final Size size = previewSize;
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                textureView.setAspectRatio(size.getHeight(), size.getWidth());
+                if (textureView.isAvailable()) {
+                    configureTransform(textureView.getWidth(), textureView.getHeight());
+                }
             }
-            if (null != mediaRecorder) {
-                mediaRecorder.release();
-                mediaRecorder = null;
+        });
+    }
+
+    /**
+     * Queries every listed camera and the physical cameras behind logical ones into the cache.
+     */
+    private void queryProfiles(CameraManager manager) throws CameraAccessException {
+        String[] idList = manager.getCameraIdList();
+        for (String cameraId : idList) {
+            CameraProfile profile = queryProfile(manager, cameraId);
+            profileCache.put(profile);
+            for (String physicalId : profile.getPhysicalCameraIds()) {
+                if (null == profileCache.get(physicalId)) {
+                    profileCache.put(queryProfile(manager, physicalId));
+                }
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera closing.");
-        } finally {
-            cameraOpenCloseLock.release();
         }
+        profileCache.setCameraIds(Arrays.asList(idList));
+    }
+
+    private static CameraProfile queryProfile(CameraManager manager, String cameraId) throws CameraAccessException {
+        CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            throw new RuntimeException("Cannot get available preview/video sizes");
+        }
+        Float minFocusDistance = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        return new CameraProfile(cameraId,
+                minFocusDistance != null ? minFocusDistance : Float.NaN,
+                sensorOrientation != null ? sensorOrientation : SENSOR_ORIENTATION_DEFAULT_DEGREES,
+                timestampSource != null && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME,
+                candidates(map, MediaCodec.class), candidates(map, SurfaceTexture.class),
+                candidates(map, ImageFormat.YUV_420_888))
+                .withLens(valueOr(characteristics.get(CameraCharacteristics.LENS_FACING), CameraProfile.LENS_FACING_BACK),
+                        shortest(characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS)),
+                        valueOrNaN(characteristics.get(CameraCharacteristics.LENS_INFO_HYPERFOCAL_DISTANCE)),
+                        FocusCalibration.Quality.fromCameraValue(valueOr(characteristics.get(
+                                CameraCharacteristics.LENS_INFO_FOCUS_DISTANCE_CALIBRATION), 0)))
+                .withPhysicalCameraIds(physicalCameraIds(characteristics));
+    }
+
+    private static String[] physicalCameraIds(CameraCharacteristics characteristics) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return new String[0];
+        }
+        Set<String> ids = characteristics.getPhysicalCameraIds();
+        return ids.toArray(new String[ids.size()]);
+    }
+
+    private static int valueOr(Integer value, int fallback) {
+        return value != null ? value : fallback;
     }
 
+    private static float shortest(float[] values) {
+        float shortest = Float.NaN;
+        if (values != null) {
+            for (float value : values) {
+                if (Float.isNaN(shortest) || value < shortest) {
+                    shortest = value;
+                }
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * Uses the calibration of the lens, made the first time it is opened and kept with its measured
+     * sharpness while the provider lives, and moves the manual focus to the same seek bar position.
+     * Likewise, each lens keeps the settle times learned from its own moves, which sweeps use to
+     * command their steps early.
+     */
+    private void selectFocusCalibration(CameraProfile profile) {
+        FocusCalibration calibration = focusCalibrations.get(profile.getCameraId());
+        if (null == calibration) {
+            calibration = FocusCalibration.forProfile(profile, FOCUS_SEEK_BAR_MAX);
+            focusCalibrations.put(profile.getCameraId(), calibration);
+        }
+        focusCalibration = calibration;
+        manualFocusController.setTarget(calibration.toFocusDistance(focusPosition));
+
+        LensResponseModel lensResponse = lensResponses.get(profile.getCameraId());
+        if (null == lensResponse) {
+            lensResponse = new LensResponseModel();
+            lensResponses.put(profile.getCameraId(), lensResponse);
+        }
+        captureLoop.setLensResponse(lensResponse);
+        sweepFocusController.setLensResponse(lensResponse);
+    }
+
+    private static String describeLens(CameraLens lens) {
+        CameraProfile profile = lens.profile;
+        String facing;
+        switch (profile.getLensFacing()) {
+            case CameraProfile.LENS_FACING_FRONT:
+                facing = "Front";
+                break;
+            case CameraProfile.LENS_FACING_EXTERNAL:
+                facing = "External";
+                break;
+            default:
+                facing = "Back";
+        }
+        if (Float.isNaN(profile.getFocalLength())) {
+            return facing + " " + lens.getId();
+        }
+        return String.format(Locale.US, "%s %.1f mm", facing, profile.getFocalLength());
+    }
+
+    private void reportStartup() {
+        statusCallback.showTimeToFirstFrame(startupTrace.getMillis(StartupTrace.Phase.FIRST_FRAME));
+        final String line = startupTrace.toCsvLine();
+        if (!storageProbed) {
+            storageProbed = true;
+            probeStorage();
+        }
+        ioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                filesManager.appendStartupLine(StartupTrace.csvHeader(), line);
+            }
+        });
+    }
+
+    private void saveProfileCache() {
+        ioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    profileCache.save();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void closeCamera() {
+        // A device still opening is closed as soon as it reports in.
+        cameraGeneration++;
+        closePreviewSession();
+        if (null != camera) {
+            camera.close();
+            camera = null;
+        }
+        if (isRecordingVideo) {
+            videoEncoder.stop();
+        } else {
+            videoEncoder.release();
+            if (recorderPrepared) {
+                filesManager.discardVideoSessionFiles();
+            }
+        }
+        recorderPrepared = false;
+        preRolling = false;
+        if (null != persistentRecorderSurface) {
+            persistentRecorderSurface.release();
+            persistentRecorderSurface = null;
+        }
+        if (focusAnalyzerStarted) {
+            focusAnalyzer.stop();
+            focusAnalyzerStarted = false;
+        }
+        if (focusStackCaptureStarted) {
+            focusStackCapture.stop();
+            focusStackCaptureStarted = false;
+        }
+        focusStackRunning = false;
+        lastStackRequest = null;
+        captureLoop.setSuspended(false);
+        isRecordingVideo = false;
+        recordingSession = false;
+        filesManager.closeVideoSessionFiles();
+        sessionState.moveTo(CaptureSessionState.State.CLOSED);
+    }
+
+    /**
+     * Hands out the camera thread, which lives as long as the provider; a null handler means the
+     * preview is stopped.
+     */
     private void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
+        threads.start();
+        backgroundHandler = threads.get(CameraThreads.Role.CONTROL).getHandler();
     }
 
     private void stopBackgroundThread() {
-        backgroundThread.quitSafely();
-        try {
-            backgroundThread.join();
-            backgroundThread = null;
-            backgroundHandler = null;
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        backgroundHandler = null;
+    }
+
+    /**
+     * Chooses recorder and preview sizes together, up to the size set with {@link #setVideoSize} or
+     * 640x480, that keep up with the encoder frame rate alongside the analysis stream.
+     */
+    private void chooseVideoSizes(CameraProfile profile) {
+        int width = requiredWidth > 0 && requiredHeight > 0 ? requiredWidth : DEFAULT_WIDTH;
+        int height = requiredWidth > 0 && requiredHeight > 0 ? requiredHeight : DEFAULT_HEIGHT;
+        long analysisFrameDuration = null != analysisSize
+                ? profile.getYuvMinFrameDuration(analysisSize.getWidth(), analysisSize.getHeight()) : 0;
+        SizeSelector.Choice choice = new SizeSelector(width, height, encoderSettings.getFrameRate())
+                .choose(profile.getVideoSizes(), profile.getPreviewSizes(), analysisFrameDuration);
+        if (!choice.sustainsFrameRate) {
+            statusCallback.showMessage(String.format(Locale.US, "Camera limited to %.1f fps at %s.",
+                    1e9 / choice.frameDurationNanos, choice.video));
+        }
+        videoSize = new Size(choice.video.width, choice.video.height);
+        previewSize = new Size(choice.preview.width, choice.preview.height);
+    }
+
+    private static <T> SizeSelector.Candidate[] candidates(StreamConfigurationMap map, Class<T> output) {
+        Size[] sizes = map.getOutputSizes(output);
+        SizeSelector.Candidate[] candidates = new SizeSelector.Candidate[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            candidates[i] = new SizeSelector.Candidate(sizes[i].getWidth(), sizes[i].getHeight(),
+                    map.getOutputMinFrameDuration(output, sizes[i]), map.getOutputStallDuration(output, sizes[i]));
+        }
+        return candidates;
+    }
+
+    private static SizeSelector.Candidate[] candidates(StreamConfigurationMap map, int format) {
+        Size[] sizes = map.getOutputSizes(format);
+        SizeSelector.Candidate[] candidates = new SizeSelector.Candidate[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            candidates[i] = new SizeSelector.Candidate(sizes[i].getWidth(), sizes[i].getHeight(),
+                    map.getOutputMinFrameDuration(format, sizes[i]), map.getOutputStallDuration(format, sizes[i]));
+        }
+        return candidates;
+    }
+
+    private static Size[] toSizes(SizeSelector.Candidate[] candidates) {
+        Size[] sizes = new Size[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            sizes[i] = new Size(candidates[i].width, candidates[i].height);
         }
+        return sizes;
     }
 
-    private Size chooseVideoSize(Size[] choices) {
-        Size defaultSize = null;
-        for (Size size : choices) {
-            if (size.getWidth() == requiredWidth && size.getHeight() == requiredHeight) {
-                return size;
+    /**
+     * Configures the session used for both preview and recording: the preview, the analysis stream
+     * and, where available, the persistent recorder surface, which only becomes a request target while
+     * recording.
+     */
+    private void startPreview() {
+        if (null == camera || !textureView.isAvailable() || null == previewSize
+                || !sessionState.moveTo(CaptureSessionState.State.CONFIGURING)) {
+            return;
+        }
+        closePreviewSession();
+        prepareRecorder();
+        SurfaceTexture texture = textureView.getSurfaceTexture();
+        assert texture != null;
+        texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+        camera.setSurface(CameraHal.Output.PREVIEW, new Surface(texture));
+        Set<CameraHal.Output> outputs = EnumSet.of(CameraHal.Output.PREVIEW);
+        CameraHal.Request request = new CameraHal.Request(CameraHal.Template.PREVIEW)
+                .withTarget(CameraHal.Output.PREVIEW, true);
+        if (recorderPrepared) {
+            camera.setSurface(CameraHal.Output.RECORDER, persistentRecorderSurface);
+            outputs.add(CameraHal.Output.RECORDER);
+            request = request.withTarget(CameraHal.Output.RECORDER, preRolling);
+        }
+        addAnalysisOutput(outputs);
+        final CameraHal.Request previewRequest = request;
+
+        camera.createSession(outputs, new CameraHal.SessionCallback() {
+
+            @Override
+            public void onConfigured(CameraHal.Session session) {
+                if (!sessionState.moveTo(CaptureSessionState.State.PREVIEW)) {
+                    session.close();
+                    return;
+                }
+                startupTrace.mark(StartupTrace.Phase.SESSION_CONFIGURED, System.nanoTime());
+                captureLoop.attach(session, previewRequest);
+                updatePreview();
             }
 
-            if (size.getWidth() == DEFAULT_WIDTH && size.getHeight() == DEFAULT_HEIGHT) {
-                defaultSize = size;
+            @Override
+            public void onConfigureFailed() {
+                statusCallback.showMessage("onConfigureFailed");
             }
+        });
+    }
+
+    private void updatePreview() {
+        if (null == camera) {
+            return;
         }
-        return defaultSize;
+        startFocusController();
     }
 
-    private void startPreview() {
-        if (null == cameraDevice || !textureView.isAvailable() || null == previewSize) {
+    /**
+     * Configures the analysis stream into every session, so it can be switched on and off by changing
+     * request targets only. Frames are only delivered to it while contrast focus or peaking is on, or
+     * while recording with focus scoring enabled.
+     */
+    private void addAnalysisOutput(Set<CameraHal.Output> outputs) {
+        if (null == analysisSize) {
             return;
         }
-        try {
-            closePreviewSession();
-            SurfaceTexture texture = textureView.getSurfaceTexture();
-            assert texture != null;
-            texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        if (!focusAnalyzerStarted) {
+            focusAnalyzer.start(analysisSize, analysisHandler);
+            focusAnalyzerStarted = true;
+        }
+        camera.setSurface(CameraHal.Output.ANALYSIS, focusAnalyzer.getSurface());
+        outputs.add(CameraHal.Output.ANALYSIS);
+    }
 
-            Surface previewSurface = new Surface(texture);
-            previewBuilder.addTarget(previewSurface);
+    private void updateAnalysisTarget() {
+        CameraHal.Request request = captureLoop.getRequest();
+        if (!focusAnalyzerStarted || null == request) {
+            return;
+        }
+        captureLoop.setRequest(request.withTarget(CameraHal.Output.ANALYSIS, contrastFocusEnabled
+                || focusPeakingEnabled || (recordingSession && filesManager.isFocusScoreEnabled())));
+        frameHistory.clear();
+    }
 
-            previewBuilder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_OFF);
+    /**
+     * Starts the current focus controller on a fresh session; see {@link CaptureLoop#restart()}.
+     */
+    private void startFocusController() {
+        if (focusStackRunning) {
+            return;
+        }
+        updateAnalysisTarget();
+        captureLoop.restart();
+    }
 
-            cameraDevice.createCaptureSession(Collections.singletonList(previewSurface),
-                    new CameraCaptureSession.StateCallback() {
+    /**
+     * Resubmits the current requests after their targets changed, without restarting a controller
+     * that is driven frame by frame.
+     */
+    private void resubmitRequests() {
+        if (focusStackRunning) {
+            return;
+        }
+        updateAnalysisTarget();
+        captureLoop.resubmit();
+    }
 
-                        @Override
-                        public void onConfigured(@NonNull CameraCaptureSession session) {
-                            previewSession = session;
-                            updatePreview();
-                        }
+    private int getDisplayRelativeOrientation() {
+        int displayDegrees = 90 * activity.getWindowManager().getDefaultDisplay().getRotation();
+        int sensorDegrees = sensorOrientation != null ? sensorOrientation : SENSOR_ORIENTATION_DEFAULT_DEGREES;
+        return (sensorDegrees - displayDegrees + 360) % 360;
+    }
 
-                        @Override
-                        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                            statusCallback.showMessage("onConfigureFailed");
+    /**
+     * Replaces the preview session with one that also streams to the stack reader, and submits the
+     * stack as a single burst so no other request can move the lens in between.
+     */
+    private void startFocusStack(final int frames) {
+        if (null == camera || !textureView.isAvailable() || null == previewSize || null == stackSize
+                || minFocusDistance == null || minFocusDistance <= 0 || recordingSession || focusStackRunning
+                || !sessionState.moveTo(CaptureSessionState.State.CONFIGURING)) {
+            return;
+        }
+        closePreviewSession();
+        if (!focusStackCaptureStarted) {
+            focusStackCapture.start(stackSize, analysisHandler);
+            focusStackCaptureStarted = true;
+        }
+        SurfaceTexture texture = textureView.getSurfaceTexture();
+        assert texture != null;
+        texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+        camera.setSurface(CameraHal.Output.PREVIEW, new Surface(texture));
+        camera.setSurface(CameraHal.Output.STACK, focusStackCapture.getSurface());
+
+        focusStackRunning = true;
+        captureLoop.setSuspended(true);
+        camera.createSession(EnumSet.of(CameraHal.Output.PREVIEW, CameraHal.Output.STACK),
+                new CameraHal.SessionCallback() {
+
+                    @Override
+                    public void onConfigured(CameraHal.Session session) {
+                        if (!sessionState.moveTo(CaptureSessionState.State.PREVIEW)) {
+                            session.close();
+                            finishFocusStack("Cannot capture the focus stack.");
+                            return;
                         }
-                    }, backgroundHandler);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
+                        captureLoop.attach(session, null);
+                        submitFocusStack(session, frames);
+                    }
+
+                    @Override
+                    public void onConfigureFailed() {
+                        finishFocusStack("onConfigureFailed");
+                    }
+                });
+    }
+
+    private void submitFocusStack(CameraHal.Session session, int frames) {
+        float[] distances = new FocusSweep(FocusSweep.Profile.LINEAR, frames, FocusStackCapture.SETTLE_FRAMES)
+                .distances(minFocusDistance);
+        CameraHal.Request settle = new CameraHal.Request(CameraHal.Template.STILL_CAPTURE)
+                .withTarget(CameraHal.Output.PREVIEW, true);
+        CameraHal.Request capture = settle.withTarget(CameraHal.Output.STACK, true);
+        List<CameraHal.Request> burst = new ArrayList<>(distances.length);
+        for (int i = 0; i < distances.length; i++) {
+            CameraHal.Request request = (i + 1) % FocusStackCapture.SETTLE_FRAMES == 0 ? capture : settle;
+            burst.add(request.withFocusDistance(distances[i]));
+        }
+        lastStackRequest = burst.get(burst.size() - 1);
+        File file = filesManager.createFocusStackFile();
+        focusStackCapture.arm(frames, file, getOrientationHint(), new FocusStackCapture.Callback() {
+            @Override
+            public void onFocusStackSaved(File file) {
+                postFinishFocusStack("Focus stack saved: " + file.getAbsolutePath());
+            }
+
+            @Override
+            public void onFocusStackFailed() {
+                postFinishFocusStack("Cannot save the focus stack.");
+            }
+        });
+        if (!session.captureBurst(burst, focusStackCallback)) {
+            focusStackCapture.cancel();
+            finishFocusStack("Cannot capture the focus stack.");
         }
     }
 
-    private void updatePreview() {
-        if (null == cameraDevice) {
+    private void postFinishFocusStack(final String message) {
+        Handler handler = backgroundHandler;
+        if (handler == null) {
             return;
         }
-        try {
-            setUpCaptureRequestBuilder(previewBuilder);
-            HandlerThread thread = new HandlerThread("CameraPreview");
-            thread.start();
-            previewSession.setRepeatingRequest(previewBuilder.build(), captureCallback, backgroundHandler);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                finishFocusStack(message);
+            }
+        });
+    }
+
+    private void finishFocusStack(String message) {
+        if (!focusStackRunning) {
+            return;
         }
+        focusStackRunning = false;
+        lastStackRequest = null;
+        captureLoop.setSuspended(false);
+        statusCallback.showMessage(message);
+        startPreview();
     }
 
-    private void setUpCaptureRequestBuilder(CaptureRequest.Builder builder) {
-        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+    /**
+     * Repeats a preview request on the stack session once the burst is captured, so the preview does
+     * not freeze while the stack is merged. Recording and lens switches stay blocked until the merge
+     * is reported, which replaces the session.
+     */
+    private void resumeStackPreview() {
+        lastStackRequest = null;
+        captureLoop.setRequest(new CameraHal.Request(CameraHal.Template.PREVIEW)
+                .withTarget(CameraHal.Output.PREVIEW, true));
+        captureLoop.setSuspended(false);
+        captureLoop.restart();
     }
 
     private void configureTransform(int viewWidth, int viewHeight) {
@@ -322,47 +1323,165 @@ public class CameraProvider {
             return;
         }
         int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+        PreviewTransform.compute(viewWidth, viewHeight, previewSize.getWidth(), previewSize.getHeight(), rotation,
+                transformValues);
         Matrix matrix = new Matrix();
-        RectF viewRect = new RectF(0, 0, viewWidth, viewHeight);
-        RectF bufferRect = new RectF(0, 0, previewSize.getHeight(), previewSize.getWidth());
-        float centerX = viewRect.centerX();
-        float centerY = viewRect.centerY();
-        if (Surface.ROTATION_90 == rotation || Surface.ROTATION_270 == rotation) {
-            bufferRect.offset(centerX - bufferRect.centerX(), centerY - bufferRect.centerY());
-            matrix.setRectToRect(viewRect, bufferRect, Matrix.ScaleToFit.FILL);
-            float scale = Math.max(
-                    (float) viewHeight / previewSize.getHeight(),
-                    (float) viewWidth / previewSize.getWidth());
-            matrix.postScale(scale, scale, centerX, centerY);
-            matrix.postRotate(90 * (rotation - 2), centerX, centerY);
-        }
+        matrix.setValues(transformValues);
         textureView.setTransform(matrix);
     }
 
-    private void setUpMediaRecorder() throws IOException {
-        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
-        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-        mediaRecorder.setOutputFile(filesManager.getVideoPath());
-        mediaRecorder.setVideoEncodingBitRate(10000000);
-        mediaRecorder.setVideoFrameRate(30);
-        mediaRecorder.setVideoSize(videoSize.getWidth(), videoSize.getHeight());
-        mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+    /**
+     * Prepares the encoder with the current settings as far as the storage allows; see
+     * {@link StorageMonitor#admit}.
+     */
+    private void prepareVideoEncoder() throws IOException {
+        EncoderSettings requested = encoderSettings;
+        EncoderSettings settings = storageMonitor.admit(requested, filesManager.getUsableSpace());
+        if (null == settings) {
+            statusCallback.showMessage("Not enough storage space or speed to record.");
+            throw new IOException("Recording refused: storage cannot take "
+                    + requested.getBitRate() + " bps.");
+        }
+        if (settings.getBitRate() != requested.getBitRate()) {
+            statusCallback.showMessage(String.format(Locale.US, "Slow storage: recording at %.1f Mbps.",
+                    settings.getBitRate() / 1e6));
+        }
+        videoEncoder.prepare(settings, videoSize, filesManager.getVideoPath(), getOrientationHint(),
+                persistentRecorderSurface, realtimeTimestamps);
+    }
+
+    /**
+     * Measures the sustained write throughput of the recording directory on a short-lived thread of its
+     * own, not the I/O thread, whose encoder callbacks would stall behind the synced writes. Done once,
+     * after the first preview frame, so it does not hold up startup; recordings prepared before it is
+     * known are admitted on free space alone.
+     */
+    private void probeStorage() {
+        Thread probe = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    storageMonitor.setThroughput(StorageMonitor.probeThroughput(filesManager.getDirectory(),
+                            StorageMonitor.DEFAULT_PROBE_BYTES));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "StorageProbe");
+        probe.setPriority(Thread.MIN_PRIORITY);
+        probe.start();
+    }
+
+    private void startStorageChecks() {
+        storageMonitor.reset();
+        storageStatus = StorageMonitor.Status.OK;
+        backgroundHandler.removeCallbacks(storageCheck);
+        backgroundHandler.postDelayed(storageCheck, STORAGE_CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * Starts the capture metrics over for a new recording and refreshes its performance report every
+     * few seconds, so a recording cut short still comes with one.
+     */
+    private void startMetricsDumps() {
+        captureLoop.getMetrics().reset();
+        backgroundHandler.removeCallbacks(metricsDump);
+        backgroundHandler.postDelayed(metricsDump, METRICS_DUMP_INTERVAL_MS);
+    }
+
+    /**
+     * Writes the capture metrics so far into the performance report of the current session, on the
+     * I/O thread.
+     */
+    private void dumpMetrics() {
+        final File file = filesManager.getPerformanceReportFile();
+        if (null == file) {
+            return;
+        }
+        final String report = captureLoop.getMetrics().snapshot().toReport();
+        ioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                filesManager.writePerformanceReport(file, report);
+            }
+        });
+    }
+
+    private final Runnable metricsDump = new Runnable() {
+        @Override
+        public void run() {
+            if (!isRecordingVideo || null == backgroundHandler) {
+                return;
+            }
+            dumpMetrics();
+            backgroundHandler.postDelayed(this, METRICS_DUMP_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * Reports write rate, queued bytes and time left once a second while recording, warns when space
+     * runs low or writes fall behind, and stops the recording before the disk is full.
+     */
+    private final Runnable storageCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (!isRecordingVideo || null == backgroundHandler) {
+                return;
+            }
+            StorageMonitor.Status status = storageMonitor.update(System.nanoTime(), encoderStats.getTotalBytes(),
+                    filesManager.getVideoBytesOnDisk(), filesManager.getUsableSpace(),
+                    videoEncoder.getActiveSettings().getBitRate());
+            statusCallback.showStorageStatus(storageMonitor.getWriteBytesPerSecond(),
+                    storageMonitor.getQueuedBytes(), storageMonitor.getRemainingSeconds());
+            if (status != storageStatus) {
+                storageStatus = status;
+                switch (status) {
+                    case LOW_SPACE:
+                        statusCallback.showMessage(String.format(Locale.US, "Storage almost full: %d s left.",
+                                storageMonitor.getRemainingSeconds()));
+                        break;
+                    case BACKLOG:
+                        statusCallback.showMessage("Storage is too slow for this bitrate.");
+                        break;
+                    case FULL:
+                        statusCallback.showMessage("Storage full, recording stopped.");
+                        stopRecordingVideo();
+                        return;
+                    default:
+                        break;
+                }
+            }
+            backgroundHandler.postDelayed(this, STORAGE_CHECK_INTERVAL_MS);
+        }
+    };
+
+    private String videoSavedMessage() {
+        return String.format(Locale.US, "Video saved: %s (%s, %.1f Mbps, %d ms encode latency)",
+                filesManager.getVideoPath(), videoEncoder.getActiveSettings().getCodec(),
+                encoderStats.getAverageBitRate() / 1e6,
+                TimeUnit.NANOSECONDS.toMillis((long) encoderStats.getLatency().getAverageNanos()));
+    }
+
+    /**
+     * Clockwise rotation that makes recorded output upright for the current display rotation.
+     */
+    private int getOrientationHint() {
         int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
         switch (sensorOrientation) {
             case SENSOR_ORIENTATION_DEFAULT_DEGREES:
-                mediaRecorder.setOrientationHint(DEFAULT_ORIENTATIONS.get(rotation));
-                break;
+                return DEFAULT_ORIENTATIONS.get(rotation);
             case SENSOR_ORIENTATION_INVERSE_DEGREES:
-                mediaRecorder.setOrientationHint(INVERSE_ORIENTATIONS.get(rotation));
-                break;
+                return INVERSE_ORIENTATIONS.get(rotation);
+            default:
+                return 0;
         }
-        mediaRecorder.prepare();
     }
 
     private void closePreviewSession() {
-        if (previewSession != null) {
-            previewSession.close();
-            previewSession = null;
+        CameraHal.Session session = captureLoop.getSession();
+        if (session != null) {
+            session.close();
+            captureLoop.detach();
         }
     }
 
@@ -372,7 +1491,17 @@ public class CameraProvider {
         @Override
         public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture,
                                               int width, int height) {
-            openCamera(width, height);
+            startupTrace.mark(StartupTrace.Phase.TEXTURE_AVAILABLE, System.nanoTime());
+            configureTransform(width, height);
+            Handler handler = backgroundHandler;
+            if (null != handler) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        startPreview();
+                    }
+                });
+            }
         }
 
         @Override
@@ -388,74 +1517,112 @@ public class CameraProvider {
 
         @Override
         public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {
+            if (startupTrace.mark(StartupTrace.Phase.FIRST_FRAME, System.nanoTime())) {
+                reportStartup();
+            }
         }
 
     };
 
-    private CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+    /**
+     * Called on the camera thread for every completed frame of the preview and recording sessions,
+     * after the focus controller has seen it.
+     */
+    private void onFrameCaptured(CameraHal.Request request, FocusFrame frame) {
+        if (null != request && request.tag == RECORDING_TAG && sessionState.onRecordedFrame(System.nanoTime())) {
+            statusCallback.showRecordStartLatency(
+                    TimeUnit.NANOSECONDS.toMillis(sessionState.getRecordStartLatencyNanos()));
+        }
+
+        if (isRecordingVideo) {
+            filesManager.writeFocusSample(frame.sensorTimestamp, frame.frameNumber,
+                    frame.requestedFocusDistance, frame.focusDistance, frame.lensState);
+            videoEncoder.writeFocusSample(filesManager.getClockModel().toWallClockMillis(frame.sensorTimestamp),
+                    frame.sensorTimestamp, frame.frameNumber, frame.requestedFocusDistance, frame.focusDistance,
+                    frame.lensState);
+        } else if (preRolling) {
+            preRollSamples.add(frame.sensorTimestamp, System.nanoTime(), frame.frameNumber,
+                    frame.requestedFocusDistance, frame.focusDistance, frame.lensState);
+        }
+    }
+
+    private CameraHal.ResultCallback focusStackCallback = new CameraHal.ResultCallback() {
 
         @Override
-        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, long timestamp, long frameNumber) {
-            super.onCaptureStarted(session, request, timestamp, frameNumber);
+        public void onCaptureStarted(CameraHal.Request request, long frameNumber, long timestampNanos) {
+            captureLoop.onCaptureStarted(request, frameNumber, timestampNanos);
+        }
 
-            if (minFocusDistance != null && focusDistanceAuto) {
-                autoFocusDistance();
+        @Override
+        public void onCaptureCompleted(CameraHal.Request request, FocusFrame frame) {
+            captureLoop.onCaptureCompleted(request, frame);
+            if (request == lastStackRequest && focusStackRunning) {
+                resumeStackPreview();
             }
+        }
 
+        @Override
+        public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+            captureLoop.onCaptureFailed(request, frameNumber);
+            focusStackCapture.cancel();
+            finishFocusStack("Focus stack capture failed.");
         }
 
         @Override
-        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
-            super.onCaptureCompleted(session, request, result);
-            if (!isRecordingVideo) {
-                return;
+        public void onCaptureBufferLost(CameraHal.Request request, CameraHal.Output output, long frameNumber) {
+            captureLoop.onCaptureBufferLost(request, output, frameNumber);
+            if (output == CameraHal.Output.STACK) {
+                // The reader will never see this frame, so the stack cannot be completed.
+                focusStackCapture.cancel();
+                finishFocusStack("Focus stack capture failed.");
             }
-
-            filesManager.writeFocusDistance(previewBuilder.get(CaptureRequest.LENS_FOCUS_DISTANCE));
         }
     };
 
-    private void autoFocusDistance() {
-        float focusDistance = frameCount * minFocusDistance / 100;
-        if (focusDistance >= minFocusDistance) {
-            frameCount = 0;
-        }
-        previewBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, focusDistance);
-        try {
-            previewSession.setRepeatingRequest(previewBuilder.build(), captureCallback, backgroundHandler);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
-        frameCount++;
+    private static float valueOrNaN(Float value) {
+        return value != null ? value : Float.NaN;
     }
 
-    private CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
-
-        @Override
-        public void onOpened(@NonNull CameraDevice cameraDevice) {
-            CameraProvider.this.cameraDevice = cameraDevice;
-            startPreview();
-            cameraOpenCloseLock.release();
-            if (null != textureView) {
-                configureTransform(textureView.getWidth(), textureView.getHeight());
+    /**
+     * @param generation of the camera being opened; the device is closed right away if another one was
+     *                   opened or closed since
+     */
+    private CameraDevice.StateCallback newStateCallback(final int generation) {
+        return new CameraDevice.StateCallback() {
+
+            @Override
+            public void onOpened(@NonNull CameraDevice cameraDevice) {
+                if (generation != cameraGeneration) {
+                    cameraDevice.close();
+                    return;
+                }
+                startupTrace.mark(StartupTrace.Phase.DEVICE_OPENED, System.nanoTime());
+                camera = new Camera2Hal(cameraDevice, lens.physicalCameraId, backgroundHandler);
+                startPreview();
             }
-        }
 
-        @Override
-        public void onDisconnected(@NonNull CameraDevice cameraDevice) {
-            cameraOpenCloseLock.release();
-            cameraDevice.close();
-            CameraProvider.this.cameraDevice = null;
-        }
+            @Override
+            public void onDisconnected(@NonNull CameraDevice cameraDevice) {
+                cameraDevice.close();
+                if (generation != cameraGeneration) {
+                    return;
+                }
+                sessionState.moveTo(CaptureSessionState.State.CLOSED);
+                camera = null;
+            }
 
-        @Override
-        public void onError(@NonNull CameraDevice cameraDevice, int error) {
-            cameraOpenCloseLock.release();
-            cameraDevice.close();
-            CameraProvider.this.cameraDevice = null;
-            activity.finish();
-        }
+            @Override
+            public void onError(@NonNull CameraDevice cameraDevice, int error) {
+                cameraDevice.close();
+                if (generation != cameraGeneration) {
+                    return;
+                }
+                sessionState.moveTo(CaptureSessionState.State.CLOSED);
+                camera = null;
+                activity.finish();
+            }
 
-    };
+        };
+    }
 
 }
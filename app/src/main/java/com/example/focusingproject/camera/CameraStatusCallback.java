@@ -8,4 +8,29 @@ public interface CameraStatusCallback {
 
     void showMessage(String message);
 
+    /**
+     * @param latencyMillis time from the record request to the first frame delivered to the recorder
+     */
+    void showRecordStartLatency(long latencyMillis);
+
+    /**
+     * Called about once a second while recording.
+     *
+     * @param writeBytesPerSecond rate at which the recording reaches the disk
+     * @param queuedBytes         encoded bytes not yet on disk
+     * @param remainingSeconds    recording time left in the free space
+     */
+    void showStorageStatus(long writeBytesPerSecond, long queuedBytes, long remainingSeconds);
+
+    /**
+     * @param millis time from starting the camera to the first preview frame
+     */
+    void showTimeToFirstFrame(long millis);
+
+    /**
+     * @param name      describes the lens being opened
+     * @param lensCount how many lenses can be selected
+     */
+    void showLens(String name, int lensCount);
+
 }
@@ -0,0 +1,163 @@
+package com.example.focusingproject.camera;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Size;
+import android.view.Surface;
+import com.example.focusingproject.analysis.FocusMetric;
+import com.example.focusingproject.analysis.FrameBudgetTimer;
+import com.example.focusingproject.analysis.SharpnessGrid;
+
+/**
+ * Measures the sharpness of a low-resolution YUV stream on its own thread. The metric is computed
+ * straight from the luma plane's buffer and stored in a {@link FrameHistory} under the image's sensor
+ * timestamp, where the camera thread joins it with the capture result of the same frame. When the
+ * analysis falls behind, only the newest image is analysed and older ones are dropped.
+ * <p>
+ * With a {@link FocusPeakingView} attached it also computes a {@link SharpnessGrid} per frame for the
+ * peaking overlay and times it against the frame budget.
+ * <p>
+ * Every score is also handed to the {@link ScoreListener}, which persists it while recording. The
+ * analysis stream is separate from the encoder's surface and drops frames rather than queueing them, so
+ * it cannot hold the encoder back; to keep it from competing for CPU either, the metric's pixel step
+ * widens whenever a measurement takes longer than {@link #SCORE_BUDGET_NANOS} and narrows again once
+ * there is room.
+ */
+class FocusAnalyzer implements ImageReader.OnImageAvailableListener {
+
+    private static final int MIN_ANALYSIS_WIDTH = 320;
+    private static final int MAX_IMAGES = 2;
+    private static final float REGION = 0.5f;
+    private static final int STEP = 2;
+    private static final int MAX_STEP = 8;
+    static final long SCORE_BUDGET_NANOS = 4000000L;
+    private static final int PEAKING_COLUMNS = 32;
+    private static final int PEAKING_STEP = 2;
+
+    interface ScoreListener {
+        /**
+         * Called on the analysis thread for every scored frame.
+         */
+        void onFocusScore(long sensorTimestamp, float score);
+    }
+
+    private final FrameHistory history;
+    private volatile ScoreListener scoreListener;
+    private int step = STEP;
+    private volatile FocusMetric metric = FocusMetric.LAPLACIAN_VARIANCE;
+    private volatile FocusPeakingView peakingView;
+    private final FrameBudgetTimer peakingTimer = new FrameBudgetTimer();
+    private FocusPeakingView gridView;
+    private SharpnessGrid grid;
+    private ImageReader reader;
+
+    FocusAnalyzer(FrameHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Picks the smallest YUV size that is still wide enough to judge focus.
+     */
+    static Size chooseAnalysisSize(Size[] choices) {
+        Size best = null;
+        Size largest = null;
+        for (Size size : choices) {
+            if (largest == null || size.getWidth() > largest.getWidth()) {
+                largest = size;
+            }
+            if (size.getWidth() >= MIN_ANALYSIS_WIDTH && (best == null || size.getWidth() < best.getWidth())) {
+                best = size;
+            }
+        }
+        return best != null ? best : largest;
+    }
+
+    /**
+     * @param handler the analysis thread, where frames are scored
+     */
+    void start(Size size, Handler handler) {
+        reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+        reader.setOnImageAvailableListener(this, handler);
+    }
+
+    void stop() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    Surface getSurface() {
+        return reader.getSurface();
+    }
+
+    void setMetric(FocusMetric metric) {
+        this.metric = metric;
+    }
+
+    void setScoreListener(ScoreListener scoreListener) {
+        this.scoreListener = scoreListener;
+    }
+
+    void setPeakingView(FocusPeakingView peakingView) {
+        this.peakingView = peakingView;
+        peakingTimer.reset();
+    }
+
+    FrameBudgetTimer getPeakingTimer() {
+        return peakingTimer;
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image = reader.acquireLatestImage();
+        if (image == null) {
+            return;
+        }
+        try {
+            Image.Plane luma = image.getPlanes()[0];
+            long start = System.nanoTime();
+            float sharpness = (float) metric.evaluateCenter(luma.getBuffer(), image.getWidth(), image.getHeight(),
+                    luma.getRowStride(), luma.getPixelStride(), REGION, step);
+            adaptStep(System.nanoTime() - start);
+            history.putSharpness(image.getTimestamp(), sharpness);
+            ScoreListener listener = scoreListener;
+            if (listener != null) {
+                listener.onFocusScore(image.getTimestamp(), sharpness);
+            }
+
+            FocusPeakingView view = peakingView;
+            if (view != null) {
+                updatePeaking(view, image, luma);
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    private void adaptStep(long elapsedNanos) {
+        if (elapsedNanos > SCORE_BUDGET_NANOS && step < MAX_STEP) {
+            step *= 2;
+        } else if (elapsedNanos < SCORE_BUDGET_NANOS / 4 && step > STEP) {
+            step /= 2;
+        }
+    }
+
+    private void updatePeaking(FocusPeakingView view, Image image, Image.Plane luma) {
+        long start = System.nanoTime();
+        if (view != gridView) {
+            // A fresh grid starts at level 0, so the first update reports every tile above it as
+            // changed. Level 0 is drawn clear, as the tiles of a newly attached view start out, so the
+            // view still gets a full picture.
+            int rows = Math.max(1, PEAKING_COLUMNS * image.getHeight() / image.getWidth());
+            grid = new SharpnessGrid(PEAKING_COLUMNS, rows);
+            gridView = view;
+        }
+        grid.update(luma.getBuffer(), image.getWidth(), image.getHeight(), luma.getRowStride(),
+                luma.getPixelStride(), FocusMetric.TENENGRAD, PEAKING_STEP);
+        view.publish(grid);
+        peakingTimer.record(System.nanoTime() - start);
+    }
+}
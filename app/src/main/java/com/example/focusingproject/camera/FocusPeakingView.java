@@ -0,0 +1,166 @@
+package com.example.focusingproject.camera;
+
+import android.content.Context;
+import android.graphics.*;
+import android.util.AttributeSet;
+import android.view.View;
+import com.example.focusingproject.analysis.FrameBudgetTimer;
+import com.example.focusingproject.analysis.SharpnessGrid;
+
+/**
+ * Focus peaking overlay drawn on top of the camera preview. The sharpness grid is computed on the
+ * analysis thread and handed over through {@link #publish(SharpnessGrid)}, which only copies the
+ * levels of changed tiles. The overlay itself is a bitmap with one pixel per tile, scaled up to the
+ * view, so drawing only touches the pixels of tiles that changed and never waits for the analysis.
+ */
+public class FocusPeakingView extends View {
+
+    private static final int PEAK_COLOR = 0x00FF3030;
+    private static final int MIN_VISIBLE_LEVEL = SharpnessGrid.LEVELS / 2;
+
+    private final Object lock = new Object();
+    private final Paint bitmapPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Matrix matrix = new Matrix();
+    private final Matrix fit = new Matrix();
+    private final RectF bounds = new RectF();
+    private final RectF viewBounds = new RectF();
+
+    private int columns;
+    private int rows;
+    private int[] pendingLevels;
+    private boolean[] pendingChanged;
+    private boolean hasPending;
+    private Bitmap tiles;
+    private int sensorOrientation;
+    private FrameBudgetTimer timer;
+    private long labelTenths = -1;
+    private String label;
+
+    public FocusPeakingView(Context context) {
+        this(context, null);
+    }
+
+    public FocusPeakingView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public FocusPeakingView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        bitmapPaint.setFilterBitmap(false);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(14 * getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Rotation of the analysis frames relative to the display, in degrees.
+     */
+    public void setSensorOrientation(int sensorOrientation) {
+        this.sensorOrientation = sensorOrientation;
+        postInvalidate();
+    }
+
+    /**
+     * Shows the analysis time of the latest grid against the frame budget.
+     */
+    public void setTimer(FrameBudgetTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Called on the analysis thread after the grid was updated.
+     */
+    public void publish(SharpnessGrid grid) {
+        if (grid.getChangedCount() == 0) {
+            return;
+        }
+        synchronized (lock) {
+            if (pendingLevels == null || columns != grid.getColumns() || rows != grid.getRows()) {
+                columns = grid.getColumns();
+                rows = grid.getRows();
+                pendingLevels = new int[columns * rows];
+                pendingChanged = new boolean[columns * rows];
+            }
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    if (grid.isChanged(column, row)) {
+                        int i = row * columns + column;
+                        pendingLevels[i] = grid.getLevel(column, row);
+                        pendingChanged[i] = true;
+                    }
+                }
+            }
+            hasPending = true;
+        }
+        postInvalidateOnAnimation();
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            pendingLevels = null;
+            hasPending = false;
+            tiles = null;
+        }
+        postInvalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        synchronized (lock) {
+            if (hasPending) {
+                applyPending();
+            }
+        }
+        if (tiles != null) {
+            matrix.setRotate(sensorOrientation, tiles.getWidth() / 2f, tiles.getHeight() / 2f);
+            bounds.set(0, 0, tiles.getWidth(), tiles.getHeight());
+            matrix.mapRect(bounds);
+            viewBounds.set(0, 0, getWidth(), getHeight());
+            fit.setRectToRect(bounds, viewBounds, Matrix.ScaleToFit.FILL);
+            matrix.postConcat(fit);
+            canvas.drawBitmap(tiles, matrix, bitmapPaint);
+        }
+        FrameBudgetTimer timer = this.timer;
+        if (timer != null && timer.getFrames() > 0) {
+            canvas.drawText(timeLabel(timer.getLastNanos()),
+                    textPaint.getTextSize() / 2, textPaint.getTextSize() * 1.5f, textPaint);
+        }
+    }
+
+    /**
+     * Rebuilds the label only when the shown value, in tenths of a millisecond, changes.
+     */
+    private String timeLabel(long nanos) {
+        long tenths = Math.round(nanos / 1e5);
+        if (tenths != labelTenths) {
+            labelTenths = tenths;
+            label = tenths / 10 + "." + tenths % 10 + " ms";
+        }
+        return label;
+    }
+
+    private void applyPending() {
+        if (tiles == null || tiles.getWidth() != columns || tiles.getHeight() != rows) {
+            tiles = Bitmap.createBitmap(columns, rows, Bitmap.Config.ARGB_8888);
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int i = row * columns + column;
+                if (pendingChanged[i]) {
+                    tiles.setPixel(column, row, colorFor(pendingLevels[i]));
+                    pendingChanged[i] = false;
+                }
+            }
+        }
+        hasPending = false;
+    }
+
+    private static int colorFor(int level) {
+        if (level < MIN_VISIBLE_LEVEL) {
+            return Color.TRANSPARENT;
+        }
+        int alpha = 0x30 + 0x90 * (level - MIN_VISIBLE_LEVEL) / (SharpnessGrid.LEVELS - 1 - MIN_VISIBLE_LEVEL);
+        return (alpha << 24) | PEAK_COLOR;
+    }
+}
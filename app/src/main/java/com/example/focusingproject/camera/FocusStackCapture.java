@@ -0,0 +1,214 @@
+package com.example.focusingproject.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.ExifInterface;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Size;
+import android.view.Surface;
+import com.example.focusingproject.analysis.FocusStackMerger;
+import com.example.focusingproject.analysis.YuvFrame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Collects the frames of a focus-stacking burst from a YUV stream and merges them into one
+ * all-in-focus JPEG. Each image is copied out and released as soon as it arrives, so the camera never
+ * waits for the merge; the merge itself runs on a fork-join pool and the result is reported from there.
+ */
+class FocusStackCapture implements ImageReader.OnImageAvailableListener {
+
+    interface Callback {
+
+        void onFocusStackSaved(File file);
+
+        void onFocusStackFailed();
+    }
+
+    static final int DEFAULT_FRAMES = 8;
+
+    /**
+     * Frames each focus distance is held for; only the last one is kept, so the lens has settled.
+     */
+    static final int SETTLE_FRAMES = 3;
+
+    /**
+     * Every frame of the stack is held in memory until the merge, so the stream is limited to about
+     * 1080p: 8 frames then take 24 MB.
+     */
+    private static final int MAX_WIDTH = 1920;
+    private static final int MAX_IMAGES = 2;
+    private static final int JPEG_QUALITY = 95;
+
+    private final ForkJoinPool pool = new ForkJoinPool();
+    private final FocusStackMerger merger = new FocusStackMerger(pool);
+    private Handler handler;
+    private ImageReader reader;
+
+    // Only touched on the capture thread.
+    private YuvFrame[] frames;
+    private int received;
+    private File output;
+    private int orientationDegrees;
+    private Callback callback;
+
+    /**
+     * Picks the largest YUV size that keeps the stack within memory limits.
+     */
+    static Size chooseStackSize(Size[] choices) {
+        Size best = null;
+        Size smallest = null;
+        for (Size size : choices) {
+            if (smallest == null || size.getWidth() < smallest.getWidth()) {
+                smallest = size;
+            }
+            if (size.getWidth() <= MAX_WIDTH && (best == null || size.getWidth() > best.getWidth())) {
+                best = size;
+            }
+        }
+        return best != null ? best : smallest;
+    }
+
+    /**
+     * @param handler the analysis thread, where frames are collected
+     */
+    void start(Size size, Handler handler) {
+        this.handler = handler;
+        reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+        reader.setOnImageAvailableListener(this, handler);
+    }
+
+    void stop() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        handler = null;
+    }
+
+    /**
+     * Shuts the merge pool down once a merge in progress is done. The capture cannot be used afterwards.
+     */
+    void release() {
+        pool.shutdown();
+    }
+
+    Surface getSurface() {
+        return reader.getSurface();
+    }
+
+    /**
+     * Expects the next {@code count} images to be one stack. Must be called before the burst is
+     * submitted.
+     */
+    void arm(final int count, final File output, final int orientationDegrees, final Callback callback) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                frames = new YuvFrame[count];
+                received = 0;
+                FocusStackCapture.this.output = output;
+                FocusStackCapture.this.orientationDegrees = orientationDegrees;
+                FocusStackCapture.this.callback = callback;
+            }
+        });
+    }
+
+    /**
+     * Drops a stack that will not be completed, for example because a frame of the burst failed.
+     */
+    void cancel() {
+        if (handler == null) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                frames = null;
+            }
+        });
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image = reader.acquireNextImage();
+        if (image == null) {
+            return;
+        }
+        try {
+            if (frames == null) {
+                return;
+            }
+            YuvFrame frame = frames[received] = new YuvFrame(image.getWidth(), image.getHeight());
+            Image.Plane[] planes = image.getPlanes();
+            YuvFrame.copyPlane(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                    frame.width, frame.height, frame.y);
+            YuvFrame.copyPlane(planes[1].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    frame.getChromaWidth(), frame.getChromaHeight(), frame.u);
+            YuvFrame.copyPlane(planes[2].getBuffer(), planes[2].getRowStride(), planes[2].getPixelStride(),
+                    frame.getChromaWidth(), frame.getChromaHeight(), frame.v);
+        } finally {
+            image.close();
+        }
+        if (++received == frames.length) {
+            final YuvFrame[] stack = frames;
+            final File file = output;
+            final int degrees = orientationDegrees;
+            final Callback done = callback;
+            frames = null;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mergeAndSave(stack, file, degrees, done);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reports every failure, out of memory included, so the provider always leaves the stack mode.
+     */
+    private void mergeAndSave(YuvFrame[] stack, File file, int degrees, Callback done) {
+        try {
+            YuvFrame merged = new YuvFrame(stack[0].width, stack[0].height);
+            merger.merge(stack, merged, null);
+            byte[] nv21 = new byte[merged.y.length + 2 * merged.u.length];
+            merged.toNv21(nv21);
+            YuvImage image = new YuvImage(nv21, ImageFormat.NV21, merged.width, merged.height, null);
+            OutputStream out = new FileOutputStream(file);
+            try {
+                image.compressToJpeg(new Rect(0, 0, merged.width, merged.height), JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, Integer.toString(exifOrientation(degrees)));
+            exif.saveAttributes();
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            e.printStackTrace();
+            done.onFocusStackFailed();
+            return;
+        }
+        done.onFocusStackSaved(file);
+    }
+
+    private static int exifOrientation(int degrees) {
+        switch (degrees) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+}
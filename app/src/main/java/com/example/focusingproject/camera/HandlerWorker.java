@@ -0,0 +1,47 @@
+package com.example.focusingproject.camera;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * A {@link CameraThreads} worker on a looper, for the camera and media APIs that take a
+ * {@link Handler}.
+ */
+class HandlerWorker implements CameraThreads.Worker {
+
+    static final CameraThreads.Factory<HandlerWorker> FACTORY = new CameraThreads.Factory<HandlerWorker>() {
+        @Override
+        public HandlerWorker start(String name) {
+            return new HandlerWorker(name);
+        }
+    };
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    private HandlerWorker(String name) {
+        thread = new HandlerThread(name);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    Handler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public boolean isAlive() {
+        return thread.isAlive();
+    }
+
+    @Override
+    public void quit() throws InterruptedException {
+        thread.quitSafely();
+        thread.join();
+    }
+}
@@ -0,0 +1,722 @@
+package com.example.focusingproject.camera;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import com.example.focusingproject.encoding.EncodedFrameRing;
+import com.example.focusingproject.encoding.EncoderSettings;
+import com.example.focusingproject.encoding.EncoderStats;
+import com.example.focusingproject.encoding.SegmentPolicy;
+import com.example.focusingproject.log.FocusMetadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the frames the camera draws into an input surface with {@link MediaCodec} and writes them to
+ * an MP4 file with {@link MediaMuxer}. The codec runs in asynchronous mode on the thread it is given,
+ * the app's I/O thread, where every output buffer is written to the muxer and counted in
+ * {@link EncoderStats}; that thread is called the encoder thread below. Frames carry the
+ * camera's sensor timestamps, so encode latency is measured from capture to encoded output.
+ * <p>
+ * On API 26+ the file also gets a timed metadata track of {@link FocusMetadata} samples, written from
+ * the camera thread with the same sensor-derived presentation times as the video, so focus and video
+ * can be read back together from one file. Samples that arrive before the muxer has started, which
+ * waits for the first encoded frame, are held in a small preallocated queue; those that do not fit are
+ * dropped and counted, see {@link #getDroppedFocusSamples()}.
+ * <p>
+ * With a {@link SegmentPolicy} the recording is split into segment files. Once the policy asks for a
+ * new segment the codec is asked for a sync frame, and when that key frame comes out a new muxer is
+ * started and swapped in before the frame is written, so every encoded frame goes to exactly one
+ * segment and none is dropped at the boundary. The old muxer is finished on the encoder thread
+ * afterwards. Focus samples go to whichever muxer is current when they are written, so the metadata
+ * track of a segment can run past its video by the encode latency; the {@link SegmentListener} gets
+ * exact sensor timestamps for each segment.
+ * <p>
+ * With an {@link EncodedFrameRing} the codec can be started ahead of the recording, with
+ * {@link #startPreRoll()}: encoded frames then go to the ring instead of the muxer, and
+ * {@link #start()} writes what the ring holds to the file before the frames that follow, so the
+ * recording begins at the key frame the ring starts with.
+ * <p>
+ * One instance records one file or set of segments at a time: {@link #prepare},
+ * {@link #startPreRoll()} optionally, {@link #start()}, then {@link #stop()}, or {@link #release()} if
+ * the recording never started. The codec is reset rather than released between recordings, so
+ * preparing the next one skips allocating a codec; {@link #shutdown()} frees it.
+ */
+class VideoEncoder {
+
+    /**
+     * Follows the segments of a segmented recording. Called on the encoder thread; a segment is always
+     * reported started before the one it replaces is reported finished.
+     */
+    interface SegmentListener {
+
+        /**
+         * @return path of the file for the segment; segment 0 uses the path given to {@link #prepare}
+         */
+        String nextSegmentPath(int index) throws IOException;
+
+        void onSegmentStarted(int index, long startSensorTimestamp);
+
+        void onSegmentFinished(int index, String path, long startSensorTimestamp, long endSensorTimestamp,
+                               long frames, long bytes);
+    }
+
+    private static final String TAG = "VideoEncoder";
+    private static final long STOP_TIMEOUT_MS = 3000;
+    private static final long MAX_PLAUSIBLE_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int PENDING_FOCUS_SAMPLES = 16;
+
+    private final EncoderStats stats;
+    private final Handler handler;
+    private MediaCodec codec;
+    private String codecMimeType;
+    private MediaMuxer muxer;
+    private Surface inputSurface;
+    private boolean ownsInputSurface;
+    private boolean started;
+    private EncoderSettings activeSettings;
+    private volatile boolean realtimeTimestamps;
+    private volatile CountDownLatch endOfStream;
+    private int orientationHint;
+    private MediaFormat videoFormat;
+
+    private volatile SegmentPolicy segmentPolicy;
+    private volatile SegmentListener segmentListener;
+    // Segment state is only touched on the encoder thread.
+    private int segmentIndex;
+    private String segmentPath;
+    private long segmentStartUs = -1;
+    private long segmentLastUs;
+    private long segmentFrames;
+    private long segmentBytes;
+    private boolean syncFrameRequested;
+    private boolean segmentationFailed;
+    private final int[] segmentTracks = new int[2];
+
+    private volatile EncodedFrameRing preRoll;
+    // Guarded by muxerLock.
+    private boolean preRolling;
+    private long preRollStartUs = -1;
+    private final MediaCodec.BufferInfo preRollInfo = new MediaCodec.BufferInfo();
+
+    // The muxer is written from the encoder thread and the camera thread; both hold muxerLock.
+    private final Object muxerLock = new Object();
+    private int track = -1;
+    private int metadataTrack = -1;
+    private boolean muxerStarted;
+    private final ByteBuffer focusSamples = FocusMetadata.allocateSamples(PENDING_FOCUS_SAMPLES);
+    private final long[] focusSampleTimesUs = new long[PENDING_FOCUS_SAMPLES];
+    private int pendingFocusSamples;
+    private long droppedFocusSamples;
+    private final MediaCodec.BufferInfo focusSampleInfo = new MediaCodec.BufferInfo();
+
+    /**
+     * @param handler runs the codec and the muxer; owned by the caller
+     */
+    VideoEncoder(EncoderStats stats, Handler handler) {
+        this.stats = stats;
+        this.handler = handler;
+    }
+
+    static boolean isEncoderAvailable(String mimeType) {
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(mimeType)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits recordings started afterwards into segments, or records single files with a {@code null}
+     * policy.
+     */
+    void setSegmentation(SegmentPolicy policy, SegmentListener listener) {
+        segmentPolicy = policy;
+        segmentListener = listener;
+    }
+
+    /**
+     * Keeps encoded frames in the ring from {@link #startPreRoll()} on, for recordings prepared
+     * afterwards; {@code null} turns pre-roll off. The ring is only used on the encoder thread.
+     */
+    void setPreRoll(EncodedFrameRing ring) {
+        preRoll = ring;
+    }
+
+    /**
+     * Configures the codec and the muxer for one recording. HEVC falls back to H.264 and an
+     * unsupported bitrate mode to VBR; {@link #getActiveSettings()} tells what was actually used.
+     *
+     * @param persistentSurface surface from {@link MediaCodec#createPersistentInputSurface()}, or
+     *                          {@code null} to have the codec create one
+     * @param realtimeTimestamps whether sensor timestamps are on the
+     *                           {@link SystemClock#elapsedRealtimeNanos()} time base
+     */
+    void prepare(EncoderSettings settings, Size size, String path, int orientationHint,
+                 Surface persistentSurface, boolean realtimeTimestamps) throws IOException {
+        if (settings.getCodec() == EncoderSettings.Codec.HEVC
+                && !isEncoderAvailable(EncoderSettings.Codec.HEVC.getMimeType())) {
+            settings = settings.withCodec(EncoderSettings.Codec.H264);
+        }
+        this.realtimeTimestamps = realtimeTimestamps;
+        try {
+            String mimeType = settings.getCodec().getMimeType();
+            if (codec != null && !mimeType.equals(codecMimeType)) {
+                codec.release();
+                codec = null;
+            }
+            if (codec == null) {
+                codec = createCodec(mimeType);
+                codecMimeType = mimeType;
+            }
+            MediaCodecInfo.EncoderCapabilities capabilities = codec.getCodecInfo()
+                    .getCapabilitiesForType(settings.getCodec().getMimeType()).getEncoderCapabilities();
+            if (!capabilities.isBitrateModeSupported(bitrateMode(settings.getBitrateMode()))) {
+                settings = settings.withBitrateMode(EncoderSettings.BitrateMode.VBR);
+            }
+            codec.setCallback(callback);
+            codec.configure(createFormat(settings, size), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            if (persistentSurface != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                codec.setInputSurface(persistentSurface);
+                inputSurface = persistentSurface;
+                ownsInputSurface = false;
+            } else {
+                inputSurface = codec.createInputSurface();
+                ownsInputSurface = true;
+            }
+            this.orientationHint = orientationHint;
+            muxer = createMuxer(path, segmentTracks);
+            metadataTrack = segmentTracks[0];
+            segmentPath = path;
+            activeSettings = settings;
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    EncoderSettings getActiveSettings() {
+        return activeSettings;
+    }
+
+    /**
+     * Starts the codec without recording: encoded frames only fill the pre-roll ring until
+     * {@link #start()}. Does nothing without a ring.
+     */
+    void startPreRoll() {
+        EncodedFrameRing ring = preRoll;
+        if (ring == null) {
+            return;
+        }
+        ring.clear();
+        synchronized (muxerLock) {
+            preRolling = true;
+        }
+        start();
+    }
+
+    /**
+     * @return presentation time of the first pre-rolled frame written by {@link #start()}, or -1 if the
+     * recording starts with live frames
+     */
+    long getPreRollStartUs() {
+        synchronized (muxerLock) {
+            return preRollStartUs;
+        }
+    }
+
+    /**
+     * Starts recording. After {@link #startPreRoll()}, the codec is already running; the frames held in
+     * the ring are written first, on the encoder thread, before this returns.
+     */
+    void start() {
+        boolean committing;
+        synchronized (muxerLock) {
+            committing = preRolling && started;
+        }
+        if (committing) {
+            runOnEncoderThread(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    commitPreRoll();
+                    return null;
+                }
+            });
+            return;
+        }
+        stats.reset();
+        segmentIndex = 0;
+        segmentStartUs = -1;
+        segmentFrames = 0;
+        segmentBytes = 0;
+        syncFrameRequested = false;
+        segmentationFailed = false;
+        synchronized (muxerLock) {
+            track = -1;
+            muxerStarted = false;
+            pendingFocusSamples = 0;
+            droppedFocusSamples = 0;
+            preRollStartUs = -1;
+        }
+        endOfStream = new CountDownLatch(1);
+        codec.start();
+        synchronized (muxerLock) {
+            started = true;
+        }
+    }
+
+    /**
+     * Adds the focus sample of a recorded frame to the metadata track. Frames must be passed in order.
+     * Does nothing without a metadata track.
+     */
+    void writeFocusSample(long wallClockMillis, long sensorTimestamp, long frameNumber,
+                          float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+        synchronized (muxerLock) {
+            if (!started || metadataTrack < 0) {
+                return;
+            }
+            if (pendingFocusSamples == PENDING_FOCUS_SAMPLES) {
+                if (!muxerStarted) {
+                    droppedFocusSamples++;
+                    return;
+                }
+                writePendingFocusSamples();
+            }
+            focusSamples.position(pendingFocusSamples * FocusMetadata.SAMPLE_SIZE);
+            FocusMetadata.encode(focusSamples, wallClockMillis, sensorTimestamp, frameNumber,
+                    requestedFocusDistance, reportedFocusDistance, lensState);
+            focusSampleTimesUs[pendingFocusSamples] = sensorTimestamp / 1000L;
+            pendingFocusSamples++;
+            if (muxerStarted) {
+                writePendingFocusSamples();
+            }
+        }
+    }
+
+    /**
+     * @return focus samples of the current or last recording that were dropped because the queue was
+     * full before the muxer started
+     */
+    long getDroppedFocusSamples() {
+        synchronized (muxerLock) {
+            return droppedFocusSamples;
+        }
+    }
+
+    private void writePendingFocusSamples() {
+        for (int i = 0; i < pendingFocusSamples; i++) {
+            focusSamples.limit((i + 1) * FocusMetadata.SAMPLE_SIZE);
+            focusSamples.position(i * FocusMetadata.SAMPLE_SIZE);
+            focusSampleInfo.set(focusSamples.position(), FocusMetadata.SAMPLE_SIZE, focusSampleTimesUs[i], 0);
+            muxer.writeSampleData(metadataTrack, focusSamples, focusSampleInfo);
+        }
+        focusSamples.clear();
+        pendingFocusSamples = 0;
+    }
+
+    /**
+     * Ends the stream and waits until the muxer has written everything, then releases the codec.
+     */
+    void stop() {
+        if (started) {
+            codec.signalEndOfInputStream();
+            try {
+                if (!endOfStream.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Encoder did not drain in time.");
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+            }
+        }
+        long dropped = getDroppedFocusSamples();
+        if (dropped > 0) {
+            Log.w(TAG, dropped + " focus samples dropped before the muxer started.");
+        }
+        release();
+    }
+
+    /**
+     * Ends the recording without draining the codec, finishing whatever the muxer has. The codec is
+     * kept for the next {@link #prepare}.
+     */
+    void release() {
+        synchronized (muxerLock) {
+            started = false;
+            preRolling = false;
+        }
+        // Between callbacks, so none can touch the codec or the muxer while they are taken down.
+        runOnEncoderThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                resetCodec();
+                finishRecording();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Releases the codec as well; the next {@link #prepare} starts over.
+     */
+    void shutdown() {
+        release();
+        if (codec != null) {
+            codec.release();
+            codec = null;
+            codecMimeType = null;
+        }
+    }
+
+    /**
+     * Returns the codec to its unconfigured state, keeping the underlying component allocated.
+     */
+    private void resetCodec() {
+        if (codec == null) {
+            return;
+        }
+        try {
+            codec.reset();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            codec.release();
+            codec = null;
+            codecMimeType = null;
+        }
+    }
+
+    private void finishRecording() {
+        metadataTrack = -1;
+        if (muxer != null) {
+            if (muxerStarted) {
+                finishMuxer(muxer);
+                muxerStarted = false;
+                SegmentListener listener = segmentListener;
+                if (listener != null && segmentPolicy != null && segmentStartUs >= 0) {
+                    listener.onSegmentFinished(segmentIndex, segmentPath, segmentStartUs * 1000L,
+                            segmentLastUs * 1000L, segmentFrames, segmentBytes);
+                }
+            } else {
+                muxer.release();
+            }
+            muxer = null;
+        }
+        segmentStartUs = -1;
+        videoFormat = null;
+        EncodedFrameRing ring = preRoll;
+        if (ring != null) {
+            ring.clear();
+        }
+        if (ownsInputSurface && inputSurface != null) {
+            inputSurface.release();
+        }
+        inputSurface = null;
+    }
+
+    /**
+     * Creates a muxer with the metadata track and, once the codec has reported it, the video track.
+     * The track indices go to {@code tracks}, metadata first, -1 for a track that was not added; the
+     * muxer in use keeps being written meanwhile, so they are not assigned here.
+     */
+    private MediaMuxer createMuxer(String path, int[] tracks) throws IOException {
+        MediaMuxer created = new MediaMuxer(path, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            created.setOrientationHint(orientationHint);
+            tracks[0] = -1;
+            tracks[1] = -1;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                MediaFormat metadataFormat = new MediaFormat();
+                metadataFormat.setString(MediaFormat.KEY_MIME, FocusMetadata.MIME_TYPE);
+                tracks[0] = created.addTrack(metadataFormat);
+            }
+            if (videoFormat != null) {
+                tracks[1] = created.addTrack(videoFormat);
+            }
+            return created;
+        } catch (RuntimeException e) {
+            created.release();
+            throw e;
+        }
+    }
+
+    private static void finishMuxer(MediaMuxer finished) {
+        try {
+            finished.stop();
+        } catch (IllegalStateException e) {
+            // Nothing was written; the file is left empty.
+            e.printStackTrace();
+        }
+        finished.release();
+    }
+
+    /**
+     * Starts the muxer, if the codec has reported its format yet, and writes the pre-rolled frames
+     * ahead of everything that follows. Runs on the encoder thread, so no live frame can come between.
+     */
+    private void commitPreRoll() {
+        stats.reset();
+        synchronized (muxerLock) {
+            preRolling = false;
+            if (videoFormat == null) {
+                // Nothing was encoded yet; the muxer starts with the first format change as usual.
+                return;
+            }
+            track = muxer.addTrack(videoFormat);
+            muxer.start();
+            muxerStarted = true;
+            EncodedFrameRing ring = preRoll;
+            preRollStartUs = ring != null ? ring.getFirstPresentationTimeUs() : -1;
+            if (ring != null) {
+                ring.drainTo(preRollSink);
+            }
+        }
+    }
+
+    private final EncodedFrameRing.Sink preRollSink = new EncodedFrameRing.Sink() {
+        @Override
+        public void onFrame(ByteBuffer frame, long presentationTimeUs, boolean keyFrame) {
+            int size = frame.remaining();
+            preRollInfo.set(frame.position(), size, presentationTimeUs, keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+            muxer.writeSampleData(track, frame, preRollInfo);
+            onSegmentFrameWritten(presentationTimeUs, size);
+            stats.onEncodedFrame(presentationTimeUs, size, keyFrame, -1);
+        }
+    };
+
+    private void onSegmentFrameWritten(long presentationTimeUs, int size) {
+        if (segmentStartUs < 0) {
+            segmentStartUs = presentationTimeUs;
+            SegmentListener listener = segmentListener;
+            if (listener != null && segmentPolicy != null) {
+                listener.onSegmentStarted(segmentIndex, presentationTimeUs * 1000L);
+            }
+        }
+        segmentLastUs = presentationTimeUs;
+        segmentFrames++;
+        segmentBytes += size;
+        requestSegmentSyncFrameIfDue();
+    }
+
+    /**
+     * Asks for a key frame once the current segment is due to end, so that the next one can start with
+     * it. Called on the encoder thread after each written frame.
+     */
+    private void requestSegmentSyncFrameIfDue() {
+        SegmentPolicy policy = segmentPolicy;
+        if (policy == null || syncFrameRequested || segmentationFailed || segmentStartUs < 0
+                || !policy.shouldRotate(segmentLastUs - segmentStartUs, segmentBytes)) {
+            return;
+        }
+        Bundle parameters = new Bundle();
+        parameters.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        codec.setParameters(parameters);
+        syncFrameRequested = true;
+    }
+
+    /**
+     * Starts the next segment with the key frame at {@code presentationTimeUs}: the new muxer is made
+     * current before the frame is written, then the old one is finished. If the new file cannot be
+     * created, recording carries on in the current segment without further rotation.
+     */
+    private void rotateSegment(long presentationTimeUs) {
+        SegmentListener listener = segmentListener;
+        syncFrameRequested = false;
+        if (listener == null) {
+            return;
+        }
+        int nextIndex = segmentIndex + 1;
+        String nextPath;
+        MediaMuxer next = null;
+        try {
+            nextPath = listener.nextSegmentPath(nextIndex);
+            next = createMuxer(nextPath, segmentTracks);
+            next.start();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            if (next != null) {
+                next.release();
+            }
+            segmentationFailed = true;
+            return;
+        }
+        MediaMuxer previous;
+        synchronized (muxerLock) {
+            previous = muxer;
+            muxer = next;
+            metadataTrack = segmentTracks[0];
+            track = segmentTracks[1];
+        }
+        listener.onSegmentStarted(nextIndex, presentationTimeUs * 1000L);
+        finishMuxer(previous);
+        listener.onSegmentFinished(segmentIndex, segmentPath, segmentStartUs * 1000L, segmentLastUs * 1000L,
+                segmentFrames, segmentBytes);
+        segmentIndex = nextIndex;
+        segmentPath = nextPath;
+        segmentStartUs = presentationTimeUs;
+        segmentFrames = 0;
+        segmentBytes = 0;
+    }
+
+    /**
+     * Creates the codec on the encoder thread: before API 23 a codec delivers its callbacks on the
+     * looper of the thread that created it.
+     */
+    private MediaCodec createCodec(final String mimeType) throws IOException {
+        FutureTask<MediaCodec> task = new FutureTask<>(new Callable<MediaCodec>() {
+            @Override
+            public MediaCodec call() throws IOException {
+                return MediaCodec.createEncoderByType(mimeType);
+            }
+        });
+        handler.post(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while creating the encoder.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot create " + mimeType + " encoder.", e.getCause());
+        }
+    }
+
+    /**
+     * Runs a task between codec callbacks and waits for it; right away when called on the encoder
+     * thread.
+     */
+    private void runOnEncoderThread(Callable<Void> callable) {
+        FutureTask<Void> task = new FutureTask<>(callable);
+        if (Looper.myLooper() == handler.getLooper()) {
+            task.run();
+        } else {
+            handler.post(task);
+        }
+        try {
+            task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static MediaFormat createFormat(EncoderSettings settings, Size size) {
+        MediaFormat format = MediaFormat.createVideoFormat(settings.getCodec().getMimeType(),
+                size.getWidth(), size.getHeight());
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BITRATE_MODE, bitrateMode(settings.getBitrateMode()));
+        format.setInteger(MediaFormat.KEY_BIT_RATE, settings.getBitRate());
+        if (settings.getBitrateMode() == EncoderSettings.BitrateMode.CQ) {
+            format.setInteger(MediaFormat.KEY_QUALITY, settings.getQuality());
+        }
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, settings.getFrameRate());
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, settings.getIFrameIntervalSeconds());
+        return format;
+    }
+
+    private static int bitrateMode(EncoderSettings.BitrateMode mode) {
+        switch (mode) {
+            case CBR:
+                return MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR;
+            case CQ:
+                return MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CQ;
+            default:
+                return MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR;
+        }
+    }
+
+    private long latencyNanos(long presentationTimeUs) {
+        long now = realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
+        long latency = now - presentationTimeUs * 1000L;
+        return latency >= 0 && latency < MAX_PLAUSIBLE_LATENCY_NANOS ? latency : -1;
+    }
+
+    private final MediaCodec.Callback callback = new MediaCodec.Callback() {
+
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            // Input comes from the surface.
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            boolean endOfStreamReached = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+                boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+                if (keyFrame && syncFrameRequested && muxerStarted) {
+                    rotateSegment(info.presentationTimeUs);
+                }
+                ByteBuffer buffer = codec.getOutputBuffer(index);
+                buffer.position(info.offset);
+                buffer.limit(info.offset + info.size);
+                boolean written = false;
+                synchronized (muxerLock) {
+                    EncodedFrameRing ring = preRoll;
+                    if (preRolling && ring != null) {
+                        ring.append(buffer, info.presentationTimeUs, keyFrame);
+                    } else if (muxerStarted) {
+                        muxer.writeSampleData(track, buffer, info);
+                        written = true;
+                    }
+                }
+                if (written) {
+                    onSegmentFrameWritten(info.presentationTimeUs, info.size);
+                }
+                stats.onEncodedFrame(info.presentationTimeUs, info.size, keyFrame,
+                        latencyNanos(info.presentationTimeUs));
+            }
+            codec.releaseOutputBuffer(index, false);
+            if (endOfStreamReached) {
+                endOfStream.countDown();
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            e.printStackTrace();
+            // Also called while pre-rolling, before start() made the latch.
+            CountDownLatch latch = endOfStream;
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            synchronized (muxerLock) {
+                videoFormat = format;
+                if (preRolling) {
+                    return;
+                }
+                track = muxer.addTrack(format);
+                muxer.start();
+                muxerStarted = true;
+                // Flush the focus samples queued while waiting for the first encoded frame.
+                writePendingFocusSamples();
+            }
+        }
+    };
+}
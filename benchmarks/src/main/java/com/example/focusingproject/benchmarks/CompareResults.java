@@ -0,0 +1,278 @@
+package com.example.focusingproject.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files, say of two commits, benchmark by benchmark and parameter set by
+ * parameter set, and prints the change of each score as a tab-separated line. Exits with status 1 if
+ * any score got worse by more than the threshold, slower in time modes and lower in throughput mode,
+ * or if a benchmark of the baseline is missing from the candidate.
+ *
+ * <pre>
+ * CompareResults BASELINE.json CANDIDATE.json [THRESHOLD_PERCENT]
+ * </pre>
+ */
+public class CompareResults {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults BASELINE.json CANDIDATE.json [THRESHOLD_PERCENT]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        int failures = compare(read(new File(args[0])), read(new File(args[1])), threshold, System.out);
+        if (failures > 0) {
+            System.err.println(failures + " regressions over " + threshold + "% or missing benchmarks");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints one line per benchmark of either file: its change, or whether it is new or missing from the
+     * candidate. A baseline score of zero counts any worse candidate score as an unbounded change.
+     *
+     * @return how many scores got worse by more than the threshold, plus how many baseline benchmarks
+     * the candidate lacks
+     */
+    static int compare(Map<String, Score> baseline, Map<String, Score> candidate, double threshold,
+                       PrintStream out) {
+        int failures = 0;
+        out.println("benchmark\tunit\tbaseline\tcandidate\tchange_percent");
+        for (Map.Entry<String, Score> entry : candidate.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                out.println(String.format(Locale.US, "%s\t%s\t-\t%.3f\tnew", entry.getKey(), after.unit,
+                        after.value));
+                continue;
+            }
+            double change = change(before.value, after.value);
+            boolean worse = after.higherIsBetter ? -change > threshold : change > threshold;
+            if (worse) {
+                failures++;
+            }
+            out.println(String.format(Locale.US, "%s\t%s\t%.3f\t%.3f\t%+.1f%s", entry.getKey(), after.unit,
+                    before.value, after.value, change, worse ? "\tREGRESSION" : ""));
+        }
+        for (Map.Entry<String, Score> entry : baseline.entrySet()) {
+            if (!candidate.containsKey(entry.getKey())) {
+                failures++;
+                out.println(String.format(Locale.US, "%s\t%s\t%.3f\t-\tmissing", entry.getKey(),
+                        entry.getValue().unit, entry.getValue().value));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return the change in percent of the baseline; infinite with the sign of the candidate if the
+     * baseline is zero and the candidate is not
+     */
+    static double change(double before, double after) {
+        if (before == 0) {
+            return after == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, after);
+        }
+        return (after - before) / Math.abs(before) * 100;
+    }
+
+    /**
+     * @return the score of every run, keyed by benchmark name, mode and parameters
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Score> read(File file) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+        }
+        Object root = new JsonReader(new String(bytes, "UTF-8")).readValue();
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object item : (List<Object>) root) {
+            Map<String, Object> run = (Map<String, Object>) item;
+            StringBuilder key = new StringBuilder((String) run.get("benchmark"))
+                    .append(' ').append(run.get("mode"));
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> param : new TreeMap<>(params).entrySet()) {
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            Object score = metric.get("score");
+            double value = score instanceof Number
+                    ? ((Number) score).doubleValue() : Double.parseDouble((String) score);
+            scores.put(key.toString(), new Score(value, (String) metric.get("scoreUnit"),
+                    "thrpt".equals(run.get("mode"))));
+        }
+        return scores;
+    }
+
+    static final class Score {
+
+        final double value;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(double value, String unit, boolean higherIsBetter) {
+            this.value = value;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+
+    /**
+     * Just enough JSON for JMH results: objects, arrays, strings, numbers, booleans and null. Numbers
+     * JMH writes as strings, such as "NaN", stay strings.
+     */
+    static final class JsonReader {
+
+        private final String text;
+        private int position;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            char c = text.charAt(position);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    return readWord("true", Boolean.TRUE);
+                case 'f':
+                    return readWord("false", Boolean.FALSE);
+                case 'n':
+                    return readWord("null", null);
+                default:
+                    return readNumber();
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                object.put(name, readValue());
+                skipWhitespace();
+                if (text.charAt(position++) == '}') {
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(readValue());
+                skipWhitespace();
+                if (text.charAt(position++) == ']') {
+                    return array;
+                }
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                        break;
+                }
+            }
+        }
+
+        private Object readWord(String word, Object value) {
+            if (!text.startsWith(word, position)) {
+                throw new IllegalArgumentException("Unexpected JSON at " + position);
+            }
+            position += word.length();
+            return value;
+        }
+
+        private Double readNumber() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Unexpected JSON at " + position);
+            }
+            return Double.valueOf(text.substring(start, position));
+        }
+
+        private void expect(char c) {
+            if (text.charAt(position) != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + position);
+            }
+            position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.camera.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of each focus strategy, driven by a simulated camera. Scene distance changes every
+ * few hundred frames so the hill climb keeps searching instead of sitting locked.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusControllerBenchmark {
+
+    private static final float MIN_FOCUS_DISTANCE = 10f;
+    private static final int SCENE_CHANGE_FRAMES = 256;
+
+    @Param({"manual", "sweep", "hillclimb"})
+    public String strategy;
+
+    private SimulatedFocusCamera camera;
+    private FocusController controller;
+    private final FocusFrame frame = new FocusFrame();
+    private int frames;
+
+    @Setup
+    public void setUp() {
+        camera = new SimulatedFocusCamera(MIN_FOCUS_DISTANCE, 0.5f, 33333333L);
+        switch (strategy) {
+            case "manual":
+                ManualFocusController manual = new ManualFocusController();
+                manual.setTarget(5f);
+                controller = manual;
+                break;
+            case "sweep":
+                controller = new SweepFocusController(FocusSweep.defaultSweep());
+                break;
+            default:
+                controller = new HillClimbFocusController();
+                break;
+        }
+        camera.setController(controller);
+    }
+
+    /**
+     * Cost of the controller decision alone, as paid on the camera callback thread.
+     */
+    @Benchmark
+    public float onFrame() {
+        frame.frameNumber = frames++;
+        frame.requestedFocusDistance = 5f;
+        frame.focusDistance = 5f;
+        frame.lensState = FocusFrame.LENS_STATE_STATIONARY;
+        frame.sharpness = (frames & 7) / 8f;
+        return controller.onFrame(frame);
+    }
+
+    /**
+     * Controller plus simulated lens, one frame per invocation.
+     */
+    @Benchmark
+    public float simulatedFrame() {
+        if (++frames % SCENE_CHANGE_FRAMES == 0) {
+            camera.setSceneFocusDistance((frames / SCENE_CHANGE_FRAMES) % 2 == 0 ? 2f : 8f);
+        }
+        camera.step();
+        return camera.getLensFocusDistance();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.analytics.FocusLogAnalyzer;
+import com.example.focusingproject.analytics.SessionStats;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to analyze a whole corpus of focus logs, text or binary, against the number of worker threads,
+ * next to the same work done with {@code BufferedReader} and {@code String.split}. The corpus is read
+ * from the page cache after the first iteration; pass {@code -p corpusMegabytes=4096} for a corpus that
+ * does not fit in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FocusLogAnalyticsBenchmark {
+
+    @Param({"256"})
+    public int corpusMegabytes;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private FocusLogCorpus corpus;
+    private ForkJoinPool pool;
+    private FocusLogAnalyzer analyzer;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = FocusLogCorpus.open(corpusMegabytes);
+        pool = new ForkJoinPool(parallelism);
+        analyzer = new FocusLogAnalyzer(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<SessionStats> analyzeTextLogs() {
+        return analyzer.analyze(corpus.textLogs);
+    }
+
+    @Benchmark
+    public List<SessionStats> analyzeTracks() {
+        return analyzer.analyze(corpus.tracks);
+    }
+
+    /**
+     * The parser this module replaces: a line at a time through a reader, split into strings.
+     */
+    @Benchmark
+    public List<SessionStats> splitLines() throws Exception {
+        List<Callable<SessionStats>> tasks = new ArrayList<>(corpus.textLogs.size());
+        for (final File log : corpus.textLogs) {
+            tasks.add(new Callable<SessionStats>() {
+                @Override
+                public SessionStats call() throws IOException {
+                    SessionStats session = new SessionStats(log.getName());
+                    try (BufferedReader reader = new BufferedReader(new FileReader(log))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            String[] fields = line.split(" - Focus distance: ");
+                            if (fields.length != 2) {
+                                session.onMalformedLine();
+                                continue;
+                            }
+                            session.onSample(Long.parseLong(fields[0]), Float.parseFloat(fields[1]));
+                        }
+                    }
+                    return session;
+                }
+            });
+        }
+        List<SessionStats> sessions = new ArrayList<>(tasks.size());
+        for (Future<SessionStats> future : pool.invokeAll(tasks)) {
+            sessions.add(future.get());
+        }
+        return sessions;
+    }
+}
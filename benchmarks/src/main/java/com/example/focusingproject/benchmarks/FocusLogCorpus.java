@@ -0,0 +1,86 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.log.FocusLogWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A directory of generated recording sessions, each a text log and a binary track written by the app's
+ * own {@link FocusLogWriter}: 30 fps with a couple of milliseconds of jitter and the odd dropped run of
+ * frames, focus sweeping back and forth with the lens lagging a little behind. Generating gigabytes
+ * takes minutes, so a corpus is kept in the temporary directory and reused by later runs.
+ */
+final class FocusLogCorpus {
+
+    /**
+     * Half an hour at 30 fps, about 2 MB of text.
+     */
+    private static final int FRAMES_PER_SESSION = 54000;
+    private static final long FRAME_NANOS = 33333333L;
+    private static final long FIRST_SESSION_MILLIS = 1500000000000L;
+    private static final String COMPLETE = "complete";
+
+    final List<File> textLogs = new ArrayList<>();
+    final List<File> tracks = new ArrayList<>();
+
+    private FocusLogCorpus() {
+    }
+
+    /**
+     * @param megabytes approximate size of the text logs; the tracks take about as much again
+     */
+    static FocusLogCorpus open(int megabytes) throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "focus-log-corpus-" + megabytes);
+        boolean complete = new File(directory, COMPLETE).isFile();
+        if (!complete && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        FocusLogCorpus corpus = new FocusLogCorpus();
+        Random random = new Random(megabytes);
+        long bytes = 0;
+        for (int session = 0; bytes < megabytes * 1024L * 1024L; session++) {
+            String name = Long.toString(FIRST_SESSION_MILLIS + session * 3600000L);
+            File textLog = new File(directory, name + ".txt");
+            File track = new File(directory, name + ".ftrk");
+            if (!complete) {
+                write(textLog, track, random);
+            }
+            corpus.textLogs.add(textLog);
+            corpus.tracks.add(track);
+            bytes += textLog.length();
+        }
+        if (!complete && !new File(directory, COMPLETE).createNewFile()) {
+            throw new IOException("Cannot mark " + directory + " complete");
+        }
+        return corpus;
+    }
+
+    private static void write(File textLog, File track, Random random) throws IOException {
+        if (textLog.exists() && !textLog.delete()) {
+            throw new IOException("Cannot replace " + textLog);
+        }
+        long startMillis = Long.parseLong(textLog.getName().substring(0, textLog.getName().indexOf('.')));
+        int sweepFrames = 60 + random.nextInt(240);
+        float maxFocusDistance = 5f + random.nextInt(6);
+        float lens = 0f;
+        long sensorTimestamp = 0;
+        try (FocusLogWriter writer = new FocusLogWriter(textLog, track, null, 4096, 1000)) {
+            for (int frame = 0; frame < FRAMES_PER_SESSION; frame++) {
+                sensorTimestamp += FRAME_NANOS + (random.nextInt(4000001) - 2000000);
+                if (random.nextInt(2000) == 0) {
+                    sensorTimestamp += FRAME_NANOS * (2 + random.nextInt(10));
+                }
+                int phase = frame % (2 * sweepFrames);
+                float requested = maxFocusDistance * (phase < sweepFrames ? phase : 2 * sweepFrames - phase)
+                        / sweepFrames;
+                lens += 0.6f * (requested - lens);
+                writer.write(startMillis + sensorTimestamp / 1000000L, sensorTimestamp, frame, requested, lens,
+                        Math.abs(requested - lens) > 0.01f ? 1 : 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.log.FocusLogWriter;
+import com.example.focusingproject.log.FocusMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record cost of the focus log: a record written to the text log, with the writer draining its
+ * batches on the benchmark thread into {@code /dev/null} so that formatting is counted and disk speed
+ * is not, and a sample encoded for the focus metadata track of the video.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusLogSerializationBenchmark {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    private final ByteBuffer sample = FocusMetadata.allocateSample();
+    private FocusLogWriter writer;
+    private long frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        writer = new FocusLogWriter(new File("/dev/null"), null, null, FocusLogWriter.DEFAULT_BATCH_SIZE,
+                FocusLogWriter.DEFAULT_FLUSH_INTERVAL_MS, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+    }
+
+    @Benchmark
+    public void textLogRecord() {
+        frame++;
+        writer.write(1500000000000L + frame * 33, frame * FRAME_NANOS, frame, focusDistance(), focusDistance(), 0);
+    }
+
+    @Benchmark
+    public ByteBuffer metadataSample() {
+        frame++;
+        FocusMetadata.encode(sample, 1500000000000L + frame * 33, frame * FRAME_NANOS, frame, focusDistance(),
+                focusDistance(), 0);
+        return sample;
+    }
+
+    /**
+     * A different distance every frame, with as many digits as a real one.
+     */
+    private float focusDistance() {
+        return (frame % 1000) * 0.00731f;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.camera.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning seek bar positions into focus distances and back, paid on every tick of a drag, and
+ * of building the sweep schedule of each profile, paid whenever auto focus starts or the lens changes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusMappingBenchmark {
+
+    private static final float MIN_FOCUS_DISTANCE = 10f;
+    private static final int SEEK_BAR_MAX = 100;
+
+    @Param({"LINEAR", "PING_PONG", "LOGARITHMIC"})
+    public FocusSweep.Profile profile;
+
+    private FocusCalibration calibration;
+    private SweepFocusController sweep;
+    private SweepFocusController sweepWithLead;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        calibration = new FocusCalibration(MIN_FOCUS_DISTANCE, 0.2f, FocusCalibration.Quality.CALIBRATED,
+                SEEK_BAR_MAX);
+        FocusSweep focusSweep = new FocusSweep(profile, FocusSweep.DEFAULT_STEPS, 3);
+        sweep = new SweepFocusController(focusSweep);
+        sweepWithLead = new SweepFocusController(focusSweep);
+        sweepWithLead.setLensResponse(learnedResponse());
+    }
+
+    @Benchmark
+    public float toFocusDistance() {
+        position = position == SEEK_BAR_MAX ? 0 : position + 1;
+        return calibration.toFocusDistance(position);
+    }
+
+    @Benchmark
+    public int toPosition() {
+        position = position == SEEK_BAR_MAX ? 0 : position + 1;
+        return calibration.toPosition(position * MIN_FOCUS_DISTANCE / SEEK_BAR_MAX);
+    }
+
+    @Benchmark
+    public float[] sweepSchedule() {
+        sweep.start(MIN_FOCUS_DISTANCE);
+        return sweep.getSchedule();
+    }
+
+    /**
+     * The schedule with every step commanded ahead by the learned settle time of the lens.
+     */
+    @Benchmark
+    public float[] sweepScheduleWithLead() {
+        sweepWithLead.start(MIN_FOCUS_DISTANCE);
+        return sweepWithLead.getSchedule();
+    }
+
+    /**
+     * A lens that takes two frames to settle after any step.
+     */
+    private static LensResponseModel learnedResponse() {
+        LensResponseModel model = new LensResponseModel();
+        FocusFrame frame = new FocusFrame();
+        float[] steps = {0f, 0.1f, 0.3f, 0.8f, 1.8f, 4f, 10f};
+        long frameNumber = 0;
+        for (int i = 1; i < steps.length; i++) {
+            for (int k = 0; k < 3; k++) {
+                frame.clear();
+                frame.frameNumber = frameNumber++;
+                frame.requestedFocusDistance = steps[i];
+                frame.focusDistance = k == 2 ? steps[i] : steps[i - 1];
+                frame.lensState = k == 2 ? FocusFrame.LENS_STATE_STATIONARY : FocusFrame.LENS_STATE_MOVING;
+                model.onFrame(frame);
+            }
+        }
+        return model;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.analysis.FocusMetric;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Focus metric cost on synthetic luma planes shaped like the analysis stream: direct buffers with
+ * padded rows, sampled over the central half of the frame as the analyzer does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusMetricBenchmark {
+
+    private static final int ROW_PADDING = 64;
+
+    @Param({"320x240", "640x480", "1280x720"})
+    public String size;
+
+    @Param({"LAPLACIAN_VARIANCE", "TENENGRAD"})
+    public FocusMetric metric;
+
+    @Param({"1", "2"})
+    public int step;
+
+    private ByteBuffer plane;
+    private int width;
+    private int height;
+    private int rowStride;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        rowStride = width + ROW_PADDING;
+        plane = ByteBuffer.allocateDirect(rowStride * height);
+        Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int edge = ((x / 16 + y / 16) & 1) == 0 ? 60 : 190;
+                plane.put(y * rowStride + x, (byte) (edge + random.nextInt(16)));
+            }
+        }
+    }
+
+    @Benchmark
+    public double centerRegion() {
+        return metric.evaluateCenter(plane, width, height, rowStride, 1, 0.5f, step);
+    }
+}
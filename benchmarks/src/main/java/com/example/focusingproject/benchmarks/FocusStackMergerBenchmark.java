@@ -0,0 +1,59 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.analysis.FocusStackMerger;
+import com.example.focusingproject.analysis.YuvFrame;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to merge an 8-frame stack at 1080p, the largest stack the app captures, against the tile size
+ * and the number of worker threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusStackMergerBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int FRAMES = 8;
+
+    @Param({"64", "128", "256"})
+    public int tileSize;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private final YuvFrame[] stack = new YuvFrame[FRAMES];
+    private final YuvFrame out = new YuvFrame(WIDTH, HEIGHT);
+    private ForkJoinPool pool;
+    private FocusStackMerger merger;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int k = 0; k < FRAMES; k++) {
+            stack[k] = new YuvFrame(WIDTH, HEIGHT);
+            random.nextBytes(stack[k].y);
+        }
+        pool = new ForkJoinPool(parallelism);
+        merger = new FocusStackMerger(pool, tileSize, FocusStackMerger.DEFAULT_WINDOW_RADIUS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public YuvFrame merge() {
+        merger.merge(stack, out, null);
+        return out;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.camera.PreviewTransform;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the preview transform, computed on the UI thread on every layout and rotation of the view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreviewTransformBenchmark {
+
+    @Param({"0", "1", "3"})
+    public int rotation;
+
+    private final float[] values = new float[PreviewTransform.VALUES];
+
+    @Benchmark
+    public float[] compute() {
+        PreviewTransform.compute(2340, 1080, 1920, 1080, rotation, values);
+        return values;
+    }
+}
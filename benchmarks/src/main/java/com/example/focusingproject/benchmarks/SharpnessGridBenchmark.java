@@ -0,0 +1,54 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.analysis.FocusMetric;
+import com.example.focusingproject.analysis.SharpnessGrid;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one focus peaking update at analysis resolution, to compare against the 33 ms frame budget.
+ * Two frames alternate so that tiles actually change between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharpnessGridBenchmark {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Param({"16", "32", "64"})
+    public int columns;
+
+    private final ByteBuffer[] frames = new ByteBuffer[2];
+    private SharpnessGrid grid;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        grid = new SharpnessGrid(columns, columns * HEIGHT / WIDTH);
+        Random random = new Random(1);
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    boolean textured = f == 0 ? x < WIDTH / 2 : x >= WIDTH / 2;
+                    int value = textured ? random.nextInt(256) : 128;
+                    frames[f].put(y * WIDTH + x, (byte) value);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        frame ^= 1;
+        return grid.update(frames[frame], WIDTH, HEIGHT, WIDTH, 1, FocusMetric.TENENGRAD, 2);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.focusingproject.benchmarks;
+
+import com.example.focusingproject.camera.SizeSelector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to choose the recorder and preview sizes of a session, which every pair of sizes the camera
+ * lists is scored for, on the stream configuration tables of a flagship and of a budget device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SizeSelectorBenchmark {
+
+    /**
+     * Output sizes of a flagship back camera with their minimum frame and stall durations; stalls only
+     * above 4K.
+     */
+    private static final String[] FLAGSHIP = {
+            "4032x3024 33333333 16666666", "4032x2268 33333333 16666666", "3840x2160 16666666 0",
+            "3264x2448 33333333 0", "3264x1836 33333333 0", "2560x1440 16666666 0", "2340x1080 16666666 0",
+            "2160x1080 16666666 0", "1920x1440 16666666 0", "1920x1080 8333333 0", "1600x1200 8333333 0",
+            "1440x1080 8333333 0", "1280x960 8333333 0", "1280x720 4166666 0", "1088x1088 8333333 0",
+            "1024x768 8333333 0", "960x720 4166666 0", "800x600 4166666 0", "720x720 4166666 0",
+            "720x480 4166666 0", "640x480 4166666 0", "640x360 4166666 0", "352x288 4166666 0",
+            "320x240 4166666 0", "256x144 4166666 0", "176x144 4166666 0"
+    };
+
+    /**
+     * A budget device whose sensor only reaches 20 fps above 720p.
+     */
+    private static final String[] BUDGET = {
+            "2592x1944 66666666 0", "2592x1458 66666666 0", "1920x1080 50000000 0", "1280x960 50000000 0",
+            "1280x720 33333333 0", "800x600 33333333 0", "720x480 33333333 0", "640x480 33333333 0",
+            "352x288 33333333 0", "320x240 33333333 0", "176x144 33333333 0"
+    };
+
+    @Param({"flagship", "budget"})
+    public String device;
+
+    @Param({"1920x1080x30", "3840x2160x60"})
+    public String target;
+
+    private SizeSelector selector;
+    private SizeSelector.Candidate[] sizes;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = target.split("x");
+        selector = new SizeSelector(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]),
+                Integer.parseInt(dimensions[2]));
+        sizes = table("flagship".equals(device) ? FLAGSHIP : BUDGET);
+    }
+
+    @Benchmark
+    public SizeSelector.Choice choose() {
+        return selector.choose(sizes, sizes);
+    }
+
+    private static SizeSelector.Candidate[] table(String[] rows) {
+        SizeSelector.Candidate[] candidates = new SizeSelector.Candidate[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            String[] fields = rows[i].split("[x ]");
+            candidates[i] = new SizeSelector.Candidate(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                    Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.focusingproject.benchmarks;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompareResultsTest {
+
+    private static final String PACKAGE = "com.example.focusingproject.benchmarks.";
+
+    @Test
+    public void readsEveryRunKeyedByModeAndParameters() throws Exception {
+        Map<String, CompareResults.Score> scores = CompareResults.read(resource("results-baseline.json"));
+
+        assertEquals(6, scores.size());
+        CompareResults.Score rotated = scores.get(PACKAGE + "PreviewTransformBenchmark.compute avgt rotation=90");
+        assertEquals(42.0, rotated.value, 0);
+        assertEquals("ns/op", rotated.unit);
+        assertFalse(rotated.higherIsBetter);
+        // Parameters are keyed in name order, whatever order JMH wrote them in.
+        assertTrue(scores.get(PACKAGE + "FocusLogAnalyticsBenchmark.analyze thrpt format=text threads=4")
+                .higherIsBetter);
+    }
+
+    @Test
+    public void failsOnRegressionsAndMissingBenchmarks() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int failures = CompareResults.compare(CompareResults.read(resource("results-baseline.json")),
+                CompareResults.read(resource("results-candidate.json")), 10, new PrintStream(output, true));
+
+        // 31% slower, 20% less throughput, and one benchmark gone.
+        assertEquals(3, failures);
+        String report = output.toString("UTF-8");
+        assertTrue(report.contains(PACKAGE + "PreviewTransformBenchmark.compute avgt rotation=90\tns/op\t42.000"
+                + "\t55.000\t+31.0\tREGRESSION\n"));
+        assertTrue(report.contains(PACKAGE + "FocusLogAnalyticsBenchmark.analyze thrpt format=text threads=4"
+                + "\tops/s\t150.000\t120.000\t-20.0\tREGRESSION\n"));
+        assertTrue(report.contains(PACKAGE + "FocusLogSerializationBenchmark.writeTrack avgt\tus/op\t3.200\t-"
+                + "\tmissing\n"));
+        assertTrue(report.contains(PACKAGE + "FocusLogSerializationBenchmark.writeText avgt\tus/op\t-\tNaN\tnew\n"));
+        assertTrue(report.contains(PACKAGE + "SizeSelectorBenchmark.choose avgt\tns/op\t0.000\t0.000\t+0.0\n"));
+    }
+
+    @Test
+    public void zeroBaselineCountsAnyWorseScoreAsRegression() {
+        Map<String, CompareResults.Score> zeroTime = Collections.singletonMap("time",
+                new CompareResults.Score(0, "ns/op", false));
+        Map<String, CompareResults.Score> zeroThroughput = Collections.singletonMap("time",
+                new CompareResults.Score(0, "ops/s", true));
+        Map<String, CompareResults.Score> one = Collections.singletonMap("time",
+                new CompareResults.Score(1, "ns/op", false));
+        Map<String, CompareResults.Score> oneThroughput = Collections.singletonMap("time",
+                new CompareResults.Score(1, "ops/s", true));
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+        assertEquals(0, CompareResults.change(0, 0), 0);
+        assertEquals(Double.POSITIVE_INFINITY, CompareResults.change(0, 1), 0);
+        assertEquals(1, CompareResults.compare(zeroTime, one, 10, out));
+        assertEquals(0, CompareResults.compare(zeroThroughput, oneThroughput, 10, out));
+    }
+
+    private static File resource(String name) throws Exception {
+        return new File(CompareResultsTest.class.getResource(name).toURI());
+    }
+}
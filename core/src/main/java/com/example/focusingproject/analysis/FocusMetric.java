@@ -0,0 +1,94 @@
+package com.example.focusingproject.analysis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sharpness measures computed on an 8-bit luma plane, read in place from the buffer the camera
+ * produced. Rows may be padded ({@code rowStride}) and pixels interleaved ({@code pixelStride}), as in
+ * the planes of a YUV_420_888 image. Only absolute reads are used, so the buffer position is left
+ * untouched and nothing is allocated. Higher values mean a sharper image.
+ */
+public enum FocusMetric {
+
+    /**
+     * Variance of the 4-neighbour Laplacian. Cheap and very sensitive to fine detail.
+     */
+    LAPLACIAN_VARIANCE {
+        @Override
+        public double evaluate(ByteBuffer plane, int rowStride, int pixelStride,
+                               int left, int top, int width, int height, int step) {
+            long sum = 0;
+            long sumOfSquares = 0;
+            long count = 0;
+            for (int y = Math.max(top, 1); y < top + height - 1; y += step) {
+                int row = y * rowStride;
+                for (int x = Math.max(left, 1); x < left + width - 1; x += step) {
+                    int i = row + x * pixelStride;
+                    int laplacian = (plane.get(i - pixelStride) & 0xFF)
+                            + (plane.get(i + pixelStride) & 0xFF)
+                            + (plane.get(i - rowStride) & 0xFF)
+                            + (plane.get(i + rowStride) & 0xFF)
+                            - 4 * (plane.get(i) & 0xFF);
+                    sum += laplacian;
+                    sumOfSquares += laplacian * laplacian;
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            double mean = (double) sum / count;
+            return (double) sumOfSquares / count - mean * mean;
+        }
+    },
+
+    /**
+     * Mean squared Sobel gradient magnitude. Less noise sensitive than the Laplacian.
+     */
+    TENENGRAD {
+        @Override
+        public double evaluate(ByteBuffer plane, int rowStride, int pixelStride,
+                               int left, int top, int width, int height, int step) {
+            long sum = 0;
+            long count = 0;
+            for (int y = Math.max(top, 1); y < top + height - 1; y += step) {
+                int row = y * rowStride;
+                for (int x = Math.max(left, 1); x < left + width - 1; x += step) {
+                    int i = row + x * pixelStride;
+                    int topLeft = plane.get(i - rowStride - pixelStride) & 0xFF;
+                    int topCenter = plane.get(i - rowStride) & 0xFF;
+                    int topRight = plane.get(i - rowStride + pixelStride) & 0xFF;
+                    int left1 = plane.get(i - pixelStride) & 0xFF;
+                    int right1 = plane.get(i + pixelStride) & 0xFF;
+                    int bottomLeft = plane.get(i + rowStride - pixelStride) & 0xFF;
+                    int bottomCenter = plane.get(i + rowStride) & 0xFF;
+                    int bottomRight = plane.get(i + rowStride + pixelStride) & 0xFF;
+                    int gx = topRight + 2 * right1 + bottomRight - topLeft - 2 * left1 - bottomLeft;
+                    int gy = bottomLeft + 2 * bottomCenter + bottomRight - topLeft - 2 * topCenter - topRight;
+                    sum += gx * gx + gy * gy;
+                    count++;
+                }
+            }
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    };
+
+    /**
+     * Evaluates the metric over a region of the plane. Border pixels of the plane are skipped.
+     *
+     * @param step sample every {@code step}-th pixel in both directions, to bound the cost
+     */
+    public abstract double evaluate(ByteBuffer plane, int rowStride, int pixelStride,
+                                    int left, int top, int width, int height, int step);
+
+    /**
+     * Evaluates the metric over the central region of the plane covering {@code fraction} of each side.
+     */
+    public double evaluateCenter(ByteBuffer plane, int planeWidth, int planeHeight, int rowStride,
+                                 int pixelStride, float fraction, int step) {
+        int width = (int) (planeWidth * fraction);
+        int height = (int) (planeHeight * fraction);
+        return evaluate(plane, rowStride, pixelStride,
+                (planeWidth - width) / 2, (planeHeight - height) / 2, width, height, step);
+    }
+}
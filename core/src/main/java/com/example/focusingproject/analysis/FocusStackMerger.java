@@ -0,0 +1,229 @@
+package com.example.focusingproject.analysis;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Merges frames taken at different focus distances into one image that is in focus everywhere. Each
+ * output pixel is taken from the frame with the most local contrast around it: the modified Laplacian
+ * of the luma, summed over a square window. Chroma follows the choice made for its top-left luma
+ * pixel.
+ * <p>
+ * The image is processed in tiles, in parallel on a fork-join pool. Each tile only needs the window
+ * margin around it, so working memory is a few tile-sized buffers per worker thread, independent of
+ * the resolution and of the number of frames. The result does not depend on tile size or parallelism.
+ */
+public class FocusStackMerger {
+
+    public static final int DEFAULT_TILE_SIZE = 128;
+    public static final int DEFAULT_WINDOW_RADIUS = 4;
+
+    /**
+     * Frame indices are stored as unsigned bytes.
+     */
+    public static final int MAX_FRAMES = 256;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final int radius;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(tileSize, radius);
+        }
+    };
+
+    public FocusStackMerger(ForkJoinPool pool) {
+        this(pool, DEFAULT_TILE_SIZE, DEFAULT_WINDOW_RADIUS);
+    }
+
+    /**
+     * @param tileSize edge of a square tile in pixels; must be even so that tiles align with chroma
+     * @param radius   radius of the window over which contrast is summed
+     */
+    public FocusStackMerger(ForkJoinPool pool, int tileSize, int radius) {
+        if (tileSize < 2 || tileSize % 2 != 0) {
+            throw new IllegalArgumentException("Tile size must be even and positive.");
+        }
+        if (radius < 0) {
+            throw new IllegalArgumentException("Window radius must not be negative.");
+        }
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.radius = radius;
+    }
+
+    /**
+     * Blocks until the merge is done.
+     *
+     * @param stack      frames of the same size, in any order
+     * @param out        receives the merged frame; same size as the stack
+     * @param frameIndex optional, {@code width * height} bytes; receives the index of the frame each
+     *                   luma pixel was taken from, which doubles as a coarse depth map
+     */
+    public void merge(YuvFrame[] stack, YuvFrame out, byte[] frameIndex) {
+        if (stack.length == 0 || stack.length > MAX_FRAMES) {
+            throw new IllegalArgumentException("Cannot merge " + stack.length + " frames.");
+        }
+        for (YuvFrame frame : stack) {
+            if (frame.width != out.width || frame.height != out.height) {
+                throw new IllegalArgumentException("All frames must be " + out.width + "x" + out.height + ".");
+            }
+        }
+        if (frameIndex != null && frameIndex.length < out.width * out.height) {
+            throw new IllegalArgumentException("Frame index is too small.");
+        }
+        int columns = (out.width + tileSize - 1) / tileSize;
+        int rows = (out.height + tileSize - 1) / tileSize;
+        pool.invoke(new MergeTiles(stack, out, frameIndex, columns, 0, columns * rows));
+    }
+
+    private void mergeTile(YuvFrame[] stack, YuvFrame out, byte[] frameIndex, int left, int top) {
+        Scratch s = scratch.get();
+        int width = Math.min(tileSize, out.width - left);
+        int height = Math.min(tileSize, out.height - top);
+        for (int k = 0; k < stack.length; k++) {
+            contrast(stack[k].y, out.width, out.height, left, top, width, height, s);
+            for (int i = 0; i < width * height; i++) {
+                if (k == 0 || s.sums[i] > s.best[i]) {
+                    s.best[i] = s.sums[i];
+                    s.index[i] = (byte) k;
+                }
+            }
+        }
+
+        for (int row = 0; row < height; row++) {
+            int offset = (top + row) * out.width + left;
+            for (int column = 0; column < width; column++) {
+                byte k = s.index[row * width + column];
+                out.y[offset + column] = stack[k & 0xFF].y[offset + column];
+                if (frameIndex != null) {
+                    frameIndex[offset + column] = k;
+                }
+            }
+        }
+
+        int chromaWidth = out.getChromaWidth();
+        int chromaLeft = left / 2;
+        int chromaTop = top / 2;
+        int chromaColumns = (left + width + 1) / 2 - chromaLeft;
+        int chromaRows = (top + height + 1) / 2 - chromaTop;
+        for (int row = 0; row < chromaRows; row++) {
+            int offset = (chromaTop + row) * chromaWidth + chromaLeft;
+            for (int column = 0; column < chromaColumns; column++) {
+                YuvFrame source = stack[s.index[2 * row * width + 2 * column] & 0xFF];
+                out.u[offset + column] = source.u[offset + column];
+                out.v[offset + column] = source.v[offset + column];
+            }
+        }
+    }
+
+    /**
+     * Fills {@code s.sums} with the windowed modified Laplacian of one tile. Pixels outside the image
+     * are clamped to its edge.
+     */
+    private void contrast(byte[] luma, int imageWidth, int imageHeight,
+                          int left, int top, int width, int height, Scratch s) {
+        int window = 2 * radius + 1;
+        int extendedWidth = width + 2 * radius;
+        int extendedHeight = height + 2 * radius;
+        int[] laplacian = s.laplacian;
+        for (int row = 0; row < extendedHeight; row++) {
+            int y = clamp(top - radius + row, imageHeight);
+            int up = clamp(y - 1, imageHeight) * imageWidth;
+            int down = clamp(y + 1, imageHeight) * imageWidth;
+            int line = y * imageWidth;
+            for (int column = 0; column < extendedWidth; column++) {
+                int x = clamp(left - radius + column, imageWidth);
+                int center = 2 * (luma[line + x] & 0xFF);
+                int horizontal = center - (luma[line + clamp(x - 1, imageWidth)] & 0xFF)
+                        - (luma[line + clamp(x + 1, imageWidth)] & 0xFF);
+                int vertical = center - (luma[up + x] & 0xFF) - (luma[down + x] & 0xFF);
+                laplacian[row * extendedWidth + column] = Math.abs(horizontal) + Math.abs(vertical);
+            }
+        }
+
+        // Separable box sum: along rows into the row sums, then down the columns into the tile.
+        int[] rowSums = s.rowSums;
+        for (int row = 0; row < extendedHeight; row++) {
+            int base = row * extendedWidth;
+            int sum = 0;
+            for (int i = 0; i < window; i++) {
+                sum += laplacian[base + i];
+            }
+            for (int column = 0; column < width; column++) {
+                rowSums[row * width + column] = sum;
+                if (column + window < extendedWidth) {
+                    sum += laplacian[base + column + window] - laplacian[base + column];
+                }
+            }
+        }
+        int[] sums = s.sums;
+        for (int column = 0; column < width; column++) {
+            int sum = 0;
+            for (int i = 0; i < window; i++) {
+                sum += rowSums[i * width + column];
+            }
+            for (int row = 0; row < height; row++) {
+                sums[row * width + column] = sum;
+                if (row + window < extendedHeight) {
+                    sum += rowSums[(row + window) * width + column] - rowSums[row * width + column];
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : value >= size ? size - 1 : value;
+    }
+
+    private final class MergeTiles extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final YuvFrame[] stack;
+        private final YuvFrame out;
+        private final byte[] frameIndex;
+        private final int columns;
+        private final int from;
+        private final int to;
+
+        MergeTiles(YuvFrame[] stack, YuvFrame out, byte[] frameIndex, int columns, int from, int to) {
+            this.stack = stack;
+            this.out = out;
+            this.frameIndex = frameIndex;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                mergeTile(stack, out, frameIndex, (from % columns) * tileSize, (from / columns) * tileSize);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MergeTiles(stack, out, frameIndex, columns, from, middle),
+                    new MergeTiles(stack, out, frameIndex, columns, middle, to));
+        }
+    }
+
+    private static final class Scratch {
+
+        final int[] laplacian;
+        final int[] rowSums;
+        final int[] sums;
+        final int[] best;
+        final byte[] index;
+
+        Scratch(int tileSize, int radius) {
+            int extended = tileSize + 2 * radius;
+            laplacian = new int[extended * extended];
+            rowSums = new int[extended * tileSize];
+            sums = new int[tileSize * tileSize];
+            best = new int[tileSize * tileSize];
+            index = new byte[tileSize * tileSize];
+        }
+    }
+}
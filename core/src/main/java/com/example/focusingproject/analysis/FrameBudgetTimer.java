@@ -0,0 +1,77 @@
+package com.example.focusingproject.analysis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks how long per-frame work takes against a frame budget. Safe to read from any thread while a
+ * single thread records.
+ */
+public class FrameBudgetTimer {
+
+    /**
+     * One frame at 30 fps.
+     */
+    public static final long DEFAULT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(33);
+
+    private static final double SMOOTHING = 0.1;
+
+    private final long budgetNanos;
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+    private volatile double averageNanos;
+    private volatile long frames;
+    private volatile long overBudgetFrames;
+
+    public FrameBudgetTimer() {
+        this(DEFAULT_BUDGET_NANOS);
+    }
+
+    public FrameBudgetTimer(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    public void record(long nanos) {
+        lastNanos = nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        averageNanos = frames == 0 ? nanos : averageNanos + SMOOTHING * (nanos - averageNanos);
+        frames++;
+        if (nanos > budgetNanos) {
+            overBudgetFrames++;
+        }
+    }
+
+    public void reset() {
+        lastNanos = 0;
+        maxNanos = 0;
+        averageNanos = 0;
+        frames = 0;
+        overBudgetFrames = 0;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Exponentially smoothed frame time.
+     */
+    public double getAverageNanos() {
+        return averageNanos;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getOverBudgetFrames() {
+        return overBudgetFrames;
+    }
+}
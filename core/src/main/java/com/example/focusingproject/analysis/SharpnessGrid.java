@@ -0,0 +1,94 @@
+package com.example.focusingproject.analysis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Coarse map of where a frame is in focus. The luma plane is split into tiles, each tile gets a
+ * {@link FocusMetric} value, and values are quantised into a few levels relative to the sharpest tile.
+ * A tile counts as changed only when its level changes, so a stable scene causes no redraws. All
+ * storage is allocated up front.
+ */
+public class SharpnessGrid {
+
+    public static final int LEVELS = 8;
+
+    /**
+     * Metric value below which the sharpest tile is still treated as noise, so a featureless frame
+     * does not light up.
+     */
+    private static final double NOISE_FLOOR = 50;
+
+    private final int columns;
+    private final int rows;
+    private final double[] values;
+    private final int[] levels;
+    private final boolean[] changed;
+    private int changedCount;
+
+    public SharpnessGrid(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        values = new double[columns * rows];
+        levels = new int[columns * rows];
+        changed = new boolean[columns * rows];
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Recomputes every tile from a luma plane.
+     *
+     * @return number of tiles whose level changed
+     */
+    public int update(ByteBuffer plane, int width, int height, int rowStride, int pixelStride,
+                      FocusMetric metric, int step) {
+        double max = NOISE_FLOOR;
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int tileHeight = (row + 1) * height / rows - top;
+            for (int column = 0; column < columns; column++) {
+                int left = column * width / columns;
+                int tileWidth = (column + 1) * width / columns - left;
+                double value = metric.evaluate(plane, rowStride, pixelStride, left, top, tileWidth, tileHeight, step);
+                values[row * columns + column] = value;
+                max = Math.max(max, value);
+            }
+        }
+
+        changedCount = 0;
+        for (int i = 0; i < values.length; i++) {
+            int level = (int) Math.min(LEVELS - 1, values[i] / max * LEVELS);
+            changed[i] = level != levels[i];
+            if (changed[i]) {
+                levels[i] = level;
+                changedCount++;
+            }
+        }
+        return changedCount;
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public boolean isChanged(int column, int row) {
+        return changed[row * columns + column];
+    }
+
+    /**
+     * @return level between 0 (blurry) and {@link #LEVELS} - 1 (as sharp as the sharpest tile)
+     */
+    public int getLevel(int column, int row) {
+        return levels[row * columns + column];
+    }
+
+    public double getValue(int column, int row) {
+        return values[row * columns + column];
+    }
+}
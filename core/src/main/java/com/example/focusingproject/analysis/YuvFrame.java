@@ -0,0 +1,65 @@
+package com.example.focusingproject.analysis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A YUV 4:2:0 frame copied out of a camera image into tightly packed planes (I420), so it outlives
+ * the image and can be processed on any thread. Chroma planes are half the luma size in each
+ * direction, rounded up.
+ */
+public class YuvFrame {
+
+    public final int width;
+    public final int height;
+    public final byte[] y;
+    public final byte[] u;
+    public final byte[] v;
+
+    public YuvFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+        y = new byte[width * height];
+        u = new byte[getChromaWidth() * getChromaHeight()];
+        v = new byte[getChromaWidth() * getChromaHeight()];
+    }
+
+    public int getChromaWidth() {
+        return (width + 1) / 2;
+    }
+
+    public int getChromaHeight() {
+        return (height + 1) / 2;
+    }
+
+    /**
+     * Copies one plane of a camera image, dropping row padding and interleaving.
+     */
+    public static void copyPlane(ByteBuffer source, int rowStride, int pixelStride,
+                                 int width, int height, byte[] destination) {
+        for (int row = 0; row < height; row++) {
+            int offset = row * rowStride;
+            if (pixelStride == 1) {
+                source.position(offset);
+                source.get(destination, row * width, width);
+            } else {
+                for (int column = 0; column < width; column++) {
+                    destination[row * width + column] = source.get(offset + column * pixelStride);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the frame as NV21, the layout {@code android.graphics.YuvImage} compresses.
+     *
+     * @param out at least {@code y.length + 2 * u.length} bytes
+     */
+    public void toNv21(byte[] out) {
+        System.arraycopy(y, 0, out, 0, y.length);
+        int offset = y.length;
+        for (int i = 0; i < v.length; i++) {
+            out[offset++] = v[i];
+            out[offset++] = u[i];
+        }
+    }
+}
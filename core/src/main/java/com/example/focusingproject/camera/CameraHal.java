@@ -0,0 +1,146 @@
+package com.example.focusingproject.camera;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The camera operations the capture pipeline uses, once a camera is open: configuring a session with a
+ * set of outputs, submitting repeating requests and bursts to it, and receiving one {@link FocusFrame}
+ * per completed capture. The app implements it on camera2; {@link FakeCameraDevice} implements it on a
+ * virtual clock, so request rates, focus convergence and recording latency can be measured on a plain
+ * JVM. Finding and opening a camera is left to the caller.
+ * <p>
+ * Callbacks arrive on the thread the implementation is bound to, the camera thread in the app and the
+ * thread advancing the clock for the fake.
+ */
+public interface CameraHal {
+
+    enum Output {
+        PREVIEW,
+        RECORDER,
+        ANALYSIS,
+        STACK
+    }
+
+    enum Template {
+        PREVIEW,
+        RECORD,
+        STILL_CAPTURE
+    }
+
+    /**
+     * What to capture: which outputs a frame goes to and where to put the lens, with manual focus and
+     * auto exposure. Immutable; the {@code with} methods return a copy. The tag comes back with the
+     * results of the request.
+     */
+    final class Request {
+
+        public final Template template;
+        public final float focusDistance;
+        public final Object tag;
+        private final Set<Output> targets;
+
+        public Request(Template template) {
+            this(template, Collections.unmodifiableSet(EnumSet.noneOf(Output.class)), Float.NaN, null);
+        }
+
+        private Request(Template template, Set<Output> targets, float focusDistance, Object tag) {
+            this.template = template;
+            this.targets = targets;
+            this.focusDistance = focusDistance;
+            this.tag = tag;
+        }
+
+        public boolean hasTarget(Output output) {
+            return targets.contains(output);
+        }
+
+        public Set<Output> getTargets() {
+            return targets;
+        }
+
+        public Request withTarget(Output output, boolean target) {
+            if (targets.contains(output) == target) {
+                return this;
+            }
+            Set<Output> changed = targets.isEmpty() ? EnumSet.noneOf(Output.class) : EnumSet.copyOf(targets);
+            if (target) {
+                changed.add(output);
+            } else {
+                changed.remove(output);
+            }
+            return new Request(template, Collections.unmodifiableSet(changed), focusDistance, tag);
+        }
+
+        /**
+         * @param focusDistance where to put the lens, or {@link Float#NaN} to leave it to the template
+         */
+        public Request withFocusDistance(float focusDistance) {
+            return new Request(template, targets, focusDistance, tag);
+        }
+
+        public Request withTag(Object tag) {
+            return new Request(template, targets, focusDistance, tag);
+        }
+    }
+
+    interface Device {
+
+        /**
+         * Replaces the current session, if any, with one streaming to the given outputs.
+         */
+        void createSession(Set<Output> outputs, SessionCallback callback);
+
+        void close();
+    }
+
+    interface SessionCallback {
+
+        void onConfigured(Session session);
+
+        void onConfigureFailed();
+    }
+
+    /**
+     * A configured session. Submissions report failure by returning {@code false}; the session is
+     * unusable afterwards.
+     */
+    interface Session {
+
+        boolean setRepeatingRequest(Request request, ResultCallback callback);
+
+        /**
+         * Repeats the requests in order, one per frame.
+         */
+        boolean setRepeatingBurst(List<Request> requests, ResultCallback callback);
+
+        /**
+         * Captures the requests once, back to back, ahead of the repeating request.
+         */
+        boolean captureBurst(List<Request> requests, ResultCallback callback);
+
+        void close();
+    }
+
+    interface ResultCallback {
+
+        /**
+         * @param timestampNanos sensor timestamp of the start of exposure
+         */
+        void onCaptureStarted(Request request, long frameNumber, long timestampNanos);
+
+        /**
+         * @param frame only valid during the call
+         */
+        void onCaptureCompleted(Request request, FocusFrame frame);
+
+        void onCaptureFailed(Request request, long frameNumber);
+
+        /**
+         * The frame completed, but its buffer for the output never arrived.
+         */
+        void onCaptureBufferLost(Request request, Output output, long frameNumber);
+    }
+}
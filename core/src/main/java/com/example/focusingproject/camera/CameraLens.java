@@ -0,0 +1,84 @@
+package com.example.focusingproject.camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A lens the user can pick: either a camera listed by the camera service, or one physical camera of a
+ * logical multi-camera, such as the telephoto or macro module, which is opened through its logical
+ * camera and streamed from by physical id. Immutable.
+ */
+public final class CameraLens {
+
+    /**
+     * The camera to open.
+     */
+    public final String cameraId;
+    /**
+     * The physical camera to stream from, or {@code null} to stream from {@link #cameraId} itself.
+     */
+    public final String physicalCameraId;
+    /**
+     * Characteristics of the lens streamed from.
+     */
+    public final CameraProfile profile;
+
+    public CameraLens(String cameraId, String physicalCameraId, CameraProfile profile) {
+        this.cameraId = cameraId;
+        this.physicalCameraId = physicalCameraId;
+        this.profile = profile;
+    }
+
+    /**
+     * @return an id unique among the lenses of this device
+     */
+    public String getId() {
+        return null == physicalCameraId ? cameraId : cameraId + "/" + physicalCameraId;
+    }
+
+    /**
+     * Lists the lenses in the cache: every listed camera, followed by the physical cameras of each
+     * logical one that are not listed themselves. Cameras without a cached profile are left out.
+     *
+     * @return the lenses, empty if the cache knows no cameras
+     */
+    public static List<CameraLens> enumerate(CameraProfileCache cache) {
+        List<String> cameraIds = cache.getCameraIds();
+        Set<String> listed = new HashSet<>(cameraIds);
+        List<CameraLens> lenses = new ArrayList<>();
+        for (String cameraId : cameraIds) {
+            CameraProfile profile = cache.get(cameraId);
+            if (null == profile) {
+                continue;
+            }
+            lenses.add(new CameraLens(cameraId, null, profile));
+            for (String physicalId : profile.getPhysicalCameraIds()) {
+                CameraProfile physical = cache.get(physicalId);
+                if (null != physical && !listed.contains(physicalId)) {
+                    lenses.add(new CameraLens(cameraId, physicalId, physical));
+                }
+            }
+        }
+        return Collections.unmodifiableList(lenses);
+    }
+
+    /**
+     * @return the index of the lens with the given id, or 0 if there is none
+     */
+    public static int indexOf(List<CameraLens> lenses, String id) {
+        for (int i = 0; i < lenses.size(); i++) {
+            if (lenses.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return getId();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.focusingproject.camera;
+
+/**
+ * What the app needs to know about one camera before opening it: focus range and calibration, lens,
+ * orientation, timestamp source, the output size tables with their durations and, for a logical
+ * multi-camera, the ids of its physical cameras. Reading these from the camera service is slow, so
+ * they are kept in a {@link CameraProfileCache} across launches. Immutable.
+ */
+public class CameraProfile {
+
+    /*
+     * The camera's LENS_FACING values.
+     */
+    public static final int LENS_FACING_FRONT = 0;
+    public static final int LENS_FACING_BACK = 1;
+    public static final int LENS_FACING_EXTERNAL = 2;
+
+    private final String cameraId;
+    private final float minFocusDistance;
+    private final int sensorOrientation;
+    private final boolean realtimeTimestamps;
+    private final SizeSelector.Candidate[] videoSizes;
+    private final SizeSelector.Candidate[] previewSizes;
+    private final SizeSelector.Candidate[] yuvSizes;
+    private final int lensFacing;
+    private final float focalLength;
+    private final float hyperfocalDistance;
+    private final FocusCalibration.Quality focusCalibration;
+    private final String[] physicalCameraIds;
+
+    /**
+     * @param minFocusDistance closest focus distance in diopters, 0 for a fixed-focus lens, or
+     *                         {@link Float#NaN} if unknown
+     * @param videoSizes       sizes for an encoder surface
+     * @param previewSizes     sizes for a preview texture
+     * @param yuvSizes         sizes for YUV_420_888 image readers
+     */
+    public CameraProfile(String cameraId, float minFocusDistance, int sensorOrientation, boolean realtimeTimestamps,
+                         SizeSelector.Candidate[] videoSizes, SizeSelector.Candidate[] previewSizes,
+                         SizeSelector.Candidate[] yuvSizes) {
+        this(cameraId, minFocusDistance, sensorOrientation, realtimeTimestamps, videoSizes, previewSizes, yuvSizes,
+                LENS_FACING_BACK, Float.NaN, Float.NaN, FocusCalibration.Quality.UNCALIBRATED, new String[0]);
+    }
+
+    private CameraProfile(String cameraId, float minFocusDistance, int sensorOrientation, boolean realtimeTimestamps,
+                          SizeSelector.Candidate[] videoSizes, SizeSelector.Candidate[] previewSizes,
+                          SizeSelector.Candidate[] yuvSizes, int lensFacing, float focalLength,
+                          float hyperfocalDistance, FocusCalibration.Quality focusCalibration,
+                          String[] physicalCameraIds) {
+        this.cameraId = cameraId;
+        this.minFocusDistance = minFocusDistance;
+        this.sensorOrientation = sensorOrientation;
+        this.realtimeTimestamps = realtimeTimestamps;
+        this.videoSizes = videoSizes;
+        this.previewSizes = previewSizes;
+        this.yuvSizes = yuvSizes;
+        this.lensFacing = lensFacing;
+        this.focalLength = focalLength;
+        this.hyperfocalDistance = hyperfocalDistance;
+        this.focusCalibration = focusCalibration;
+        this.physicalCameraIds = physicalCameraIds;
+    }
+
+    /**
+     * @param lensFacing         one of the LENS_FACING_ constants
+     * @param focalLength        shortest focal length in millimeters, or {@link Float#NaN} if unknown
+     * @param hyperfocalDistance in the units of the focus distances, or {@link Float#NaN} if unknown
+     */
+    public CameraProfile withLens(int lensFacing, float focalLength, float hyperfocalDistance,
+                                  FocusCalibration.Quality focusCalibration) {
+        return new CameraProfile(cameraId, minFocusDistance, sensorOrientation, realtimeTimestamps, videoSizes,
+                previewSizes, yuvSizes, lensFacing, focalLength, hyperfocalDistance, focusCalibration,
+                physicalCameraIds);
+    }
+
+    /**
+     * @param physicalCameraIds the physical cameras behind this logical camera
+     */
+    public CameraProfile withPhysicalCameraIds(String... physicalCameraIds) {
+        return new CameraProfile(cameraId, minFocusDistance, sensorOrientation, realtimeTimestamps, videoSizes,
+                previewSizes, yuvSizes, lensFacing, focalLength, hyperfocalDistance, focusCalibration,
+                physicalCameraIds.clone());
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public float getMinFocusDistance() {
+        return minFocusDistance;
+    }
+
+    public int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    public boolean hasRealtimeTimestamps() {
+        return realtimeTimestamps;
+    }
+
+    public int getLensFacing() {
+        return lensFacing;
+    }
+
+    public float getFocalLength() {
+        return focalLength;
+    }
+
+    public float getHyperfocalDistance() {
+        return hyperfocalDistance;
+    }
+
+    public FocusCalibration.Quality getFocusCalibration() {
+        return focusCalibration;
+    }
+
+    /**
+     * @return the physical cameras behind this one, empty unless it is a logical multi-camera
+     */
+    public String[] getPhysicalCameraIds() {
+        return physicalCameraIds.clone();
+    }
+
+    public SizeSelector.Candidate[] getVideoSizes() {
+        return videoSizes.clone();
+    }
+
+    public SizeSelector.Candidate[] getPreviewSizes() {
+        return previewSizes.clone();
+    }
+
+    public SizeSelector.Candidate[] getYuvSizes() {
+        return yuvSizes.clone();
+    }
+
+    /**
+     * @return minimum frame duration of a YUV output of the given size, or 0 if it is not listed
+     */
+    public long getYuvMinFrameDuration(int width, int height) {
+        for (SizeSelector.Candidate size : yuvSizes) {
+            if (size.width == width && size.height == height) {
+                return size.minFrameDurationNanos;
+            }
+        }
+        return 0;
+    }
+}
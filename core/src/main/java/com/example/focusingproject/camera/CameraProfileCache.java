@@ -0,0 +1,176 @@
+package com.example.focusingproject.camera;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the camera id list and {@link CameraProfile}s of this device in a file, so that a launch can
+ * open the camera without first querying the camera service. The file is tied to the build
+ * fingerprint: an OS update may change what the cameras report, and then the cache starts over empty.
+ * A missing, corrupt or outdated file also reads as empty. The file is replaced as a whole on save,
+ * through a temporary file, so a crash while saving cannot leave half of it behind.
+ *
+ * <pre>
+ * int magic, int version, UTF fingerprint,
+ * int idCount, UTF[idCount] ids,
+ * int profileCount, profile[profileCount]
+ * profile: UTF id, float minFocusDistance, int sensorOrientation, boolean realtimeTimestamps,
+ *          sizes video, sizes preview, sizes yuv,
+ *          int lensFacing, float focalLength, float hyperfocalDistance, int focusCalibration,
+ *          int physicalIdCount, UTF[physicalIdCount] physicalIds
+ * sizes:   int count, (int width, int height, long minFrameDuration, long stallDuration)[count]
+ * </pre>
+ */
+public class CameraProfileCache {
+
+    static final int MAGIC = 0x43505243; // "CPRC"
+    static final int VERSION = 2;
+
+    private final File file;
+    private final String fingerprint;
+    private List<String> cameraIds = Collections.emptyList();
+    private final Map<String, CameraProfile> profiles = new LinkedHashMap<>();
+
+    private CameraProfileCache(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param fingerprint identifies the OS build the cached values were read on
+     */
+    public static CameraProfileCache load(File file, String fingerprint) {
+        CameraProfileCache cache = new CameraProfileCache(file, fingerprint);
+        if (!file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                return cache;
+            }
+            List<String> ids = Arrays.asList(readIds(in));
+            int profileCount = in.readInt();
+            for (int i = 0; i < profileCount; i++) {
+                CameraProfile profile = new CameraProfile(in.readUTF(), in.readFloat(), in.readInt(),
+                        in.readBoolean(), readSizes(in), readSizes(in), readSizes(in))
+                        .withLens(in.readInt(), in.readFloat(), in.readFloat(),
+                                FocusCalibration.Quality.fromCameraValue(in.readInt()))
+                        .withPhysicalCameraIds(readIds(in));
+                cache.profiles.put(profile.getCameraId(), profile);
+            }
+            cache.cameraIds = Collections.unmodifiableList(ids);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            cache.cameraIds = Collections.emptyList();
+            cache.profiles.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * @return the cached camera ids, empty if not known
+     */
+    public synchronized List<String> getCameraIds() {
+        return cameraIds;
+    }
+
+    public synchronized void setCameraIds(List<String> cameraIds) {
+        this.cameraIds = Collections.unmodifiableList(new ArrayList<>(cameraIds));
+    }
+
+    /**
+     * @return the cached profile, or {@code null}
+     */
+    public synchronized CameraProfile get(String cameraId) {
+        return profiles.get(cameraId);
+    }
+
+    public synchronized void put(CameraProfile profile) {
+        profiles.put(profile.getCameraId(), profile);
+    }
+
+    /**
+     * Forgets everything, in memory and on disk, for when the cached values turned out to be wrong.
+     */
+    public synchronized void clear() {
+        cameraIds = Collections.emptyList();
+        profiles.clear();
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            writeIds(out, cameraIds.toArray(new String[cameraIds.size()]));
+            out.writeInt(profiles.size());
+            for (CameraProfile profile : profiles.values()) {
+                out.writeUTF(profile.getCameraId());
+                out.writeFloat(profile.getMinFocusDistance());
+                out.writeInt(profile.getSensorOrientation());
+                out.writeBoolean(profile.hasRealtimeTimestamps());
+                writeSizes(out, profile.getVideoSizes());
+                writeSizes(out, profile.getPreviewSizes());
+                writeSizes(out, profile.getYuvSizes());
+                out.writeInt(profile.getLensFacing());
+                out.writeFloat(profile.getFocalLength());
+                out.writeFloat(profile.getHyperfocalDistance());
+                out.writeInt(profile.getFocusCalibration().ordinal());
+                writeIds(out, profile.getPhysicalCameraIds());
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private static String[] readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupted id list.");
+        }
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = in.readUTF();
+        }
+        return ids;
+    }
+
+    private static void writeIds(DataOutputStream out, String[] ids) throws IOException {
+        out.writeInt(ids.length);
+        for (String id : ids) {
+            out.writeUTF(id);
+        }
+    }
+
+    private static SizeSelector.Candidate[] readSizes(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupted size table.");
+        }
+        SizeSelector.Candidate[] sizes = new SizeSelector.Candidate[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = new SizeSelector.Candidate(in.readInt(), in.readInt(), in.readLong(), in.readLong());
+        }
+        return sizes;
+    }
+
+    private static void writeSizes(DataOutputStream out, SizeSelector.Candidate[] sizes) throws IOException {
+        out.writeInt(sizes.length);
+        for (SizeSelector.Candidate size : sizes) {
+            out.writeInt(size.width);
+            out.writeInt(size.height);
+            out.writeLong(size.minFrameDurationNanos);
+            out.writeLong(size.stallDurationNanos);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.focusingproject.camera;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * The threads the camera pipeline runs on, one per {@link Role}, and nothing else: work that used to
+ * start a thread of its own is posted to one of these instead. They are started together with
+ * {@link #start()} and stopped together with {@link #stop()}, which waits for each to finish what was
+ * posted before; the owner calls both from its own lifecycle, not per session or per recording.
+ * <p>
+ * Workers are made by a {@link Factory}, so the app can run loopers where the tests run plain
+ * threads. {@link #getDiagnostics()} reports how many worker threads are alive and how many were ever
+ * started and stopped, to make a leak visible.
+ */
+public class CameraThreads<W extends CameraThreads.Worker> {
+
+    public enum Role {
+        /**
+         * Opens and closes the camera, configures sessions, submits requests and receives results.
+         */
+        CONTROL("CameraControl"),
+        /**
+         * Receives analysis and stack frames and measures sharpness.
+         */
+        ANALYSIS("CameraAnalysis"),
+        /**
+         * Runs the encoder and everything that touches files.
+         */
+        IO("CameraIo");
+
+        private final String threadName;
+
+        Role(String threadName) {
+            this.threadName = threadName;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+    }
+
+    /**
+     * A single thread that runs posted tasks in order.
+     */
+    public interface Worker extends Executor {
+
+        boolean isAlive();
+
+        /**
+         * Runs what was posted so far, then ends the thread and waits for it.
+         */
+        void quit() throws InterruptedException;
+    }
+
+    public interface Factory<W extends Worker> {
+
+        /**
+         * @return a started worker whose thread has the given name
+         */
+        W start(String name);
+    }
+
+    public static final class Diagnostics {
+
+        private final Map<Role, Integer> alive;
+        public final int started;
+        public final int stopped;
+
+        Diagnostics(Map<Role, Integer> alive, int started, int stopped) {
+            this.alive = alive;
+            this.started = started;
+            this.stopped = stopped;
+        }
+
+        /**
+         * @return how many threads of the role are alive, 0 or 1 unless one leaked
+         */
+        public int getAliveCount(Role role) {
+            Integer count = alive.get(role);
+            return count != null ? count : 0;
+        }
+
+        public int getAliveCount() {
+            int total = 0;
+            for (int count : alive.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return "alive " + alive + ", started " + started + ", stopped " + stopped;
+        }
+    }
+
+    private static final Role[] ROLES = Role.values();
+
+    private final Factory<W> factory;
+    private final Map<Role, W> workers = new EnumMap<>(Role.class);
+    private int started;
+    private int stopped;
+
+    public CameraThreads(Factory<W> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Starts the workers that are not running. Does nothing if all are.
+     */
+    public synchronized void start() {
+        for (Role role : ROLES) {
+            W worker = workers.get(role);
+            if (worker == null || !worker.isAlive()) {
+                workers.put(role, factory.start(role.getThreadName()));
+                started++;
+            }
+        }
+    }
+
+    /**
+     * Stops all workers, each after it has run what was posted to it. Must not be called on a worker.
+     */
+    public synchronized void stop() {
+        for (Role role : ROLES) {
+            W worker = workers.remove(role);
+            if (worker == null) {
+                continue;
+            }
+            try {
+                worker.quit();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+            }
+            stopped++;
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return !workers.isEmpty();
+    }
+
+    /**
+     * @throws IllegalStateException if the threads are not started
+     */
+    public synchronized W get(Role role) {
+        W worker = workers.get(role);
+        if (worker == null) {
+            throw new IllegalStateException(role + " thread is not running.");
+        }
+        return worker;
+    }
+
+    public synchronized Diagnostics getDiagnostics() {
+        Map<Role, Integer> alive = new EnumMap<>(Role.class);
+        for (Role role : ROLES) {
+            alive.put(role, countAliveThreads(role.getThreadName()));
+        }
+        return new Diagnostics(alive, started, stopped);
+    }
+
+    /**
+     * Counts the live threads in this process with the given name, wherever they were started.
+     */
+    static int countAliveThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && name.equals(thread.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.focusingproject.camera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the repeating request of a {@link CameraHal.Session} and drives the lens with a
+ * {@link FocusController}: every completed frame goes to the controller, and each new target it returns
+ * is submitted as a new repeating request. A {@link ScheduledFocusController} is instead expanded into
+ * one request per frame and submitted once as a repeating burst, and again only when its schedule
+ * goes stale, which is checked once per period.
+ * <p>
+ * With sharpness joining on, the controller is driven by the newest frame that has both its capture
+ * result and the sharpness measured on the analysis stream, which a {@link FrameHistory} brings
+ * together; a frame without its sharpness yet is held back.
+ * <p>
+ * Every callback and submission is also counted into {@link CaptureMetrics}.
+ * <p>
+ * Used on the camera thread only, apart from {@link #setController}, {@link #setJoinSharpness} and
+ * reading the metrics.
+ */
+public class CaptureLoop implements CameraHal.ResultCallback {
+
+    public interface Listener {
+
+        /**
+         * Called for every completed frame, after the controller has seen it.
+         */
+        void onCaptureCompleted(CameraHal.Request request, FocusFrame frame);
+
+        /**
+         * Called when a frame is complete with its sharpness, before the controller sees it.
+         */
+        void onFrameAnalysed(FocusFrame frame);
+
+        void onCaptureFailed(CameraHal.Request request, long frameNumber);
+    }
+
+    private final FrameHistory frameHistory;
+    private final FocusFrame analysedFrame = new FocusFrame();
+    private final Listener listener;
+    private final CaptureMetrics metrics = new CaptureMetrics();
+    private final CaptureMetrics.Clock clock;
+    private CameraHal.Session session;
+    private CameraHal.Request request;
+    private volatile FocusController controller;
+    private volatile LensResponseModel lensResponse;
+    private volatile boolean joinSharpness;
+    private float minFocusDistance = Float.NaN;
+    private boolean suspended;
+    private long submittedRequests;
+    private int scheduledFrames;
+
+    public CaptureLoop(FrameHistory frameHistory, Listener listener) {
+        this(frameHistory, listener, CaptureMetrics.SYSTEM_CLOCK);
+    }
+
+    /**
+     * @param clock times submissions and results for the metrics
+     */
+    public CaptureLoop(FrameHistory frameHistory, Listener listener, CaptureMetrics.Clock clock) {
+        this.frameHistory = frameHistory;
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * Takes over a configured session with the request to repeat on it. Nothing is submitted until
+     * {@link #restart()}.
+     */
+    public void attach(CameraHal.Session session, CameraHal.Request request) {
+        this.session = session;
+        this.request = request;
+    }
+
+    /**
+     * Forgets the session, for when it is closed or replaced.
+     */
+    public void detach() {
+        session = null;
+    }
+
+    public CameraHal.Session getSession() {
+        return session;
+    }
+
+    /**
+     * @return the request repeated on the session, or {@code null} if none was attached yet
+     */
+    public CameraHal.Request getRequest() {
+        return request;
+    }
+
+    /**
+     * Replaces the repeated request, for changes of targets or tag. Takes effect with the next
+     * submission; see {@link #resubmit()}.
+     */
+    public void setRequest(CameraHal.Request request) {
+        this.request = request;
+    }
+
+    public FocusController getController() {
+        return controller;
+    }
+
+    /**
+     * Takes effect with the next frame for a controller driven frame by frame, and with
+     * {@link #restart()} for a scheduled one.
+     */
+    public void setController(FocusController controller) {
+        this.controller = controller;
+    }
+
+    public LensResponseModel getLensResponse() {
+        return lensResponse;
+    }
+
+    /**
+     * @param lensResponse learns from every completed frame; {@code null} for none
+     */
+    public void setLensResponse(LensResponseModel lensResponse) {
+        this.lensResponse = lensResponse;
+    }
+
+    /**
+     * @param minFocusDistance closest focus distance of the lens; controllers only run when it is
+     *                         positive
+     */
+    public void setMinFocusDistance(float minFocusDistance) {
+        this.minFocusDistance = minFocusDistance;
+    }
+
+    public void setJoinSharpness(boolean joinSharpness) {
+        this.joinSharpness = joinSharpness;
+    }
+
+    /**
+     * Stops driving the lens and submitting requests, while another capture, such as a focus stack,
+     * owns the session.
+     */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public CaptureMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return repeating requests and bursts submitted since this loop was made
+     */
+    public long getSubmittedRequests() {
+        return submittedRequests;
+    }
+
+    /**
+     * Starts the current controller and submits its requests.
+     */
+    public void restart() {
+        if (!canSubmit()) {
+            return;
+        }
+        FocusController current = controller;
+        if (focusControllable() && current != null) {
+            current.start(minFocusDistance);
+            if (current instanceof ScheduledFocusController) {
+                float[] distances = ((ScheduledFocusController) current).getSchedule();
+                List<CameraHal.Request> burst = new ArrayList<>(distances.length);
+                for (float distance : distances) {
+                    burst.add(request.withFocusDistance(distance));
+                }
+                submittedRequests++;
+                scheduledFrames = 0;
+                metrics.onRequestSubmitted(burst.get(0), clock.nanoTime());
+                session.setRepeatingBurst(burst, this);
+                return;
+            }
+        }
+        submit();
+    }
+
+    /**
+     * Submits the current request again after its targets changed, without restarting a controller
+     * that is driven frame by frame.
+     */
+    public void resubmit() {
+        if (!canSubmit()) {
+            return;
+        }
+        if (controller instanceof ScheduledFocusController) {
+            restart();
+            return;
+        }
+        submit();
+    }
+
+    @Override
+    public void onCaptureStarted(CameraHal.Request request, long frameNumber, long timestampNanos) {
+        metrics.onCaptureStarted(timestampNanos);
+    }
+
+    @Override
+    public void onCaptureCompleted(CameraHal.Request request, FocusFrame frame) {
+        metrics.onCaptureCompleted(request, frame, clock.nanoTime());
+        LensResponseModel response = lensResponse;
+        if (response != null) {
+            response.onFrame(frame);
+        }
+        refreshSchedule();
+        drive(frame);
+        listener.onCaptureCompleted(request, frame);
+    }
+
+    @Override
+    public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+        metrics.onCaptureFailed();
+        listener.onCaptureFailed(request, frameNumber);
+    }
+
+    @Override
+    public void onCaptureBufferLost(CameraHal.Request request, CameraHal.Output output, long frameNumber) {
+        metrics.onBufferLost();
+    }
+
+    /**
+     * Starts a scheduled controller again once per period if its schedule went stale, so a sweep picks
+     * up what the lens response model learned while it ran.
+     */
+    private void refreshSchedule() {
+        FocusController current = controller;
+        if (!(current instanceof ScheduledFocusController) || !canSubmit() || !focusControllable()) {
+            return;
+        }
+        ScheduledFocusController scheduled = (ScheduledFocusController) current;
+        float[] schedule = scheduled.getSchedule();
+        if (schedule == null || ++scheduledFrames < schedule.length) {
+            return;
+        }
+        scheduledFrames = 0;
+        if (scheduled.isScheduleStale()) {
+            restart();
+        }
+    }
+
+    private void drive(FocusFrame frame) {
+        FocusController current = controller;
+        if (!focusControllable() || current == null || current instanceof ScheduledFocusController || suspended) {
+            return;
+        }
+        if (joinSharpness) {
+            // Sharpness arrives separately and usually a little later; drive the controller with the
+            // newest frame that has both its capture result and its sharpness.
+            frameHistory.putMetadata(frame);
+            if (!frameHistory.takeLatestComplete(analysedFrame)) {
+                return;
+            }
+            frame = analysedFrame;
+            listener.onFrameAnalysed(frame);
+        }
+        float target = current.onFrame(frame);
+        if (Float.isNaN(target) || null == session) {
+            return;
+        }
+        request = request.withFocusDistance(target);
+        metrics.onFocusCommand(target, clock.nanoTime());
+        submit();
+    }
+
+    private boolean canSubmit() {
+        return null != session && null != request && !suspended;
+    }
+
+    private boolean focusControllable() {
+        return minFocusDistance > 0;
+    }
+
+    private void submit() {
+        submittedRequests++;
+        metrics.onRequestSubmitted(request, clock.nanoTime());
+        session.setRepeatingRequest(request, this);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.focusingproject.camera;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the capture callbacks see, for performance reports: the interval between frame starts, the time
+ * from submitting a request to its first result, how long the lens takes to settle after a focus
+ * command, and how many captures failed or lost a buffer. Recorded from the camera thread without
+ * allocating or locking; {@link #snapshot()} can be taken from any thread.
+ * <p>
+ * Times of submissions, commands and results come from a {@link Clock}, so that a simulated camera
+ * can be measured on its own clock. Frame intervals come from sensor timestamps.
+ */
+public class CaptureMetrics {
+
+    public interface Clock {
+
+        long nanoTime();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final LatencyHistogram frameInterval = new LatencyHistogram();
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final LatencyHistogram focusSettle = new LatencyHistogram();
+    private final AtomicLong framesStarted = new AtomicLong();
+    private final AtomicLong framesCompleted = new AtomicLong();
+    private final AtomicLong framesFailed = new AtomicLong();
+    private final AtomicLong buffersLost = new AtomicLong();
+
+    // Only touched by the camera thread.
+    private long lastStartTimestamp = -1;
+    private Object submittedRequest;
+    private long submittedNanos;
+    private float commandedFocusDistance = Float.NaN;
+    private long commandNanos;
+
+    /**
+     * @param timestampNanos sensor timestamp of the start of exposure
+     */
+    public void onCaptureStarted(long timestampNanos) {
+        framesStarted.incrementAndGet();
+        if (lastStartTimestamp >= 0) {
+            frameInterval.record(timestampNanos - lastStartTimestamp);
+        }
+        lastStartTimestamp = timestampNanos;
+    }
+
+    /**
+     * Starts timing a request or burst, identified by its first request, up to its first result.
+     */
+    public void onRequestSubmitted(Object request, long nowNanos) {
+        submittedRequest = request;
+        submittedNanos = nowNanos;
+    }
+
+    /**
+     * Starts timing the lens up to the first stationary frame requested at {@code focusDistance}. A
+     * newer command replaces one that has not settled yet.
+     */
+    public void onFocusCommand(float focusDistance, long nowNanos) {
+        commandedFocusDistance = focusDistance;
+        commandNanos = nowNanos;
+    }
+
+    public void onCaptureCompleted(Object request, FocusFrame frame, long nowNanos) {
+        framesCompleted.incrementAndGet();
+        if (request != null && request == submittedRequest) {
+            requestLatency.record(nowNanos - submittedNanos);
+            submittedRequest = null;
+        }
+        if (!Float.isNaN(commandedFocusDistance) && frame.lensState == FocusFrame.LENS_STATE_STATIONARY
+                && frame.requestedFocusDistance == commandedFocusDistance) {
+            focusSettle.record(nowNanos - commandNanos);
+            commandedFocusDistance = Float.NaN;
+        }
+    }
+
+    public void onCaptureFailed() {
+        framesFailed.incrementAndGet();
+    }
+
+    public void onBufferLost() {
+        buffersLost.incrementAndGet();
+    }
+
+    /**
+     * Starts over, say with a new recording. Call on the camera thread.
+     */
+    public void reset() {
+        frameInterval.reset();
+        requestLatency.reset();
+        focusSettle.reset();
+        framesStarted.set(0);
+        framesCompleted.set(0);
+        framesFailed.set(0);
+        buffersLost.set(0);
+        lastStartTimestamp = -1;
+        submittedRequest = null;
+        commandedFocusDistance = Float.NaN;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(framesStarted.get(), framesCompleted.get(), framesFailed.get(), buffersLost.get(),
+                frameInterval.snapshot(), requestLatency.snapshot(), focusSettle.snapshot());
+    }
+
+    public static final class Snapshot {
+
+        public final long framesStarted;
+        public final long framesCompleted;
+        public final long framesFailed;
+        public final long buffersLost;
+        public final LatencyHistogram.Snapshot frameInterval;
+        public final LatencyHistogram.Snapshot requestLatency;
+        public final LatencyHistogram.Snapshot focusSettle;
+
+        Snapshot(long framesStarted, long framesCompleted, long framesFailed, long buffersLost,
+                 LatencyHistogram.Snapshot frameInterval, LatencyHistogram.Snapshot requestLatency,
+                 LatencyHistogram.Snapshot focusSettle) {
+            this.framesStarted = framesStarted;
+            this.framesCompleted = framesCompleted;
+            this.framesFailed = framesFailed;
+            this.buffersLost = buffersLost;
+            this.frameInterval = frameInterval;
+            this.requestLatency = requestLatency;
+            this.focusSettle = focusSettle;
+        }
+
+        /**
+         * @return one "name value" line per counter and per histogram, times in milliseconds
+         */
+        public String toReport() {
+            return String.format(Locale.US, "frames_started %d\nframes_completed %d\nframes_failed %d\n"
+                            + "buffers_lost %d\nframe_interval_ms %s\nrequest_latency_ms %s\nfocus_settle_ms %s\n",
+                    framesStarted, framesCompleted, framesFailed, buffersLost, frameInterval, requestLatency,
+                    focusSettle);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Tracks the lifecycle of the camera device and its capture session, so that requests arriving in
+ * the wrong state, such as a record toggle while a session is still being configured, are refused
+ * instead of racing the camera callbacks. It also times how long a recording takes to start: from the
+ * request to the first frame delivered to the recorder. Thread-safe.
+ */
+public class CaptureSessionState {
+
+    public enum State {
+        CLOSED,
+        OPENING,
+        /**
+         * A capture session is being created; no requests can be submitted.
+         */
+        CONFIGURING,
+        PREVIEW,
+        RECORDING
+    }
+
+    private State state = State.CLOSED;
+    private int configuredSessions;
+    private long recordRequestedNanos;
+    private volatile boolean awaitingRecordedFrame;
+    private volatile long recordStartLatencyNanos = -1;
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return whether the transition is allowed and was made
+     */
+    public synchronized boolean moveTo(State next) {
+        if (!canMove(state, next)) {
+            return false;
+        }
+        if (next == State.CONFIGURING) {
+            configuredSessions++;
+        }
+        if (next != State.RECORDING && next != State.CONFIGURING) {
+            awaitingRecordedFrame = false;
+        }
+        state = next;
+        return true;
+    }
+
+    /**
+     * Marks the moment a recording was asked for; the latency clock runs until
+     * {@link #onRecordedFrame(long)}.
+     */
+    public synchronized void onRecordRequested(long nanoTime) {
+        recordRequestedNanos = nanoTime;
+        awaitingRecordedFrame = true;
+    }
+
+    /**
+     * Called for every frame that went to the recorder.
+     *
+     * @return {@code true} for the first frame of a recording, once its start latency is known
+     */
+    public boolean onRecordedFrame(long nanoTime) {
+        if (!awaitingRecordedFrame) {
+            return false;
+        }
+        synchronized (this) {
+            if (!awaitingRecordedFrame) {
+                return false;
+            }
+            awaitingRecordedFrame = false;
+            recordStartLatencyNanos = nanoTime - recordRequestedNanos;
+            return true;
+        }
+    }
+
+    /**
+     * @return latency of the most recent recording start, or -1 if none has started yet
+     */
+    public long getRecordStartLatencyNanos() {
+        return recordStartLatencyNanos;
+    }
+
+    /**
+     * @return number of capture sessions configured since creation
+     */
+    public synchronized int getConfiguredSessionCount() {
+        return configuredSessions;
+    }
+
+    private static boolean canMove(State from, State to) {
+        if (to == State.CLOSED) {
+            return true;
+        }
+        switch (from) {
+            case CLOSED:
+                return to == State.OPENING;
+            case OPENING:
+                return to == State.CONFIGURING;
+            case CONFIGURING:
+                return to == State.CONFIGURING || to == State.PREVIEW || to == State.RECORDING;
+            case PREVIEW:
+                return to == State.CONFIGURING || to == State.RECORDING;
+            case RECORDING:
+                return to == State.CONFIGURING || to == State.PREVIEW;
+            default:
+                return false;
+        }
+    }
+}
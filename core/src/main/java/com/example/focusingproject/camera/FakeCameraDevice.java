@@ -0,0 +1,419 @@
+package com.example.focusingproject.camera;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A deterministic {@link CameraHal.Device} on a virtual clock, for running the capture pipeline on a
+ * plain JVM. Nothing happens until the clock is advanced with {@link #advanceBy(long)}; sessions are
+ * then configured, frames start and results are delivered, all on the calling thread and in time
+ * order.
+ * <p>
+ * The timing follows a real device: a session takes a while to configure, a new request only reaches
+ * the sensor a few frames after it was submitted, and a result arrives some time after its frame
+ * started. The lens moves towards the requested distance at a fixed speed and is reported moving until
+ * it gets there. Frames that go to the analysis output get a sharpness that peaks where the lens
+ * matches the distance of the simulated scene.
+ */
+public class FakeCameraDevice implements CameraHal.Device {
+
+    public static final long DEFAULT_CONFIGURE_LATENCY_NANOS = 150000000L;
+    public static final int DEFAULT_REQUEST_LATENCY_FRAMES = 2;
+    public static final int DEFAULT_RESULT_LATENCY_FRAMES = 3;
+
+    private static final float SHARPNESS_FALLOFF = 4f;
+
+    private final float minFocusDistance;
+    private final float lensSpeed;
+    private final long frameDurationNanos;
+    private long configureLatencyNanos = DEFAULT_CONFIGURE_LATENCY_NANOS;
+    private int requestLatencyFrames = DEFAULT_REQUEST_LATENCY_FRAMES;
+    private long resultLatencyNanos;
+    private int failureInterval;
+    private float sceneFocusDistance;
+
+    private long nanos;
+    private boolean closed;
+    private FakeSession session;
+    private FakeSession configuring;
+    private CameraHal.SessionCallback configureCallback;
+    private long configuredAtNanos;
+
+    // Requests and the frame number from which they apply, in submission order.
+    private final ArrayDeque<Submission> submissions = new ArrayDeque<>();
+    private final ArrayDeque<CameraHal.Request> burst = new ArrayDeque<>();
+    private CameraHal.ResultCallback burstCallback;
+    private List<CameraHal.Request> repeating = Collections.emptyList();
+    private CameraHal.ResultCallback repeatingCallback;
+    private int repeatingIndex;
+    private long nextFrameNanos;
+    private long frameNumber;
+    private float lensFocusDistance;
+
+    // Frames in flight, from start to result; preallocated.
+    private final InFlight[] inFlight;
+    private int inFlightHead;
+    private int inFlightCount;
+    private final FocusFrame frame = new FocusFrame();
+
+    private long submittedRequests;
+    private long completedFrames;
+    private long failedFrames;
+
+    /**
+     * @param minFocusDistance   closest focus distance of the simulated lens, in diopters
+     * @param lensSpeed          diopters the lens travels per second
+     * @param frameDurationNanos time between frames
+     */
+    public FakeCameraDevice(float minFocusDistance, float lensSpeed, long frameDurationNanos) {
+        if (frameDurationNanos <= 0) {
+            throw new IllegalArgumentException("Frame duration must be positive.");
+        }
+        this.minFocusDistance = minFocusDistance;
+        this.lensSpeed = lensSpeed;
+        this.frameDurationNanos = frameDurationNanos;
+        this.resultLatencyNanos = DEFAULT_RESULT_LATENCY_FRAMES * frameDurationNanos;
+        inFlight = new InFlight[64];
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = new InFlight();
+        }
+    }
+
+    public FakeCameraDevice setConfigureLatencyNanos(long configureLatencyNanos) {
+        this.configureLatencyNanos = configureLatencyNanos;
+        return this;
+    }
+
+    /**
+     * @param requestLatencyFrames frames already queued ahead of a new request, which keep the old one
+     */
+    public FakeCameraDevice setRequestLatencyFrames(int requestLatencyFrames) {
+        this.requestLatencyFrames = requestLatencyFrames;
+        return this;
+    }
+
+    /**
+     * @param resultLatencyNanos from the start of a frame to its result; at most 63 frame durations
+     */
+    public FakeCameraDevice setResultLatencyNanos(long resultLatencyNanos) {
+        if (resultLatencyNanos < 0 || resultLatencyNanos >= (inFlight.length - 1) * frameDurationNanos) {
+            throw new IllegalArgumentException("Result latency out of range.");
+        }
+        this.resultLatencyNanos = resultLatencyNanos;
+        return this;
+    }
+
+    /**
+     * @param failureInterval every this many frames one fails instead of completing, 0 for none
+     */
+    public FakeCameraDevice setFailureInterval(int failureInterval) {
+        this.failureInterval = failureInterval;
+        return this;
+    }
+
+    public void setSceneFocusDistance(float sceneFocusDistance) {
+        this.sceneFocusDistance = sceneFocusDistance;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public float getLensFocusDistance() {
+        return lensFocusDistance;
+    }
+
+    /**
+     * @return repeating requests, repeating bursts and bursts submitted so far
+     */
+    public long getSubmittedRequests() {
+        return submittedRequests;
+    }
+
+    public long getCompletedFrames() {
+        return completedFrames;
+    }
+
+    public long getFailedFrames() {
+        return failedFrames;
+    }
+
+    public float sharpnessAt(float focusDistance) {
+        float error = (focusDistance - sceneFocusDistance) / minFocusDistance * 10;
+        return 1f / (1f + SHARPNESS_FALLOFF * error * error);
+    }
+
+    @Override
+    public void createSession(Set<CameraHal.Output> outputs, CameraHal.SessionCallback callback) {
+        if (closed) {
+            callback.onConfigureFailed();
+            return;
+        }
+        if (session != null) {
+            session.close();
+        }
+        configuring = new FakeSession(outputs);
+        configureCallback = callback;
+        configuredAtNanos = nanos + configureLatencyNanos;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (session != null) {
+            session.close();
+        }
+        configuring = null;
+        configureCallback = null;
+    }
+
+    /**
+     * Runs everything that happens within the next {@code durationNanos}.
+     */
+    public void advanceBy(long durationNanos) {
+        long end = nanos + durationNanos;
+        while (true) {
+            // On a tie results go first, then configuration, then the next frame.
+            long next = Long.MAX_VALUE;
+            int event = 0;
+            if (inFlightCount > 0) {
+                next = inFlight[inFlightHead].resultNanos;
+                event = 1;
+            }
+            if (configuring != null && configuredAtNanos < next) {
+                next = configuredAtNanos;
+                event = 2;
+            }
+            if (session != null && hasWork() && nextFrameNanos < next) {
+                next = nextFrameNanos;
+                event = 3;
+            }
+            if (event == 0 || next > end) {
+                break;
+            }
+            nanos = Math.max(nanos, next);
+            switch (event) {
+                case 1:
+                    deliverResult();
+                    break;
+                case 2:
+                    finishConfiguring();
+                    break;
+                default:
+                    startFrame();
+            }
+        }
+        nanos = end;
+    }
+
+    /**
+     * Advances frame by frame until the lens rests within {@code tolerance} of the scene.
+     *
+     * @return nanoseconds it took, or -1 if the lens did not get there within {@code maxNanos}
+     */
+    public long advanceUntilInFocus(float tolerance, long maxNanos) {
+        long start = nanos;
+        while (nanos - start < maxNanos) {
+            advanceBy(frameDurationNanos);
+            if (lensFocusDistance == targetOf(currentRequest())
+                    && Math.abs(lensFocusDistance - sceneFocusDistance) <= tolerance) {
+                return nanos - start;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasWork() {
+        return !burst.isEmpty() || !repeating.isEmpty() || !submissions.isEmpty();
+    }
+
+    private void finishConfiguring() {
+        session = configuring;
+        CameraHal.SessionCallback callback = configureCallback;
+        configuring = null;
+        configureCallback = null;
+        nextFrameNanos = Math.max(nextFrameNanos, nanos);
+        callback.onConfigured(session);
+    }
+
+    private CameraHal.Request currentRequest() {
+        return repeating.isEmpty() ? null : repeating.get(repeatingIndex % repeating.size());
+    }
+
+    private float targetOf(CameraHal.Request request) {
+        return request == null || Float.isNaN(request.focusDistance) ? lensFocusDistance : request.focusDistance;
+    }
+
+    private void startFrame() {
+        // An idle pipeline takes a new request right away.
+        while (!submissions.isEmpty()
+                && (submissions.peekFirst().fromFrame <= frameNumber || repeating.isEmpty() && burst.isEmpty())) {
+            Submission submission = submissions.pollFirst();
+            repeating = submission.requests;
+            repeatingCallback = submission.callback;
+            repeatingIndex = 0;
+        }
+        CameraHal.Request request;
+        CameraHal.ResultCallback callback;
+        if (!burst.isEmpty()) {
+            request = burst.pollFirst();
+            callback = burstCallback;
+        } else if (!repeating.isEmpty()) {
+            request = repeating.get(repeatingIndex++ % repeating.size());
+            callback = repeatingCallback;
+        } else {
+            nextFrameNanos = nanos + frameDurationNanos;
+            return;
+        }
+
+        float target = targetOf(request);
+        float step = lensSpeed * frameDurationNanos / 1e9f;
+        float delta = target - lensFocusDistance;
+        lensFocusDistance = Math.abs(delta) <= step ? target : lensFocusDistance + Math.signum(delta) * step;
+
+        if (inFlightCount == inFlight.length) {
+            throw new IllegalStateException("Too many frames in flight.");
+        }
+        InFlight pending = inFlight[(inFlightHead + inFlightCount++) % inFlight.length];
+        pending.request = request;
+        pending.callback = callback;
+        pending.sensorTimestamp = nanos;
+        pending.frameNumber = frameNumber;
+        pending.focusDistance = lensFocusDistance;
+        pending.moving = lensFocusDistance != target;
+        pending.failed = failureInterval > 0 && (frameNumber + 1) % failureInterval == 0;
+        pending.resultNanos = nanos + resultLatencyNanos;
+        frameNumber++;
+        nextFrameNanos = nanos + frameDurationNanos;
+        if (callback != null) {
+            callback.onCaptureStarted(request, pending.frameNumber, nanos);
+        }
+    }
+
+    private void deliverResult() {
+        InFlight done = inFlight[inFlightHead];
+        inFlightHead = (inFlightHead + 1) % inFlight.length;
+        inFlightCount--;
+        CameraHal.Request request = done.request;
+        CameraHal.ResultCallback callback = done.callback;
+        done.request = null;
+        done.callback = null;
+        if (callback == null) {
+            return;
+        }
+        if (done.failed) {
+            failedFrames++;
+            callback.onCaptureFailed(request, done.frameNumber);
+            return;
+        }
+        frame.clear();
+        frame.sensorTimestamp = done.sensorTimestamp;
+        frame.frameNumber = done.frameNumber;
+        frame.requestedFocusDistance = request.focusDistance;
+        frame.focusDistance = done.focusDistance;
+        frame.lensState = done.moving ? FocusFrame.LENS_STATE_MOVING : FocusFrame.LENS_STATE_STATIONARY;
+        if (request.hasTarget(CameraHal.Output.ANALYSIS)) {
+            frame.sharpness = sharpnessAt(done.focusDistance);
+        }
+        completedFrames++;
+        callback.onCaptureCompleted(request, frame);
+    }
+
+    private static final class Submission {
+
+        final long fromFrame;
+        final List<CameraHal.Request> requests;
+        final CameraHal.ResultCallback callback;
+
+        Submission(long fromFrame, List<CameraHal.Request> requests, CameraHal.ResultCallback callback) {
+            this.fromFrame = fromFrame;
+            this.requests = requests;
+            this.callback = callback;
+        }
+    }
+
+    private static final class InFlight {
+
+        CameraHal.Request request;
+        CameraHal.ResultCallback callback;
+        long sensorTimestamp;
+        long frameNumber;
+        float focusDistance;
+        boolean moving;
+        boolean failed;
+        long resultNanos;
+    }
+
+    private final class FakeSession implements CameraHal.Session {
+
+        private final Set<CameraHal.Output> outputs;
+        private boolean closed;
+
+        FakeSession(Set<CameraHal.Output> outputs) {
+            this.outputs = outputs.isEmpty() ? EnumSet.noneOf(CameraHal.Output.class) : EnumSet.copyOf(outputs);
+        }
+
+        @Override
+        public boolean setRepeatingRequest(CameraHal.Request request, CameraHal.ResultCallback callback) {
+            return setRepeatingBurst(Collections.singletonList(request), callback);
+        }
+
+        @Override
+        public boolean setRepeatingBurst(List<CameraHal.Request> requests, CameraHal.ResultCallback callback) {
+            if (!accepts(requests)) {
+                return false;
+            }
+            submittedRequests++;
+            submissions.addLast(new Submission(frameNumber + requestLatencyFrames,
+                    new ArrayList<>(requests), callback));
+            return true;
+        }
+
+        @Override
+        public boolean captureBurst(List<CameraHal.Request> requests, CameraHal.ResultCallback callback) {
+            if (!accepts(requests)) {
+                return false;
+            }
+            submittedRequests++;
+            burst.addAll(requests);
+            burstCallback = callback;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (session == this) {
+                session = null;
+                submissions.clear();
+                burst.clear();
+                repeating = Collections.emptyList();
+                repeatingCallback = null;
+                burstCallback = null;
+                // Results of frames already captured still arrive, as with camera2, but go nowhere.
+                for (int i = 0; i < inFlightCount; i++) {
+                    inFlight[(inFlightHead + i) % inFlight.length].callback = null;
+                }
+            }
+        }
+
+        private boolean accepts(List<CameraHal.Request> requests) {
+            if (closed || session != this || requests.isEmpty()) {
+                return false;
+            }
+            for (CameraHal.Request request : requests) {
+                if (!outputs.containsAll(request.getTargets())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
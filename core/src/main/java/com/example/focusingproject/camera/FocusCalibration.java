@@ -0,0 +1,145 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Maps the focus seek bar of one lens to focus distances, and remembers how sharp the picture was at
+ * each position. The far end of the bar is the hyperfocal distance when the lens reports a calibrated
+ * or approximate one, since everything between it and infinity looks the same; otherwise it is
+ * infinity. The near end is the minimum focus distance. Positions in between are spaced evenly in
+ * diopters, which, unlike meters, spreads the depth of field evenly along the bar.
+ * <p>
+ * An uncalibrated lens reports distances in its own units rather than diopters; the mapping is the
+ * same, only the values mean less.
+ * <p>
+ * Sharpness may be recorded on the camera thread while positions are read on another.
+ */
+public class FocusCalibration {
+
+    /**
+     * In the order of the camera's LENS_INFO_FOCUS_DISTANCE_CALIBRATION values.
+     */
+    public enum Quality {
+        UNCALIBRATED,
+        APPROXIMATE,
+        CALIBRATED;
+
+        /**
+         * @return the quality for a LENS_INFO_FOCUS_DISTANCE_CALIBRATION value, uncalibrated if unknown
+         */
+        public static Quality fromCameraValue(int value) {
+            Quality[] values = values();
+            return value >= 0 && value < values.length ? values[value] : UNCALIBRATED;
+        }
+    }
+
+    /**
+     * Weight of a new sharpness sample against those recorded at the same position before.
+     */
+    static final float SHARPNESS_SMOOTHING = 0.25f;
+
+    private final float nearDistance;
+    private final float farDistance;
+    private final Quality quality;
+    private final int maxPosition;
+    private final float[] sharpness;
+
+    /**
+     * @param minFocusDistance   closest focus distance, 0 for a fixed-focus lens
+     * @param hyperfocalDistance hyperfocal distance, or {@link Float#NaN} if unknown
+     * @param maxPosition        last position of the seek bar, the first being 0
+     */
+    public FocusCalibration(float minFocusDistance, float hyperfocalDistance, Quality quality, int maxPosition) {
+        if (maxPosition <= 0) {
+            throw new IllegalArgumentException("The seek bar needs at least two positions.");
+        }
+        this.nearDistance = Float.isNaN(minFocusDistance) || minFocusDistance < 0 ? 0 : minFocusDistance;
+        this.farDistance = quality != Quality.UNCALIBRATED && hyperfocalDistance > 0
+                && hyperfocalDistance < nearDistance ? hyperfocalDistance : 0;
+        this.quality = quality;
+        this.maxPosition = maxPosition;
+        this.sharpness = new float[maxPosition + 1];
+        for (int i = 0; i < sharpness.length; i++) {
+            sharpness[i] = Float.NaN;
+        }
+    }
+
+    public static FocusCalibration forProfile(CameraProfile profile, int maxPosition) {
+        return new FocusCalibration(profile.getMinFocusDistance(), profile.getHyperfocalDistance(),
+                profile.getFocusCalibration(), maxPosition);
+    }
+
+    public Quality getQuality() {
+        return quality;
+    }
+
+    public int getMaxPosition() {
+        return maxPosition;
+    }
+
+    public boolean isFixedFocus() {
+        return nearDistance == 0;
+    }
+
+    /**
+     * @return the focus distance for a seek bar position, clamped to the bar
+     */
+    public float toFocusDistance(int position) {
+        if (position <= 0) {
+            return farDistance;
+        }
+        if (position >= maxPosition) {
+            return nearDistance;
+        }
+        return farDistance + (nearDistance - farDistance) * position / maxPosition;
+    }
+
+    /**
+     * @return the nearest seek bar position for a focus distance
+     */
+    public int toPosition(float focusDistance) {
+        if (isFixedFocus() || Float.isNaN(focusDistance) || focusDistance <= farDistance) {
+            return 0;
+        }
+        if (focusDistance >= nearDistance) {
+            return maxPosition;
+        }
+        return Math.round((focusDistance - farDistance) / (nearDistance - farDistance) * maxPosition);
+    }
+
+    /**
+     * Records the sharpness of a frame taken with the lens resting at the given distance.
+     */
+    public synchronized void recordSharpness(float focusDistance, float value) {
+        if (Float.isNaN(value) || isFixedFocus()) {
+            return;
+        }
+        int position = toPosition(focusDistance);
+        float previous = sharpness[position];
+        sharpness[position] = Float.isNaN(previous) ? value : previous + SHARPNESS_SMOOTHING * (value - previous);
+    }
+
+    /**
+     * @return the sharpness measured at a position, or {@link Float#NaN} if none was
+     */
+    public synchronized float getSharpness(int position) {
+        return position >= 0 && position <= maxPosition ? sharpness[position] : Float.NaN;
+    }
+
+    /**
+     * @return the position with the highest measured sharpness, or -1 if none was measured
+     */
+    public synchronized int getSharpestPosition() {
+        int sharpest = -1;
+        for (int i = 0; i <= maxPosition; i++) {
+            if (!Float.isNaN(sharpness[i]) && (sharpest < 0 || sharpness[i] > sharpness[sharpest])) {
+                sharpest = i;
+            }
+        }
+        return sharpest;
+    }
+
+    public synchronized void clearSharpness() {
+        for (int i = 0; i < sharpness.length; i++) {
+            sharpness[i] = Float.NaN;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Decides where the lens should focus next. The camera calls {@link #onFrame(FocusFrame)} once for
+ * every completed frame, on its callback thread, and submits a new request whenever a controller
+ * returns a target other than {@link #NO_CHANGE}.
+ */
+public interface FocusController {
+
+    float NO_CHANGE = Float.NaN;
+
+    /**
+     * Called when the controller becomes active for a lens.
+     *
+     * @param minFocusDistance closest focus distance of the lens, in diopters
+     */
+    void start(float minFocusDistance);
+
+    /**
+     * @return the next focus distance in diopters, or {@link #NO_CHANGE} to keep the current request
+     */
+    float onFrame(FocusFrame frame);
+}
@@ -0,0 +1,51 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Per-frame capture result as seen by a {@link FocusController}. One instance is reused for every
+ * frame, so controllers must copy whatever they want to keep.
+ */
+public class FocusFrame {
+
+    /**
+     * Same values as {@code CameraMetadata.LENS_STATE_*}, plus one for devices that do not report it.
+     */
+    public static final int LENS_STATE_UNKNOWN = -1;
+    public static final int LENS_STATE_STATIONARY = 0;
+    public static final int LENS_STATE_MOVING = 1;
+
+    public long sensorTimestamp;
+    public long frameNumber;
+    /**
+     * Focus distance the frame was requested with, in diopters.
+     */
+    public float requestedFocusDistance;
+    /**
+     * Focus distance the lens reported for the frame, in diopters; NaN if not reported.
+     */
+    public float focusDistance;
+    public int lensState;
+    /**
+     * Focus metric of the frame, higher is sharper; NaN if the frame was not analysed.
+     */
+    public float sharpness;
+
+    public FocusFrame() {
+        clear();
+    }
+
+    public void clear() {
+        sensorTimestamp = 0;
+        frameNumber = 0;
+        requestedFocusDistance = Float.NaN;
+        focusDistance = Float.NaN;
+        lensState = LENS_STATE_UNKNOWN;
+        sharpness = Float.NaN;
+    }
+
+    /**
+     * @return the reported focus distance, or the requested one if the device does not report it
+     */
+    public float effectiveFocusDistance() {
+        return Float.isNaN(focusDistance) ? requestedFocusDistance : focusDistance;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Describes a focus sweep between infinity (0 diopters) and the closest focus distance of the lens.
+ * The whole sweep is expanded into one focus distance per frame up front, so it can be submitted to
+ * the camera once as a repeating burst instead of being resubmitted frame by frame.
+ */
+public class FocusSweep {
+
+    public enum Profile {
+        /**
+         * Steps evenly from infinity to the closest distance, then jumps back to infinity.
+         */
+        LINEAR,
+        /**
+         * Steps evenly from infinity to the closest distance and back again.
+         */
+        PING_PONG,
+        /**
+         * Spaces steps geometrically in diopters, so far distances, where a small change in diopters
+         * covers a long range in meters, get more steps than close ones.
+         */
+        LOGARITHMIC
+    }
+
+    /**
+     * One step per percent of the focus range, both ends included.
+     */
+    public static final int DEFAULT_STEPS = 101;
+
+    /**
+     * Fraction of the closest focus distance where the logarithmic profile starts after infinity.
+     */
+    private static final float LOGARITHMIC_FLOOR = 0.01f;
+
+    private final Profile profile;
+    private final int steps;
+    private final int dwellFrames;
+
+    /**
+     * @param steps       number of focus distances between infinity and the closest distance, inclusive
+     * @param dwellFrames frames spent on each step before moving to the next one
+     */
+    public FocusSweep(Profile profile, int steps, int dwellFrames) {
+        if (steps < 2) {
+            throw new IllegalArgumentException("A sweep needs at least two steps.");
+        }
+        if (dwellFrames < 1) {
+            throw new IllegalArgumentException("Dwell must be at least one frame.");
+        }
+        this.profile = profile;
+        this.steps = steps;
+        this.dwellFrames = dwellFrames;
+    }
+
+    public static FocusSweep defaultSweep() {
+        return new FocusSweep(Profile.LINEAR, DEFAULT_STEPS, 1);
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public int getDwellFrames() {
+        return dwellFrames;
+    }
+
+    /**
+     * @return number of frames one period of the sweep takes
+     */
+    public int getFrameCount() {
+        return stepCount() * dwellFrames;
+    }
+
+    /**
+     * Expands the sweep into one focus distance per frame for one full period.
+     *
+     * @param minFocusDistance closest focus distance of the lens, in diopters
+     */
+    public float[] distances(float minFocusDistance) {
+        float[] stepDistances = new float[steps];
+        for (int i = 0; i < steps; i++) {
+            stepDistances[i] = stepDistance(i, minFocusDistance);
+        }
+
+        float[] frames = new float[getFrameCount()];
+        int frame = 0;
+        for (int i = 0; i < stepCount(); i++) {
+            float distance = stepDistances[stepIndex(i)];
+            for (int j = 0; j < dwellFrames; j++) {
+                frames[frame++] = distance;
+            }
+        }
+        return frames;
+    }
+
+    private int stepCount() {
+        // Ping-pong does not repeat either end when it turns around.
+        return profile == Profile.PING_PONG ? 2 * (steps - 1) : steps;
+    }
+
+    private int stepIndex(int i) {
+        return i < steps ? i : 2 * (steps - 1) - i;
+    }
+
+    private float stepDistance(int step, float minFocusDistance) {
+        if (step == 0) {
+            return 0f;
+        }
+        if (step == steps - 1) {
+            return minFocusDistance;
+        }
+        if (profile == Profile.LOGARITHMIC) {
+            double exponent = (double) (step - 1) / (steps - 2);
+            return (float) (minFocusDistance * Math.pow(LOGARITHMIC_FLOOR, 1 - exponent));
+        }
+        return minFocusDistance * step / (steps - 1);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Joins capture metadata with sharpness measured on a separate analysis stream. Both arrive for the
+ * same frame, keyed by sensor timestamp, on different threads and in no particular order; a frame is
+ * complete once it has both. Only the last few frames are kept, in preallocated slots.
+ */
+public class FrameHistory {
+
+    private final long[] timestamps;
+    private final long[] frameNumbers;
+    private final float[] requestedFocusDistances;
+    private final float[] focusDistances;
+    private final int[] lensStates;
+    private final float[] sharpness;
+    private final boolean[] hasMetadata;
+    private int next;
+    private long lastTakenTimestamp = Long.MIN_VALUE;
+
+    public FrameHistory(int capacity) {
+        timestamps = new long[capacity];
+        frameNumbers = new long[capacity];
+        requestedFocusDistances = new float[capacity];
+        focusDistances = new float[capacity];
+        lensStates = new int[capacity];
+        sharpness = new float[capacity];
+        hasMetadata = new boolean[capacity];
+        clear();
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = Long.MIN_VALUE;
+            hasMetadata[i] = false;
+            sharpness[i] = Float.NaN;
+        }
+        lastTakenTimestamp = Long.MIN_VALUE;
+    }
+
+    public synchronized void putMetadata(FocusFrame frame) {
+        int slot = slotFor(frame.sensorTimestamp);
+        frameNumbers[slot] = frame.frameNumber;
+        requestedFocusDistances[slot] = frame.requestedFocusDistance;
+        focusDistances[slot] = frame.focusDistance;
+        lensStates[slot] = frame.lensState;
+        hasMetadata[slot] = true;
+    }
+
+    public synchronized void putSharpness(long sensorTimestamp, float value) {
+        sharpness[slotFor(sensorTimestamp)] = value;
+    }
+
+    /**
+     * Copies the newest complete frame into {@code out}, unless it was taken before.
+     *
+     * @return whether a new complete frame was found
+     */
+    public synchronized boolean takeLatestComplete(FocusFrame out) {
+        int latest = -1;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (hasMetadata[i] && !Float.isNaN(sharpness[i]) && timestamps[i] > lastTakenTimestamp
+                    && (latest < 0 || timestamps[i] > timestamps[latest])) {
+                latest = i;
+            }
+        }
+        if (latest < 0) {
+            return false;
+        }
+        lastTakenTimestamp = timestamps[latest];
+        out.sensorTimestamp = timestamps[latest];
+        out.frameNumber = frameNumbers[latest];
+        out.requestedFocusDistance = requestedFocusDistances[latest];
+        out.focusDistance = focusDistances[latest];
+        out.lensState = lensStates[latest];
+        out.sharpness = sharpness[latest];
+        return true;
+    }
+
+    private int slotFor(long sensorTimestamp) {
+        for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] == sensorTimestamp) {
+                return i;
+            }
+        }
+        int slot = next;
+        next = (next + 1) % timestamps.length;
+        timestamps[slot] = sensorTimestamp;
+        hasMetadata[slot] = false;
+        sharpness[slot] = Float.NaN;
+        return slot;
+    }
+}
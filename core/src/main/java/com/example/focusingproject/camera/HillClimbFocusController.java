@@ -0,0 +1,129 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Contrast-based autofocus. Moves the lens in one direction while the sharpness of settled frames
+ * keeps improving, and reverses with half the step once it gets worse, until the step is too small to
+ * matter. Once locked it only watches sharpness and restarts the search if it drops noticeably, for
+ * example because the scene changed.
+ */
+public class HillClimbFocusController implements FocusController {
+
+    /**
+     * Initial step, as a fraction of the focus range.
+     */
+    private static final float INITIAL_STEP = 1f / 8;
+    /**
+     * Step at which the search stops, as a fraction of the focus range.
+     */
+    private static final float FINAL_STEP = 1f / 256;
+    /**
+     * Relative sharpness drop that restarts the search once locked.
+     */
+    private static final float RESTART_DROP = 0.3f;
+
+    private final int settleFrames;
+
+    private float minFocusDistance;
+    private float target;
+    private float step;
+    private int direction;
+    private float bestDistance;
+    private float bestSharpness;
+    private int framesOnTarget;
+    private boolean locked;
+    private boolean targetPending;
+
+    public HillClimbFocusController() {
+        this(1);
+    }
+
+    /**
+     * @param settleFrames frames to skip after the lens reached a new target before trusting sharpness
+     */
+    public HillClimbFocusController(int settleFrames) {
+        this.settleFrames = settleFrames;
+    }
+
+    @Override
+    public void start(float minFocusDistance) {
+        this.minFocusDistance = minFocusDistance;
+        restart(minFocusDistance / 2);
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    public float getTarget() {
+        return target;
+    }
+
+    @Override
+    public float onFrame(FocusFrame frame) {
+        if (targetPending) {
+            targetPending = false;
+            return target;
+        }
+        if (Float.isNaN(frame.sharpness) || frame.requestedFocusDistance != target
+                || frame.lensState == FocusFrame.LENS_STATE_MOVING) {
+            return NO_CHANGE;
+        }
+        if (framesOnTarget++ < settleFrames) {
+            return NO_CHANGE;
+        }
+
+        float sharpness = frame.sharpness;
+        if (locked) {
+            if (sharpness >= bestSharpness * (1 - RESTART_DROP)) {
+                return NO_CHANGE;
+            }
+            // The lens is already on the target; search onwards from this frame.
+            restart(target);
+            targetPending = false;
+        }
+
+        if (sharpness > bestSharpness) {
+            bestSharpness = sharpness;
+            bestDistance = target;
+        } else {
+            direction = -direction;
+            step /= 2;
+        }
+        if (step < minFocusDistance * FINAL_STEP) {
+            locked = true;
+            return moveTo(bestDistance);
+        }
+
+        float next = bestDistance + direction * step;
+        if (next < 0 || next > minFocusDistance) {
+            direction = -direction;
+            step /= 2;
+            next = clamp(bestDistance + direction * step);
+        }
+        return moveTo(next);
+    }
+
+    private void restart(float from) {
+        locked = false;
+        step = minFocusDistance * INITIAL_STEP;
+        direction = 1;
+        bestDistance = from;
+        bestSharpness = Float.NEGATIVE_INFINITY;
+        target = from;
+        framesOnTarget = 0;
+        targetPending = true;
+    }
+
+    private float moveTo(float distance) {
+        framesOnTarget = 0;
+        if (distance == target) {
+            return NO_CHANGE;
+        }
+        target = distance;
+        return target;
+    }
+
+    private float clamp(float distance) {
+        return Math.max(0f, Math.min(minFocusDistance, distance));
+    }
+}
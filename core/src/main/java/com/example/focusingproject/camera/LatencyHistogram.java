@@ -0,0 +1,120 @@
+package com.example.focusingproject.camera;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed power-of-two buckets of microseconds: bucket 0 holds everything under
+ * 1 us, bucket {@code i} holds [2^(i-1), 2^i) us, and the last bucket everything from about 4 s up.
+ * Recording allocates nothing and takes no lock, so it can run on every frame; snapshots can be taken
+ * from any thread, and are consistent per bucket but not across buckets.
+ */
+public class LatencyHistogram {
+
+    public static final int BUCKETS = 24;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalNanos.get(), maxNanos.get());
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return the exclusive upper bound of the bucket in nanoseconds; {@link Long#MAX_VALUE} for the last
+     */
+    static long upperBoundNanos(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    public static final class Snapshot {
+
+        private final long[] counts;
+        public final long count;
+        public final long totalNanos;
+        public final long maxNanos;
+
+        Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount(int bucket) {
+            return counts[bucket];
+        }
+
+        public double getMeanNanos() {
+            return count > 0 ? (double) totalNanos / count : 0;
+        }
+
+        /**
+         * @param fraction 0 to 1
+         * @return the upper bound of the bucket holding that fraction of the durations, capped at the
+         * longest one; 0 if nothing was recorded
+         */
+        public long getPercentileNanos(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundNanos(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * @return count, mean, median, 90th and 99th percentile and maximum, in milliseconds
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+                    count, toMillis(getMeanNanos()), toMillis(getPercentileNanos(0.5)),
+                    toMillis(getPercentileNanos(0.9)), toMillis(getPercentileNanos(0.99)), toMillis(maxNanos));
+        }
+
+        private static double toMillis(double nanos) {
+            return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Learns how many frames the lens of a camera takes to settle after a focus command, by step size. It
+ * watches completed frames: a new requested distance starts a move, and the first frame requested at
+ * it with the lens stationary ends it. Devices that do not report the lens state end a move once the
+ * reported distance reaches the requested one instead; a move cut short by a newer command is not
+ * counted.
+ * <p>
+ * Steps are grouped into buckets of doubling size, from under 1/4 diopter to 8 diopters and more, and
+ * each bucket keeps a smoothed frame count. Used on the camera thread only.
+ */
+public class LensResponseModel {
+
+    /**
+     * Upper bounds of the step buckets in diopters; the last bucket is open.
+     */
+    private static final float[] STEP_BOUNDS = {0.25f, 0.5f, 1f, 2f, 4f, 8f};
+    private static final int BUCKETS = STEP_BOUNDS.length + 1;
+    private static final float SMOOTHING = 0.25f;
+    /**
+     * How close the reported distance has to get to the requested one to count as arrived, in diopters.
+     */
+    private static final float ARRIVAL_TOLERANCE = 0.01f;
+
+    private final float[] settleFrames = new float[BUCKETS];
+    private final int[] moves = new int[BUCKETS];
+    private float commanded = Float.NaN;
+    private float from = Float.NaN;
+    private long commandFrame;
+    private boolean moving;
+    private float lastReported = Float.NaN;
+
+    public LensResponseModel() {
+        clear();
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            settleFrames[i] = Float.NaN;
+            moves[i] = 0;
+        }
+        commanded = Float.NaN;
+        from = Float.NaN;
+        moving = false;
+        lastReported = Float.NaN;
+    }
+
+    public void onFrame(FocusFrame frame) {
+        float requested = frame.requestedFocusDistance;
+        if (Float.isNaN(requested)) {
+            lastReported = frame.focusDistance;
+            return;
+        }
+        if (requested != commanded) {
+            // The lens starts from wherever the last frame saw it, or from the last command.
+            from = Float.isNaN(lastReported) ? commanded : lastReported;
+            commanded = requested;
+            commandFrame = frame.frameNumber;
+            moving = !Float.isNaN(from) && from != requested;
+        }
+        if (moving && hasSettled(frame)) {
+            record(Math.abs(commanded - from), frame.frameNumber - commandFrame);
+            moving = false;
+        }
+        lastReported = frame.focusDistance;
+    }
+
+    /**
+     * @return learned frames from the first frame requested at a new distance to the first one with the
+     * lens settled there, for a step of this size; taken from the closest learned step size if this one
+     * was never seen, and 0 if none was
+     */
+    public float getSettleFrames(float step) {
+        int bucket = bucketOf(step);
+        for (int distance = 0; distance < BUCKETS; distance++) {
+            if (bucket + distance < BUCKETS && moves[bucket + distance] > 0) {
+                return settleFrames[bucket + distance];
+            }
+            if (bucket - distance >= 0 && moves[bucket - distance] > 0) {
+                return settleFrames[bucket - distance];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return how many frames ahead of time to command a step of this size, so the lens is settled when
+     * the step is due
+     */
+    public int getLeadFrames(float step) {
+        return (int) Math.ceil(getSettleFrames(step));
+    }
+
+    /**
+     * @return moves measured so far with a step in the same bucket as this one
+     */
+    public int getMoves(float step) {
+        return moves[bucketOf(step)];
+    }
+
+    private boolean hasSettled(FocusFrame frame) {
+        if (frame.lensState != FocusFrame.LENS_STATE_UNKNOWN) {
+            return frame.lensState == FocusFrame.LENS_STATE_STATIONARY;
+        }
+        return !Float.isNaN(frame.focusDistance) && Math.abs(frame.focusDistance - commanded) <= ARRIVAL_TOLERANCE;
+    }
+
+    private void record(float step, long frames) {
+        int bucket = bucketOf(step);
+        settleFrames[bucket] = moves[bucket] == 0
+                ? frames : settleFrames[bucket] + SMOOTHING * (frames - settleFrames[bucket]);
+        moves[bucket]++;
+    }
+
+    static int bucketOf(float step) {
+        for (int i = 0; i < STEP_BOUNDS.length; i++) {
+            if (step < STEP_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return STEP_BOUNDS.length;
+    }
+}
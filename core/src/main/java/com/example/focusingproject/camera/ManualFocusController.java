@@ -0,0 +1,68 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Holds the lens at a distance set by the user. The target is a single slot that may be written from
+ * any thread, say on every tick of a seek bar drag: each write replaces the last, and the camera thread
+ * reads whatever is there once per frame. However fast the target moves, at most one request is
+ * submitted per frame and none of them is stale.
+ * <p>
+ * With easing, the lens covers only a fraction of the remaining way to the target each frame, so a
+ * jump of the seek bar becomes a smooth focus pull.
+ */
+public class ManualFocusController implements FocusController {
+
+    /**
+     * How close the eased distance has to get to the target to snap onto it, in diopters.
+     */
+    private static final float SNAP_DISTANCE = 0.005f;
+
+    private volatile float target;
+    private volatile float easing = 1f;
+    private float applied = Float.NaN;
+
+    public void setTarget(float focusDistance) {
+        target = focusDistance;
+    }
+
+    public float getTarget() {
+        return target;
+    }
+
+    /**
+     * @param easing fraction of the remaining way to the target the lens is moved each frame, over 0 and
+     *               up to 1; 1, the default, moves it straight there
+     */
+    public void setEasing(float easing) {
+        if (!(easing > 0f && easing <= 1f)) {
+            throw new IllegalArgumentException("Easing must be over 0 and at most 1: " + easing);
+        }
+        this.easing = easing;
+    }
+
+    public float getEasing() {
+        return easing;
+    }
+
+    @Override
+    public void start(float minFocusDistance) {
+        applied = Float.NaN;
+    }
+
+    @Override
+    public float onFrame(FocusFrame frame) {
+        float next = target;
+        if (next == applied) {
+            return NO_CHANGE;
+        }
+        applied = ease(applied, next, easing);
+        return applied;
+    }
+
+    static float ease(float from, float to, float easing) {
+        if (Float.isNaN(from) || easing >= 1f) {
+            return to;
+        }
+        float eased = from + easing * (to - from);
+        return Math.abs(to - eased) < SNAP_DISTANCE ? to : eased;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Transform that fits the camera preview buffer into the view showing it, as the nine values of an
+ * {@code android.graphics.Matrix}. The sensor delivers the buffer in landscape; in the landscape
+ * display rotations the buffer is turned upright, scaled to fill the view and rotated with the display.
+ * In the portrait rotations the view's own scaling is left alone and the transform is the identity.
+ * <p>
+ * Same result as {@code setRectToRect(view, centered buffer, FILL)}, {@code postScale} and
+ * {@code postRotate} about the view center, without allocating the rectangles and matrices.
+ */
+public final class PreviewTransform {
+
+    /**
+     * Same values as {@code Surface.ROTATION_*}.
+     */
+    public static final int ROTATION_0 = 0;
+    public static final int ROTATION_90 = 1;
+    public static final int ROTATION_180 = 2;
+    public static final int ROTATION_270 = 3;
+
+    /**
+     * Values per matrix, in {@code Matrix.getValues} order: scale x, skew x, translate x, skew y,
+     * scale y, translate y, then the perspective row.
+     */
+    public static final int VALUES = 9;
+
+    /**
+     * @param rotation display rotation, one of the {@code ROTATION_*} values
+     * @param values   receives the {@link #VALUES} matrix values
+     */
+    public static void compute(int viewWidth, int viewHeight, int previewWidth, int previewHeight, int rotation,
+                               float[] values) {
+        values[0] = 1;
+        values[1] = 0;
+        values[2] = 0;
+        values[3] = 0;
+        values[4] = 1;
+        values[5] = 0;
+        values[6] = 0;
+        values[7] = 0;
+        values[8] = 1;
+        if (ROTATION_90 != rotation && ROTATION_270 != rotation) {
+            return;
+        }
+        float centerX = viewWidth / 2f;
+        float centerY = viewHeight / 2f;
+        // The upright buffer is the preview size turned sideways, centered on the view, then scaled up.
+        float scaleX = (float) previewHeight / viewWidth;
+        float scaleY = (float) previewWidth / viewHeight;
+        float scale = Math.max((float) viewHeight / previewHeight, (float) viewWidth / previewWidth);
+        float translateX = centerX - scale * previewHeight / 2f;
+        float translateY = centerY - scale * previewWidth / 2f;
+        // A quarter turn: 90 * (rotation - 2) degrees.
+        float sin = ROTATION_90 == rotation ? -1 : 1;
+        values[0] = 0;
+        values[1] = -sin * scale * scaleY;
+        values[2] = -sin * (translateY - centerY) + centerX;
+        values[3] = sin * scale * scaleX;
+        values[4] = 0;
+        values[5] = sin * (translateX - centerX) + centerY;
+    }
+
+    private PreviewTransform() {
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.focusingproject.camera;
+
+/**
+ * A {@link FocusController} whose targets are known in advance. Cameras submit the schedule once as a
+ * repeating burst and do not need to call {@link #onFrame(FocusFrame)} to drive the lens.
+ */
+public interface ScheduledFocusController extends FocusController {
+
+    /**
+     * @return one focus distance per frame for one period of the schedule, valid after {@link #start(float)}
+     */
+    float[] getSchedule();
+
+    /**
+     * @return whether {@link #start(float)} would now make a different schedule, for example because the
+     * controller learned more about the lens since; the loop then submits a fresh one
+     */
+    boolean isScheduleStale();
+}
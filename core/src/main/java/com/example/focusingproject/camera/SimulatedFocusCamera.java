@@ -0,0 +1,119 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Deterministic stand-in for a camera that lets focus controllers run on a plain JVM. Every
+ * {@link #step()} produces one frame: the lens moves towards the requested distance at a fixed speed,
+ * and sharpness peaks where the lens matches the distance of the simulated scene.
+ */
+public class SimulatedFocusCamera {
+
+    private static final float SHARPNESS_FALLOFF = 4f;
+
+    private final float minFocusDistance;
+    private final float lensSpeed;
+    private final long frameDurationNanos;
+    private final FocusFrame frame = new FocusFrame();
+
+    private FocusController controller;
+    private float[] schedule;
+    private float sceneFocusDistance;
+    private float requestedFocusDistance;
+    private float lensFocusDistance;
+    private long frameNumber;
+    private long submittedRequests;
+
+    /**
+     * @param minFocusDistance   closest focus distance of the simulated lens, in diopters
+     * @param lensSpeed          diopters the lens travels per frame
+     * @param frameDurationNanos time between frames
+     */
+    public SimulatedFocusCamera(float minFocusDistance, float lensSpeed, long frameDurationNanos) {
+        this.minFocusDistance = minFocusDistance;
+        this.lensSpeed = lensSpeed;
+        this.frameDurationNanos = frameDurationNanos;
+    }
+
+    public void setSceneFocusDistance(float sceneFocusDistance) {
+        this.sceneFocusDistance = sceneFocusDistance;
+    }
+
+    /**
+     * Activates a controller. Scheduled controllers are submitted once, like a repeating burst.
+     */
+    public void setController(FocusController controller) {
+        this.controller = controller;
+        controller.start(minFocusDistance);
+        schedule = controller instanceof ScheduledFocusController
+                ? ((ScheduledFocusController) controller).getSchedule() : null;
+        if (schedule != null) {
+            submittedRequests++;
+        }
+    }
+
+    public void step() {
+        if (schedule != null) {
+            requestedFocusDistance = schedule[(int) (frameNumber % schedule.length)];
+        }
+        float delta = requestedFocusDistance - lensFocusDistance;
+        if (Math.abs(delta) <= lensSpeed) {
+            lensFocusDistance = requestedFocusDistance;
+        } else {
+            lensFocusDistance += Math.signum(delta) * lensSpeed;
+        }
+
+        frame.clear();
+        frame.sensorTimestamp = frameNumber * frameDurationNanos;
+        frame.frameNumber = frameNumber;
+        frame.requestedFocusDistance = requestedFocusDistance;
+        frame.focusDistance = lensFocusDistance;
+        frame.lensState = lensFocusDistance == requestedFocusDistance
+                ? FocusFrame.LENS_STATE_STATIONARY : FocusFrame.LENS_STATE_MOVING;
+        frame.sharpness = sharpnessAt(lensFocusDistance);
+
+        if (controller != null && schedule == null) {
+            float next = controller.onFrame(frame);
+            if (!Float.isNaN(next)) {
+                requestedFocusDistance = next;
+                submittedRequests++;
+            }
+        }
+        frameNumber++;
+    }
+
+    /**
+     * Steps until the lens rests within {@code tolerance} diopters of the scene.
+     *
+     * @return frames it took, or -1 if the lens did not get there within {@code maxFrames}
+     */
+    public int stepUntilInFocus(float tolerance, int maxFrames) {
+        for (int i = 1; i <= maxFrames; i++) {
+            step();
+            if (frame.lensState == FocusFrame.LENS_STATE_STATIONARY
+                    && Math.abs(lensFocusDistance - sceneFocusDistance) <= tolerance) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public float sharpnessAt(float focusDistance) {
+        float error = (focusDistance - sceneFocusDistance) / minFocusDistance * 10;
+        return 1f / (1f + SHARPNESS_FALLOFF * error * error);
+    }
+
+    public float getLensFocusDistance() {
+        return lensFocusDistance;
+    }
+
+    public float getRequestedFocusDistance() {
+        return requestedFocusDistance;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    public long getSubmittedRequests() {
+        return submittedRequests;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.focusingproject.camera;
+
+/**
+ * Chooses the recorder and preview sizes of a session together. Every candidate gets a score from how
+ * far its aspect ratio is from the target's and how far its area is from the target area: sizes that
+ * fit within the target are better the larger they are, and any size that fits is better than one
+ * that does not. The preview takes the recorder's aspect ratio and is bounded by the recorder size, so
+ * it shows what is recorded.
+ * <p>
+ * A session runs at the pace of its slowest stream: one request takes the longest minimum frame
+ * duration of its targets, plus the longest stall duration. The best scoring pair of recorder and
+ * preview sizes that still sustains the target frame rate, given whatever other streams the session
+ * has, is chosen. Should no pair sustain it, the fastest pair is chosen instead, so there is always a
+ * choice as long as both sides have a candidate.
+ */
+public class SizeSelector {
+
+    /**
+     * An output size with its durations, as listed by the camera's stream configuration map.
+     */
+    public static final class Candidate {
+
+        public final int width;
+        public final int height;
+        public final long minFrameDurationNanos;
+        public final long stallDurationNanos;
+
+        public Candidate(int width, int height, long minFrameDurationNanos, long stallDurationNanos) {
+            this.width = width;
+            this.height = height;
+            this.minFrameDurationNanos = minFrameDurationNanos;
+            this.stallDurationNanos = stallDurationNanos;
+        }
+
+        long area() {
+            return (long) width * height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height;
+        }
+    }
+
+    public static final class Choice {
+
+        public final Candidate video;
+        public final Candidate preview;
+        /**
+         * Shortest frame duration of a request targeting both, and the other streams.
+         */
+        public final long frameDurationNanos;
+        public final boolean sustainsFrameRate;
+
+        Choice(Candidate video, Candidate preview, long frameDurationNanos, boolean sustainsFrameRate) {
+            this.video = video;
+            this.preview = preview;
+            this.frameDurationNanos = frameDurationNanos;
+            this.sustainsFrameRate = sustainsFrameRate;
+        }
+    }
+
+    /**
+     * Aspect ratios this close, in log scale, count as equal, so that 1920x1088 matches 16:9.
+     */
+    static final double ASPECT_TOLERANCE = 0.01;
+    /**
+     * Weight of the aspect ratio error against the area score, which stays below 1 for sizes that fit.
+     * A 4:3 size for a 16:9 target scores about 2.9.
+     */
+    static final double ASPECT_WEIGHT = 10;
+
+    private final int targetWidth;
+    private final int targetHeight;
+    private final long targetFrameDurationNanos;
+
+    /**
+     * @param targetWidth  largest wanted width, which with the height also sets the aspect ratio
+     * @param targetHeight largest wanted height
+     */
+    public SizeSelector(int targetWidth, int targetHeight, int frameRate) {
+        if (targetWidth <= 0 || targetHeight <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Target size and frame rate must be positive.");
+        }
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.targetFrameDurationNanos = 1000000000L / frameRate;
+    }
+
+    public Choice choose(Candidate[] videoSizes, Candidate[] previewSizes) {
+        return choose(videoSizes, previewSizes, 0);
+    }
+
+    /**
+     * @param otherStreamsFrameDurationNanos longest minimum frame duration of the session's other
+     *                                       streams, or 0
+     * @throws IllegalArgumentException if either side has no candidates
+     */
+    public Choice choose(Candidate[] videoSizes, Candidate[] previewSizes, long otherStreamsFrameDurationNanos) {
+        if (videoSizes.length == 0 || previewSizes.length == 0) {
+            throw new IllegalArgumentException("No output sizes to choose from.");
+        }
+        Candidate bestVideo = null;
+        Candidate bestPreview = null;
+        double bestScore = Double.MAX_VALUE;
+        Candidate fastestVideo = null;
+        Candidate fastestPreview = null;
+        long fastestDuration = Long.MAX_VALUE;
+
+        double aspect = (double) targetWidth / targetHeight;
+        long area = (long) targetWidth * targetHeight;
+        for (Candidate video : videoSizes) {
+            double videoScore = score(video, aspect, area);
+            double videoAspect = (double) video.width / video.height;
+            Candidate preview = null;
+            double previewScore = Double.MAX_VALUE;
+            for (Candidate candidate : previewSizes) {
+                long duration = frameDuration(video, candidate, otherStreamsFrameDurationNanos);
+                if (duration < fastestDuration
+                        || duration == fastestDuration && candidate.area() > fastestPreview.area()) {
+                    fastestDuration = duration;
+                    fastestVideo = video;
+                    fastestPreview = candidate;
+                }
+                if (duration > targetFrameDurationNanos) {
+                    continue;
+                }
+                double score = score(candidate, videoAspect, video.area());
+                if (score < previewScore) {
+                    previewScore = score;
+                    preview = candidate;
+                }
+            }
+            if (preview != null && videoScore < bestScore) {
+                bestScore = videoScore;
+                bestVideo = video;
+                bestPreview = preview;
+            }
+        }
+        if (bestVideo == null) {
+            return new Choice(fastestVideo, fastestPreview, fastestDuration, false);
+        }
+        return new Choice(bestVideo, bestPreview,
+                frameDuration(bestVideo, bestPreview, otherStreamsFrameDurationNanos), true);
+    }
+
+    /**
+     * @return the score of a size against the target; lower is better
+     */
+    static double score(Candidate size, double targetAspect, long targetArea) {
+        double aspectError = Math.abs(Math.log((double) size.width / size.height / targetAspect));
+        if (aspectError < ASPECT_TOLERANCE) {
+            aspectError = 0;
+        }
+        double areaScore;
+        if (size.area() <= targetArea) {
+            areaScore = (double) (targetArea - size.area()) / targetArea;
+        } else {
+            areaScore = 1 + (double) (size.area() - targetArea) / targetArea;
+        }
+        return ASPECT_WEIGHT * aspectError + areaScore;
+    }
+
+    static long frameDuration(Candidate video, Candidate preview, long otherStreamsFrameDurationNanos) {
+        long duration = Math.max(Math.max(video.minFrameDurationNanos, preview.minFrameDurationNanos),
+                otherStreamsFrameDurationNanos);
+        return duration + Math.max(video.stallDurationNanos, preview.stallDurationNanos);
+    }
+}
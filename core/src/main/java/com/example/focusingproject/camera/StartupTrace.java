@@ -0,0 +1,85 @@
+package com.example.focusingproject.camera;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the way from starting the camera to the first preview frame. Each phase is marked once, as it
+ * completes, from whichever thread sees it; phases that run in parallel, such as opening the device
+ * and waiting for the preview texture, may complete in either order.
+ */
+public class StartupTrace {
+
+    public enum Phase {
+        /**
+         * Camera ids and characteristics are known, from the cache or from the camera service.
+         */
+        CHARACTERISTICS,
+        DEVICE_OPENED,
+        TEXTURE_AVAILABLE,
+        SESSION_CONFIGURED,
+        FIRST_FRAME
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[] marks = new long[PHASES.length];
+    private long startNanos = -1;
+    private boolean cacheHit;
+
+    public synchronized void start(long nowNanos) {
+        startNanos = nowNanos;
+        cacheHit = false;
+        for (int i = 0; i < marks.length; i++) {
+            marks[i] = -1;
+        }
+    }
+
+    public synchronized void setCacheHit(boolean cacheHit) {
+        this.cacheHit = cacheHit;
+    }
+
+    public synchronized boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * Marks the phase complete, unless it already is or the trace was not started.
+     *
+     * @return whether this call marked it
+     */
+    public synchronized boolean mark(Phase phase, long nowNanos) {
+        if (startNanos < 0 || marks[phase.ordinal()] >= 0) {
+            return false;
+        }
+        marks[phase.ordinal()] = nowNanos;
+        return true;
+    }
+
+    /**
+     * @return milliseconds from the start to the end of the phase, or -1 if it has not completed
+     */
+    public synchronized long getMillis(Phase phase) {
+        long mark = marks[phase.ordinal()];
+        return mark >= 0 ? TimeUnit.NANOSECONDS.toMillis(mark - startNanos) : -1;
+    }
+
+    /**
+     * @return one comma-separated line: cache hit, then the milliseconds of every phase in order
+     */
+    public synchronized String toCsvLine() {
+        StringBuilder line = new StringBuilder(cacheHit ? "cached" : "queried");
+        for (Phase phase : PHASES) {
+            line.append(',').append(getMillis(phase));
+        }
+        return line.toString();
+    }
+
+    public static String csvHeader() {
+        StringBuilder header = new StringBuilder("characteristics_source");
+        for (Phase phase : PHASES) {
+            header.append(',').append(phase.name().toLowerCase(Locale.US)).append("_ms");
+        }
+        return header.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.focusingproject.camera;
+
+import java.util.Arrays;
+
+/**
+ * Sweeps the lens through a {@link FocusSweep}. When driven frame by frame it steps one scheduled
+ * distance per frame; cameras that support bursts submit {@link #getSchedule()} instead.
+ * <p>
+ * With a {@link LensResponseModel}, each step of a sweep that dwells for more than one frame is
+ * commanded as many frames early as the lens takes to settle for a step of that size, up to all but
+ * one frame of the step before, so the lens rests at the step for as much of its dwell as it can. The
+ * leads are taken at {@link #start(float)}; when the model has learned enough to change one of them,
+ * the schedule is stale and the loop starts the sweep again, so a lens that was new when the sweep
+ * started is swept with leads after its first sweeps.
+ */
+public class SweepFocusController implements ScheduledFocusController {
+
+    private final FocusSweep sweep;
+    private volatile LensResponseModel lensResponse;
+    private float[] nominal;
+    private float[] schedule;
+    private int[] leads;
+    private int position;
+
+    public SweepFocusController(FocusSweep sweep) {
+        this.sweep = sweep;
+    }
+
+    public FocusSweep getSweep() {
+        return sweep;
+    }
+
+    /**
+     * Takes effect with the next {@link #start(float)}; {@code null} sweeps on time.
+     */
+    public void setLensResponse(LensResponseModel lensResponse) {
+        this.lensResponse = lensResponse;
+    }
+
+    @Override
+    public void start(float minFocusDistance) {
+        nominal = sweep.distances(minFocusDistance);
+        schedule = nominal.clone();
+        LensResponseModel response = lensResponse;
+        leads = response != null ? leadFrames(nominal, sweep.getDwellFrames(), response) : null;
+        if (leads != null) {
+            commandEarly(schedule, sweep.getDwellFrames(), leads);
+        }
+        position = 0;
+    }
+
+    @Override
+    public float[] getSchedule() {
+        return schedule;
+    }
+
+    @Override
+    public boolean isScheduleStale() {
+        LensResponseModel response = lensResponse;
+        if (nominal == null) {
+            return false;
+        }
+        if (response == null) {
+            return leads != null;
+        }
+        return !Arrays.equals(leads, leadFrames(nominal, sweep.getDwellFrames(), response));
+    }
+
+    @Override
+    public float onFrame(FocusFrame frame) {
+        float next = schedule[position];
+        position = (position + 1) % schedule.length;
+        return next;
+    }
+
+    /**
+     * Moves the start of every step earlier into the step before, in place. The sweep repeats, so the
+     * first step follows the last.
+     */
+    static void commandEarly(float[] distances, int dwellFrames, LensResponseModel response) {
+        commandEarly(distances, dwellFrames, leadFrames(distances, dwellFrames, response));
+    }
+
+    /**
+     * @return for each step, how many frames early it is commanded; none if the sweep dwells for a single
+     * frame
+     */
+    static int[] leadFrames(float[] distances, int dwellFrames, LensResponseModel response) {
+        if (dwellFrames < 2) {
+            return new int[0];
+        }
+        int length = distances.length;
+        int[] leads = new int[(length + dwellFrames - 1) / dwellFrames];
+        for (int start = 0; start < length; start += dwellFrames) {
+            float step = Math.abs(distances[start] - distances[(start - 1 + length) % length]);
+            leads[start / dwellFrames] = Math.min(response.getLeadFrames(step), dwellFrames - 1);
+        }
+        return leads;
+    }
+
+    private static void commandEarly(float[] distances, int dwellFrames, int[] leads) {
+        int length = distances.length;
+        float[] nominal = distances.clone();
+        for (int step = 0; step < leads.length; step++) {
+            int start = step * dwellFrames;
+            for (int i = 1; i <= leads[step]; i++) {
+                distances[(start - i + length) % length] = nominal[start];
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.focusingproject.encoding;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the most recent encoded frames in a fixed, preallocated off-heap buffer, so that a recording
+ * can begin a few seconds before it was started. Frames are stored back to back and wrap around; a
+ * frame that does not fit before the end of the buffer starts over at its beginning. Old frames are
+ * dropped to make room, or once a whole key frame interval lies outside the window, and the buffer
+ * always starts with a key frame, so whatever it holds can be decoded on its own.
+ * <p>
+ * Memory use is the data capacity plus a few bytes per frame slot, all allocated up front; nothing
+ * is allocated per frame. Not thread-safe.
+ */
+public class EncodedFrameRing {
+
+    public interface Sink {
+
+        /**
+         * @param frame the frame's bytes between position and limit, valid only during the call
+         */
+        void onFrame(ByteBuffer frame, long presentationTimeUs, boolean keyFrame);
+    }
+
+    private final ByteBuffer data;
+    private final ByteBuffer writeView;
+    private final ByteBuffer readView;
+    private final int capacity;
+    private final long windowUs;
+    private final long[] starts;
+    private final int[] sizes;
+    private final long[] presentationTimesUs;
+    private final boolean[] keyFrames;
+
+    private int head;
+    private int count;
+    // Byte positions grow without wrapping; the buffer position is the remainder by capacity.
+    private long writePosition;
+
+    /**
+     * @param capacityBytes size of the off-heap data buffer
+     * @param slots         most frames held at once, see {@link #slotsFor}
+     * @param windowMillis  how far back to keep frames, if memory allows
+     */
+    public EncodedFrameRing(int capacityBytes, int slots, long windowMillis) {
+        if (capacityBytes <= 0 || slots <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Capacity, slots and window must be positive.");
+        }
+        capacity = capacityBytes;
+        windowUs = windowMillis * 1000L;
+        data = ByteBuffer.allocateDirect(capacityBytes);
+        writeView = data.duplicate();
+        readView = data.duplicate();
+        starts = new long[slots];
+        sizes = new int[slots];
+        presentationTimesUs = new long[slots];
+        keyFrames = new boolean[slots];
+    }
+
+    /**
+     * @return frame slots needed to hold the window plus the key frame interval it may start in
+     */
+    public static int slotsFor(long windowMillis, int frameRate, int iFrameIntervalSeconds) {
+        long millis = windowMillis + Math.max(1, iFrameIntervalSeconds) * 1000L;
+        return (int) Math.min(Integer.MAX_VALUE, (millis * frameRate + 999) / 1000 + 1);
+    }
+
+    /**
+     * Copies a frame in, leaving the position of {@code frame} as it was.
+     *
+     * @return whether the frame was kept; frames before the first key frame, and frames larger than
+     * the whole buffer, are not
+     */
+    public boolean append(ByteBuffer frame, long presentationTimeUs, boolean keyFrame) {
+        int size = frame.remaining();
+        if (size > capacity) {
+            clear();
+            return false;
+        }
+        if (count == 0 && !keyFrame) {
+            return false;
+        }
+        long start = writePosition;
+        int offset = (int) (start % capacity);
+        if (capacity - offset < size) {
+            start += capacity - offset;
+            offset = 0;
+        }
+        while (count > 0 && (count == starts.length || start + size - starts[head] > capacity)) {
+            dropOldest();
+        }
+        dropToKeyFrame();
+        if (count == 0 && !keyFrame) {
+            return false;
+        }
+
+        int position = frame.position();
+        writeView.limit(offset + size);
+        writeView.position(offset);
+        writeView.put(frame);
+        frame.position(position);
+
+        int slot = (head + count) % starts.length;
+        starts[slot] = start;
+        sizes[slot] = size;
+        presentationTimesUs[slot] = presentationTimeUs;
+        keyFrames[slot] = keyFrame;
+        count++;
+        writePosition = start + size;
+        trimToWindow(presentationTimeUs);
+        return true;
+    }
+
+    /**
+     * Drops the oldest key frame interval while the next one still starts inside the window.
+     */
+    private void trimToWindow(long newestTimeUs) {
+        while (count > 1) {
+            int next = 1;
+            while (next < count && !keyFrames[(head + next) % starts.length]) {
+                next++;
+            }
+            if (next == count || newestTimeUs - presentationTimesUs[(head + next) % starts.length] < windowUs) {
+                return;
+            }
+            for (int i = 0; i < next; i++) {
+                dropOldest();
+            }
+        }
+    }
+
+    private void dropOldest() {
+        head = (head + 1) % starts.length;
+        count--;
+    }
+
+    private void dropToKeyFrame() {
+        while (count > 0 && !keyFrames[head]) {
+            dropOldest();
+        }
+    }
+
+    /**
+     * Hands every frame to the sink, oldest first, and empties the buffer.
+     *
+     * @return the number of frames drained
+     */
+    public int drainTo(Sink sink) {
+        int drained = count;
+        for (int i = 0; i < drained; i++) {
+            int slot = (head + i) % starts.length;
+            int offset = (int) (starts[slot] % capacity);
+            readView.limit(offset + sizes[slot]);
+            readView.position(offset);
+            sink.onFrame(readView, presentationTimesUs[slot], keyFrames[slot]);
+        }
+        clear();
+        return drained;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+        writePosition = 0;
+    }
+
+    public int getFrameCount() {
+        return count;
+    }
+
+    /**
+     * @return presentation time of the oldest frame, or -1 when empty
+     */
+    public long getFirstPresentationTimeUs() {
+        return count > 0 ? presentationTimesUs[head] : -1;
+    }
+
+    /**
+     * @return time from the oldest to the newest frame held
+     */
+    public long getDurationUs() {
+        return count > 0 ? presentationTimesUs[(head + count - 1) % starts.length] - presentationTimesUs[head] : 0;
+    }
+
+    public int getCapacityBytes() {
+        return capacity;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.focusingproject.encoding;
+
+/**
+ * Video encoder configuration. Immutable; the {@code with} methods return modified copies.
+ */
+public class EncoderSettings {
+
+    public enum Codec {
+        H264("video/avc"),
+        HEVC("video/hevc");
+
+        private final String mimeType;
+
+        Codec(String mimeType) {
+            this.mimeType = mimeType;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    public enum BitrateMode {
+        /**
+         * Constant bitrate: steady output size, quality varies with scene complexity.
+         */
+        CBR,
+        /**
+         * Variable bitrate around the target.
+         */
+        VBR,
+        /**
+         * Constant quality; the bitrate is ignored and {@link #getQuality()} is used instead.
+         */
+        CQ
+    }
+
+    public static final int DEFAULT_BIT_RATE = 10000000;
+    public static final int DEFAULT_FRAME_RATE = 30;
+    public static final int DEFAULT_I_FRAME_INTERVAL_SECONDS = 1;
+    public static final int DEFAULT_QUALITY = 80;
+
+    private final Codec codec;
+    private final BitrateMode bitrateMode;
+    private final int bitRate;
+    private final int frameRate;
+    private final int iFrameIntervalSeconds;
+    private final int quality;
+
+    /**
+     * @param iFrameIntervalSeconds seconds between key frames; 0 makes every frame a key frame
+     * @param quality               encoder-specific quality for {@link BitrateMode#CQ}
+     */
+    public EncoderSettings(Codec codec, BitrateMode bitrateMode, int bitRate, int frameRate,
+                           int iFrameIntervalSeconds, int quality) {
+        if (bitRate <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Bitrate and frame rate must be positive.");
+        }
+        if (iFrameIntervalSeconds < 0) {
+            throw new IllegalArgumentException("Key frame interval must not be negative.");
+        }
+        this.codec = codec;
+        this.bitrateMode = bitrateMode;
+        this.bitRate = bitRate;
+        this.frameRate = frameRate;
+        this.iFrameIntervalSeconds = iFrameIntervalSeconds;
+        this.quality = quality;
+    }
+
+    /**
+     * What the app recorded before it was configurable: 10 Mbps H.264 at 30 fps.
+     */
+    public static EncoderSettings defaults() {
+        return new EncoderSettings(Codec.H264, BitrateMode.VBR, DEFAULT_BIT_RATE, DEFAULT_FRAME_RATE,
+                DEFAULT_I_FRAME_INTERVAL_SECONDS, DEFAULT_QUALITY);
+    }
+
+    public EncoderSettings withCodec(Codec codec) {
+        return new EncoderSettings(codec, bitrateMode, bitRate, frameRate, iFrameIntervalSeconds, quality);
+    }
+
+    public EncoderSettings withBitrateMode(BitrateMode bitrateMode) {
+        return new EncoderSettings(codec, bitrateMode, bitRate, frameRate, iFrameIntervalSeconds, quality);
+    }
+
+    public EncoderSettings withBitRate(int bitRate) {
+        return new EncoderSettings(codec, bitrateMode, bitRate, frameRate, iFrameIntervalSeconds, quality);
+    }
+
+    public EncoderSettings withIFrameInterval(int iFrameIntervalSeconds) {
+        return new EncoderSettings(codec, bitrateMode, bitRate, frameRate, iFrameIntervalSeconds, quality);
+    }
+
+    public EncoderSettings withQuality(int quality) {
+        return new EncoderSettings(codec, bitrateMode, bitRate, frameRate, iFrameIntervalSeconds, quality);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public BitrateMode getBitrateMode() {
+        return bitrateMode;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public int getIFrameIntervalSeconds() {
+        return iFrameIntervalSeconds;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    @Override
+    public String toString() {
+        return codec + " " + bitrateMode + " " + bitRate / 1000 + " kbps " + frameRate + " fps, key frame every "
+                + iFrameIntervalSeconds + " s";
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.focusingproject.encoding;
+
+import com.example.focusingproject.analysis.FrameBudgetTimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame statistics of an encoder's output: capture-to-output latency and bitrate, both overall
+ * and over the last second of presentation time. Recorded from the encoder's callback thread, safe to
+ * read from any other.
+ */
+public class EncoderStats {
+
+    /**
+     * Latency above which a frame is counted as late: a few frames' worth of encoder queue.
+     */
+    public static final long LATENCY_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long WINDOW_US = 1000000L;
+    private static final int WINDOW_CAPACITY = 256;
+
+    private final FrameBudgetTimer latency = new FrameBudgetTimer(LATENCY_BUDGET_NANOS);
+
+    // Ring of recent frames for the windowed bitrate; only touched by the recording thread.
+    private final long[] windowTimes = new long[WINDOW_CAPACITY];
+    private final int[] windowSizes = new int[WINDOW_CAPACITY];
+    private int windowStart;
+    private int windowCount;
+    private long windowBytes;
+
+    private volatile long frames;
+    private volatile long keyFrames;
+    private volatile long totalBytes;
+    private volatile long firstPresentationTimeUs = -1;
+    private volatile long lastPresentationTimeUs;
+    private volatile long windowBitRate;
+
+    public void reset() {
+        latency.reset();
+        windowStart = 0;
+        windowCount = 0;
+        windowBytes = 0;
+        frames = 0;
+        keyFrames = 0;
+        totalBytes = 0;
+        firstPresentationTimeUs = -1;
+        lastPresentationTimeUs = 0;
+        windowBitRate = 0;
+    }
+
+    /**
+     * @param latencyNanos time from capture to the encoded frame leaving the encoder, or -1 if unknown
+     */
+    public void onEncodedFrame(long presentationTimeUs, int size, boolean keyFrame, long latencyNanos) {
+        if (firstPresentationTimeUs < 0) {
+            firstPresentationTimeUs = presentationTimeUs;
+        }
+        lastPresentationTimeUs = presentationTimeUs;
+        frames++;
+        if (keyFrame) {
+            keyFrames++;
+        }
+        totalBytes += size;
+        if (latencyNanos >= 0) {
+            latency.record(latencyNanos);
+        }
+
+        while (windowCount > 0 && (presentationTimeUs - windowTimes[windowStart] >= WINDOW_US
+                || windowCount == WINDOW_CAPACITY)) {
+            windowBytes -= windowSizes[windowStart];
+            windowStart = (windowStart + 1) % WINDOW_CAPACITY;
+            windowCount--;
+        }
+        int end = (windowStart + windowCount) % WINDOW_CAPACITY;
+        windowTimes[end] = presentationTimeUs;
+        windowSizes[end] = size;
+        windowCount++;
+        windowBytes += size;
+        long span = presentationTimeUs - windowTimes[windowStart];
+        windowBitRate = span > 0 ? windowBytes * 8 * WINDOW_US / (span + span / (windowCount - 1)) : 0;
+    }
+
+    public FrameBudgetTimer getLatency() {
+        return latency;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getKeyFrames() {
+        return keyFrames;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return bits per second over the last second of output
+     */
+    public long getBitRate() {
+        return windowBitRate;
+    }
+
+    /**
+     * @return bits per second since the first frame
+     */
+    public long getAverageBitRate() {
+        long count = frames;
+        long span = lastPresentationTimeUs - firstPresentationTimeUs;
+        if (count < 2 || span <= 0) {
+            return 0;
+        }
+        // Each frame covers one frame interval, so n frames span n intervals, not n - 1.
+        return (long) (totalBytes * 8.0 * WINDOW_US * (count - 1) / ((double) span * count));
+    }
+}
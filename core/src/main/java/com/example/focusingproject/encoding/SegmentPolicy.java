@@ -0,0 +1,51 @@
+package com.example.focusingproject.encoding;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a recording rolls over to a new segment file: once the current segment reaches a
+ * duration or a size limit, whichever comes first. The encoder then asks for a key frame and starts
+ * the new segment with it, so every segment plays on its own.
+ */
+public class SegmentPolicy {
+
+    /**
+     * Means no limit.
+     */
+    public static final long UNLIMITED = 0;
+
+    private final long maxDurationUs;
+    private final long maxBytes;
+
+    /**
+     * @param maxDurationMillis segment duration limit, or {@link #UNLIMITED}
+     * @param maxBytes          segment size limit, or {@link #UNLIMITED}
+     */
+    public SegmentPolicy(long maxDurationMillis, long maxBytes) {
+        if (maxDurationMillis < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Segment limits must not be negative.");
+        }
+        if (maxDurationMillis == UNLIMITED && maxBytes == UNLIMITED) {
+            throw new IllegalArgumentException("A segment policy needs at least one limit.");
+        }
+        this.maxDurationUs = TimeUnit.MILLISECONDS.toMicros(maxDurationMillis);
+        this.maxBytes = maxBytes;
+    }
+
+    public static SegmentPolicy byDuration(long maxDurationMillis) {
+        return new SegmentPolicy(maxDurationMillis, UNLIMITED);
+    }
+
+    public static SegmentPolicy bySize(long maxBytes) {
+        return new SegmentPolicy(UNLIMITED, maxBytes);
+    }
+
+    /**
+     * @param durationUs presentation time from the first frame of the segment to the current one
+     * @param bytes      encoded bytes written to the segment so far
+     */
+    public boolean shouldRotate(long durationUs, long bytes) {
+        return (maxDurationUs != UNLIMITED && durationUs >= maxDurationUs)
+                || (maxBytes != UNLIMITED && bytes >= maxBytes);
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.focusingproject.log;
+
+import java.io.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends focus distance records to a session log without doing any file I/O on the caller's thread.
+ * Records are copied into preallocated batches, and a batch is handed to the writer once it is full or
+ * its oldest record is older than the flush interval, checked on every record and, for a batch that
+ * stops filling up, by a timer shared by all writers. The writer runs on a given executor, which must
+ * run tasks one at a time and in order, such as the app's I/O thread; without one it gets a thread of
+ * its own. {@link #close()} hands over whatever is left and waits until everything is on disk.
+ * <p>
+ * Every record goes to the text log and, when a track file is given, to a binary
+ * {@link FocusTrackWriter} as well. Focus scores, which are measured on another thread and arrive on
+ * their own, travel in the same batches and go to a {@link FocusScoreWriter} index when one is given.
+ */
+public class FocusLogWriter implements Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 500;
+
+    private static final int POOL_SIZE = 4;
+    private static final String SEPARATOR = " - Focus distance: ";
+
+    /**
+     * Hands over batches whose flush interval ran out while no more records came. Its thread only
+     * takes a lock and queues a task, so one is enough for every writer.
+     */
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "FocusLogWriter-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final BlockingQueue<Batch> pending = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Batch> free = new LinkedBlockingQueue<>(POOL_SIZE);
+    private final Batch endOfStream = new Batch(0);
+    private final BufferedWriter out;
+    private final FocusTrackWriter track;
+    private final FocusScoreWriter scores;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushIfDue();
+        }
+    };
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private Batch current;
+    private long currentStartNanos;
+    private boolean closed;
+    private volatile IOException failure;
+
+    public FocusLogWriter(File file, File trackFile, File scoreFile) throws IOException {
+        this(file, trackFile, scoreFile, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * @param executor runs the writer, one task at a time
+     */
+    public FocusLogWriter(File file, File trackFile, File scoreFile, Executor executor) throws IOException {
+        this(file, trackFile, scoreFile, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS, executor);
+    }
+
+    public FocusLogWriter(File file, File trackFile, File scoreFile, int batchSize, long flushIntervalMillis)
+            throws IOException {
+        this(file, trackFile, scoreFile, batchSize, flushIntervalMillis, null);
+    }
+
+    /**
+     * @param trackFile binary track to write alongside the text log, or {@code null} for text only
+     * @param scoreFile focus score index, or {@code null} to drop scores
+     * @param executor  runs the writer, one task at a time, or {@code null} for a thread of its own
+     */
+    public FocusLogWriter(File file, File trackFile, File scoreFile, int batchSize, long flushIntervalMillis,
+                          Executor executor) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            free.add(new Batch(batchSize));
+        }
+        track = trackFile != null ? new FocusTrackWriter(trackFile) : null;
+        try {
+            scores = scoreFile != null ? new FocusScoreWriter(scoreFile) : null;
+        } catch (IOException e) {
+            closeQuietly(track);
+            throw e;
+        }
+        try {
+            out = new BufferedWriter(new FileWriter(file, true));
+        } catch (IOException e) {
+            closeQuietly(track);
+            closeQuietly(scores);
+            throw e;
+        }
+        if (executor != null) {
+            this.executor = executor;
+            ownExecutor = null;
+        } else {
+            ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "FocusLogWriter");
+                }
+            });
+            this.executor = ownExecutor;
+        }
+    }
+
+    /**
+     * Queues a single record. Never blocks on I/O; records written after {@link #close()} are dropped.
+     */
+    public synchronized void write(long wallClockMillis, long sensorTimestamp, long frameNumber,
+                                   float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+        if (closed) {
+            return;
+        }
+        if (current == null) {
+            startBatch();
+        }
+        int i = current.size;
+        current.wallClockMillis[i] = wallClockMillis;
+        current.sensorTimestamps[i] = sensorTimestamp;
+        current.frameNumbers[i] = frameNumber;
+        current.requestedFocusDistances[i] = requestedFocusDistance;
+        current.reportedFocusDistances[i] = reportedFocusDistance;
+        current.lensStates[i] = lensState;
+        current.size++;
+        handOffIfDue();
+    }
+
+    /**
+     * Queues the focus score of a frame, identified by its sensor timestamp. Dropped if the writer has
+     * no score index or is closed.
+     */
+    public synchronized void writeScore(long sensorTimestamp, float score) {
+        if (closed || scores == null) {
+            return;
+        }
+        if (current == null) {
+            startBatch();
+        }
+        int i = current.scoreCount;
+        current.scoreTimestamps[i] = sensorTimestamp;
+        current.scores[i] = score;
+        current.scoreCount++;
+        handOffIfDue();
+    }
+
+    private void startBatch() {
+        current = obtainBatch();
+        currentStartNanos = System.nanoTime();
+        if (flushIntervalNanos > 0) {
+            FLUSH_TIMER.schedule(flushTask, flushIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs on the timer. The batch it was scheduled for may have been handed over already, in which case
+     * the current one is younger than the interval and stays.
+     */
+    private synchronized void flushIfDue() {
+        if (!closed && current != null && System.nanoTime() - currentStartNanos >= flushIntervalNanos) {
+            handOff();
+        }
+    }
+
+    private void handOffIfDue() {
+        if (current.size == batchSize || current.scoreCount == batchSize
+                || System.nanoTime() - currentStartNanos >= flushIntervalNanos) {
+            handOff();
+        }
+    }
+
+    /**
+     * Hands over the records still held by the caller, waits for the writer to put them on disk and
+     * closes the file. Must not be called on the writer's executor.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            handOff();
+            pending.add(endOfStream);
+            executor.execute(drainTask);
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing focus log.");
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Batch obtainBatch() {
+        Batch batch = free.poll();
+        // The writer thread is behind; grow rather than block the camera thread or lose records.
+        return batch != null ? batch : new Batch(batchSize);
+    }
+
+    private void handOff() {
+        if (current != null && (current.size > 0 || current.scoreCount > 0)) {
+            pending.add(current);
+            current = null;
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * Writes the batches handed over so far. Runs on the executor; a run may find nothing left when an
+     * earlier one already took its batch.
+     */
+    private void drain() {
+        Batch batch;
+        while ((batch = pending.poll()) != null) {
+            if (batch == endOfStream) {
+                closeQuietly(out);
+                closeQuietly(track);
+                closeQuietly(scores);
+                finished.countDown();
+                return;
+            }
+            if (failure == null) {
+                writeBatch(batch);
+            }
+            batch.size = 0;
+            batch.scoreCount = 0;
+            free.offer(batch);
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    private void writeBatch(Batch batch) {
+        try {
+            for (int i = 0; i < batch.size; i++) {
+                writeLine(out, batch.wallClockMillis[i],
+                        loggedFocusDistance(batch.requestedFocusDistances[i], batch.reportedFocusDistances[i]));
+                if (track != null) {
+                    track.append(batch.wallClockMillis[i], batch.sensorTimestamps[i], batch.frameNumbers[i],
+                            batch.requestedFocusDistances[i], batch.reportedFocusDistances[i], batch.lensStates[i]);
+                }
+            }
+            for (int i = 0; i < batch.scoreCount; i++) {
+                scores.append(batch.scoreTimestamps[i], batch.scores[i]);
+            }
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * The text log shows the distance the lens reported for the frame, or the requested one on devices
+     * that do not report it.
+     */
+    static float loggedFocusDistance(float requestedFocusDistance, float reportedFocusDistance) {
+        return Float.isNaN(reportedFocusDistance) ? requestedFocusDistance : reportedFocusDistance;
+    }
+
+    static void writeLine(BufferedWriter out, long timestamp, float focusDistance) throws IOException {
+        out.write(Long.toString(timestamp));
+        out.write(SEPARATOR);
+        out.write(Float.toString(focusDistance));
+        out.newLine();
+    }
+
+    private static final class Batch {
+
+        final long[] wallClockMillis;
+        final long[] sensorTimestamps;
+        final long[] frameNumbers;
+        final float[] requestedFocusDistances;
+        final float[] reportedFocusDistances;
+        final int[] lensStates;
+        final long[] scoreTimestamps;
+        final float[] scores;
+        int size;
+        int scoreCount;
+
+        Batch(int capacity) {
+            wallClockMillis = new long[capacity];
+            sensorTimestamps = new long[capacity];
+            frameNumbers = new long[capacity];
+            requestedFocusDistances = new float[capacity];
+            reportedFocusDistances = new float[capacity];
+            lensStates = new int[capacity];
+            scoreTimestamps = new long[capacity];
+            scores = new float[capacity];
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.focusingproject.log;
+
+import com.example.focusingproject.mp4.Mp4Reader;
+import com.example.focusingproject.mp4.Mp4Track;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.example.focusingproject.log.FocusTrackFormat.*;
+
+/**
+ * Focus samples embedded in a recording as a timed metadata track, one sample per video frame with
+ * the frame's presentation time. A sample is a binary focus track record followed by the frame's
+ * wall-clock time, so the track converts straight back into a ".ftrk" file.
+ *
+ * <pre>
+ * sample: long sensorTimestamp, long frameNumber, float requestedFocusDistance,
+ *         float reportedFocusDistance, int lensState, int flags, long wallClockMillis
+ * </pre>
+ */
+public final class FocusMetadata {
+
+    public static final String MIME_TYPE = "application/x-focus-distance";
+    public static final int SAMPLE_SIZE = RECORD_SIZE + 8;
+
+    private static final int WALL_CLOCK_OFFSET = RECORD_SIZE;
+
+    private FocusMetadata() {
+    }
+
+    /**
+     * @return a buffer sized and ordered for {@link #encode}
+     */
+    public static ByteBuffer allocateSample() {
+        return allocateSamples(1);
+    }
+
+    /**
+     * @return a buffer sized and ordered for {@code count} samples one after the other
+     */
+    public static ByteBuffer allocateSamples(int count) {
+        return ByteBuffer.allocateDirect(count * SAMPLE_SIZE).order(BYTE_ORDER);
+    }
+
+    /**
+     * Writes one sample at the buffer's position without moving it.
+     */
+    public static void encode(ByteBuffer sample, long wallClockMillis, long sensorTimestamp, long frameNumber,
+                              float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+        int offset = sample.position();
+        sample.putLong(offset + SENSOR_TIMESTAMP_OFFSET, sensorTimestamp);
+        sample.putLong(offset + FRAME_NUMBER_OFFSET, frameNumber);
+        sample.putFloat(offset + REQUESTED_FOCUS_OFFSET, requestedFocusDistance);
+        sample.putFloat(offset + REPORTED_FOCUS_OFFSET, reportedFocusDistance);
+        sample.putInt(offset + LENS_STATE_OFFSET, lensState);
+        sample.putInt(offset + FLAGS_OFFSET, flagsOf(requestedFocusDistance, reportedFocusDistance, lensState));
+        sample.putLong(offset + WALL_CLOCK_OFFSET, wallClockMillis);
+    }
+
+    /**
+     * Copies the focus track of a recording into a binary focus track.
+     *
+     * @return number of samples copied
+     * @throws IOException if the recording has no focus track
+     */
+    public static int extractTrack(File video, File track) throws IOException {
+        try (Mp4Reader reader = new Mp4Reader(video)) {
+            Mp4Track metadata = reader.findMetadataTrack(MIME_TYPE);
+            if (metadata == null) {
+                throw new IOException("No focus track in " + video);
+            }
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE).order(BYTE_ORDER);
+            try (FocusTrackWriter writer = new FocusTrackWriter(track)) {
+                for (int i = 0; i < metadata.getSampleCount(); i++) {
+                    if (metadata.getSampleSize(i) < SAMPLE_SIZE) {
+                        throw new IOException("Focus sample " + i + " is truncated.");
+                    }
+                    sample.clear();
+                    reader.readSample(metadata, i, sample);
+                    writer.append(sample.getLong(WALL_CLOCK_OFFSET), sample.getLong(SENSOR_TIMESTAMP_OFFSET),
+                            sample.getLong(FRAME_NUMBER_OFFSET), sample.getFloat(REQUESTED_FOCUS_OFFSET),
+                            sample.getFloat(REPORTED_FOCUS_OFFSET), sample.getInt(LENS_STATE_OFFSET));
+                }
+            }
+            return metadata.getSampleCount();
+        }
+    }
+}
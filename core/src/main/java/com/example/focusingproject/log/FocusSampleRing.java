@@ -0,0 +1,85 @@
+package com.example.focusingproject.log;
+
+/**
+ * Keeps the focus samples of the most recent frames, overwriting the oldest, so that the focus log of
+ * a recording that begins with pre-rolled video can cover the same frames. Along with each sample it
+ * keeps the host time at which the frame's result arrived, so {@link SensorClockModel} can be fed the
+ * samples later as if they were arriving live. Preallocated; not thread-safe.
+ */
+public class FocusSampleRing {
+
+    public interface Sink {
+
+        void onSample(long sensorTimestamp, long arrivalNanos, long frameNumber, float requestedFocusDistance,
+                      float reportedFocusDistance, int lensState);
+    }
+
+    private final long[] sensorTimestamps;
+    private final long[] arrivalNanos;
+    private final long[] frameNumbers;
+    private final float[] requestedFocusDistances;
+    private final float[] reportedFocusDistances;
+    private final int[] lensStates;
+    private int head;
+    private int count;
+
+    public FocusSampleRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        sensorTimestamps = new long[capacity];
+        arrivalNanos = new long[capacity];
+        frameNumbers = new long[capacity];
+        requestedFocusDistances = new float[capacity];
+        reportedFocusDistances = new float[capacity];
+        lensStates = new int[capacity];
+    }
+
+    public void add(long sensorTimestamp, long arrivalNanos, long frameNumber, float requestedFocusDistance,
+                    float reportedFocusDistance, int lensState) {
+        int slot;
+        if (count == sensorTimestamps.length) {
+            slot = head;
+            head = (head + 1) % sensorTimestamps.length;
+        } else {
+            slot = (head + count) % sensorTimestamps.length;
+            count++;
+        }
+        sensorTimestamps[slot] = sensorTimestamp;
+        this.arrivalNanos[slot] = arrivalNanos;
+        frameNumbers[slot] = frameNumber;
+        requestedFocusDistances[slot] = requestedFocusDistance;
+        reportedFocusDistances[slot] = reportedFocusDistance;
+        lensStates[slot] = lensState;
+    }
+
+    /**
+     * Hands the samples at or after {@code fromSensorTimestamp} to the sink, oldest first, and empties
+     * the ring.
+     *
+     * @return the number of samples drained
+     */
+    public int drainTo(long fromSensorTimestamp, Sink sink) {
+        int drained = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % sensorTimestamps.length;
+            if (sensorTimestamps[slot] < fromSensorTimestamp) {
+                continue;
+            }
+            sink.onSample(sensorTimestamps[slot], arrivalNanos[slot], frameNumbers[slot],
+                    requestedFocusDistances[slot], reportedFocusDistances[slot], lensStates[slot]);
+            drained++;
+        }
+        clear();
+        return drained;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+}
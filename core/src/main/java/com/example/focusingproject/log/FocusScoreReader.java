@@ -0,0 +1,90 @@
+package com.example.focusingproject.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.example.focusingproject.log.FocusScoreWriter.*;
+
+/**
+ * Reads a focus score index written by {@link FocusScoreWriter}. Entries are joined with the focus log
+ * and the video by sensor timestamp.
+ */
+public class FocusScoreReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int recordSize;
+    private final int recordCount;
+
+    public FocusScoreReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = this.file.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a focus score index: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(BYTE_ORDER);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a focus score index: " + file);
+            }
+            if (buffer.getInt(4) > VERSION) {
+                throw new IOException("Unsupported focus score index version " + buffer.getInt(4));
+            }
+            recordSize = buffer.getInt(8);
+            if (recordSize < RECORD_SIZE) {
+                throw new IOException("Corrupted focus score index header: " + file);
+            }
+            recordCount = (int) ((length - HEADER_SIZE) / recordSize);
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getSensorTimestamp(int index) {
+        return buffer.getLong(offset(index));
+    }
+
+    public float getScore(int index) {
+        return buffer.getFloat(offset(index) + 8);
+    }
+
+    /**
+     * @return index of the highest score among frames with sensor timestamps in [from, to), or -1
+     */
+    public int indexOfBest(long fromSensorTimestamp, long toSensorTimestamp) {
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < recordCount; i++) {
+            long timestamp = getSensorTimestamp(i);
+            float score = getScore(i);
+            if (timestamp >= fromSensorTimestamp && timestamp < toSensorTimestamp && score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int offset(int index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        return HEADER_SIZE + index * recordSize;
+    }
+}
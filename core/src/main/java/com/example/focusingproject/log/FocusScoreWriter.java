@@ -0,0 +1,65 @@
+package com.example.focusingproject.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the per-frame focus score index (".fidx"): a 16 byte header followed by 12 byte little-endian
+ * records of sensor timestamp and score, in the order frames were scored. Only scored frames appear,
+ * so the index is small enough to be scanned whole when looking for the sharpest frames. Records are
+ * staged in a reusable buffer; not thread-safe.
+ *
+ * <pre>
+ * header: int magic, int version, int recordSize, int reserved
+ * record: long sensorTimestamp, float score
+ * </pre>
+ */
+public class FocusScoreWriter implements Closeable {
+
+    static final int MAGIC = 0x58444946; // "FIDX" read as little-endian
+    static final int VERSION = 1;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 12;
+
+    private static final int BUFFER_RECORDS = 512;
+
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE).order(BYTE_ORDER);
+
+    public FocusScoreWriter(File file) throws IOException {
+        out = new FileOutputStream(file);
+        channel = out.getChannel();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+    }
+
+    public void append(long sensorTimestamp, float score) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        buffer.putLong(sensorTimestamp).putFloat(score);
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.focusingproject.log;
+
+import java.io.*;
+
+/**
+ * Converts a binary focus track into the text log format written by {@link FocusLogWriter}, so tools
+ * built around the ".txt" files keep working.
+ */
+public final class FocusTrackConverter {
+
+    private FocusTrackConverter() {
+    }
+
+    public static void toText(File track, File text) throws IOException {
+        try (FocusTrackReader reader = new FocusTrackReader(track);
+             BufferedWriter out = new BufferedWriter(new FileWriter(text))) {
+            toText(reader, out);
+        }
+    }
+
+    /**
+     * Writes one line per record. Timestamps are the base wall-clock time of the track advanced by the
+     * sensor time elapsed since the first record.
+     */
+    public static void toText(FocusTrackReader reader, BufferedWriter out) throws IOException {
+        int count = reader.getRecordCount();
+        if (count == 0) {
+            return;
+        }
+        long baseSensorTimestamp = reader.getSensorTimestamp(0);
+        long baseWallClockMillis = reader.getBaseWallClockMillis();
+        for (int i = 0; i < count; i++) {
+            long elapsedMillis = (reader.getSensorTimestamp(i) - baseSensorTimestamp) / 1000000L;
+            float focusDistance = FocusLogWriter.loggedFocusDistance(
+                    reader.getRequestedFocusDistance(i), reader.getReportedFocusDistance(i));
+            FocusLogWriter.writeLine(out, baseWallClockMillis + elapsedMillis, focusDistance);
+        }
+        out.flush();
+    }
+}
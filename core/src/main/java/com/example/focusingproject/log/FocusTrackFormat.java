@@ -0,0 +1,74 @@
+package com.example.focusingproject.log;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the binary focus track (".ftrk"). The file is a 32 byte header followed by fixed-width
+ * little-endian records, so record {@code i} always starts at {@code HEADER_SIZE + i * recordSize}.
+ *
+ * <pre>
+ * header: int magic, int version, int recordSize, int reserved, long recordCount, long baseWallClockMillis
+ * record: long sensorTimestamp, long frameNumber, float requestedFocusDistance,
+ *         float reportedFocusDistance, int lensState, int flags
+ * </pre>
+ *
+ * The only flag so far is {@link #FLAG_LENS_MOVING}, derived from the other fields as the record is
+ * written.
+ */
+final class FocusTrackFormat {
+
+    static final int MAGIC = 0x4B525446; // "FTRK" read as little-endian
+    static final int VERSION = 1;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int HEADER_SIZE = 32;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RECORD_SIZE_OFFSET = 8;
+    static final int RECORD_COUNT_OFFSET = 16;
+    static final int BASE_WALL_CLOCK_OFFSET = 24;
+
+    static final int RECORD_SIZE = 32;
+    static final int SENSOR_TIMESTAMP_OFFSET = 0;
+    static final int FRAME_NUMBER_OFFSET = 8;
+    static final int REQUESTED_FOCUS_OFFSET = 16;
+    static final int REPORTED_FOCUS_OFFSET = 20;
+    static final int LENS_STATE_OFFSET = 24;
+    static final int FLAGS_OFFSET = 28;
+
+    /**
+     * The frame was captured while the lens was still moving, so its focus distance is not the requested
+     * one, and the reported one, if any, is only approximate.
+     */
+    static final int FLAG_LENS_MOVING = 1;
+
+    /**
+     * Same values as {@code CameraMetadata.LENS_STATE_*}.
+     */
+    private static final int LENS_STATE_STATIONARY = 0;
+    private static final int LENS_STATE_MOVING = 1;
+    /**
+     * How far the reported distance may be from the requested one on a lens that does not report its
+     * state, before the frame counts as mid-move; in diopters.
+     */
+    private static final float ARRIVAL_TOLERANCE = 0.01f;
+
+    /**
+     * A lens that reports its state is mid-move while it says so. One that does not is mid-move while
+     * it reports a distance away from the requested one; without either, nothing is flagged.
+     */
+    static int flagsOf(float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+        if (lensState == LENS_STATE_MOVING) {
+            return FLAG_LENS_MOVING;
+        }
+        if (lensState != LENS_STATE_STATIONARY && !Float.isNaN(requestedFocusDistance)
+                && !Float.isNaN(reportedFocusDistance)
+                && Math.abs(requestedFocusDistance - reportedFocusDistance) > ARRIVAL_TOLERANCE) {
+            return FLAG_LENS_MOVING;
+        }
+        return 0;
+    }
+
+    private FocusTrackFormat() {
+    }
+}
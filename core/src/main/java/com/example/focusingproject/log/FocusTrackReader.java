@@ -0,0 +1,136 @@
+package com.example.focusingproject.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.example.focusingproject.log.FocusTrackFormat.*;
+
+/**
+ * Random access to a binary focus track written by {@link FocusTrackWriter}. Records are fixed width,
+ * so any record is read in constant time straight from the mapping.
+ */
+public class FocusTrackReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int recordSize;
+    private final int recordCount;
+    private final long baseWallClockMillis;
+
+    public FocusTrackReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = this.file.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a focus track: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(BYTE_ORDER);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("Not a focus track: " + file);
+            }
+            if (buffer.getInt(VERSION_OFFSET) > VERSION) {
+                throw new IOException("Unsupported focus track version " + buffer.getInt(VERSION_OFFSET));
+            }
+            recordSize = buffer.getInt(RECORD_SIZE_OFFSET);
+            if (recordSize < RECORD_SIZE) {
+                throw new IOException("Corrupted focus track header: " + file);
+            }
+            long available = (length - HEADER_SIZE) / recordSize;
+            recordCount = (int) Math.min(buffer.getLong(RECORD_COUNT_OFFSET), available);
+            baseWallClockMillis = buffer.getLong(BASE_WALL_CLOCK_OFFSET);
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Wall-clock time of the first record, in milliseconds.
+     */
+    public long getBaseWallClockMillis() {
+        return baseWallClockMillis;
+    }
+
+    public long getSensorTimestamp(int index) {
+        return buffer.getLong(offset(index) + SENSOR_TIMESTAMP_OFFSET);
+    }
+
+    public long getFrameNumber(int index) {
+        return buffer.getLong(offset(index) + FRAME_NUMBER_OFFSET);
+    }
+
+    public float getRequestedFocusDistance(int index) {
+        return buffer.getFloat(offset(index) + REQUESTED_FOCUS_OFFSET);
+    }
+
+    public float getReportedFocusDistance(int index) {
+        return buffer.getFloat(offset(index) + REPORTED_FOCUS_OFFSET);
+    }
+
+    public int getLensState(int index) {
+        return buffer.getInt(offset(index) + LENS_STATE_OFFSET);
+    }
+
+    /**
+     * @return whether the frame was captured while the lens was still moving
+     */
+    public boolean isLensMoving(int index) {
+        return (buffer.getInt(offset(index) + FLAGS_OFFSET) & FLAG_LENS_MOVING) != 0;
+    }
+
+    /**
+     * Finds the record of the given frame. Frame numbers grow by one per frame, so the record is found
+     * directly unless frames were dropped before it, in which case a binary search over the remaining
+     * range is used.
+     *
+     * @return record index, or -1 if the frame is not in the track
+     */
+    public int indexOfFrame(long frameNumber) {
+        if (recordCount == 0) {
+            return -1;
+        }
+        long guess = frameNumber - getFrameNumber(0);
+        if (guess < 0) {
+            return -1;
+        }
+        if (guess < recordCount && getFrameNumber((int) guess) == frameNumber) {
+            return (int) guess;
+        }
+        int low = 0;
+        int high = (int) Math.min(guess, recordCount - 1);
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = getFrameNumber(middle);
+            if (value < frameNumber) {
+                low = middle + 1;
+            } else if (value > frameNumber) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int offset(int index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        return HEADER_SIZE + index * recordSize;
+    }
+}
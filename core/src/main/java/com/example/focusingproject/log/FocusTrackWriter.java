@@ -0,0 +1,104 @@
+package com.example.focusingproject.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.example.focusingproject.log.FocusTrackFormat.*;
+
+/**
+ * Writes a binary focus track through a {@link MappedByteBuffer}. The mapping grows by a fixed number
+ * of records at a time and the record count in the header is kept current, so a track cut short by a
+ * crash is still readable up to the last appended record. Not thread-safe; meant to be driven from a
+ * single writer thread.
+ */
+public class FocusTrackWriter implements Closeable {
+
+    public static final int DEFAULT_CHUNK_RECORDS = 4096;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int chunkRecords;
+    private MappedByteBuffer buffer;
+    private long capacity;
+    private long recordCount;
+
+    public FocusTrackWriter(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_RECORDS);
+    }
+
+    public FocusTrackWriter(File file, int chunkRecords) throws IOException {
+        if (chunkRecords <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.chunkRecords = chunkRecords;
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        this.file.setLength(0);
+        map(HEADER_SIZE + (long) chunkRecords * RECORD_SIZE);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        buffer.putLong(RECORD_COUNT_OFFSET, 0);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public void append(long wallClockMillis, long sensorTimestamp, long frameNumber,
+                       float requestedFocusDistance, float reportedFocusDistance, int lensState) throws IOException {
+        long position = HEADER_SIZE + recordCount * RECORD_SIZE;
+        if (position + RECORD_SIZE > capacity) {
+            map(capacity + (long) chunkRecords * RECORD_SIZE);
+        }
+        if (recordCount == 0) {
+            buffer.putLong(BASE_WALL_CLOCK_OFFSET, wallClockMillis);
+        }
+        int offset = (int) position;
+        buffer.putLong(offset + SENSOR_TIMESTAMP_OFFSET, sensorTimestamp);
+        buffer.putLong(offset + FRAME_NUMBER_OFFSET, frameNumber);
+        buffer.putFloat(offset + REQUESTED_FOCUS_OFFSET, requestedFocusDistance);
+        buffer.putFloat(offset + REPORTED_FOCUS_OFFSET, reportedFocusDistance);
+        buffer.putInt(offset + LENS_STATE_OFFSET, lensState);
+        buffer.putInt(offset + FLAGS_OFFSET, flagsOf(requestedFocusDistance, reportedFocusDistance, lensState));
+        recordCount++;
+        buffer.putLong(RECORD_COUNT_OFFSET, recordCount);
+    }
+
+    /**
+     * Writes the mapped pages back to storage.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes the track and trims the unused tail of the last chunk.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            buffer = null;
+            channel.truncate(HEADER_SIZE + recordCount * RECORD_SIZE);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Focus track exceeds " + Integer.MAX_VALUE + " bytes.");
+        }
+        if (buffer != null) {
+            buffer.force();
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(BYTE_ORDER);
+        capacity = size;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.focusingproject.log;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Lists the segments of a segmented recording, one tab-separated line per finished segment:
+ *
+ * <pre>
+ * index  file  startSensorTimestamp  endSensorTimestamp  firstFocusRecord  focusRecords  frames  bytes
+ * </pre>
+ *
+ * Focus records are counted in the session's focus log, so {@code firstFocusRecord} is both the line
+ * of the ".txt" log and the record of the ".ftrk" track where the segment starts. The manifest is
+ * flushed after every segment, so segments finished before a crash stay listed. Segment events come
+ * from the encoder thread and focus samples from the camera thread. A segment usually starts after
+ * the focus samples of its first frames were logged, because of encoder latency, so the timestamps of
+ * recent samples are kept to look back into.
+ */
+public class SegmentManifest implements Closeable {
+
+    static final String HEADER =
+            "# index\tfile\tstart_ns\tend_ns\tfirst_focus_record\tfocus_records\tframes\tbytes";
+
+    private static final int RECENT_SAMPLES = 256;
+
+    private final BufferedWriter out;
+    private final long[] recentTimestamps = new long[RECENT_SAMPLES];
+    private long focusRecords;
+    private long segmentStartTimestamp = Long.MAX_VALUE;
+    private long segmentFirstRecord = -1;
+    private long nextSegmentStartTimestamp = Long.MAX_VALUE;
+    private long nextSegmentFirstRecord = -1;
+
+    public SegmentManifest(File file) throws IOException {
+        out = new BufferedWriter(new FileWriter(file));
+        out.write(HEADER);
+        out.newLine();
+        out.flush();
+    }
+
+    /**
+     * Counts one record of the focus log. Must be called for every logged sample, in order.
+     */
+    public synchronized void onFocusSample(long sensorTimestamp) {
+        recentTimestamps[(int) (focusRecords % RECENT_SAMPLES)] = sensorTimestamp;
+        if (segmentFirstRecord < 0 && sensorTimestamp >= segmentStartTimestamp) {
+            segmentFirstRecord = focusRecords;
+        }
+        if (nextSegmentFirstRecord < 0 && sensorTimestamp >= nextSegmentStartTimestamp) {
+            nextSegmentFirstRecord = focusRecords;
+        }
+        focusRecords++;
+    }
+
+    /**
+     * Marks the first frame of a segment. While another segment is still open, this is the segment
+     * that follows it; call this before finishing the open one, so that no focus sample falls between
+     * the two.
+     */
+    public synchronized void startSegment(long startSensorTimestamp) {
+        if (segmentStartTimestamp == Long.MAX_VALUE) {
+            segmentStartTimestamp = startSensorTimestamp;
+            segmentFirstRecord = findFirstRecord(startSensorTimestamp);
+        } else {
+            nextSegmentStartTimestamp = startSensorTimestamp;
+            nextSegmentFirstRecord = findFirstRecord(startSensorTimestamp);
+        }
+    }
+
+    /**
+     * @return first already logged record at or after the timestamp, or -1 if it is still to come
+     */
+    private long findFirstRecord(long sensorTimestamp) {
+        long first = -1;
+        long oldest = Math.max(0, focusRecords - RECENT_SAMPLES);
+        for (long record = focusRecords - 1; record >= oldest; record--) {
+            if (recentTimestamps[(int) (record % RECENT_SAMPLES)] < sensorTimestamp) {
+                break;
+            }
+            first = record;
+        }
+        return first;
+    }
+
+    public synchronized void finishSegment(int index, String fileName, long startSensorTimestamp,
+                                           long endSensorTimestamp, long frames, long bytes) throws IOException {
+        long firstRecord = segmentFirstRecord >= 0 ? segmentFirstRecord : focusRecords;
+        long nextFirstRecord;
+        if (nextSegmentStartTimestamp != Long.MAX_VALUE) {
+            nextFirstRecord = nextSegmentFirstRecord >= 0 ? nextSegmentFirstRecord : focusRecords;
+        } else {
+            nextFirstRecord = focusRecords;
+        }
+        out.write(index + "\t" + fileName + "\t" + startSensorTimestamp + "\t" + endSensorTimestamp + "\t"
+                + firstRecord + "\t" + (nextFirstRecord - firstRecord) + "\t" + frames + "\t" + bytes);
+        out.newLine();
+        out.flush();
+
+        segmentStartTimestamp = nextSegmentStartTimestamp;
+        segmentFirstRecord = nextSegmentFirstRecord;
+        nextSegmentStartTimestamp = Long.MAX_VALUE;
+        nextSegmentFirstRecord = -1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.focusingproject.log;
+
+/**
+ * Maps camera sensor timestamps onto the host clock and onto the presentation timeline of the
+ * recording. Each frame contributes a pair of sensor timestamp and the host monotonic time at which
+ * its result arrived. The rate between the two clocks is fitted with an incremental least-squares
+ * line, and the offset follows the lower envelope of the residuals around that line, because callback
+ * delivery can only be late, never early, so the earliest-looking sample is the least delayed one. The
+ * envelope is taken over a window of recent frames so that samples judged against an earlier, less
+ * accurate fit drop out.
+ * <p>
+ * The encoder is fed the same sensor timestamps, so presentation times are the sensor time elapsed
+ * since the first frame of the session. The fitted drift is what keeps wall-clock stamps stable over
+ * long sessions instead of jittering with callback latency and GC pauses. Everything is primitive
+ * arithmetic; nothing is allocated per frame. Not thread-safe.
+ */
+public class SensorClockModel {
+
+    private static final int MIN_SAMPLES_FOR_RATE = 30;
+    private static final int ENVELOPE_WINDOW = 64;
+
+    private long originSensorNanos;
+    private long originReferenceNanos;
+    private long originWallClockMillis;
+
+    private long samples;
+    private double meanX;
+    private double meanY;
+    private double varianceX;
+    private double covarianceXY;
+    private double rate = 1.0;
+    private double intercept;
+    private double lowestResidual;
+    private double windowLowestResidual;
+
+    public SensorClockModel() {
+        reset();
+    }
+
+    /**
+     * Starts a new session. The host clock is read now so that wall-clock stamps can be derived from
+     * {@link System#nanoTime()}, which unlike {@link System#currentTimeMillis()} never jumps.
+     */
+    public void reset() {
+        samples = 0;
+        meanX = 0;
+        meanY = 0;
+        varianceX = 0;
+        covarianceXY = 0;
+        rate = 1.0;
+        intercept = 0;
+        lowestResidual = 0;
+        windowLowestResidual = Double.MAX_VALUE;
+        originReferenceNanos = System.nanoTime();
+        originWallClockMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @param sensorNanos    sensor timestamp of a frame
+     * @param referenceNanos host monotonic time at which the frame's result was observed
+     */
+    public void observe(long sensorNanos, long referenceNanos) {
+        if (samples == 0) {
+            originSensorNanos = sensorNanos;
+        }
+        double x = sensorNanos - originSensorNanos;
+        double y = referenceNanos - originReferenceNanos;
+        samples++;
+        double dx = x - meanX;
+        meanX += dx / samples;
+        meanY += (y - meanY) / samples;
+        varianceX += dx * (x - meanX);
+        covarianceXY += dx * (y - meanY);
+        if (samples >= MIN_SAMPLES_FOR_RATE && varianceX > 0) {
+            rate = covarianceXY / varianceX;
+        }
+        intercept = meanY - rate * meanX;
+        double residual = y - (rate * x + intercept);
+        windowLowestResidual = Math.min(windowLowestResidual, residual);
+        if (samples <= ENVELOPE_WINDOW) {
+            lowestResidual = windowLowestResidual;
+        }
+        if (samples % ENVELOPE_WINDOW == 0) {
+            lowestResidual = windowLowestResidual;
+            windowLowestResidual = Double.MAX_VALUE;
+        }
+    }
+
+    public long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * Host clock nanoseconds per sensor nanosecond; 1.0 until enough frames have been observed.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public long getOriginSensorNanos() {
+        return originSensorNanos;
+    }
+
+    /**
+     * @return the host monotonic time at which the frame's result became available, less callback jitter
+     */
+    public long toReferenceNanos(long sensorNanos) {
+        double x = sensorNanos - originSensorNanos;
+        return originReferenceNanos + (long) (rate * x + intercept + lowestResidual);
+    }
+
+    public long toWallClockMillis(long sensorNanos) {
+        return originWallClockMillis + (toReferenceNanos(sensorNanos) - originReferenceNanos) / 1000000L;
+    }
+
+    /**
+     * @return presentation time of the frame in the recording, in microseconds
+     */
+    public long toPresentationTimeUs(long sensorNanos) {
+        return (sensorNanos - originSensorNanos) / 1000L;
+    }
+}
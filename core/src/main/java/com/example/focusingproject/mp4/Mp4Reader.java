@@ -0,0 +1,338 @@
+package com.example.focusingproject.mp4;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimal ISO base media file reader: finds the "moov" box, builds a sample table for every track and
+ * reads samples by index. Only what is needed to pull tracks back out of the app's own recordings is
+ * parsed; fragmented files are not supported.
+ */
+public class Mp4Reader implements Closeable {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int HEADER_SIZE = 8;
+    private static final int LARGE_HEADER_SIZE = 16;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<Mp4Track> tracks;
+
+    public Mp4Reader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+        try {
+            tracks = Collections.unmodifiableList(readTracks());
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public List<Mp4Track> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * @return the first timed metadata track with the given MIME type, or {@code null}
+     */
+    public Mp4Track findMetadataTrack(String mimeType) {
+        for (Mp4Track track : tracks) {
+            if (mimeType.equals(track.getMimeType())) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads one sample into {@code destination} from its position to its limit; the buffer must have
+     * room for the whole sample.
+     */
+    public void readSample(Mp4Track track, int index, ByteBuffer destination) throws IOException {
+        int size = track.getSampleSize(index);
+        if (destination.remaining() < size) {
+            throw new IllegalArgumentException("Sample " + index + " needs " + size + " bytes.");
+        }
+        ByteBuffer slice = destination.duplicate();
+        slice.limit(slice.position() + size);
+        readFully(track.getSampleOffset(index), slice);
+        destination.position(destination.position() + size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private List<Mp4Track> readTracks() throws IOException {
+        long length = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(LARGE_HEADER_SIZE);
+        while (position + HEADER_SIZE <= length) {
+            header.clear();
+            header.limit((int) Math.min(LARGE_HEADER_SIZE, length - position));
+            readFully(position, header);
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int headerSize = HEADER_SIZE;
+            if (size == 1) {
+                if (header.limit() < LARGE_HEADER_SIZE) {
+                    throw new IOException("Corrupted box at " + position);
+                }
+                size = header.getLong(8);
+                headerSize = LARGE_HEADER_SIZE;
+            } else if (size == 0) {
+                size = length - position;
+            }
+            if (size < headerSize) {
+                throw new IOException("Corrupted box at " + position);
+            }
+            if (type(header, 4).equals("moov")) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Movie box is too large.");
+                }
+                ByteBuffer moov = ByteBuffer.allocate((int) size - headerSize);
+                readFully(position + headerSize, moov);
+                return parseMovie(moov, length);
+            }
+            position += size;
+        }
+        throw new IOException("No movie box.");
+    }
+
+    /**
+     * @param length file length, which bounds the sample count of a track with a fixed sample size
+     */
+    private static List<Mp4Track> parseMovie(ByteBuffer moov, long length) throws IOException {
+        List<Mp4Track> tracks = new ArrayList<>();
+        int position = 0;
+        while (position + HEADER_SIZE <= moov.limit()) {
+            int size = boxSize(moov, position);
+            if (type(moov, position + 4).equals("trak")) {
+                tracks.add(parseTrack(moov, position + HEADER_SIZE, position + size, length));
+            }
+            position += size;
+        }
+        return tracks;
+    }
+
+    private static Mp4Track parseTrack(ByteBuffer buffer, int start, int end, long length) throws IOException {
+        int tkhd = find(buffer, start, end, "tkhd");
+        int mdia = find(buffer, start, end, "mdia");
+        int mdhd = find(buffer, mdia + HEADER_SIZE, boxEnd(buffer, mdia), "mdhd");
+        int hdlr = find(buffer, mdia + HEADER_SIZE, boxEnd(buffer, mdia), "hdlr");
+        int minf = find(buffer, mdia + HEADER_SIZE, boxEnd(buffer, mdia), "minf");
+        int stbl = find(buffer, minf + HEADER_SIZE, boxEnd(buffer, minf), "stbl");
+        if (tkhd < 0 || mdhd < 0 || hdlr < 0 || stbl < 0) {
+            throw new IOException("Incomplete track box.");
+        }
+
+        int tkhdVersion = buffer.get(checkRange(tkhd + HEADER_SIZE, 1, boxEnd(buffer, tkhd)));
+        int trackId = buffer.getInt(checkRange(tkhd + HEADER_SIZE + (tkhdVersion == 1 ? 20 : 12), 4,
+                boxEnd(buffer, tkhd)));
+        int mdhdVersion = buffer.get(checkRange(mdhd + HEADER_SIZE, 1, boxEnd(buffer, mdhd)));
+        long timescale = buffer.getInt(checkRange(mdhd + HEADER_SIZE + (mdhdVersion == 1 ? 20 : 12), 4,
+                boxEnd(buffer, mdhd))) & 0xFFFFFFFFL;
+        String handlerType = type(buffer, checkRange(hdlr + HEADER_SIZE + 8, 4, boxEnd(buffer, hdlr)));
+
+        int tablesStart = stbl + HEADER_SIZE;
+        int tablesEnd = boxEnd(buffer, stbl);
+        int stsd = find(buffer, tablesStart, tablesEnd, "stsd");
+        String sampleEntryType = null;
+        String mimeType = null;
+        if (stsd >= 0 && buffer.getInt(checkRange(stsd + HEADER_SIZE + 4, 4, boxEnd(buffer, stsd))) > 0) {
+            int entry = checkRange(stsd + HEADER_SIZE + 8, HEADER_SIZE, boxEnd(buffer, stsd));
+            int entryEnd = boxEnd(buffer, entry);
+            if (entryEnd > boxEnd(buffer, stsd)) {
+                throw new IOException("Sample entry at " + entry + " overruns its box.");
+            }
+            sampleEntryType = type(buffer, entry + 4);
+            if (sampleEntryType.equals("mett")) {
+                // 6 reserved bytes and a data reference index, then content encoding and MIME type.
+                int encoding = entry + HEADER_SIZE + 8;
+                mimeType = cString(buffer, encoding + cString(buffer, encoding, entryEnd).length() + 1, entryEnd);
+            }
+        }
+
+        int[] sizes = sampleSizes(buffer, tablesStart, tablesEnd, length);
+        long[] offsets = sampleOffsets(buffer, tablesStart, tablesEnd, sizes);
+        long[] times = sampleTimes(buffer, tablesStart, tablesEnd, sizes.length);
+        return new Mp4Track(trackId, handlerType, sampleEntryType, mimeType, timescale, offsets, sizes, times);
+    }
+
+    private static int[] sampleSizes(ByteBuffer buffer, int start, int end, long length) throws IOException {
+        int stsz = find(buffer, start, end, "stsz");
+        if (stsz < 0) {
+            throw new IOException("No sample size box.");
+        }
+        int body = stsz + HEADER_SIZE + 4;
+        int fixedSize = buffer.getInt(checkRange(body, 4, boxEnd(buffer, stsz)));
+        int count;
+        if (fixedSize == 0) {
+            count = entryCount(buffer, body + 4, 4, boxEnd(buffer, stsz));
+        } else {
+            // No table backs the count, so the samples have to fit in the file instead.
+            count = buffer.getInt(checkRange(body + 4, 4, boxEnd(buffer, stsz)));
+            if (fixedSize < 0 || count < 0 || (long) fixedSize * count > length) {
+                throw new IOException(count + " samples of " + fixedSize + " bytes do not fit in the file.");
+            }
+        }
+        int[] sizes = new int[count];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = fixedSize != 0 ? fixedSize : buffer.getInt(body + 8 + 4 * i);
+            if (sizes[i] < 0) {
+                throw new IOException("Sample " + i + " is too large.");
+            }
+        }
+        return sizes;
+    }
+
+    private static long[] sampleOffsets(ByteBuffer buffer, int start, int end, int[] sizes) throws IOException {
+        int stco = find(buffer, start, end, "stco");
+        int co64 = find(buffer, start, end, "co64");
+        int stsc = find(buffer, start, end, "stsc");
+        if ((stco < 0 && co64 < 0) || stsc < 0) {
+            throw new IOException("No chunk boxes.");
+        }
+        boolean large = stco < 0;
+        int chunkBody = (large ? co64 : stco) + HEADER_SIZE + 4;
+        int chunkCount = entryCount(buffer, chunkBody, large ? 8 : 4, boxEnd(buffer, large ? co64 : stco));
+        int runBody = stsc + HEADER_SIZE + 4;
+        int runCount = entryCount(buffer, runBody, 12, boxEnd(buffer, stsc));
+
+        long[] offsets = new long[sizes.length];
+        int sample = 0;
+        for (int run = 0; run < runCount; run++) {
+            int firstChunk = buffer.getInt(runBody + 4 + 12 * run) - 1;
+            int samplesPerChunk = buffer.getInt(runBody + 4 + 12 * run + 4);
+            int lastChunk = run + 1 < runCount ? buffer.getInt(runBody + 4 + 12 * (run + 1)) - 1 : chunkCount;
+            if (firstChunk < 0 || lastChunk > chunkCount) {
+                throw new IOException("Chunk run " + run + " lies outside the " + chunkCount + " chunks.");
+            }
+            for (int chunk = firstChunk; chunk < lastChunk; chunk++) {
+                long offset = large ? buffer.getLong(chunkBody + 4 + 8 * chunk)
+                        : buffer.getInt(chunkBody + 4 + 4 * chunk) & 0xFFFFFFFFL;
+                for (int i = 0; i < samplesPerChunk && sample < sizes.length; i++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        if (sample != sizes.length) {
+            throw new IOException("Chunks hold " + sample + " of " + sizes.length + " samples.");
+        }
+        return offsets;
+    }
+
+    private static long[] sampleTimes(ByteBuffer buffer, int start, int end, int count) throws IOException {
+        int stts = find(buffer, start, end, "stts");
+        if (stts < 0) {
+            throw new IOException("No decoding time box.");
+        }
+        int body = stts + HEADER_SIZE + 4;
+        int entries = entryCount(buffer, body, 8, boxEnd(buffer, stts));
+        long[] times = new long[count];
+        long time = 0;
+        int sample = 0;
+        for (int entry = 0; entry < entries; entry++) {
+            int samples = buffer.getInt(body + 4 + 8 * entry);
+            long delta = buffer.getInt(body + 4 + 8 * entry + 4) & 0xFFFFFFFFL;
+            for (int i = 0; i < samples && sample < count; i++) {
+                times[sample++] = time;
+                time += delta;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @return position of the first child box of the given type within [start, end), or -1
+     */
+    private static int find(ByteBuffer buffer, int start, int end, String type) throws IOException {
+        int position = start;
+        while (position >= 0 && position + HEADER_SIZE <= end) {
+            if (type(buffer, position + 4).equals(type)) {
+                return position;
+            }
+            position += boxSize(buffer, position);
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the entry count of the table at {@code position} and checks that its entries of
+     * {@code entrySize} bytes end within {@code end}, before anything is allocated for them.
+     */
+    private static int entryCount(ByteBuffer buffer, int position, int entrySize, int end) throws IOException {
+        int count = buffer.getInt(checkRange(position, 4, end));
+        if (count < 0 || (long) count * entrySize > end - position - 4) {
+            throw new IOException("Table at " + position + " of the movie box overruns its box.");
+        }
+        return count;
+    }
+
+    /**
+     * @return {@code position}, once {@code bytes} bytes from it are known to end within {@code end}
+     */
+    private static int checkRange(int position, int bytes, int end) throws IOException {
+        if (position < 0 || (long) position + bytes > end) {
+            throw new IOException("Field at " + position + " of the movie box overruns its box.");
+        }
+        return position;
+    }
+
+    private static int boxEnd(ByteBuffer buffer, int position) throws IOException {
+        return position < 0 ? -1 : position + boxSize(buffer, position);
+    }
+
+    private static int boxSize(ByteBuffer buffer, int position) throws IOException {
+        int size = buffer.getInt(position);
+        if (size < HEADER_SIZE || position + size > buffer.limit()) {
+            throw new IOException("Corrupted box at " + position + " of the movie box.");
+        }
+        return size;
+    }
+
+    private static String type(ByteBuffer buffer, int position) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, ASCII);
+    }
+
+    /**
+     * @return the NUL-terminated string at {@code position}, cut off at {@code limit}
+     */
+    private static String cString(ByteBuffer buffer, int position, int limit) {
+        int end = position;
+        while (end < limit && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - position];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, ASCII);
+    }
+
+    private void readFully(long position, ByteBuffer destination) throws IOException {
+        while (destination.hasRemaining()) {
+            int read = channel.read(destination, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.focusingproject.mp4;
+
+/**
+ * Sample table of one track of an MP4 file, flattened so that any sample can be located in O(1).
+ * Times are decode times in the track's timescale, counted from the start of the track's media; edit
+ * lists are not applied.
+ */
+public class Mp4Track {
+
+    private final int trackId;
+    private final String handlerType;
+    private final String sampleEntryType;
+    private final String mimeType;
+    private final long timescale;
+    private final long[] offsets;
+    private final int[] sizes;
+    private final long[] times;
+
+    Mp4Track(int trackId, String handlerType, String sampleEntryType, String mimeType, long timescale,
+             long[] offsets, int[] sizes, long[] times) {
+        this.trackId = trackId;
+        this.handlerType = handlerType;
+        this.sampleEntryType = sampleEntryType;
+        this.mimeType = mimeType;
+        this.timescale = timescale;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.times = times;
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    /**
+     * @return handler type from the "hdlr" box, such as "vide", "soun" or "meta"
+     */
+    public String getHandlerType() {
+        return handlerType;
+    }
+
+    /**
+     * @return four-character code of the first sample entry, such as "avc1" or "mett"
+     */
+    public String getSampleEntryType() {
+        return sampleEntryType;
+    }
+
+    /**
+     * @return MIME type of a "mett" timed metadata track, otherwise {@code null}
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    public int getSampleCount() {
+        return sizes.length;
+    }
+
+    public long getSampleOffset(int index) {
+        return offsets[index];
+    }
+
+    public int getSampleSize(int index) {
+        return sizes[index];
+    }
+
+    public long getSampleTime(int index) {
+        return times[index];
+    }
+
+    public long getSampleTimeUs(int index) {
+        return times[index] * 1000000L / timescale;
+    }
+}
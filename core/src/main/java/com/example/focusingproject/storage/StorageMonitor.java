@@ -0,0 +1,211 @@
+package com.example.focusingproject.storage;
+
+import com.example.focusingproject.encoding.EncoderSettings;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps recordings within what the storage can take. Before a recording, {@link #admit} checks the
+ * encoder's data rate against the sustained write throughput measured by {@link #probeThroughput} and
+ * against the free space: a rate the storage cannot keep up with is lowered, down to
+ * {@link #MIN_BIT_RATE}, and a recording that would fill the disk almost at once is refused. While
+ * recording, {@link #update} is called periodically with the encoded bytes and the bytes that reached
+ * the files, and tracks the write rate, the bytes still queued on their way to the disk and the
+ * recording time left.
+ * <p>
+ * When data keeps queuing up, the measured write rate is the best estimate of what the storage
+ * sustains, and it replaces the probed throughput for later admissions. Not thread-safe, apart from
+ * the throughput, which may be set from a probing thread.
+ */
+public class StorageMonitor {
+
+    public enum Status {
+        OK,
+        /**
+         * Less than the warning time left at the current rate.
+         */
+        LOW_SPACE,
+        /**
+         * More data queued than the storage writes in {@link #BACKLOG_SECONDS}.
+         */
+        BACKLOG,
+        /**
+         * Less than the stop time left; the recording should end now, while its files can still be
+         * finished.
+         */
+        FULL
+    }
+
+    public static final long UNKNOWN = -1;
+    public static final int MIN_BIT_RATE = 2000000;
+    public static final int DEFAULT_PROBE_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_WARN_SECONDS = 60;
+    public static final long DEFAULT_STOP_SECONDS = 5;
+
+    /**
+     * Share of the probed throughput a recording may use; the rest is left for the muxer's own
+     * overhead and for other apps.
+     */
+    static final double HEADROOM = 0.75;
+    /**
+     * Allowance for the focus log, track, score index and metadata track next to the video.
+     */
+    static final long SIDECAR_BYTES_PER_SECOND = 16 * 1024;
+    static final long BACKLOG_SECONDS = 3;
+
+    private static final int PROBE_CHUNK = 256 * 1024;
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final long warnSeconds;
+    private final long stopSeconds;
+    private volatile long throughputBytesPerSecond = UNKNOWN;
+
+    private long lastNanos = -1;
+    private long lastWrittenBytes;
+    private double writeBytesPerSecond;
+    private long queuedBytes;
+    private long remainingSeconds = UNKNOWN;
+
+    public StorageMonitor() {
+        this(DEFAULT_WARN_SECONDS, DEFAULT_STOP_SECONDS);
+    }
+
+    public StorageMonitor(long warnSeconds, long stopSeconds) {
+        if (stopSeconds < 0 || warnSeconds < stopSeconds) {
+            throw new IllegalArgumentException("Warning time must not be shorter than stop time.");
+        }
+        this.warnSeconds = warnSeconds;
+        this.stopSeconds = stopSeconds;
+    }
+
+    /**
+     * Writes {@code bytes} to a scratch file in the directory, forces it to the device and deletes it.
+     * Blocks for as long as that takes, so call it off the camera and UI threads.
+     *
+     * @return sustained write throughput in bytes per second
+     */
+    public static long probeThroughput(File directory, int bytes) throws IOException {
+        File file = File.createTempFile("probe", ".tmp", directory);
+        try {
+            byte[] chunk = new byte[PROBE_CHUNK];
+            long start = System.nanoTime();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                for (int written = 0; written < bytes; written += chunk.length) {
+                    out.write(chunk, 0, Math.min(chunk.length, bytes - written));
+                }
+                out.getChannel().force(true);
+            }
+            long nanos = Math.max(1, System.nanoTime() - start);
+            return bytes * TimeUnit.SECONDS.toNanos(1) / nanos;
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    public void setThroughput(long bytesPerSecond) {
+        throughputBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return the sustained write throughput used for admission, or {@link #UNKNOWN}
+     */
+    public long getThroughput() {
+        return throughputBytesPerSecond;
+    }
+
+    /**
+     * @return data rate of a recording, in bytes per second, including its sidecar files
+     */
+    static long bytesPerSecond(int bitRate) {
+        return bitRate / 8 + SIDECAR_BYTES_PER_SECOND;
+    }
+
+    /**
+     * @param freeBytes usable space where the recording goes
+     * @return the settings to record with, the requested ones or with a lower bitrate, or {@code null}
+     * if the recording should not start
+     */
+    public EncoderSettings admit(EncoderSettings requested, long freeBytes) {
+        EncoderSettings admitted = requested;
+        long throughput = throughputBytesPerSecond;
+        if (throughput != UNKNOWN && bytesPerSecond(requested.getBitRate()) > throughput * HEADROOM) {
+            long bitRate = ((long) (throughput * HEADROOM) - SIDECAR_BYTES_PER_SECOND) * 8;
+            if (bitRate < MIN_BIT_RATE) {
+                return null;
+            }
+            admitted = requested.withBitRate((int) Math.min(Integer.MAX_VALUE, bitRate));
+            if (admitted.getBitrateMode() == EncoderSettings.BitrateMode.CQ) {
+                // Constant quality ignores the bitrate; only a bitrate mode keeps the rate down.
+                admitted = admitted.withBitrateMode(EncoderSettings.BitrateMode.VBR);
+            }
+        }
+        if (freeBytes / bytesPerSecond(admitted.getBitRate()) <= stopSeconds) {
+            return null;
+        }
+        return admitted;
+    }
+
+    /**
+     * Starts a new recording's measurements.
+     */
+    public void reset() {
+        lastNanos = -1;
+        lastWrittenBytes = 0;
+        writeBytesPerSecond = 0;
+        queuedBytes = 0;
+        remainingSeconds = UNKNOWN;
+    }
+
+    /**
+     * @param nowNanos     {@link System#nanoTime()}
+     * @param encodedBytes video bytes the encoder has put out in this recording
+     * @param writtenBytes size of the recording's video files on disk
+     * @param freeBytes    usable space left
+     * @param bitRate      bitrate of the recording
+     */
+    public Status update(long nowNanos, long encodedBytes, long writtenBytes, long freeBytes, int bitRate) {
+        if (lastNanos >= 0 && nowNanos > lastNanos) {
+            double rate = (writtenBytes - lastWrittenBytes) * (double) TimeUnit.SECONDS.toNanos(1)
+                    / (nowNanos - lastNanos);
+            writeBytesPerSecond = writeBytesPerSecond == 0 ? rate
+                    : writeBytesPerSecond + RATE_SMOOTHING * (rate - writeBytesPerSecond);
+        }
+        lastNanos = nowNanos;
+        lastWrittenBytes = writtenBytes;
+        queuedBytes = Math.max(0, encodedBytes - writtenBytes);
+        long rate = bytesPerSecond(bitRate);
+        remainingSeconds = freeBytes / rate;
+
+        if (remainingSeconds <= stopSeconds) {
+            return Status.FULL;
+        }
+        if (queuedBytes > rate * BACKLOG_SECONDS) {
+            long throughput = throughputBytesPerSecond;
+            if (writeBytesPerSecond > 0 && (throughput == UNKNOWN || writeBytesPerSecond < throughput)) {
+                throughputBytesPerSecond = (long) writeBytesPerSecond;
+            }
+            return Status.BACKLOG;
+        }
+        return remainingSeconds <= warnSeconds ? Status.LOW_SPACE : Status.OK;
+    }
+
+    public long getWriteBytesPerSecond() {
+        return (long) writeBytesPerSecond;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return recording time left at the current rate, or {@link #UNKNOWN} before the first update
+     */
+    public long getRemainingSeconds() {
+        return remainingSeconds;
+    }
+}
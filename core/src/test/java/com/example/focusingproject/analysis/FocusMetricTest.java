@@ -0,0 +1,80 @@
+package com.example.focusingproject.analysis;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusMetricTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void sharpImageScoresHigherThanBlurredOne() {
+        for (FocusMetric metric : FocusMetric.values()) {
+            double sharp = evaluate(metric, checkerboard(WIDTH + 16, 1, 0));
+            double blurred = evaluate(metric, checkerboard(WIDTH + 16, 1, 3));
+
+            assertTrue(metric + " sharp " + sharp + " blurred " + blurred, sharp > blurred);
+        }
+    }
+
+    @Test
+    public void flatImageScoresZero() {
+        ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int i = 0; i < plane.capacity(); i++) {
+            plane.put(i, (byte) 200);
+        }
+
+        for (FocusMetric metric : FocusMetric.values()) {
+            assertEquals(0, metric.evaluate(plane, WIDTH, 1, 0, 0, WIDTH, HEIGHT, 1), 0);
+        }
+    }
+
+    @Test
+    public void honoursRowAndPixelStride() {
+        for (FocusMetric metric : FocusMetric.values()) {
+            double packed = metric.evaluate(checkerboard(WIDTH, 1, 0), WIDTH, 1, 0, 0, WIDTH, HEIGHT, 1);
+            double padded = metric.evaluate(checkerboard(2 * WIDTH + 8, 2, 0), 2 * WIDTH + 8, 2, 0, 0, WIDTH, HEIGHT, 1);
+
+            assertEquals(metric.name(), packed, padded, 1e-9);
+        }
+    }
+
+    @Test
+    public void leavesBufferPositionAlone() {
+        ByteBuffer plane = checkerboard(WIDTH, 1, 0);
+        plane.position(7);
+
+        FocusMetric.TENENGRAD.evaluateCenter(plane, WIDTH, HEIGHT, WIDTH, 1, 0.5f, 2);
+
+        assertEquals(7, plane.position());
+    }
+
+    private static double evaluate(FocusMetric metric, ByteBuffer plane) {
+        return metric.evaluate(plane, WIDTH + 16, 1, 0, 0, WIDTH, HEIGHT, 1);
+    }
+
+    /**
+     * 8x8 checkerboard, optionally smoothed with a horizontal box blur of the given radius.
+     */
+    private static ByteBuffer checkerboard(int rowStride, int pixelStride, int blurRadius) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dx = -blurRadius; dx <= blurRadius; dx++) {
+                    int sx = Math.max(0, Math.min(WIDTH - 1, x + dx));
+                    sum += ((sx / 8 + y / 8) % 2 == 0) ? 40 : 220;
+                    count++;
+                }
+                plane.put(y * rowStride + x * pixelStride, (byte) (sum / count));
+            }
+        }
+        return plane;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.focusingproject.analysis;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusStackMergerTest {
+
+    private static final int WIDTH = 201;
+    private static final int HEIGHT = 121;
+    private static final int FRAMES = 3;
+
+    @Test
+    public void takesEachRegionFromTheFrameWhereItIsSharp() {
+        byte[] scene = texture(WIDTH, HEIGHT, 7);
+        YuvFrame[] stack = stack(scene);
+        YuvFrame out = new YuvFrame(WIDTH, HEIGHT);
+        byte[] frameIndex = new byte[WIDTH * HEIGHT];
+
+        new FocusStackMerger(new ForkJoinPool(4), 32, FocusStackMerger.DEFAULT_WINDOW_RADIUS)
+                .merge(stack, out, frameIndex);
+
+        int margin = FocusStackMerger.DEFAULT_WINDOW_RADIUS + 3;
+        int checked = 0;
+        int matching = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int k = sharpFrame(x);
+                if (Math.abs(x - k * WIDTH / FRAMES) < margin || Math.abs(x - (k + 1) * WIDTH / FRAMES) < margin) {
+                    continue;
+                }
+                checked++;
+                if (out.y[y * WIDTH + x] == scene[y * WIDTH + x] && frameIndex[y * WIDTH + x] == k) {
+                    matching++;
+                }
+            }
+        }
+        assertTrue(matching > checked * 0.98);
+        assertEquals(10 * sharpFrame(20), out.u[10 * out.getChromaWidth() + 10]);
+        assertEquals(10 * sharpFrame(190), out.v[10 * out.getChromaWidth() + 95]);
+    }
+
+    @Test
+    public void resultDoesNotDependOnTilingOrParallelism() {
+        YuvFrame[] stack = stack(texture(WIDTH, HEIGHT, 11));
+        YuvFrame tiled = new YuvFrame(WIDTH, HEIGHT);
+        YuvFrame whole = new YuvFrame(WIDTH, HEIGHT);
+        byte[] tiledIndex = new byte[WIDTH * HEIGHT];
+        byte[] wholeIndex = new byte[WIDTH * HEIGHT];
+
+        new FocusStackMerger(new ForkJoinPool(4), 16, 3).merge(stack, tiled, tiledIndex);
+        new FocusStackMerger(new ForkJoinPool(1), 256, 3).merge(stack, whole, wholeIndex);
+
+        assertArrayEquals(wholeIndex, tiledIndex);
+        assertArrayEquals(whole.y, tiled.y);
+        assertArrayEquals(whole.u, tiled.u);
+        assertArrayEquals(whole.v, tiled.v);
+    }
+
+    private static int sharpFrame(int x) {
+        return x * FRAMES / WIDTH;
+    }
+
+    /**
+     * Frame k shows the scene sharp in the k-th vertical band and blurred elsewhere; its chroma is a
+     * flat 10 * k so the source of merged chroma can be told apart.
+     */
+    private static YuvFrame[] stack(byte[] scene) {
+        byte[] blurred = blur(scene, WIDTH, HEIGHT, 3);
+        YuvFrame[] stack = new YuvFrame[FRAMES];
+        for (int k = 0; k < FRAMES; k++) {
+            YuvFrame frame = new YuvFrame(WIDTH, HEIGHT);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int i = y * WIDTH + x;
+                    frame.y[i] = sharpFrame(x) == k ? scene[i] : blurred[i];
+                }
+            }
+            Arrays.fill(frame.u, (byte) (10 * k));
+            Arrays.fill(frame.v, (byte) (10 * k));
+            stack[k] = frame;
+        }
+        return stack;
+    }
+
+    private static byte[] texture(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] pixels = new byte[width * height];
+        random.nextBytes(pixels);
+        return pixels;
+    }
+
+    private static byte[] blur(byte[] pixels, int width, int height, int radius) {
+        byte[] out = new byte[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int sx = Math.min(width - 1, Math.max(0, x + dx));
+                        int sy = Math.min(height - 1, Math.max(0, y + dy));
+                        sum += pixels[sy * width + sx] & 0xFF;
+                        count++;
+                    }
+                }
+                out[y * width + x] = (byte) (sum / count);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.focusingproject.analysis;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SharpnessGridTest {
+
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 40;
+
+    @Test
+    public void marksTexturedHalfSharperThanFlatHalf() {
+        SharpnessGrid grid = new SharpnessGrid(8, 4);
+
+        int changed = grid.update(leftHalfTextured(), WIDTH, HEIGHT, WIDTH, 1, FocusMetric.TENENGRAD, 1);
+
+        assertTrue(changed > 0);
+        for (int row = 0; row < 4; row++) {
+            assertEquals(SharpnessGrid.LEVELS - 1, grid.getLevel(1, row));
+            assertEquals(0, grid.getLevel(6, row));
+        }
+    }
+
+    @Test
+    public void unchangedFrameReportsNoChangedTiles() {
+        SharpnessGrid grid = new SharpnessGrid(8, 4);
+        ByteBuffer plane = leftHalfTextured();
+        grid.update(plane, WIDTH, HEIGHT, WIDTH, 1, FocusMetric.TENENGRAD, 1);
+
+        assertEquals(0, grid.update(plane, WIDTH, HEIGHT, WIDTH, 1, FocusMetric.TENENGRAD, 1));
+        assertEquals(0, grid.getChangedCount());
+    }
+
+    private static ByteBuffer leftHalfTextured() {
+        ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = x < WIDTH / 2 && ((x / 2 + y / 2) & 1) == 0 ? 230 : 30;
+                plane.put(y * WIDTH + x, (byte) value);
+            }
+        }
+        return plane;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CameraProfileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsProfiles() throws Exception {
+        File file = new File(folder.getRoot(), "cameras.bin");
+        CameraProfileCache cache = CameraProfileCache.load(file, "build/1");
+        assertTrue(cache.getCameraIds().isEmpty());
+        cache.setCameraIds(Arrays.asList("0", "1"));
+        cache.put(profile("0", 10f));
+        cache.put(profile("1", Float.NaN));
+        cache.save();
+
+        CameraProfileCache loaded = CameraProfileCache.load(file, "build/1");
+
+        assertEquals(Arrays.asList("0", "1"), loaded.getCameraIds());
+        CameraProfile back = loaded.get("0");
+        assertEquals(10f, back.getMinFocusDistance(), 0f);
+        assertEquals(270, back.getSensorOrientation());
+        assertTrue(back.hasRealtimeTimestamps());
+        assertEquals("1920x1080", back.getVideoSizes()[0].toString());
+        assertEquals(33333333L, back.getVideoSizes()[0].minFrameDurationNanos);
+        assertEquals(5000000L, back.getPreviewSizes()[0].stallDurationNanos);
+        assertEquals(50000000L, back.getYuvMinFrameDuration(640, 480));
+        assertTrue(Float.isNaN(loaded.get("1").getMinFocusDistance()));
+        assertEquals(1, file.getParentFile().listFiles().length);
+    }
+
+    @Test
+    public void otherBuildOrCorruptFileReadsEmpty() throws Exception {
+        File file = new File(folder.getRoot(), "cameras.bin");
+        CameraProfileCache cache = CameraProfileCache.load(file, "build/1");
+        cache.setCameraIds(Arrays.asList("0"));
+        cache.put(profile("0", 10f));
+        cache.save();
+
+        assertNull(CameraProfileCache.load(file, "build/2").get("0"));
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.getChannel().truncate(20);
+        }
+        CameraProfileCache corrupt = CameraProfileCache.load(file, "build/1");
+        assertTrue(corrupt.getCameraIds().isEmpty());
+        assertNull(corrupt.get("0"));
+    }
+
+    @Test
+    public void keepsLensesOfLogicalCameras() throws Exception {
+        File file = new File(folder.getRoot(), "cameras.bin");
+        CameraProfileCache cache = CameraProfileCache.load(file, "build/1");
+        // Logical back camera 0 with a wide, tele and macro module; tele "3" is also listed on its own.
+        cache.setCameraIds(Arrays.asList("0", "1", "3"));
+        cache.put(profile("0", 10f).withPhysicalCameraIds("2", "3", "4"));
+        cache.put(profile("1", 0f).withLens(CameraProfile.LENS_FACING_FRONT, 2.2f, Float.NaN,
+                FocusCalibration.Quality.UNCALIBRATED));
+        cache.put(profile("2", 10f));
+        cache.put(profile("3", 4f).withLens(CameraProfile.LENS_FACING_BACK, 7.5f, 0.25f,
+                FocusCalibration.Quality.CALIBRATED));
+        cache.save();
+
+        CameraProfileCache loaded = CameraProfileCache.load(file, "build/1");
+        List<CameraLens> lenses = CameraLens.enumerate(loaded);
+
+        // "4" has no profile and "3" is opened directly, so only "2" is reached through "0".
+        assertEquals("[0, 0/2, 1, 3]", lenses.toString());
+        CameraProfile tele = lenses.get(3).profile;
+        assertEquals(7.5f, tele.getFocalLength(), 0f);
+        assertEquals(0.25f, tele.getHyperfocalDistance(), 0f);
+        assertEquals(FocusCalibration.Quality.CALIBRATED, tele.getFocusCalibration());
+        assertEquals(CameraProfile.LENS_FACING_FRONT, lenses.get(2).profile.getLensFacing());
+        assertEquals("2", lenses.get(1).physicalCameraId);
+        assertEquals(3, CameraLens.indexOf(lenses, "3"));
+        assertEquals(0, CameraLens.indexOf(lenses, "9"));
+    }
+
+    private static CameraProfile profile(String id, float minFocusDistance) {
+        SizeSelector.Candidate[] video = {new SizeSelector.Candidate(1920, 1080, 33333333L, 0)};
+        SizeSelector.Candidate[] preview = {new SizeSelector.Candidate(1280, 720, 33333333L, 5000000L)};
+        SizeSelector.Candidate[] yuv = {
+                new SizeSelector.Candidate(4000, 3000, 66666666L, 0),
+                new SizeSelector.Candidate(640, 480, 50000000L, 0)
+        };
+        return new CameraProfile(id, minFocusDistance, 270, true, video, preview, yuv);
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.focusingproject.camera;
+
+import com.example.focusingproject.log.FocusLogWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CameraThreadsTest {
+
+    private static final int CYCLES = 1000;
+    private static final int FRAMES_PER_CYCLE = 5;
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void threadCountStaysFlatAcrossStartStopCycles() throws Exception {
+        CameraThreads<ThreadWorker> threads = new CameraThreads<>(ThreadWorker.FACTORY);
+        final AtomicInteger analysed = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        File log = folder.newFile("focus.log");
+
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            threads.start();
+            threads.start();
+            CameraThreads.Diagnostics running = threads.getDiagnostics();
+            for (CameraThreads.Role role : CameraThreads.Role.values()) {
+                assertEquals(role.toString(), 1, running.getAliveCount(role));
+            }
+
+            // A session on a fake camera, as the provider runs it: results come in on the control
+            // thread, are analysed on the analysis thread and logged through the I/O thread.
+            final ThreadWorker analysis = threads.get(CameraThreads.Role.ANALYSIS);
+            final FocusLogWriter writer = new FocusLogWriter(log, null, null, 2, 1000,
+                    threads.get(CameraThreads.Role.IO));
+            threads.get(CameraThreads.Role.CONTROL).execute(new Runnable() {
+                @Override
+                public void run() {
+                    runSession(analysis, writer, analysed, completed);
+                }
+            });
+            threads.get(CameraThreads.Role.CONTROL).awaitIdle();
+            writer.close();
+            threads.stop();
+        }
+
+        CameraThreads.Diagnostics stopped = threads.getDiagnostics();
+        assertEquals(0, stopped.getAliveCount());
+        assertEquals(3 * CYCLES, stopped.started);
+        assertEquals(3 * CYCLES, stopped.stopped);
+        assertTrue(completed.get() >= CYCLES * FRAMES_PER_CYCLE);
+        assertEquals(completed.get(), analysed.get());
+        assertEquals(completed.get(), countLines(log));
+        assertEquals(0, CameraThreads.countAliveThreads("FocusLogWriter"));
+    }
+
+    @Test
+    public void stopRunsWhatWasPosted() {
+        CameraThreads<ThreadWorker> threads = new CameraThreads<>(ThreadWorker.FACTORY);
+        threads.start();
+        final AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            threads.get(CameraThreads.Role.IO).execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            });
+        }
+
+        threads.stop();
+
+        assertEquals(100, ran.get());
+        assertFalse(threads.isStarted());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void workersAreOnlyHandedOutWhileStarted() {
+        new CameraThreads<>(ThreadWorker.FACTORY).get(CameraThreads.Role.CONTROL);
+    }
+
+    private static void runSession(final Executor analysis, final FocusLogWriter writer,
+                                   final AtomicInteger analysed, final AtomicLong completed) {
+        final FakeCameraDevice device = new FakeCameraDevice(10f, 15f, FRAME_NANOS);
+        final CaptureLoop loop = new CaptureLoop(new FrameHistory(8), new CaptureLoop.Listener() {
+            @Override
+            public void onCaptureCompleted(CameraHal.Request request, final FocusFrame frame) {
+                completed.incrementAndGet();
+                writer.write(frame.frameNumber, frame.sensorTimestamp, frame.frameNumber,
+                        frame.requestedFocusDistance, frame.focusDistance, frame.lensState);
+                final float lens = frame.focusDistance;
+                analysis.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        device.sharpnessAt(lens);
+                        analysed.incrementAndGet();
+                    }
+                });
+            }
+
+            @Override
+            public void onFrameAnalysed(FocusFrame frame) {
+            }
+
+            @Override
+            public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+            }
+        });
+        ManualFocusController controller = new ManualFocusController();
+        controller.setTarget(4f);
+        loop.setMinFocusDistance(10f);
+        loop.setController(controller);
+        device.createSession(EnumSet.of(CameraHal.Output.PREVIEW), new CameraHal.SessionCallback() {
+            @Override
+            public void onConfigured(CameraHal.Session session) {
+                loop.attach(session, new CameraHal.Request(CameraHal.Template.PREVIEW)
+                        .withTarget(CameraHal.Output.PREVIEW, true));
+                loop.restart();
+            }
+
+            @Override
+            public void onConfigureFailed() {
+            }
+        });
+        device.advanceBy(FakeCameraDevice.DEFAULT_CONFIGURE_LATENCY_NANOS
+                + (FRAMES_PER_CYCLE + FakeCameraDevice.DEFAULT_RESULT_LATENCY_FRAMES) * FRAME_NANOS);
+        loop.detach();
+        device.close();
+    }
+
+    private static long countLines(File file) throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * A plain thread draining a queue, standing in for a looper.
+     */
+    private static final class ThreadWorker implements CameraThreads.Worker {
+
+        static final CameraThreads.Factory<ThreadWorker> FACTORY = new CameraThreads.Factory<ThreadWorker>() {
+            @Override
+            public ThreadWorker start(String name) {
+                return new ThreadWorker(name);
+            }
+        };
+
+        private static final Runnable QUIT = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        ThreadWorker(String name) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Runnable task;
+                        while ((task = tasks.take()) != QUIT) {
+                            task.run();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, name);
+            thread.start();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        @Override
+        public boolean isAlive() {
+            return thread.isAlive();
+        }
+
+        @Override
+        public void quit() throws InterruptedException {
+            tasks.add(QUIT);
+            thread.join();
+        }
+
+        void awaitIdle() throws InterruptedException {
+            final Object done = new Object();
+            synchronized (done) {
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (done) {
+                            done.notify();
+                        }
+                    }
+                });
+                done.wait();
+            }
+        }
+    }
+}
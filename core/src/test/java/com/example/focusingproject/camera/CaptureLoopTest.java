@@ -0,0 +1,152 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureLoopTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+    private static final Object RECORDING = new Object();
+
+    private final FakeCameraDevice device = new FakeCameraDevice(10f, 15f, FRAME_NANOS);
+    private final Results results = new Results();
+    private final CaptureLoop loop = new CaptureLoop(new FrameHistory(8), results);
+
+    @Before
+    public void openSession() {
+        loop.setMinFocusDistance(10f);
+        device.createSession(EnumSet.of(CameraHal.Output.PREVIEW, CameraHal.Output.RECORDER,
+                CameraHal.Output.ANALYSIS), new CameraHal.SessionCallback() {
+            @Override
+            public void onConfigured(CameraHal.Session session) {
+                loop.attach(session, new CameraHal.Request(CameraHal.Template.PREVIEW)
+                        .withTarget(CameraHal.Output.PREVIEW, true));
+                loop.restart();
+            }
+
+            @Override
+            public void onConfigureFailed() {
+            }
+        });
+        device.advanceBy(FakeCameraDevice.DEFAULT_CONFIGURE_LATENCY_NANOS);
+        assertNotNull(loop.getSession());
+    }
+
+    @Test
+    public void manualFocusSubmitsOnlyChanges() {
+        ManualFocusController controller = new ManualFocusController();
+        controller.setTarget(3f);
+        loop.setController(controller);
+        device.advanceBy(1000000000L);
+        controller.setTarget(4f);
+        controller.setTarget(5f);
+        device.advanceBy(1000000000L);
+
+        // The plain request from restart, then one per target the controller saw.
+        assertEquals(3, loop.getSubmittedRequests());
+        assertEquals(loop.getSubmittedRequests(), device.getSubmittedRequests());
+        assertEquals(5f, device.getLensFocusDistance(), 0f);
+        // 60 frames started; the results of the last two are still on their way.
+        assertEquals(58, device.getCompletedFrames());
+    }
+
+    @Test
+    public void hillClimbConvergesThroughThePipeline() {
+        device.setSceneFocusDistance(7.3f);
+        HillClimbFocusController controller = new HillClimbFocusController();
+        loop.setRequest(loop.getRequest().withTarget(CameraHal.Output.ANALYSIS, true));
+        loop.setController(controller);
+        loop.restart();
+
+        long nanos = device.advanceUntilInFocus(0.1f, 10000000000L);
+
+        assertTrue("did not converge", nanos > 0);
+        assertEquals(7.3f, device.getLensFocusDistance(), 0.1f);
+        assertTrue(loop.getSubmittedRequests() < device.getCompletedFrames());
+    }
+
+    @Test
+    public void sweepIsSubmittedOnce() {
+        loop.setController(new SweepFocusController(FocusSweep.defaultSweep()));
+        loop.restart();
+        long before = loop.getSubmittedRequests();
+
+        device.advanceBy(10000000000L);
+
+        assertEquals(before, loop.getSubmittedRequests());
+        assertEquals(298, device.getCompletedFrames());
+    }
+
+    @Test
+    public void recordingStartsAfterRequestAndResultLatency() {
+        device.advanceBy(1000000000L);
+        long requested = device.getNanos();
+        loop.setRequest(loop.getRequest().withTarget(CameraHal.Output.RECORDER, true).withTag(RECORDING));
+        loop.resubmit();
+
+        device.advanceBy(1000000000L);
+
+        // The frames already queued keep the old request, then the result takes its time.
+        long latency = results.firstRecordedNanos - requested;
+        long expected = FakeCameraDevice.DEFAULT_REQUEST_LATENCY_FRAMES * FRAME_NANOS
+                + FakeCameraDevice.DEFAULT_RESULT_LATENCY_FRAMES * FRAME_NANOS;
+        assertEquals(expected, latency, FRAME_NANOS);
+    }
+
+    @Test
+    public void failedFramesAreReported() {
+        device.setFailureInterval(10);
+        loop.setController(new ManualFocusController());
+
+        device.advanceBy(1000000000L);
+
+        // 30 frames started, 28 of them reported, every tenth failed.
+        assertEquals(2, results.failed);
+        assertEquals(26, results.completed);
+    }
+
+    @Test
+    public void suspendedLoopLeavesTheSessionAlone() {
+        ManualFocusController controller = new ManualFocusController();
+        loop.setController(controller);
+        device.advanceBy(100000000L);
+        long submitted = loop.getSubmittedRequests();
+
+        loop.setSuspended(true);
+        controller.setTarget(6f);
+        loop.resubmit();
+        device.advanceBy(1000000000L);
+
+        assertEquals(submitted, loop.getSubmittedRequests());
+    }
+
+    private final class Results implements CaptureLoop.Listener {
+
+        long firstRecordedNanos = -1;
+        int completed;
+        int failed;
+
+        @Override
+        public void onCaptureCompleted(CameraHal.Request request, FocusFrame frame) {
+            completed++;
+            if (request.tag == RECORDING && firstRecordedNanos < 0) {
+                firstRecordedNanos = device.getNanos();
+            }
+        }
+
+        @Override
+        public void onFrameAnalysed(FocusFrame frame) {
+        }
+
+        @Override
+        public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+            failed++;
+        }
+    }
+}
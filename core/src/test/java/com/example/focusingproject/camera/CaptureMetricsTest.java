@@ -0,0 +1,132 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureMetricsTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Test
+    public void histogramBucketsArePowersOfTwoMicroseconds() {
+        assertEquals(0, LatencyHistogram.bucketOf(999));
+        assertEquals(1, LatencyHistogram.bucketOf(1000));
+        assertEquals(2, LatencyHistogram.bucketOf(2000));
+        assertEquals(2, LatencyHistogram.bucketOf(3999));
+        assertEquals(16, LatencyHistogram.bucketOf(FRAME_NANOS));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreBucketBoundsCappedAtTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1500000);
+        }
+        histogram.record(30000000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100, snapshot.count);
+        assertEquals(30000000, snapshot.maxNanos);
+        assertEquals(2048000, snapshot.getPercentileNanos(0.5));
+        assertEquals(2048000, snapshot.getPercentileNanos(0.99));
+        assertEquals(30000000, snapshot.getPercentileNanos(1));
+        assertEquals((99 * 1500000 + 30000000) / 100.0, snapshot.getMeanNanos(), 1e-6);
+    }
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getPercentileNanos(0.5));
+        assertEquals(0, snapshot.getMeanNanos(), 0);
+        assertEquals("count=0 mean=0.00 p50=0.00 p90=0.00 p99=0.00 max=0.00", snapshot.toString());
+    }
+
+    @Test
+    public void captureLoopMeasuresThePipeline() {
+        final FakeCameraDevice device = new FakeCameraDevice(10f, 15f, FRAME_NANOS).setFailureInterval(10);
+        final CaptureLoop loop = new CaptureLoop(new FrameHistory(8), new NoListener(),
+                new CaptureMetrics.Clock() {
+                    @Override
+                    public long nanoTime() {
+                        return device.getNanos();
+                    }
+                });
+        loop.setMinFocusDistance(10f);
+        ManualFocusController controller = new ManualFocusController();
+        loop.setController(controller);
+        device.createSession(EnumSet.of(CameraHal.Output.PREVIEW), new CameraHal.SessionCallback() {
+            @Override
+            public void onConfigured(CameraHal.Session session) {
+                loop.attach(session, new CameraHal.Request(CameraHal.Template.PREVIEW)
+                        .withTarget(CameraHal.Output.PREVIEW, true));
+                loop.restart();
+            }
+
+            @Override
+            public void onConfigureFailed() {
+            }
+        });
+        device.advanceBy(FakeCameraDevice.DEFAULT_CONFIGURE_LATENCY_NANOS + 1000000000L);
+        controller.setTarget(1.5f);
+        device.advanceBy(1000000000L);
+
+        CaptureMetrics.Snapshot snapshot = loop.getMetrics().snapshot();
+
+        // Frames start every frame duration from the end of configuring, both ends included; every
+        // tenth fails, and the results of the last two are still on their way.
+        assertEquals(61, snapshot.framesStarted);
+        assertEquals(60, snapshot.frameInterval.count);
+        assertEquals(FRAME_NANOS, snapshot.frameInterval.maxNanos);
+        assertEquals(5, snapshot.framesFailed);
+        assertEquals(53, snapshot.framesCompleted);
+        assertEquals(0, snapshot.buffersLost);
+        // The plain request, the controller's first target and the new one: two queued frames, then
+        // the result latency.
+        assertEquals(3, snapshot.requestLatency.count);
+        assertEquals(5 * FRAME_NANOS, snapshot.requestLatency.maxNanos, 10);
+        // Moving 1.5 diopters at 15 diopters per second takes another three frames.
+        assertEquals(2, snapshot.focusSettle.count);
+        assertEquals(8 * FRAME_NANOS, snapshot.focusSettle.maxNanos, 10);
+        assertTrue(snapshot.toReport().startsWith("frames_started 61\nframes_completed 53\nframes_failed 5\n"));
+    }
+
+    @Test
+    public void resetStartsOver() {
+        CaptureMetrics metrics = new CaptureMetrics();
+        metrics.onCaptureStarted(0);
+        metrics.onCaptureStarted(FRAME_NANOS);
+        metrics.onCaptureFailed();
+        metrics.onBufferLost();
+
+        metrics.reset();
+        metrics.onCaptureStarted(10 * FRAME_NANOS);
+
+        CaptureMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.framesStarted);
+        assertEquals(0, snapshot.frameInterval.count);
+        assertEquals(0, snapshot.framesFailed);
+        assertEquals(0, snapshot.buffersLost);
+    }
+
+    private static final class NoListener implements CaptureLoop.Listener {
+
+        @Override
+        public void onCaptureCompleted(CameraHal.Request request, FocusFrame frame) {
+        }
+
+        @Override
+        public void onFrameAnalysed(FocusFrame frame) {
+        }
+
+        @Override
+        public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static com.example.focusingproject.camera.CaptureSessionState.State.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureSessionStateTest {
+
+    @Test
+    public void recordTogglesDoNotReconfigure() {
+        CaptureSessionState state = new CaptureSessionState();
+        assertTrue(state.moveTo(OPENING));
+        assertTrue(state.moveTo(CONFIGURING));
+        assertTrue(state.moveTo(PREVIEW));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(state.moveTo(RECORDING));
+            assertTrue(state.moveTo(PREVIEW));
+        }
+        assertEquals(1, state.getConfiguredSessionCount());
+    }
+
+    @Test
+    public void refusesRecordingBeforeSessionIsConfigured() {
+        CaptureSessionState state = new CaptureSessionState();
+        assertFalse(state.moveTo(RECORDING));
+        state.moveTo(OPENING);
+        assertFalse(state.moveTo(RECORDING));
+        assertFalse(state.moveTo(PREVIEW));
+        assertTrue(state.moveTo(CLOSED));
+        assertEquals(CLOSED, state.getState());
+    }
+
+    @Test
+    public void measuresLatencyToFirstRecordedFrameOnly() {
+        CaptureSessionState state = new CaptureSessionState();
+        assertEquals(-1, state.getRecordStartLatencyNanos());
+        assertFalse(state.onRecordedFrame(50));
+
+        state.onRecordRequested(1000);
+        assertTrue(state.onRecordedFrame(41000));
+        assertFalse(state.onRecordedFrame(74000));
+        assertEquals(40000, state.getRecordStartLatencyNanos());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusCalibrationTest {
+
+    @Test
+    public void uncalibratedLensSpansInfinityToNearest() {
+        // As the seek bar always mapped: progress * minFocusDistance / 100.
+        FocusCalibration calibration = new FocusCalibration(10f, 0.5f, FocusCalibration.Quality.UNCALIBRATED, 100);
+
+        assertEquals(0f, calibration.toFocusDistance(0), 0f);
+        assertEquals(2.5f, calibration.toFocusDistance(25), 1e-6f);
+        assertEquals(10f, calibration.toFocusDistance(100), 0f);
+        assertEquals(25, calibration.toPosition(2.5f));
+    }
+
+    @Test
+    public void calibratedLensStartsAtHyperfocalDistance() {
+        FocusCalibration calibration = new FocusCalibration(10f, 0.5f, FocusCalibration.Quality.CALIBRATED, 100);
+
+        assertEquals(0.5f, calibration.toFocusDistance(0), 0f);
+        assertEquals(5.25f, calibration.toFocusDistance(50), 1e-6f);
+        assertEquals(10f, calibration.toFocusDistance(150), 0f);
+        assertEquals(0, calibration.toPosition(0.2f));
+        assertEquals(50, calibration.toPosition(5.25f));
+        assertEquals(100, calibration.toPosition(12f));
+    }
+
+    @Test
+    public void fixedFocusLensStaysAtZero() {
+        FocusCalibration calibration = new FocusCalibration(0f, Float.NaN, FocusCalibration.Quality.CALIBRATED, 100);
+
+        assertTrue(calibration.isFixedFocus());
+        assertEquals(0f, calibration.toFocusDistance(70), 0f);
+        calibration.recordSharpness(0f, 3f);
+        assertEquals(-1, calibration.getSharpestPosition());
+    }
+
+    @Test
+    public void remembersSharpnessPerPosition() {
+        FocusCalibration calibration = new FocusCalibration(10f, Float.NaN, FocusCalibration.Quality.APPROXIMATE, 10);
+
+        calibration.recordSharpness(2f, 4f);
+        calibration.recordSharpness(6f, 8f);
+        calibration.recordSharpness(6f, 0f);
+
+        assertEquals(4f, calibration.getSharpness(2), 0f);
+        assertEquals(6f, calibration.getSharpness(6), 1e-6f);
+        assertTrue(Float.isNaN(calibration.getSharpness(3)));
+        assertEquals(6, calibration.getSharpestPosition());
+    }
+
+    @Test
+    public void unknownCalibrationValueIsUncalibrated() {
+        assertEquals(FocusCalibration.Quality.CALIBRATED, FocusCalibration.Quality.fromCameraValue(2));
+        assertEquals(FocusCalibration.Quality.UNCALIBRATED, FocusCalibration.Quality.fromCameraValue(7));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusControllerTest {
+
+    private static final float MIN_FOCUS_DISTANCE = 10f;
+    private static final long FRAME_NANOS = 33333333L;
+
+    private final SimulatedFocusCamera camera = new SimulatedFocusCamera(MIN_FOCUS_DISTANCE, 0.5f, FRAME_NANOS);
+
+    @Test
+    public void manualControllerSubmitsOnlyChanges() {
+        ManualFocusController controller = new ManualFocusController();
+        controller.setTarget(2f);
+        camera.setController(controller);
+
+        for (int i = 0; i < 30; i++) {
+            camera.step();
+        }
+        controller.setTarget(3f);
+        controller.setTarget(4f);
+        for (int i = 0; i < 30; i++) {
+            camera.step();
+        }
+
+        assertEquals(2, camera.getSubmittedRequests());
+        assertEquals(4f, camera.getLensFocusDistance(), 0f);
+    }
+
+    @Test
+    public void scrubbingSubmitsAtMostOneRequestPerFrame() {
+        ManualFocusController controller = new ManualFocusController();
+        camera.setController(controller);
+
+        for (int frame = 0; frame < 10; frame++) {
+            for (int tick = 0; tick < 50; tick++) {
+                controller.setTarget(frame + tick / 50f);
+            }
+            camera.step();
+        }
+
+        assertEquals(10, camera.getSubmittedRequests());
+        assertEquals(9.98f, camera.getRequestedFocusDistance(), 1e-6f);
+    }
+
+    @Test
+    public void easingPullsFocusOverSeveralFrames() {
+        ManualFocusController controller = new ManualFocusController();
+        controller.setEasing(0.5f);
+        controller.setTarget(0f);
+        camera.setController(controller);
+        camera.step();
+
+        controller.setTarget(4f);
+        camera.step();
+        assertEquals(2f, camera.getRequestedFocusDistance(), 0f);
+        camera.step();
+        assertEquals(3f, camera.getRequestedFocusDistance(), 0f);
+        for (int i = 0; i < 30; i++) {
+            camera.step();
+        }
+
+        assertEquals(4f, camera.getRequestedFocusDistance(), 0f);
+        // Halving the way every frame snaps onto the target once it is within 0.005 diopters.
+        assertEquals(11, camera.getSubmittedRequests());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void easingMustMoveTheLens() {
+        new ManualFocusController().setEasing(0f);
+    }
+
+    @Test
+    public void sweepIsSubmittedOnce() {
+        camera.setController(new SweepFocusController(FocusSweep.defaultSweep()));
+
+        float maxDistance = 0;
+        for (int i = 0; i < 300; i++) {
+            camera.step();
+            maxDistance = Math.max(maxDistance, camera.getRequestedFocusDistance());
+        }
+
+        assertEquals(1, camera.getSubmittedRequests());
+        assertEquals(MIN_FOCUS_DISTANCE, maxDistance, 0f);
+    }
+
+    @Test
+    public void hillClimbConvergesOnScene() {
+        camera.setSceneFocusDistance(7.3f);
+        HillClimbFocusController controller = new HillClimbFocusController();
+        camera.setController(controller);
+
+        int frames = camera.stepUntilInFocus(0.1f, 300);
+        for (int i = 0; i < 60 && !controller.isLocked(); i++) {
+            camera.step();
+        }
+
+        assertTrue("did not converge", frames > 0);
+        assertTrue(controller.isLocked());
+        assertEquals(7.3f, camera.getLensFocusDistance(), 0.1f);
+    }
+
+    @Test
+    public void hillClimbRestartsWhenSceneChanges() {
+        camera.setSceneFocusDistance(2f);
+        HillClimbFocusController controller = new HillClimbFocusController();
+        camera.setController(controller);
+        for (int i = 0; i < 300 && !controller.isLocked(); i++) {
+            camera.step();
+        }
+
+        camera.setSceneFocusDistance(8f);
+        camera.step();
+        camera.step();
+        assertTrue(!controller.isLocked());
+
+        for (int i = 0; i < 300 && !controller.isLocked(); i++) {
+            camera.step();
+        }
+        assertEquals(8f, camera.getLensFocusDistance(), 0.1f);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusSweepTest {
+
+    @Test
+    public void linearSweepWithDwell() {
+        float[] distances = new FocusSweep(FocusSweep.Profile.LINEAR, 3, 2).distances(10f);
+
+        assertArrayEquals(new float[]{0f, 0f, 5f, 5f, 10f, 10f}, distances, 0f);
+    }
+
+    @Test
+    public void pingPongDoesNotRepeatEnds() {
+        float[] distances = new FocusSweep(FocusSweep.Profile.PING_PONG, 3, 1).distances(10f);
+
+        assertArrayEquals(new float[]{0f, 5f, 10f, 5f}, distances, 0f);
+    }
+
+    @Test
+    public void logarithmicSweepIsDenserAtFarDistances() {
+        float[] distances = new FocusSweep(FocusSweep.Profile.LOGARITHMIC, 6, 1).distances(10f);
+
+        assertEquals(0f, distances[0], 0f);
+        assertEquals(0.1f, distances[1], 1e-6f);
+        assertEquals(10f, distances[5], 1e-6f);
+        for (int i = 2; i < distances.length; i++) {
+            assertTrue(distances[i] - distances[i - 1] > distances[i - 1] - distances[i - 2]);
+        }
+    }
+
+    @Test
+    public void defaultSweepMatchesOneStepPerPercent() {
+        float[] distances = FocusSweep.defaultSweep().distances(10f);
+
+        assertEquals(101, distances.length);
+        assertEquals(0.1f, distances[1], 1e-6f);
+        assertEquals(10f, distances[100], 0f);
+    }
+}
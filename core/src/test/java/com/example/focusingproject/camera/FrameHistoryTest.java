@@ -0,0 +1,56 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameHistoryTest {
+
+    private final FrameHistory history = new FrameHistory(4);
+    private final FocusFrame frame = new FocusFrame();
+
+    @Test
+    public void joinsMetadataAndSharpnessInEitherOrder() {
+        putMetadata(100, 1, 2f);
+        history.putSharpness(100, 0.5f);
+        history.putSharpness(200, 0.7f);
+        putMetadata(200, 2, 3f);
+
+        FocusFrame out = new FocusFrame();
+        assertTrue(history.takeLatestComplete(out));
+        assertEquals(200, out.sensorTimestamp);
+        assertEquals(2, out.frameNumber);
+        assertEquals(3f, out.requestedFocusDistance, 0f);
+        assertEquals(0.7f, out.sharpness, 0f);
+        assertFalse(history.takeLatestComplete(out));
+    }
+
+    @Test
+    public void incompleteFramesAreNotTaken() {
+        putMetadata(100, 1, 2f);
+        history.putSharpness(300, 0.5f);
+
+        assertFalse(history.takeLatestComplete(new FocusFrame()));
+    }
+
+    @Test
+    public void oldFramesAreEvicted() {
+        history.putSharpness(100, 0.5f);
+        for (int i = 1; i <= 4; i++) {
+            putMetadata(100 + i * 100, i, 1f);
+        }
+        putMetadata(100, 0, 1f);
+
+        assertFalse(history.takeLatestComplete(new FocusFrame()));
+    }
+
+    private void putMetadata(long timestamp, long frameNumber, float requested) {
+        frame.clear();
+        frame.sensorTimestamp = timestamp;
+        frame.frameNumber = frameNumber;
+        frame.requestedFocusDistance = requested;
+        history.putMetadata(frame);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LensResponseModelTest {
+
+    /**
+     * 32 fps, so that the lens below moves exactly half a diopter per frame.
+     */
+    private static final long FRAME_NANOS = 31250000L;
+
+    @Test
+    public void learnsSettleFramesFromTheLensState() {
+        FakeCameraDevice device = new FakeCameraDevice(10f, 16f, FRAME_NANOS);
+        ManualFocusController controller = new ManualFocusController();
+        CaptureLoop loop = openLoop(device, controller);
+        LensResponseModel model = loop.getLensResponse();
+
+        controller.setTarget(1.5f);
+        device.advanceBy(1000000000L);
+        controller.setTarget(4.5f);
+        device.advanceBy(1000000000L);
+        controller.setTarget(3f);
+        device.advanceBy(1000000000L);
+
+        assertEquals(2, model.getSettleFrames(1.5f), 0);
+        assertEquals(5, model.getSettleFrames(3f), 0);
+        assertEquals(2, model.getMoves(1.5f));
+        assertEquals(1, model.getMoves(3f));
+        assertEquals(2, model.getLeadFrames(1.5f));
+    }
+
+    @Test
+    public void unseenStepsBorrowFromTheClosestSeenOne() {
+        LensResponseModel model = new LensResponseModel();
+        assertEquals(0, model.getSettleFrames(1f), 0);
+
+        FocusFrame frame = new FocusFrame();
+        feed(model, frame, 0, 0f, 0f, FocusFrame.LENS_STATE_STATIONARY);
+        feed(model, frame, 1, 3f, 1f, FocusFrame.LENS_STATE_MOVING);
+        feed(model, frame, 2, 3f, 2f, FocusFrame.LENS_STATE_MOVING);
+        feed(model, frame, 3, 3f, 3f, FocusFrame.LENS_STATE_STATIONARY);
+
+        assertEquals(2, model.getSettleFrames(3f), 0);
+        assertEquals(2, model.getSettleFrames(0.1f), 0);
+        assertEquals(2, model.getSettleFrames(9f), 0);
+    }
+
+    @Test
+    public void lensesWithoutStateSettleWhenTheyArrive() {
+        LensResponseModel model = new LensResponseModel();
+        FocusFrame frame = new FocusFrame();
+        feed(model, frame, 0, 2f, 2f, FocusFrame.LENS_STATE_UNKNOWN);
+        feed(model, frame, 1, 1f, 1.6f, FocusFrame.LENS_STATE_UNKNOWN);
+        feed(model, frame, 2, 1f, 1.2f, FocusFrame.LENS_STATE_UNKNOWN);
+        feed(model, frame, 3, 1f, 1f, FocusFrame.LENS_STATE_UNKNOWN);
+        // Interrupted before it arrives: not counted.
+        feed(model, frame, 4, 5f, 2f, FocusFrame.LENS_STATE_UNKNOWN);
+        feed(model, frame, 5, 0f, 1f, FocusFrame.LENS_STATE_UNKNOWN);
+
+        assertEquals(2, model.getSettleFrames(1f), 0);
+        assertEquals(1, model.getMoves(1f));
+        assertEquals(0, model.getMoves(4f));
+    }
+
+    @Test
+    public void sweepCommandsStepsEarly() {
+        LensResponseModel model = new LensResponseModel();
+        FocusFrame frame = new FocusFrame();
+        feed(model, frame, 0, 0f, 0f, FocusFrame.LENS_STATE_STATIONARY);
+        feed(model, frame, 1, 5f, 2.5f, FocusFrame.LENS_STATE_MOVING);
+        feed(model, frame, 2, 5f, 5f, FocusFrame.LENS_STATE_STATIONARY);
+        SweepFocusController controller = new SweepFocusController(new FocusSweep(FocusSweep.Profile.LINEAR, 3, 4));
+        controller.setLensResponse(model);
+
+        controller.start(10f);
+
+        // Every step is 5 diopters, or 10 back to infinity; both take one frame to settle.
+        assertArrayEquals(new float[]{0, 0, 0, 5, 5, 5, 5, 10, 10, 10, 10, 0},
+                controller.getSchedule(), 0);
+    }
+
+    @Test
+    public void leadLeavesOneFrameOfTheStepBefore() {
+        LensResponseModel model = new LensResponseModel();
+        FocusFrame frame = new FocusFrame();
+        feed(model, frame, 0, 0f, 0f, FocusFrame.LENS_STATE_STATIONARY);
+        for (int i = 1; i < 10; i++) {
+            feed(model, frame, i, 5f, 0.5f * i, FocusFrame.LENS_STATE_MOVING);
+        }
+        feed(model, frame, 10, 5f, 5f, FocusFrame.LENS_STATE_STATIONARY);
+        float[] distances = {0, 0, 0, 5, 5, 5};
+
+        SweepFocusController.commandEarly(distances, 3, model);
+
+        assertArrayEquals(new float[]{0, 5, 5, 5, 0, 0}, distances, 0);
+    }
+
+    @Test
+    public void sweepIsResubmittedOnceTheLensIsLearned() {
+        // Five diopters a frame: steps of 5 settle within the dwell of 4 frames.
+        FakeCameraDevice device = new FakeCameraDevice(10f, 160f, FRAME_NANOS);
+        SweepFocusController controller = new SweepFocusController(new FocusSweep(FocusSweep.Profile.LINEAR, 3, 4));
+        CaptureLoop loop = openLoop(device, controller);
+        controller.setLensResponse(loop.getLensResponse());
+        loop.restart();
+        float[] nominal = controller.getSchedule().clone();
+        long submitted = loop.getSubmittedRequests();
+
+        device.advanceBy(1000000000L);
+        long learned = loop.getSubmittedRequests();
+        device.advanceBy(1000000000L);
+
+        assertTrue(learned > submitted);
+        assertEquals(learned, loop.getSubmittedRequests());
+        assertFalse(Arrays.equals(nominal, controller.getSchedule()));
+        assertFalse(controller.isScheduleStale());
+    }
+
+    private static CaptureLoop openLoop(FakeCameraDevice device, FocusController controller) {
+        final CaptureLoop loop = new CaptureLoop(new FrameHistory(8), new CaptureLoop.Listener() {
+            @Override
+            public void onCaptureCompleted(CameraHal.Request request, FocusFrame frame) {
+            }
+
+            @Override
+            public void onFrameAnalysed(FocusFrame frame) {
+            }
+
+            @Override
+            public void onCaptureFailed(CameraHal.Request request, long frameNumber) {
+            }
+        });
+        loop.setMinFocusDistance(10f);
+        loop.setController(controller);
+        loop.setLensResponse(new LensResponseModel());
+        device.createSession(EnumSet.of(CameraHal.Output.PREVIEW), new CameraHal.SessionCallback() {
+            @Override
+            public void onConfigured(CameraHal.Session session) {
+                loop.attach(session, new CameraHal.Request(CameraHal.Template.PREVIEW)
+                        .withTarget(CameraHal.Output.PREVIEW, true));
+                loop.restart();
+            }
+
+            @Override
+            public void onConfigureFailed() {
+            }
+        });
+        device.advanceBy(FakeCameraDevice.DEFAULT_CONFIGURE_LATENCY_NANOS + FRAME_NANOS * 10);
+        return loop;
+    }
+
+    private static void feed(LensResponseModel model, FocusFrame frame, long frameNumber, float requested,
+                             float reported, int lensState) {
+        frame.clear();
+        frame.frameNumber = frameNumber;
+        frame.requestedFocusDistance = requested;
+        frame.focusDistance = reported;
+        frame.lensState = lensState;
+        model.onFrame(frame);
+    }
+}
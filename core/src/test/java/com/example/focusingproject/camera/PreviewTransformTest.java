@@ -0,0 +1,48 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PreviewTransformTest {
+
+    private final float[] values = new float[PreviewTransform.VALUES];
+
+    @Test
+    public void portraitIsLeftAlone() {
+        PreviewTransform.compute(1080, 1920, 1920, 1080, PreviewTransform.ROTATION_0, values);
+        assertArrayEquals(new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1}, values, 0);
+
+        PreviewTransform.compute(1080, 1920, 1920, 1080, PreviewTransform.ROTATION_180, values);
+        assertArrayEquals(new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1}, values, 0);
+    }
+
+    @Test
+    public void landscapeTurnsTheBufferWithTheDisplay() {
+        PreviewTransform.compute(1920, 1080, 1920, 1080, PreviewTransform.ROTATION_90, values);
+        assertMaps(0, 0, 0, 1080);
+        assertMaps(1920, 1080, 1920, 0);
+        assertMaps(960, 540, 960, 540);
+
+        PreviewTransform.compute(1920, 1080, 1920, 1080, PreviewTransform.ROTATION_270, values);
+        assertMaps(0, 0, 1920, 0);
+        assertMaps(1920, 1080, 0, 1080);
+        assertMaps(960, 540, 960, 540);
+    }
+
+    @Test
+    public void smallerPreviewIsScaledToFillTheView() {
+        // A 4:3 preview in a 16:9 view: filled across, cropped along the long side.
+        PreviewTransform.compute(1920, 1080, 1440, 1080, PreviewTransform.ROTATION_90, values);
+
+        assertMaps(960, 540, 960, 540);
+        assertEquals(1920f / 1440 * 1440 / 1080, values[1], 1e-5f);
+        assertEquals(-1920f / 1440 * 1080 / 1920, values[3], 1e-5f);
+    }
+
+    private void assertMaps(float x, float y, float expectedX, float expectedY) {
+        assertEquals(expectedX, values[0] * x + values[1] * y + values[2], 1e-3f);
+        assertEquals(expectedY, values[3] * x + values[4] * y + values[5], 1e-3f);
+    }
+}
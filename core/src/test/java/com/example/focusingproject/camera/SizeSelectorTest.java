@@ -0,0 +1,107 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SizeSelectorTest {
+
+    /**
+     * Output sizes and minimum frame durations of a flagship back camera, for MediaCodec and
+     * SurfaceTexture alike.
+     */
+    private static final String[] FLAGSHIP = {
+            "4032x3024 33333333", "3840x2160 33333333", "2560x1440 33333333", "1920x1080 33333333",
+            "1440x1080 33333333", "1280x720 33333333", "960x720 33333333", "640x480 33333333",
+            "352x288 33333333", "320x240 33333333", "176x144 33333333"
+    };
+
+    /**
+     * A budget device whose sensor only reaches 20 fps above 720p.
+     */
+    private static final String[] BUDGET = {
+            "2592x1944 66666666", "1920x1080 50000000", "1280x960 50000000", "1280x720 33333333",
+            "800x600 33333333", "720x480 33333333", "352x288 33333333", "320x240 33333333"
+    };
+
+    /**
+     * A legacy-level camera that lists no 640x480, on which an exact-match lookup found nothing.
+     */
+    private static final String[] LEGACY = {
+            "1280x720 33333333", "864x480 33333333", "800x600 33333333", "720x480 33333333",
+            "320x240 33333333"
+    };
+
+    @Test
+    public void exactTargetWins() {
+        SizeSelector.Choice choice = new SizeSelector(1920, 1080, 30).choose(table(FLAGSHIP), table(FLAGSHIP));
+
+        assertSize(1920, 1080, choice.video);
+        assertSize(1920, 1080, choice.preview);
+        assertTrue(choice.sustainsFrameRate);
+    }
+
+    @Test
+    public void largestSizeThatSustainsFrameRate() {
+        SizeSelector.Choice at30 = new SizeSelector(1920, 1080, 30).choose(table(BUDGET), table(BUDGET));
+        SizeSelector.Choice at20 = new SizeSelector(1920, 1080, 20).choose(table(BUDGET), table(BUDGET));
+
+        assertSize(1280, 720, at30.video);
+        assertSize(1280, 720, at30.preview);
+        assertSize(1920, 1080, at20.video);
+    }
+
+    @Test
+    public void matchesAspectRatioWithoutExactSize() {
+        SizeSelector.Choice choice = new SizeSelector(640, 480, 30).choose(table(LEGACY), table(LEGACY));
+
+        assertEquals(4 * choice.video.height, 3 * choice.video.width);
+        assertEquals(4 * choice.preview.height, 3 * choice.preview.width);
+    }
+
+    @Test
+    public void previewFollowsRecorderAspect() {
+        // The recorder offers 4:3 only, the preview offers both.
+        SizeSelector.Choice choice = new SizeSelector(1440, 1080, 30)
+                .choose(table("1440x1080 33333333", "960x720 33333333"), table(FLAGSHIP));
+
+        assertSize(1440, 1080, choice.video);
+        assertSize(1440, 1080, choice.preview);
+    }
+
+    @Test
+    public void slowestStreamPacesTheSession() {
+        SizeSelector selector = new SizeSelector(1280, 720, 30);
+
+        // A stalling preview stream makes every pair miss 30 fps; the fastest pair is returned.
+        SizeSelector.Choice choice = selector.choose(table(FLAGSHIP), table("1280x720 33333333 10000000"));
+        assertFalse(choice.sustainsFrameRate);
+        assertEquals(43333333, choice.frameDurationNanos);
+
+        // So does a slow analysis stream in the same session.
+        choice = selector.choose(table(FLAGSHIP), table(FLAGSHIP), 50000000);
+        assertFalse(choice.sustainsFrameRate);
+        assertEquals(50000000, choice.frameDurationNanos);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyTableIsRejected() {
+        new SizeSelector(640, 480, 30).choose(table(FLAGSHIP), table());
+    }
+
+    private static void assertSize(int width, int height, SizeSelector.Candidate size) {
+        assertEquals(width + "x" + height, size.toString());
+    }
+
+    private static SizeSelector.Candidate[] table(String... rows) {
+        SizeSelector.Candidate[] candidates = new SizeSelector.Candidate[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            String[] fields = rows[i].split("[x ]");
+            candidates[i] = new SizeSelector.Candidate(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                    Long.parseLong(fields[2]), fields.length > 3 ? Long.parseLong(fields[3]) : 0);
+        }
+        return candidates;
+    }
+}
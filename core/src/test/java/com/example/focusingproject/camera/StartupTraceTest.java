@@ -0,0 +1,27 @@
+package com.example.focusingproject.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTraceTest {
+
+    @Test
+    public void marksEachPhaseOnce() {
+        StartupTrace trace = new StartupTrace();
+        assertFalse(trace.mark(StartupTrace.Phase.FIRST_FRAME, 5));
+
+        trace.start(0);
+        trace.setCacheHit(true);
+        assertTrue(trace.mark(StartupTrace.Phase.TEXTURE_AVAILABLE, 20000000L));
+        assertTrue(trace.mark(StartupTrace.Phase.DEVICE_OPENED, 30000000L));
+        assertFalse(trace.mark(StartupTrace.Phase.DEVICE_OPENED, 90000000L));
+
+        assertEquals(30, trace.getMillis(StartupTrace.Phase.DEVICE_OPENED));
+        assertEquals("cached,-1,30,20,-1,-1", trace.toCsvLine());
+        assertEquals("characteristics_source,characteristics_ms,device_opened_ms,texture_available_ms,"
+                + "session_configured_ms,first_frame_ms", StartupTrace.csvHeader());
+    }
+}
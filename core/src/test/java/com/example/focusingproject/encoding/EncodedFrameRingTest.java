@@ -0,0 +1,96 @@
+package com.example.focusingproject.encoding;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedFrameRingTest {
+
+    private static final long FRAME_US = 33333;
+    private static final int GOP = 30;
+
+    @Test
+    public void waitsForKeyFrame() {
+        EncodedFrameRing ring = new EncodedFrameRing(4096, 64, 1000);
+
+        assertFalse(ring.append(frame(1, 100), 0, false));
+        assertTrue(ring.append(frame(2, 100), FRAME_US, true));
+        assertTrue(ring.append(frame(3, 100), 2 * FRAME_US, false));
+        assertEquals(2, ring.getFrameCount());
+    }
+
+    @Test
+    public void keepsWindowFromKeyFrameAndSurvivesWrapAround() {
+        // Room for about two key frame intervals of 300-byte frames, so writes wrap many times.
+        EncodedFrameRing ring = new EncodedFrameRing(300 * 70, 128, 1000);
+        int frames = 10 * GOP + 7;
+        for (int i = 0; i < frames; i++) {
+            assertTrue(ring.append(frame(i, 300), i * FRAME_US, i % GOP == 0));
+        }
+
+        List<Long> times = drain(ring);
+        assertEquals(9 * GOP * FRAME_US, (long) times.get(0));
+        assertEquals(GOP + 7, times.size());
+        assertEquals(0, ring.getFrameCount());
+    }
+
+    @Test
+    public void dropsWholeIntervalsWhenMemoryRunsOut() {
+        // Room for 45 frames, less than the window; the ring must still start on a key frame.
+        EncodedFrameRing ring = new EncodedFrameRing(100 * 45, 128, 10000);
+        for (int i = 0; i < 100; i++) {
+            ring.append(frame(i, 100), i * FRAME_US, i % 20 == 0);
+        }
+
+        List<Long> times = drain(ring);
+        assertEquals(60 * FRAME_US, (long) times.get(0));
+        assertEquals(40, times.size());
+    }
+
+    @Test
+    public void slotsCoverWindowAndOneInterval() {
+        assertEquals(91, EncodedFrameRing.slotsFor(2000, 30, 1));
+        int slots = EncodedFrameRing.slotsFor(2000, 30, 1);
+        EncodedFrameRing ring = new EncodedFrameRing(1 << 20, slots, 2000);
+        for (int i = 0; i < 20 * GOP; i++) {
+            ring.append(frame(i, 10), i * FRAME_US, i % GOP == 0);
+        }
+        assertTrue(ring.getDurationUs() >= 2000000 - FRAME_US);
+    }
+
+    private static ByteBuffer frame(int index, int size) {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            frame.put((byte) (index + i));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Drains the ring, checking that every frame's bytes came back intact.
+     */
+    private static List<Long> drain(EncodedFrameRing ring) {
+        final List<Long> times = new ArrayList<>();
+        ring.drainTo(new EncodedFrameRing.Sink() {
+            @Override
+            public void onFrame(ByteBuffer frame, long presentationTimeUs, boolean keyFrame) {
+                int index = (int) (presentationTimeUs / FRAME_US);
+                if (times.isEmpty()) {
+                    assertTrue(keyFrame);
+                }
+                for (int i = 0; frame.hasRemaining(); i++) {
+                    assertEquals((byte) (index + i), frame.get());
+                }
+                times.add(presentationTimeUs);
+            }
+        });
+        return times;
+    }
+}
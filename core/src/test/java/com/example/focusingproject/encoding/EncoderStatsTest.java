@@ -0,0 +1,39 @@
+package com.example.focusingproject.encoding;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EncoderStatsTest {
+
+    private static final long FRAME_US = 33333;
+
+    @Test
+    public void bitRateMatchesSteadyOutput() {
+        EncoderStats stats = new EncoderStats();
+        // 41666 bytes per frame at 30 fps is 10 Mbps.
+        for (int i = 0; i < 300; i++) {
+            stats.onEncodedFrame(i * FRAME_US, 41666, i % 30 == 0, 20000000L);
+        }
+
+        assertEquals(300, stats.getFrames());
+        assertEquals(10, stats.getKeyFrames());
+        assertEquals(10000000, stats.getBitRate(), 20000);
+        assertEquals(10000000, stats.getAverageBitRate(), 20000);
+        assertEquals(20000000L, stats.getLatency().getMaxNanos());
+    }
+
+    @Test
+    public void windowFollowsBitrateChanges() {
+        EncoderStats stats = new EncoderStats();
+        for (int i = 0; i < 90; i++) {
+            stats.onEncodedFrame(i * FRAME_US, 41666, false, -1);
+        }
+        for (int i = 90; i < 150; i++) {
+            stats.onEncodedFrame(i * FRAME_US, 8333, false, -1);
+        }
+
+        assertEquals(2000000, stats.getBitRate(), 5000);
+        assertEquals(0, stats.getLatency().getFrames());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.focusingproject.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusLogWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void closeFlushesEveryRecord() throws Exception {
+        File file = folder.newFile("session.txt");
+        final FocusLogWriter writer = new FocusLogWriter(file, null, null, 16, 1000);
+        final int count = 10000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    writer.write(i, i * 1000L, i, i / 100f, i / 100f, 0);
+                }
+            }
+        });
+        producer.start();
+        producer.join();
+        writer.close();
+
+        List<String> lines = readLines(file);
+        assertEquals(count, lines.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + " - Focus distance: " + (i / 100f), lines.get(i));
+        }
+    }
+
+    @Test
+    public void writesAfterCloseAreDropped() throws Exception {
+        File file = folder.newFile("session.txt");
+        FocusLogWriter writer = new FocusLogWriter(file, null, null);
+        writer.write(1, 1, 1, 0.5f, 0.5f, 0);
+        writer.close();
+        writer.write(2, 2, 2, 0.7f, 0.7f, 0);
+        writer.close();
+
+        assertEquals(1, readLines(file).size());
+    }
+
+    @Test
+    public void flushIntervalHandsBatchOverBeforeClose() throws Exception {
+        File file = folder.newFile("session.txt");
+        FocusLogWriter writer = new FocusLogWriter(file, null, null, 1024, 0);
+        writer.write(1, 1, 1, 0.5f, 0.5f, 0);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (readLines(file).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(!readLines(file).isEmpty());
+        writer.close();
+    }
+
+    @Test
+    public void flushIntervalHandsBatchOverWithoutFurtherWrites() throws Exception {
+        File file = folder.newFile("session.txt");
+        FocusLogWriter writer = new FocusLogWriter(file, null, null, 1024, 50);
+        writer.write(1, 1, 1, 0.5f, 0.5f, 0);
+        writer.write(2, 2, 2, 0.7f, 0.7f, 0);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (readLines(file).size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, readLines(file).size());
+        writer.close();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.focusingproject.log;
+
+import com.example.focusingproject.mp4.Mp4Builder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FocusMetadataTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void extractsEmbeddedTrack() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        ByteBuffer sample = FocusMetadata.allocateSample();
+        for (int i = 0; i < 50; i++) {
+            FocusMetadata.encode(sample, 7000 + i * 33, 1000000L + i * FRAME_NANOS, 300 + i, i / 10f, i / 20f, i % 2);
+            byte[] bytes = new byte[FocusMetadata.SAMPLE_SIZE];
+            sample.duplicate().get(bytes);
+            samples.add(bytes);
+        }
+        File video = folder.newFile("video.mp4");
+        new Mp4Builder()
+                .addTrack("vide", "avc1", null, 90000, samples, 3000, 8, false)
+                .addTrack("meta", "mett", FocusMetadata.MIME_TYPE, 1000000, samples, 33333, 8, false)
+                .write(video);
+        File track = folder.newFile("video.ftrk");
+
+        assertEquals(50, FocusMetadata.extractTrack(video, track));
+
+        try (FocusTrackReader reader = new FocusTrackReader(track)) {
+            assertEquals(50, reader.getRecordCount());
+            assertEquals(7000, reader.getBaseWallClockMillis());
+            assertEquals(1000000L + 49 * FRAME_NANOS, reader.getSensorTimestamp(49));
+            assertEquals(349, reader.getFrameNumber(49));
+            assertEquals(4.9f, reader.getRequestedFocusDistance(49), 0f);
+            assertEquals(49 / 20f, reader.getReportedFocusDistance(49), 0f);
+            assertEquals(1, reader.getLensState(49));
+        }
+    }
+}
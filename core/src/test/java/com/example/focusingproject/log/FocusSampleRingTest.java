@@ -0,0 +1,35 @@
+package com.example.focusingproject.log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FocusSampleRingTest {
+
+    @Test
+    public void drainsNewestSamplesFromTimestamp() {
+        FocusSampleRing ring = new FocusSampleRing(8);
+        for (int i = 0; i < 20; i++) {
+            ring.add(i * 100L, i * 100L + 5, i, i / 10f, i / 20f, i % 3);
+        }
+
+        final List<Long> frames = new ArrayList<>();
+        int drained = ring.drainTo(1500, new FocusSampleRing.Sink() {
+            @Override
+            public void onSample(long sensorTimestamp, long arrivalNanos, long frameNumber,
+                                 float requestedFocusDistance, float reportedFocusDistance, int lensState) {
+                assertEquals(sensorTimestamp + 5, arrivalNanos);
+                assertEquals(frameNumber / 10f, requestedFocusDistance, 0f);
+                frames.add(frameNumber);
+            }
+        });
+
+        assertEquals(5, drained);
+        assertEquals(15L, (long) frames.get(0));
+        assertEquals(19L, (long) frames.get(4));
+        assertEquals(0, ring.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.focusingproject.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class FocusScoreIndexTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackScoresAcrossBufferFlushes() throws Exception {
+        File file = folder.newFile("session.fidx");
+        try (FocusScoreWriter writer = new FocusScoreWriter(file)) {
+            for (int i = 0; i < 2000; i++) {
+                writer.append(i * FRAME_NANOS, i % 100);
+            }
+        }
+
+        try (FocusScoreReader reader = new FocusScoreReader(file)) {
+            assertEquals(2000, reader.getRecordCount());
+            assertEquals(1999 * FRAME_NANOS, reader.getSensorTimestamp(1999));
+            assertEquals(42f, reader.getScore(142), 0f);
+            assertEquals(199, reader.indexOfBest(100 * FRAME_NANOS, 200 * FRAME_NANOS));
+            assertEquals(-1, reader.indexOfBest(-10, 0));
+        }
+        assertEquals(16 + 2000 * 12, file.length());
+    }
+
+    @Test
+    public void logWriterPassesScoresThrough() throws Exception {
+        File text = folder.newFile("session.txt");
+        File scores = folder.newFile("session.fidx");
+        FocusLogWriter writer = new FocusLogWriter(text, null, scores, 16, 1000);
+        for (int i = 0; i < 100; i++) {
+            writer.write(i, i * FRAME_NANOS, i, 0.5f, 0.5f, 0);
+            if (i % 3 == 0) {
+                writer.writeScore(i * FRAME_NANOS, i);
+            }
+        }
+        writer.close();
+
+        try (FocusScoreReader reader = new FocusScoreReader(scores)) {
+            assertEquals(34, reader.getRecordCount());
+            assertEquals(99 * FRAME_NANOS, reader.getSensorTimestamp(33));
+            assertEquals(99f, reader.getScore(33), 0f);
+        }
+    }
+}
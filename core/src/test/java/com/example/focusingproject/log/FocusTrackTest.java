@@ -0,0 +1,106 @@
+package com.example.focusingproject.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FocusTrackTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackRecordsAcrossChunks() throws Exception {
+        File file = folder.newFile("session.ftrk");
+        writeTrack(file, 1000, 100);
+
+        try (FocusTrackReader reader = new FocusTrackReader(file)) {
+            assertEquals(1000, reader.getRecordCount());
+            assertEquals(5000L, reader.getBaseWallClockMillis());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(1000000L + i * FRAME_NANOS, reader.getSensorTimestamp(i));
+                assertEquals(100 + i, reader.getFrameNumber(i));
+                assertEquals(i / 1000f, reader.getRequestedFocusDistance(i), 0f);
+                assertEquals(i / 2000f, reader.getReportedFocusDistance(i), 0f);
+                assertEquals(i % 3, reader.getLensState(i));
+            }
+        }
+        assertEquals(32 + 1000 * 32, file.length());
+    }
+
+    @Test
+    public void findsFramesDirectlyAndAfterGaps() throws Exception {
+        File file = folder.newFile("session.ftrk");
+        try (FocusTrackWriter writer = new FocusTrackWriter(file, 8)) {
+            long[] frames = {10, 11, 12, 15, 16, 20};
+            for (long frame : frames) {
+                writer.append(0, frame * FRAME_NANOS, frame, 0f, 0f, 0);
+            }
+        }
+
+        try (FocusTrackReader reader = new FocusTrackReader(file)) {
+            assertEquals(1, reader.indexOfFrame(11));
+            assertEquals(3, reader.indexOfFrame(15));
+            assertEquals(5, reader.indexOfFrame(20));
+            assertEquals(-1, reader.indexOfFrame(13));
+            assertEquals(-1, reader.indexOfFrame(9));
+            assertEquals(-1, reader.indexOfFrame(21));
+        }
+    }
+
+    @Test
+    public void flagsFramesCapturedMidMove() throws Exception {
+        File file = folder.newFile("session.ftrk");
+        try (FocusTrackWriter writer = new FocusTrackWriter(file)) {
+            writer.append(0, 0, 0, 2f, 1.5f, 1);
+            writer.append(0, FRAME_NANOS, 1, 2f, 2f, 0);
+            // Without a lens state, a frame away from the requested distance is mid-move.
+            writer.append(0, 2 * FRAME_NANOS, 2, 3f, 2.5f, -1);
+            writer.append(0, 3 * FRAME_NANOS, 3, 3f, 3f, -1);
+            writer.append(0, 4 * FRAME_NANOS, 4, 3f, Float.NaN, -1);
+        }
+
+        try (FocusTrackReader reader = new FocusTrackReader(file)) {
+            assertTrue(reader.isLensMoving(0));
+            assertFalse(reader.isLensMoving(1));
+            assertTrue(reader.isLensMoving(2));
+            assertFalse(reader.isLensMoving(3));
+            assertFalse(reader.isLensMoving(4));
+        }
+    }
+
+    @Test
+    public void convertsToTextLog() throws Exception {
+        File track = folder.newFile("session.ftrk");
+        File text = folder.newFile("session.txt");
+        writeTrack(track, 3, 0);
+
+        FocusTrackConverter.toText(track, text);
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(text))) {
+            assertEquals("5000 - Focus distance: 0.0", reader.readLine());
+            assertEquals("5033 - Focus distance: " + (1 / 2000f), reader.readLine());
+            assertEquals("5066 - Focus distance: " + (2 / 2000f), reader.readLine());
+            assertEquals(null, reader.readLine());
+        }
+    }
+
+    private static void writeTrack(File file, int count, long firstFrame) throws Exception {
+        try (FocusTrackWriter writer = new FocusTrackWriter(file, 64)) {
+            for (int i = 0; i < count; i++) {
+                writer.append(5000 + i * 33, 1000000L + i * FRAME_NANOS, firstFrame + i,
+                        i / 1000f, i / 2000f, i % 3);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.focusingproject.log;
+
+import com.example.focusingproject.encoding.SegmentPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentManifestTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void focusRecordsAreSplitAtSegmentStarts() throws Exception {
+        File file = folder.newFile("session.segments");
+        SegmentManifest manifest = new SegmentManifest(file);
+        // Two samples are logged before the first frame reaches the encoder.
+        manifest.onFocusSample(0);
+        manifest.onFocusSample(FRAME_NANOS);
+        manifest.startSegment(2 * FRAME_NANOS);
+        for (int i = 2; i < 12; i++) {
+            manifest.onFocusSample(i * FRAME_NANOS);
+        }
+        // The key frame starting the next segment is encoded after its focus sample was logged.
+        manifest.startSegment(10 * FRAME_NANOS);
+        manifest.finishSegment(0, "a.mp4", 2 * FRAME_NANOS, 9 * FRAME_NANOS, 8, 800);
+        for (int i = 12; i < 20; i++) {
+            manifest.onFocusSample(i * FRAME_NANOS);
+        }
+        manifest.finishSegment(1, "b.mp4", 10 * FRAME_NANOS, 19 * FRAME_NANOS, 10, 1000);
+        manifest.close();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            assertEquals(SegmentManifest.HEADER, reader.readLine());
+            assertEquals("0\ta.mp4\t" + 2 * FRAME_NANOS + "\t" + 9 * FRAME_NANOS + "\t2\t8\t8\t800", reader.readLine());
+            assertEquals("1\tb.mp4\t" + 10 * FRAME_NANOS + "\t" + 19 * FRAME_NANOS + "\t10\t10\t10\t1000",
+                    reader.readLine());
+            assertEquals(null, reader.readLine());
+        }
+    }
+
+    @Test
+    public void policyRotatesOnWhicheverLimitComesFirst() {
+        SegmentPolicy policy = new SegmentPolicy(60000, 1000000);
+        assertFalse(policy.shouldRotate(59999999, 999999));
+        assertTrue(policy.shouldRotate(60000000, 0));
+        assertTrue(policy.shouldRotate(0, 1000000));
+        assertFalse(SegmentPolicy.byDuration(1000).shouldRotate(999999, Long.MAX_VALUE));
+    }
+}
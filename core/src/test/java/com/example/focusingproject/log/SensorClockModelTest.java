@@ -0,0 +1,44 @@
+package com.example.focusingproject.log;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SensorClockModelTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    @Test
+    public void fitsDriftAndIgnoresCallbackJitter() {
+        SensorClockModel model = new SensorClockModel();
+        Random random = new Random(42);
+        double drift = 1.0001;
+        long sensorStart = 5000000000L;
+        long referenceStart = System.nanoTime();
+        long latency = 20000000L;
+
+        int frames = 30 * 60;
+        for (int i = 0; i < frames; i++) {
+            long sensor = sensorStart + i * FRAME_NANOS;
+            long jitter = random.nextInt(10) == 0 ? random.nextInt(40000000) : random.nextInt(2000000);
+            model.observe(sensor, referenceStart + (long) (i * FRAME_NANOS * drift) + latency + jitter);
+        }
+
+        assertEquals(drift, model.getRate(), 1e-5);
+        long lastSensor = sensorStart + (frames - 1) * FRAME_NANOS;
+        long expected = referenceStart + (long) ((frames - 1) * FRAME_NANOS * drift) + latency;
+        assertTrue(Math.abs(model.toReferenceNanos(lastSensor) - expected) < 3000000L);
+    }
+
+    @Test
+    public void presentationTimeStartsAtFirstFrame() {
+        SensorClockModel model = new SensorClockModel();
+        model.observe(1000000000L, System.nanoTime());
+
+        assertEquals(0, model.toPresentationTimeUs(1000000000L));
+        assertEquals(33333, model.toPresentationTimeUs(1000000000L + FRAME_NANOS));
+    }
+}
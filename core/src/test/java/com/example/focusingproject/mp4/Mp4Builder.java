@@ -0,0 +1,165 @@
+package com.example.focusingproject.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes small MP4 files laid out like MediaMuxer output, for reader tests: an "mdat" with the samples
+ * of all tracks, chunk by chunk, followed by the "moov".
+ */
+public class Mp4Builder {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final List<Track> tracks = new ArrayList<>();
+
+    /**
+     * @param mimeType MIME type for a "mett" entry, otherwise ignored
+     */
+    public Mp4Builder addTrack(String handlerType, String entryType, String mimeType, int timescale,
+                               List<byte[]> samples, int sampleDuration, int samplesPerChunk, boolean largeOffsets) {
+        Track track = new Track();
+        track.handlerType = handlerType;
+        track.entryType = entryType;
+        track.mimeType = mimeType;
+        track.timescale = timescale;
+        track.samples = samples;
+        track.sampleDuration = sampleDuration;
+        track.samplesPerChunk = samplesPerChunk;
+        track.largeOffsets = largeOffsets;
+        tracks.add(track);
+        return this;
+    }
+
+    public void write(File file) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] ftyp = box("ftyp", concat("isom".getBytes(ASCII), new byte[4], "isommp42".getBytes(ASCII)));
+        long offset = ftyp.length + 8;
+        // Interleave chunks of all tracks, as a muxer would.
+        boolean more = true;
+        for (int chunk = 0; more; chunk++) {
+            more = false;
+            for (Track track : tracks) {
+                int first = chunk * track.samplesPerChunk;
+                if (first >= track.samples.size()) {
+                    continue;
+                }
+                more = true;
+                track.chunkOffsets.add(offset);
+                for (int i = first; i < Math.min(first + track.samplesPerChunk, track.samples.size()); i++) {
+                    byte[] sample = track.samples.get(i);
+                    data.write(sample);
+                    offset += sample.length;
+                }
+            }
+        }
+
+        ByteArrayOutputStream moov = new ByteArrayOutputStream();
+        for (int i = 0; i < tracks.size(); i++) {
+            moov.write(trak(tracks.get(i), i + 1));
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(ftyp);
+            out.write(box("mdat", data.toByteArray()));
+            out.write(box("moov", moov.toByteArray()));
+        }
+    }
+
+    private static byte[] trak(Track track, int trackId) throws IOException {
+        byte[] tkhd = fullBox("tkhd", ints(0, 0, trackId, 0, 0), new byte[60]);
+        byte[] mdhd = fullBox("mdhd", ints(0, 0, track.timescale, track.samples.size() * track.sampleDuration, 0));
+        byte[] hdlr = fullBox("hdlr", ints(0), track.handlerType.getBytes(ASCII), new byte[12], "Handler\0".getBytes(ASCII));
+
+        byte[] entry;
+        if (track.entryType.equals("mett")) {
+            entry = box("mett", new byte[6], shorts(1), "\0".getBytes(ASCII), (track.mimeType + "\0").getBytes(ASCII));
+        } else {
+            entry = box(track.entryType, new byte[6], shorts(1), new byte[70]);
+        }
+        byte[] stsd = fullBox("stsd", ints(1), entry);
+        byte[] stts = fullBox("stts", ints(1, track.samples.size(), track.sampleDuration));
+        byte[] stsc = fullBox("stsc", ints(1, 1, track.samplesPerChunk, 1));
+        int[] sizes = new int[track.samples.size() + 2];
+        sizes[0] = 0;
+        sizes[1] = track.samples.size();
+        for (int i = 0; i < track.samples.size(); i++) {
+            sizes[i + 2] = track.samples.get(i).length;
+        }
+        byte[] stsz = fullBox("stsz", ints(sizes));
+        byte[] chunks;
+        ByteArrayOutputStream offsets = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(offsets);
+        out.writeInt(track.chunkOffsets.size());
+        for (long offset : track.chunkOffsets) {
+            if (track.largeOffsets) {
+                out.writeLong(offset);
+            } else {
+                out.writeInt((int) offset);
+            }
+        }
+        chunks = fullBox(track.largeOffsets ? "co64" : "stco", offsets.toByteArray());
+
+        byte[] stbl = box("stbl", stsd, stts, stsc, stsz, chunks);
+        byte[] minf = box("minf", stbl);
+        byte[] mdia = box("mdia", mdhd, hdlr, minf);
+        return box("trak", tkhd, mdia);
+    }
+
+    private static byte[] fullBox(String type, byte[]... parts) throws IOException {
+        return box(type, concat(new byte[4], concat(parts)));
+    }
+
+    private static byte[] box(String type, byte[]... parts) throws IOException {
+        byte[] body = concat(parts);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(body.length + 8);
+        out.write(type.getBytes(ASCII));
+        out.write(body);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ints(int... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] shorts(int... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) {
+            out.writeShort(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Track {
+        String handlerType;
+        String entryType;
+        String mimeType;
+        int timescale;
+        List<byte[]> samples;
+        int sampleDuration;
+        int samplesPerChunk;
+        boolean largeOffsets;
+        final List<Long> chunkOffsets = new ArrayList<>();
+    }
+}
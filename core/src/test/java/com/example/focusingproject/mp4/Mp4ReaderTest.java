@@ -0,0 +1,133 @@
+package com.example.focusingproject.mp4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Mp4ReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void locatesSamplesOfInterleavedTracks() throws Exception {
+        File file = folder.newFile("video.mp4");
+        List<byte[]> video = samples(25, 100);
+        List<byte[]> metadata = samples(25, 40);
+        new Mp4Builder()
+                .addTrack("vide", "avc1", null, 90000, video, 3000, 10, false)
+                .addTrack("meta", "mett", "application/x-test", 1000000, metadata, 33333, 4, true)
+                .write(file);
+
+        try (Mp4Reader reader = new Mp4Reader(file)) {
+            assertEquals(2, reader.getTracks().size());
+            Mp4Track videoTrack = reader.getTracks().get(0);
+            assertEquals("vide", videoTrack.getHandlerType());
+            assertEquals("avc1", videoTrack.getSampleEntryType());
+            assertNull(videoTrack.getMimeType());
+            assertEquals(25, videoTrack.getSampleCount());
+            assertEquals(24 * 3000, videoTrack.getSampleTime(24));
+
+            Mp4Track metadataTrack = reader.findMetadataTrack("application/x-test");
+            assertEquals(2, metadataTrack.getTrackId());
+            assertEquals(25, metadataTrack.getSampleCount());
+            assertEquals(24 * 33333, metadataTrack.getSampleTimeUs(24));
+
+            ByteBuffer sample = ByteBuffer.allocate(200);
+            for (int i = 0; i < 25; i++) {
+                sample.clear();
+                reader.readSample(videoTrack, i, sample);
+                assertEquals(100 + i, sample.position());
+                assertEquals((byte) i, sample.get(0));
+                assertEquals((byte) i, sample.get(99 + i));
+
+                sample.clear();
+                reader.readSample(metadataTrack, i, sample);
+                assertEquals(40 + i, sample.position());
+                assertEquals((byte) i, sample.get(39 + i));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsSampleCountBeyondItsTable() throws Exception {
+        File file = singleTrack();
+        // Version and flags, the fixed size of 0, then the count.
+        patchInt(file, "stsz", 8, Integer.MAX_VALUE);
+        new Mp4Reader(file).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsChunkRunOutsideTheChunkTable() throws Exception {
+        File file = singleTrack();
+        // Version and flags, the run count, then the first chunk of the first run, counted from 1.
+        patchInt(file, "stsc", 8, 0);
+        new Mp4Reader(file).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsChunkCountBeyondItsTable() throws Exception {
+        File file = singleTrack();
+        patchInt(file, "stco", 4, 1000);
+        new Mp4Reader(file).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsLargeSizeCutOffByTheEndOfFile() throws Exception {
+        File file = folder.newFile("truncated.mp4");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(1);
+            out.write("free".getBytes(Charset.forName("US-ASCII")));
+            out.writeInt(0);
+        }
+        new Mp4Reader(file).close();
+    }
+
+    private File singleTrack() throws Exception {
+        File file = folder.newFile("video.mp4");
+        new Mp4Builder()
+                .addTrack("vide", "avc1", null, 90000, samples(10, 100), 3000, 4, false)
+                .write(file);
+        return file;
+    }
+
+    /**
+     * Overwrites the int {@code offset} bytes into the body of the first box of the given type.
+     */
+    private static void patchInt(File file, String type, int offset, int value) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            byte[] bytes = new byte[(int) out.length()];
+            out.readFully(bytes);
+            int position = new String(bytes, Charset.forName("ISO-8859-1")).indexOf(type);
+            out.seek(position + 4 + offset);
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Sample i is {@code base + i} bytes, all set to i, so misplaced offsets show up.
+     */
+    private static List<byte[]> samples(int count, int base) {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] sample = new byte[base + i];
+            Arrays.fill(sample, (byte) i);
+            samples.add(sample);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.focusingproject.storage;
+
+import com.example.focusingproject.encoding.EncoderSettings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StorageMonitorTest {
+
+    private static final long GB = 1L << 30;
+    private static final long SECOND = 1000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void admitsWhatTheStorageSustains() {
+        StorageMonitor monitor = new StorageMonitor();
+        EncoderSettings settings = EncoderSettings.defaults();
+
+        assertSame(settings, monitor.admit(settings, GB));
+        monitor.setThroughput(10 * 1024 * 1024);
+        assertSame(settings, monitor.admit(settings, GB));
+    }
+
+    @Test
+    public void lowersBitrateForSlowStorage() {
+        StorageMonitor monitor = new StorageMonitor();
+        monitor.setThroughput(1000000);
+        EncoderSettings settings = EncoderSettings.defaults().withBitrateMode(EncoderSettings.BitrateMode.CQ);
+
+        EncoderSettings admitted = monitor.admit(settings, GB);
+
+        assertEquals((750000 - StorageMonitor.SIDECAR_BYTES_PER_SECOND) * 8, admitted.getBitRate());
+        assertEquals(EncoderSettings.BitrateMode.VBR, admitted.getBitrateMode());
+        monitor.setThroughput(200000);
+        assertNull(monitor.admit(settings, GB));
+    }
+
+    @Test
+    public void refusesWhenDiskIsAlmostFull() {
+        StorageMonitor monitor = new StorageMonitor(60, 5);
+        long rate = StorageMonitor.bytesPerSecond(EncoderSettings.DEFAULT_BIT_RATE);
+
+        assertNull(monitor.admit(EncoderSettings.defaults(), 5 * rate));
+        assertTrue(monitor.admit(EncoderSettings.defaults(), 6 * rate) != null);
+    }
+
+    @Test
+    public void reportsSpaceAndBacklog() {
+        StorageMonitor monitor = new StorageMonitor(60, 5);
+        int bitRate = EncoderSettings.DEFAULT_BIT_RATE;
+        long rate = StorageMonitor.bytesPerSecond(bitRate);
+
+        assertEquals(StorageMonitor.Status.OK, monitor.update(0, 0, 0, GB, bitRate));
+        assertEquals(StorageMonitor.Status.OK, monitor.update(SECOND, 1250000, 1000000, GB, bitRate));
+        assertEquals(1000000, monitor.getWriteBytesPerSecond());
+        assertEquals(250000, monitor.getQueuedBytes());
+        assertEquals(StorageMonitor.Status.LOW_SPACE, monitor.update(2 * SECOND, 2500000, 2000000, 30 * rate, bitRate));
+        assertEquals(30, monitor.getRemainingSeconds());
+        assertEquals(StorageMonitor.Status.FULL, monitor.update(3 * SECOND, 3750000, 3000000, 4 * rate, bitRate));
+
+        // Writes fall behind: the backlog exceeds three seconds of data and the throughput follows the writes.
+        monitor.reset();
+        monitor.update(0, 0, 0, GB, bitRate);
+        assertEquals(StorageMonitor.Status.BACKLOG, monitor.update(SECOND, 4 * rate + 400000, 400000, GB, bitRate));
+        assertEquals(400000, monitor.getThroughput());
+    }
+
+    @Test
+    public void probeMeasuresAndCleansUp() throws Exception {
+        File directory = folder.newFolder();
+
+        long throughput = StorageMonitor.probeThroughput(directory, 1024 * 1024);
+
+        assertTrue(throughput > 0);
+        assertEquals(0, directory.listFiles().length);
+    }
+}